@@ -0,0 +1,156 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.benchmarks;
+
+import com.forgerock.cert.SubjectDigest;
+import com.forgerock.cert.SubjectHash;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.eidas.EidasInformation;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.exception.NoSuchRDNInField;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.utils.CertificateConfiguration;
+import com.forgerock.cert.utils.CertificateUtils;
+import com.forgerock.cert.utils.EidasExtensionsTemplate;
+import com.forgerock.cert.utils.RdnField;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the static helpers in {@link CertificateUtils}, {@link SubjectHash} and {@link SubjectDigest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateUtilsBenchmark {
+
+    @Param({Certificates.MULTICERT_PSD2_EIDAS, Certificates.OB_TRANSPORT, Certificates.DEV_TRANSPORT})
+    public String certificate;
+
+    private byte[] encoded;
+    private X509Certificate cert;
+    private X509Certificate[] chain;
+    private X500Name csrSubject;
+    private PublicKey csrKey;
+    private EidasInformation eidasInfo;
+    private EidasExtensionsTemplate eidasTemplate;
+    private final SubjectDigest subjectDigest = SubjectDigest.builder().build();
+    private final SubjectDigest memoizedSubjectDigest = SubjectDigest.builder().memoize(1024).build();
+
+    @Setup
+    public void setup() throws Exception {
+        cert = Certificates.load(certificate);
+        encoded = cert.getEncoded();
+        chain = new X509Certificate[]{cert};
+
+        csrSubject = CertificateUtils.getX500Name(new CertificateConfiguration()
+                .setCn("benchmark-tpp")
+                .setO("Benchmark TPP Ltd")
+                .setC("GB")
+                .setOi("PSDGB-FCA-123456"));
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        csrKey = keyPairGenerator.generateKeyPair().getPublic();
+
+        eidasInfo = new EidasInformation();
+        eidasInfo.setCaIssuerCertURL("http://ca.example.com/issuer.crt");
+        eidasInfo.setOcspUri("http://ca.example.com/ocsp");
+        eidasInfo.setNcaName("Financial Conduct Authority");
+        eidasInfo.setNcaId("GB-FCA");
+        eidasInfo.addRole(Psd2Role.PSP_AI);
+        eidasInfo.addRole(Psd2Role.PSP_PI);
+        eidasTemplate = EidasExtensionsTemplate.compile(EidasCertType.WEB, eidasInfo);
+    }
+
+    @Benchmark
+    public X509Certificate decodeCertificate() throws CertificateException {
+        return CertificateUtils.decodeCertificate(encoded);
+    }
+
+    @Benchmark
+    public String getOrganisationIdentifier() throws CertificateEncodingException, InvalidPsd2EidasCertificate {
+        return CertificateUtils.getOrganisationIdentifier(cert);
+    }
+
+    @Benchmark
+    public String getRDNAsString() throws CertificateEncodingException, NoSuchRDNInField {
+        return CertificateUtils.getRDNAsString(cert, RdnField.SUBJECT, BCStyle.CN);
+    }
+
+    @Benchmark
+    public Optional<String> subjectHash() throws CertificateEncodingException {
+        return SubjectHash.hash(chain);
+    }
+
+    @Benchmark
+    public Optional<String> subjectDigest() throws CertificateEncodingException {
+        return subjectDigest.digest(chain);
+    }
+
+    @Benchmark
+    public Optional<String> memoizedSubjectDigest() throws CertificateEncodingException {
+        return memoizedSubjectDigest.digest(chain);
+    }
+
+    @Benchmark
+    public String generateB64EncodedSha1HashOfPublicKey() throws NoSuchAlgorithmException,
+            CertificateEncodingException {
+        return CertificateUtils.generateB64EncodedSha1HashOfPublicKey(cert);
+    }
+
+    @Benchmark
+    public PKCS10CertificationRequestBuilder addEidasExtensionsToCSR() throws IOException {
+        PKCS10CertificationRequestBuilder csr = new JcaPKCS10CertificationRequestBuilder(csrSubject, csrKey);
+        return CertificateUtils.addEidasExtensionsToCSR(csr, EidasCertType.WEB, eidasInfo);
+    }
+
+    @Benchmark
+    public PKCS10CertificationRequestBuilder applyEidasExtensionsTemplate() {
+        PKCS10CertificationRequestBuilder csr = new JcaPKCS10CertificationRequestBuilder(csrSubject, csrKey);
+        return eidasTemplate.apply(csr);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.benchmarks;
+
+import com.forgerock.cert.utils.CertificateUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Loads the SDK's test certificates, which the benchmark build copies on to the classpath.
+ */
+final class Certificates {
+
+    /**
+     * The certificates the benchmarks are parameterised with. Keep in step with the @Param values.
+     */
+    static final String MULTICERT_PSD2_EIDAS = "multicert-psd2-eidas.cer";
+    static final String OB_TRANSPORT = "ob-transport.pem";
+    static final String DEV_TRANSPORT = "dev-transport.pem";
+    static final String FR_DIRECTORY = "fr-directory.pem";
+
+    private Certificates() {
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        try (InputStream in = Certificates.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("No such benchmark resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    static X509Certificate load(String name) throws IOException, CertificateException {
+        return CertificateUtils.decodeCertificate(readResource(name));
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.benchmarks;
+
+import com.forgerock.cert.revocation.CrlIndex;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares looking up serial numbers in a {@link CrlIndex} with {@link X509CRL#getRevokedCertificate(BigInteger)}
+ * over the JDK's decoded CRL, for CRLs of the sizes some national CAs publish.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrlIndexBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"10000", "200000"})
+    public int revoked;
+
+    private Path directory;
+    private CrlIndex index;
+    private X509CRL jdkCrl;
+    private X500Principal issuer;
+    private BigInteger[] serials;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate());
+        X500Name name = new X500Name("CN=Benchmark CA, O=Example, C=GB");
+        Date now = new Date();
+        X509Certificate issuerCert = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(name, BigInteger.ONE, now, new Date(now.getTime() + 86400000L),
+                        name, keyPair.getPublic()).build(signer));
+        issuer = issuerCert.getSubjectX500Principal();
+
+        Random random = new Random(1);
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(name, now);
+        builder.setNextUpdate(new Date(now.getTime() + 86400000L));
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        serials = new BigInteger[LOOKUPS];
+        for (int i = 0; i < revoked; ++i) {
+            BigInteger serial = new BigInteger(128, random);
+            builder.addCRLEntry(serial, now, CRLReason.keyCompromise);
+            if (i < LOOKUPS / 2) {
+                serials[2 * i] = serial;
+            }
+        }
+        for (int i = 1; i < LOOKUPS; i += 2) {
+            serials[i] = new BigInteger(128, random);
+        }
+        byte[] encoded = builder.build(signer).getEncoded();
+
+        jdkCrl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+        directory = Files.createTempDirectory("crl-index-benchmark");
+        index = new CrlIndex(directory);
+        index.update(new ByteArrayInputStream(encoded), issuerCert);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean crlIndex() {
+        return index.isRevoked(issuer, serials[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public X509CRLEntry jdkCrl() {
+        return jdkCrl.getRevokedCertificate(serials[next++ & (LOOKUPS - 1)]);
+    }
+}
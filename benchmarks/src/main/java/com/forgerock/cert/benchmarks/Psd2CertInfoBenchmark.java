@@ -0,0 +1,79 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.benchmarks;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing a certificate into a {@link Psd2CertInfo} and querying it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Psd2CertInfoBenchmark {
+
+    @Param({Certificates.MULTICERT_PSD2_EIDAS, Certificates.OB_TRANSPORT, Certificates.DEV_TRANSPORT,
+            Certificates.FR_DIRECTORY})
+    public String certificate;
+
+    private X509Certificate[] chain;
+    private Psd2CertInfo certInfo;
+
+    @Setup
+    public void setup() throws Exception {
+        chain = new X509Certificate[]{Certificates.load(certificate)};
+        certInfo = new Psd2CertInfo(chain);
+    }
+
+    @Benchmark
+    public Psd2CertInfo newPsd2CertInfo() throws InvalidPsd2EidasCertificate {
+        return new Psd2CertInfo(chain);
+    }
+
+    @Benchmark
+    public boolean isPsd2Cert() {
+        return certInfo.isPsd2Cert();
+    }
+
+    @Benchmark
+    public Optional<String> lazyOrganizationId() {
+        return Psd2CertInfo.lazy(chain).getOrganizationId();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.benchmarks;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.Psd2CertSnapshot;
+import com.forgerock.cert.Psd2CertSnapshotCodec;
+import com.forgerock.cert.exception.InvalidEidasCertType;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.utils.CertificateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rehydrating a {@link Psd2CertSnapshot} from its binary encoding, as a node reading a shared cache would,
+ * with parsing it again from the DER encoded certificate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Psd2CertSnapshotCodecBenchmark {
+
+    @Param({Certificates.MULTICERT_PSD2_EIDAS, Certificates.OB_TRANSPORT, Certificates.DEV_TRANSPORT,
+            Certificates.FR_DIRECTORY})
+    public String certificate;
+
+    private byte[] der;
+    private Psd2CertSnapshot snapshot;
+    private ByteBuffer encoded;
+    private ByteBuffer scratch;
+
+    @Setup
+    public void setup() throws Exception {
+        X509Certificate cert = Certificates.load(certificate);
+        der = cert.getEncoded();
+        snapshot = new Psd2CertInfo(new X509Certificate[]{cert}).snapshot();
+        encoded = Psd2CertSnapshotCodec.encode(snapshot);
+        scratch = ByteBuffer.allocate(Psd2CertSnapshotCodec.encodedLength(snapshot));
+    }
+
+    @Benchmark
+    public Psd2CertSnapshot decode() {
+        return Psd2CertSnapshotCodec.decode(encoded.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        scratch.clear();
+        Psd2CertSnapshotCodec.encode(snapshot, scratch);
+        return scratch;
+    }
+
+    @Benchmark
+    public Psd2CertSnapshot reparse() throws CertificateException, InvalidPsd2EidasCertificate,
+            InvalidEidasCertType {
+        X509Certificate cert = CertificateUtils.decodeCertificate(der);
+        return new Psd2CertInfo(new X509Certificate[]{cert}).snapshot();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.utils.ByteEncoder;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * The SHA-256 digest of the DER encoding of a certificate. Suitable for use as a map key.
+ */
+public final class CertificateFingerprint {
+
+    public static final int LENGTH = 32;
+
+    private final byte[] digest;
+    private final int hashCode;
+
+    private CertificateFingerprint(byte[] digest) {
+        this.digest = digest;
+        // The digest is already uniformly distributed so any four bytes make a good hash code.
+        this.hashCode = ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16) | ((digest[2] & 0xff) << 8)
+                | (digest[3] & 0xff);
+    }
+
+    /**
+     * Calculate the fingerprint of a certificate
+     * @param cert the certificate
+     * @return the fingerprint
+     * @throws CertificateEncodingException if the certificate can't be encoded
+     */
+    public static CertificateFingerprint of(X509Certificate cert) throws CertificateEncodingException {
+        return of(cert.getEncoded());
+    }
+
+    /**
+     * Calculate the fingerprint of a DER encoded certificate
+     * @param encodedCert the DER encoded certificate
+     * @return the fingerprint
+     */
+    public static CertificateFingerprint of(byte[] encodedCert) {
+        return new CertificateFingerprint(sha256().digest(encodedCert));
+    }
+
+    /**
+     * Wrap an existing SHA-256 digest
+     * @param digest 32 bytes of SHA-256 digest. The array is copied.
+     * @return the fingerprint
+     */
+    public static CertificateFingerprint fromDigest(byte[] digest) {
+        if (digest == null || digest.length != LENGTH) {
+            throw new IllegalArgumentException("A fingerprint must be " + LENGTH + " bytes long");
+        }
+        return new CertificateFingerprint(digest.clone());
+    }
+
+    /**
+     * Wrap a digest that the caller will not modify, without copying it.
+     */
+    static CertificateFingerprint wrap(byte[] digest) {
+        return new CertificateFingerprint(digest);
+    }
+
+    /**
+     * @return the digest itself, which the caller must not modify
+     */
+    byte[] digest() {
+        return digest;
+    }
+
+    /**
+     * Write the digest to a buffer without copying it.
+     * @param out the buffer to write to
+     */
+    void writeTo(ByteBuffer out) {
+        out.put(digest);
+    }
+
+    /**
+     * @return a copy of the SHA-256 digest
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return the digest as lower case hex
+     */
+    public String toHex() {
+        return ByteEncoder.toHex(digest);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CertificateFingerprint)) return false;
+        return Arrays.equals(digest, ((CertificateFingerprint) o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "CertificateFingerprint{" + toHex() + '}';
+    }
+}
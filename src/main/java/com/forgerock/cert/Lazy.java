@@ -0,0 +1,89 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.metrics.CertMetrics;
+import com.forgerock.cert.metrics.Metrics;
+import com.forgerock.cert.metrics.Phase;
+import com.forgerock.cert.validation.ValidationResult;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A value that is decoded once, on first access, and then memoized. The result of decoding, valid or not, is
+ * published safely to all threads. A lock rather than a synchronized block guards the decode so that virtual threads
+ * are not pinned while it runs. Decoding is reported to the registered {@link CertMetrics} as the given phase.
+ *
+ * @param <T> the type of the decoded value
+ */
+final class Lazy<T> {
+
+    @FunctionalInterface
+    interface Decoder<T> {
+        ValidationResult<T> decode();
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Phase phase;
+    private Decoder<T> decoder;
+    private volatile ValidationResult<T> result;
+
+    Lazy(Phase phase, Decoder<T> decoder) {
+        this.phase = phase;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @return the result of decoding the value
+     */
+    ValidationResult<T> get() {
+        ValidationResult<T> decoded = result;
+        if (decoded == null) {
+            lock.lock();
+            try {
+                decoded = result;
+                if (decoded == null) {
+                    decoded = decode();
+                    result = decoded;
+                    // Let the decoder, and anything it captured, be collected.
+                    decoder = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return decoded;
+    }
+
+    private ValidationResult<T> decode() {
+        CertMetrics metrics = Metrics.current();
+        if (metrics == CertMetrics.NO_OP) {
+            return decoder.decode();
+        }
+        long start = System.nanoTime();
+        ValidationResult<T> decoded = decoder.decode();
+        metrics.phaseCompleted(phase, System.nanoTime() - start);
+        if (!decoded.isValid()) {
+            metrics.phaseFailed(phase, decoded.getError(), decoded.getCause().orElse(null));
+        }
+        return decoded;
+    }
+}
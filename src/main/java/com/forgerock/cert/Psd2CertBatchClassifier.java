@@ -0,0 +1,135 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.exception.InvalidEidasCertType;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.psd2.RoleOfPsp;
+import com.forgerock.cert.utils.InFlightWindow;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Classifies many certificate chains in parallel on a caller supplied {@link Executor}, such as a
+ * {@link java.util.concurrent.ForkJoinPool}. Each chain is classified independently; a chain that can't be parsed,
+ * or that the executor refuses to run, produces a failed {@link Psd2CertClassification} rather than aborting the
+ * batch.
+ *
+ * Only a bounded number of chains are in flight at once, so classifying a large stream of chains holds at most that
+ * many classifications in memory rather than one for every chain in the stream.
+ */
+public class Psd2CertBatchClassifier {
+
+    /**
+     * The number of chains submitted ahead of the one being consumed, unless another limit is given.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * @param executor runs the classification of each chain
+     */
+    public Psd2CertBatchClassifier(Executor executor) {
+        this(executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param executor runs the classification of each chain
+     * @param maxInFlight the most chains to have submitted to the executor but not yet consumed
+     */
+    public Psd2CertBatchClassifier(Executor executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = InFlightWindow.requirePositive(maxInFlight);
+    }
+
+    /**
+     * Classify the chains, waiting for all of them to complete.
+     * @param chains the chains to classify, each ordered with the primary certificate first
+     * @return a classification for each chain, in the iteration order of the collection
+     */
+    public List<Psd2CertClassification> classify(Collection<X509Certificate[]> chains) {
+        return classify(chains.stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * Classify the chains. Chains are submitted to the executor as the returned stream is consumed, keeping up to
+     * the maximum in flight ahead of it, and the stream yields the classifications in encounter order as they
+     * complete.
+     * @param chains the chains to classify, each ordered with the primary certificate first
+     * @return the classification of each chain, in encounter order
+     */
+    public Stream<Psd2CertClassification> classify(Stream<X509Certificate[]> chains) {
+        return InFlightWindow.stream(chains, maxInFlight, this::submit);
+    }
+
+    private CompletableFuture<Psd2CertClassification> submit(X509Certificate[] chain) {
+        try {
+            return CompletableFuture.supplyAsync(() -> classify(chain), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(Psd2CertClassification.failure(chain, e));
+        }
+    }
+
+    /**
+     * Classify one chain on the calling thread.
+     * @param chain ordered with the primary certificate first
+     * @return the classification, which is a failure if the chain could not be parsed
+     */
+    public static Psd2CertClassification classify(X509Certificate[] chain) {
+        try {
+            if (chain == null || chain.length == 0) {
+                throw new InvalidPsd2EidasCertificate("No certificates provided");
+            }
+            Psd2CertInfo certInfo = new Psd2CertInfo(chain);
+            EidasCertType eidasCertType = certInfo.getEidasCertType().orElse(null);
+            Set<Psd2Role> roles = EnumSet.noneOf(Psd2Role.class);
+            Optional<Psd2QcStatement> psd2QcStatement = certInfo.getPsd2QCStatement();
+            String ncaId = null;
+            if (psd2QcStatement.isPresent()) {
+                ncaId = psd2QcStatement.get().getNcaId();
+                for (RoleOfPsp roleOfPsp : psd2QcStatement.get().getRoles().getRolesOfPsp()) {
+                    if (roleOfPsp.getRole() != null) {
+                        roles.add(roleOfPsp.getRole());
+                    }
+                }
+            }
+            return Psd2CertClassification.success(chain, certInfo.isPsd2Cert(), eidasCertType, roles,
+                    certInfo.getOrganizationId().orElse(null), ncaId);
+        } catch (InvalidPsd2EidasCertificate | InvalidEidasCertType | RuntimeException e) {
+            return Psd2CertClassification.failure(chain, e);
+        }
+    }
+}
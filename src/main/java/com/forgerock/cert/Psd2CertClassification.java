@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The outcome of classifying one certificate chain with {@link Psd2CertBatchClassifier}. Either holds the PSD2
+ * information extracted from the chain, or the reason it could not be extracted.
+ */
+public final class Psd2CertClassification {
+    private final X509Certificate[] chain;
+    private final boolean psd2Cert;
+    private final EidasCertType eidasCertType;
+    private final Set<Psd2Role> roles;
+    private final String organisationId;
+    private final String ncaId;
+    private final Exception failure;
+
+    private Psd2CertClassification(X509Certificate[] chain, boolean psd2Cert, EidasCertType eidasCertType,
+                                   Set<Psd2Role> roles, String organisationId, String ncaId,
+                                   Exception failure) {
+        this.chain = chain;
+        this.psd2Cert = psd2Cert;
+        this.eidasCertType = eidasCertType;
+        this.roles = roles;
+        this.organisationId = organisationId;
+        this.ncaId = ncaId;
+        this.failure = failure;
+    }
+
+    static Psd2CertClassification success(X509Certificate[] chain, boolean psd2Cert, EidasCertType eidasCertType,
+                                          Set<Psd2Role> roles, String organisationId, String ncaId) {
+        Set<Psd2Role> copy = roles.isEmpty() ? EnumSet.noneOf(Psd2Role.class) : EnumSet.copyOf(roles);
+        return new Psd2CertClassification(chain, psd2Cert, eidasCertType, Collections.unmodifiableSet(copy),
+                organisationId, ncaId, null);
+    }
+
+    static Psd2CertClassification failure(X509Certificate[] chain, Exception failure) {
+        return new Psd2CertClassification(chain, false, null, Collections.emptySet(), null, null, failure);
+    }
+
+    /**
+     * @return the chain that was classified
+     */
+    public X509Certificate[] getChain() {
+        return chain;
+    }
+
+    /**
+     * @return true if the chain was classified, false if classification failed. See {@link #getFailure()}.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    public boolean isPsd2Cert() {
+        return psd2Cert;
+    }
+
+    public Optional<EidasCertType> getEidasCertType() {
+        return Optional.ofNullable(eidasCertType);
+    }
+
+    /**
+     * @return the PSD2 roles of the primary certificate, empty if it has none
+     */
+    public Set<Psd2Role> getRoles() {
+        return roles;
+    }
+
+    public Optional<String> getOrganisationId() {
+        return Optional.ofNullable(organisationId);
+    }
+
+    /**
+     * @return the identifier of the National Competent Authority named in the PSD2 QCStatement, e.g. GB-FCA
+     */
+    public Optional<String> getNcaId() {
+        return Optional.ofNullable(ncaId);
+    }
+
+    /**
+     * @return the reason the chain could not be classified, if it couldn't.
+     */
+    public Optional<Exception> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+
+    @Override
+    public String toString() {
+        if (failure != null) {
+            return "Psd2CertClassification{failure=" + failure + '}';
+        }
+        return "Psd2CertClassification{" +
+                "psd2Cert=" + psd2Cert +
+                ", eidasCertType=" + eidasCertType +
+                ", roles=" + roles +
+                ", organisationId='" + organisationId + '\'' +
+                ", ncaId='" + ncaId + '\'' +
+                '}';
+    }
+}
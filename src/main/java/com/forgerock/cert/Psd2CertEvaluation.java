@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.chain.CertificateChain;
+import com.forgerock.cert.revocation.RevocationResult;
+
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+
+/**
+ * The outcome of evaluating one certificate chain with {@link Psd2CertEvaluator}. Holds the PSD2 information of the
+ * primary certificate, or the reason it could not be parsed, together with the chain built to a trust anchor and
+ * the revocation status of the primary certificate when the evaluator was configured to determine them.
+ */
+public final class Psd2CertEvaluation {
+    private final X509Certificate[] presented;
+    private final Psd2CertInfo certInfo;
+    private final Exception failure;
+    private final CertificateChain chain;
+    private final RevocationResult revocation;
+
+    private Psd2CertEvaluation(X509Certificate[] presented, Psd2CertInfo certInfo, Exception failure,
+                               CertificateChain chain, RevocationResult revocation) {
+        this.presented = presented;
+        this.certInfo = certInfo;
+        this.failure = failure;
+        this.chain = chain;
+        this.revocation = revocation;
+    }
+
+    static Psd2CertEvaluation parsed(X509Certificate[] presented, Psd2CertInfo certInfo) {
+        return new Psd2CertEvaluation(presented, certInfo, null, null, null);
+    }
+
+    static Psd2CertEvaluation failure(X509Certificate[] presented, Exception failure) {
+        return new Psd2CertEvaluation(presented, null, failure, null, null);
+    }
+
+    Psd2CertEvaluation withChain(CertificateChain chain) {
+        return new Psd2CertEvaluation(presented, certInfo, failure, chain, revocation);
+    }
+
+    Psd2CertEvaluation withRevocation(RevocationResult revocation) {
+        return new Psd2CertEvaluation(presented, certInfo, failure, chain, revocation);
+    }
+
+    /**
+     * @return the certificates that were evaluated
+     */
+    public X509Certificate[] getPresented() {
+        return presented;
+    }
+
+    /**
+     * @return true if the primary certificate was parsed, false if not. See {@link #getFailure()}.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * @return the PSD2 information of the primary certificate, absent if it could not be parsed
+     */
+    public Optional<Psd2CertInfo> getCertInfo() {
+        return Optional.ofNullable(certInfo);
+    }
+
+    /**
+     * @return the reason the primary certificate could not be parsed, if it couldn't
+     */
+    public Optional<Exception> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+
+    /**
+     * @return the chain of the primary certificate, absent if the evaluator doesn't build chains or parsing failed
+     */
+    public Optional<CertificateChain> getChain() {
+        return Optional.ofNullable(chain);
+    }
+
+    /**
+     * @return the revocation status of the primary certificate, absent if the evaluator doesn't check revocation,
+     * parsing failed, or the issuer of the primary certificate could not be found
+     */
+    public Optional<RevocationResult> getRevocation() {
+        return Optional.ofNullable(revocation);
+    }
+
+    @Override
+    public String toString() {
+        if (failure != null) {
+            return "Psd2CertEvaluation{failure=" + failure + '}';
+        }
+        return "Psd2CertEvaluation{" +
+                "certInfo=" + certInfo +
+                ", chainLength=" + (chain == null ? null : chain.length()) +
+                ", chainComplete=" + (chain == null ? null : chain.isComplete()) +
+                ", revocation=" + revocation +
+                '}';
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.chain.CertificateChain;
+import com.forgerock.cert.chain.CertificateChainBuilder;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.revocation.CertStatus;
+import com.forgerock.cert.revocation.CrlIndex;
+import com.forgerock.cert.revocation.OcspClient;
+import com.forgerock.cert.revocation.RevocationResult;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Evaluates certificate chains without blocking the calling thread. Parsing, and optionally chain building and
+ * revocation checking, run as one {@link CompletableFuture} pipeline on the configured {@link Executor}. Issuer
+ * fetches and OCSP requests do their I/O on their own threads, and the pipeline carries on back on the executor
+ * once they complete, so neither the pipeline nor the caller's dependent stages run on those threads. The caller
+ * only submits the work, so it is safe to call from an event loop. Nothing in the pipeline holds a monitor while
+ * waiting, so it can also run on virtual threads without pinning their carriers.
+ *
+ * When both a {@link CrlIndex} and an {@link OcspClient} are configured, the CRL index is consulted first since it is
+ * local, and OCSP is only used when the index doesn't know the status.
+ */
+public class Psd2CertEvaluator {
+
+    private final Executor executor;
+    private final Psd2CertInfoCache certInfoCache;
+    private final CertificateChainBuilder chainBuilder;
+    private final OcspClient ocspClient;
+    private final CrlIndex crlIndex;
+
+    private Psd2CertEvaluator(Builder builder) {
+        this.executor = builder.executor;
+        this.certInfoCache = builder.certInfoCache;
+        this.chainBuilder = builder.chainBuilder;
+        this.ocspClient = builder.ocspClient;
+        this.crlIndex = builder.crlIndex;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Evaluate a certificate chain.
+     * @param presented the certificates presented, ordered with the primary certificate first
+     * @return a future of the evaluation. A chain whose primary certificate can't be parsed produces a failed
+     * evaluation rather than an exceptional future. The future completes exceptionally if the chain can't be encoded
+     * or, under {@link com.forgerock.cert.revocation.FailurePolicy#HARD_FAIL}, the revocation status can't be
+     * determined.
+     */
+    public CompletableFuture<Psd2CertEvaluation> evaluateAsync(X509Certificate[] presented) {
+        // Parsing is handed to the executor, and the pipeline only goes back to it after a stage that had to wait for
+        // the issuer fetcher or OCSP client, so that nothing after that stage runs on their I/O threads. An
+        // evaluation that needs no I/O runs as a single task.
+        return CompletableFuture.supplyAsync(() -> parse(presented), executor)
+                .thenCompose(this::buildChain)
+                .thenCompose(evaluation -> onExecutor(checkRevocation(evaluation)));
+    }
+
+    /**
+     * @return the stage itself if it is already complete, otherwise a stage completed with its result on the executor
+     */
+    private <T> CompletableFuture<T> onExecutor(CompletableFuture<T> stage) {
+        return stage.isDone() ? stage : stage.thenApplyAsync(Function.identity(), executor);
+    }
+
+    private Psd2CertEvaluation parse(X509Certificate[] presented) {
+        try {
+            if (presented == null || presented.length == 0) {
+                throw new InvalidPsd2EidasCertificate("No certificates provided");
+            }
+            Psd2CertInfo certInfo = certInfoCache != null ? certInfoCache.get(presented) : new Psd2CertInfo(presented);
+            return Psd2CertEvaluation.parsed(presented, certInfo);
+        } catch (InvalidPsd2EidasCertificate | RuntimeException e) {
+            return Psd2CertEvaluation.failure(presented, e);
+        }
+    }
+
+    private CompletableFuture<Psd2CertEvaluation> buildChain(Psd2CertEvaluation evaluation) {
+        if (chainBuilder == null || !evaluation.isSuccess()) {
+            return CompletableFuture.completedFuture(evaluation);
+        }
+        // The builder carries on from a fetched issuer on the executor, so the chain is always completed there
+        return chainBuilder.buildAsync(Arrays.asList(evaluation.getPresented()), executor)
+                .thenApply(evaluation::withChain);
+    }
+
+    private CompletableFuture<Psd2CertEvaluation> checkRevocation(Psd2CertEvaluation evaluation) {
+        if (!evaluation.isSuccess()) {
+            return CompletableFuture.completedFuture(evaluation);
+        }
+        X509Certificate cert = evaluation.getPresented()[0];
+        X509Certificate issuer = findIssuer(evaluation);
+        if (crlIndex != null) {
+            RevocationResult result = crlIndex.check(cert);
+            if (result.getStatus() != CertStatus.UNKNOWN || ocspClient == null || issuer == null) {
+                return CompletableFuture.completedFuture(evaluation.withRevocation(result));
+            }
+        }
+        if (ocspClient == null || issuer == null) {
+            return CompletableFuture.completedFuture(evaluation);
+        }
+        return ocspClient.check(cert, issuer).thenApply(evaluation::withRevocation);
+    }
+
+    /**
+     * Take the issuer from the built chain or, when chains aren't built, from the presented certificates if the
+     * second one is named as the issuer of the first. The OCSP client verifies responses against the issuer, so an
+     * issuer that only has the right name is caught there.
+     */
+    private static X509Certificate findIssuer(Psd2CertEvaluation evaluation) {
+        if (evaluation.getChain().isPresent()) {
+            CertificateChain chain = evaluation.getChain().get();
+            return chain.length() > 1 ? chain.getCertificates().get(1) : null;
+        }
+        X509Certificate[] presented = evaluation.getPresented();
+        if (presented.length > 1
+                && presented[1].getSubjectX500Principal().equals(presented[0].getIssuerX500Principal())) {
+            return presented[1];
+        }
+        return null;
+    }
+
+    public static class Builder {
+        private Executor executor = ForkJoinPool.commonPool();
+        private Psd2CertInfoCache certInfoCache;
+        private CertificateChainBuilder chainBuilder;
+        private OcspClient ocspClient;
+        private CrlIndex crlIndex;
+
+        private Builder() {
+        }
+
+        /**
+         * @param executor runs the evaluation, taking it back from the issuer fetcher and OCSP client once their I/O
+         *                 completes, and completes the future returned by {@link #evaluateAsync}
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor may not be null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param certInfoCache caches parsed certificates, or null to parse every chain
+         * @return this builder
+         */
+        public Builder certInfoCache(Psd2CertInfoCache certInfoCache) {
+            this.certInfoCache = certInfoCache;
+            return this;
+        }
+
+        /**
+         * @param chainBuilder builds the chain of the primary certificate, or null to not build chains
+         * @return this builder
+         */
+        public Builder chainBuilder(CertificateChainBuilder chainBuilder) {
+            this.chainBuilder = chainBuilder;
+            return this;
+        }
+
+        /**
+         * @param ocspClient checks revocation with OCSP, or null to not use OCSP
+         * @return this builder
+         */
+        public Builder ocspClient(OcspClient ocspClient) {
+            this.ocspClient = ocspClient;
+            return this;
+        }
+
+        /**
+         * @param crlIndex checks revocation against indexed CRLs, or null to not use CRLs
+         * @return this builder
+         */
+        public Builder crlIndex(CrlIndex crlIndex) {
+            this.crlIndex = crlIndex;
+            return this;
+        }
+
+        public Psd2CertEvaluator build() {
+            return new Psd2CertEvaluator(this);
+        }
+    }
+}
@@ -25,19 +25,26 @@ import com.forgerock.cert.eidas.QCStatements;
 import com.forgerock.cert.exception.InvalidEidasCertType;
 import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
 import com.forgerock.cert.exception.NoSuchRDNInField;
+import com.forgerock.cert.metrics.CertMetrics;
+import com.forgerock.cert.metrics.Metrics;
+import com.forgerock.cert.metrics.Phase;
+import com.forgerock.cert.psd2.OrganisationIdentifier;
 import com.forgerock.cert.psd2.Psd2QcStatement;
 import com.forgerock.cert.utils.CertificateUtils;
+import com.forgerock.cert.utils.RawCertificate;
 import com.forgerock.cert.utils.RdnField;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1String;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x509.AccessDescription;
 import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
-import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.qualified.QCStatement;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -46,44 +53,173 @@ import java.util.List;
 import java.util.Optional;
 
 /**
- * Gets the PSD2 information from a X509Certificate
+ * Gets the PSD2 information from a X509Certificate. Instances are not modified once constructed, so may be shared
+ * between threads, for example by {@link Psd2CertInfoCache}.
+ *
+ * The public constructors decode everything up front and fail fast on a malformed certificate. Instances created by
+ * {@link #lazy(List)} instead decode each piece of information the first time it is asked for; in that mode a
+ * certificate that can't be decoded results in empty values rather than an exception from the accessors that don't
+ * declare one. {@link #validate(List)} decodes everything up front but reports problems as a
+ * {@link ValidationResult} rather than an exception.
  */
 public class Psd2CertInfo {
-    private QCStatements qcStatements;
-    private AuthorityInformationAccess authorityInfoAccess = null;
-    private String organizationId;
-    private List<X509Certificate> certs;
-    private Psd2QcStatement psd2QcStatement;
-    private EidasCertType eidasCertType;
+    private final List<X509Certificate> certs;
+    private final Lazy<RawCertificate> rawCert;
+    private final Lazy<QCStatements> qcStatements;
+    private final Lazy<Psd2QcStatement> psd2QcStatement;
+    private final Lazy<AuthorityInformationAccess> authorityInfoAccess;
+    private final Lazy<String> organizationId;
+    private final boolean shared;
 
     public Psd2CertInfo(X509Certificate[] cert) throws InvalidPsd2EidasCertificate {
         this(Arrays.asList(cert));
     }
 
     public Psd2CertInfo(List<X509Certificate> certs) throws InvalidPsd2EidasCertificate {
-        JcaX509CertificateHolder certHolder;
-        try {
-            certHolder = new JcaX509CertificateHolder(certs.get(0));
-        } catch (CertificateEncodingException e){
-            throw new InvalidPsd2EidasCertificate("Failed to understand certificate ", e);
+        this(certs, false);
+    }
+
+    /**
+     * @param shared true if the instance will be shared between callers, as by {@link Psd2CertInfoCache}, in which
+     *               case each caller is given its own copy of the decoded structures that can be modified
+     */
+    Psd2CertInfo(List<X509Certificate> certs, boolean shared) throws InvalidPsd2EidasCertificate {
+        this(certs, scan(certs), shared);
+        ValidationResult<?> problem = firstProblem();
+        if (problem != null) {
+            problem.getOrThrow();
         }
+    }
 
+    /**
+     * Nothing is decoded by this constructor, each facet is decoded by its {@link Lazy} when first requested.
+     */
+    private Psd2CertInfo(List<X509Certificate> certs, Lazy<RawCertificate> rawCert, boolean shared) {
         this.certs = certs;
-        Extensions extensions = certHolder.getExtensions();
-        if (extensions != null) {
-            Optional<QCStatements> qcStatementsOpt = QCStatements.fromExtensions(extensions);
-            if(qcStatementsOpt.isPresent()){
-                this.qcStatements = qcStatementsOpt.get();
-                Optional<Psd2QcStatement> psd2QcStatementOpt = this.qcStatements.getPsd2QcStatement();
-                if(psd2QcStatementOpt.isPresent()){
-                    this.psd2QcStatement = psd2QcStatementOpt.get();
+        this.shared = shared;
+        this.rawCert = rawCert;
+        this.qcStatements = new Lazy<>(Phase.QC_STATEMENTS, () -> {
+            ValidationResult<ASN1Primitive> value = extensionValue(QCStatements.getOid(),
+                    ValidationError.MALFORMED_QC_STATEMENTS);
+            if (!value.isValid() || !value.getValue().isPresent()) {
+                return value.isValid() ? ValidationResult.valid(null) : value.propagate();
+            }
+            try {
+                QCStatements statements = QCStatements.getInstance(value.getValue().get()).orElse(null);
+                CertMetrics metrics = Metrics.current();
+                if (metrics != CertMetrics.NO_OP && statements != null) {
+                    metrics.eidasCertType(statements.findEidasCertificateType().getValue().orElse(null));
                 }
+                return ValidationResult.valid(statements);
+            } catch (InvalidPsd2EidasCertificate e) {
+                return ValidationResult.invalid(ValidationError.MALFORMED_QC_STATEMENTS, e);
+            }
+        });
+        this.psd2QcStatement = new Lazy<>(Phase.PSD2_QC_STATEMENT, () -> {
+            ValidationResult<QCStatements> qcStatements = this.qcStatements.get();
+            if (!qcStatements.isValid() || !qcStatements.getValue().isPresent()) {
+                return qcStatements.isValid() ? ValidationResult.valid(null) : qcStatements.propagate();
+            }
+            try {
+                return ValidationResult.valid(qcStatements.getValue().get().getPsd2QcStatement().orElse(null));
+            } catch (InvalidPsd2EidasCertificate | IllegalArgumentException | ClassCastException e) {
+                return ValidationResult.invalid(ValidationError.MALFORMED_PSD2_QC_STATEMENT, e);
+            }
+        });
+        this.authorityInfoAccess = new Lazy<>(Phase.AUTHORITY_INFO_ACCESS, () -> {
+            ValidationResult<ASN1Primitive> value = extensionValue(Extension.authorityInfoAccess,
+                    ValidationError.MALFORMED_AUTHORITY_INFO_ACCESS);
+            if (!value.isValid() || !value.getValue().isPresent()) {
+                return value.isValid() ? ValidationResult.valid(null) : value.propagate();
+            }
+            try {
+                return ValidationResult.valid(AuthorityInformationAccess.getInstance(value.getValue().get()));
+            } catch (IllegalArgumentException e) {
+                return ValidationResult.invalid(ValidationError.MALFORMED_AUTHORITY_INFO_ACCESS, e);
+            }
+        });
+        this.organizationId = new Lazy<>(Phase.ORGANISATION_ID, () -> {
+            ValidationResult<RawCertificate> scanned = this.rawCert.get();
+            if (!scanned.isValid()) {
+                return scanned.propagate();
+            }
+            // Only certificates with extensions are expected to carry an organisation identifier
+            if (!scanned.getValue().get().hasExtensions()) {
+                return ValidationResult.valid(null);
+            }
+            try {
+                return CertificateUtils.findOrganisationIdentifier(scanned.getValue().get().getSubject());
+            } catch (CertificateEncodingException e) {
+                return ValidationResult.invalid(ValidationError.CERTIFICATE_ENCODING, e);
             }
+        });
+    }
+
+    /**
+     * Create a Psd2CertInfo that decodes the certificate on demand. Each piece of information is decoded at most
+     * once, the first time it is requested, so callers that only need, say, the organisation id do not pay for
+     * decoding the QCStatements.
+     * @param certs chain of certificates ordered with the primary certificate first
+     * @return a Psd2CertInfo that has not yet decoded anything
+     */
+    public static Psd2CertInfo lazy(List<X509Certificate> certs) {
+        return new Psd2CertInfo(certs, scan(certs), false);
+    }
 
-            this.authorityInfoAccess = AuthorityInformationAccess.fromExtensions(extensions);
-            this.organizationId = CertificateUtils.getOrganisationIdentifier(certHolder);
+    public static Psd2CertInfo lazy(X509Certificate[] certs) {
+        return lazy(Arrays.asList(certs));
+    }
+
+    /**
+     * Decode the PSD2 information of a certificate chain without throwing if the primary certificate is malformed.
+     * This is the non throwing equivalent of the public constructors.
+     * @param certs chain of certificates ordered with the primary certificate first
+     * @return a valid result holding the fully decoded Psd2CertInfo, or an invalid result describing the first
+     * problem found.
+     */
+    public static ValidationResult<Psd2CertInfo> validate(List<X509Certificate> certs) {
+        if (certs == null || certs.isEmpty()) {
+            return ValidationResult.invalid(ValidationError.NO_CERTIFICATE);
+        }
+        Psd2CertInfo certInfo = new Psd2CertInfo(certs, scan(certs), false);
+        ValidationResult<?> problem = certInfo.firstProblem();
+        return problem == null ? ValidationResult.valid(certInfo) : problem.propagate();
+    }
 
+    public static ValidationResult<Psd2CertInfo> validate(X509Certificate[] certs) {
+        return validate(certs == null ? null : Arrays.asList(certs));
+    }
+
+    private static Lazy<RawCertificate> scan(List<X509Certificate> certs) {
+        return new Lazy<>(Phase.CERTIFICATE, () -> {
+            try {
+                return ValidationResult.valid(RawCertificate.scan(certs.get(0)));
+            } catch (CertificateEncodingException e){
+                return ValidationResult.invalid(ValidationError.CERTIFICATE_ENCODING, e);
+            }
+        });
+    }
+
+    /**
+     * Decode every facet, in the order the eager constructor always has.
+     * @return the first invalid result, or null if everything decoded
+     */
+    private ValidationResult<?> firstProblem() {
+        for (Lazy<?> facet : Arrays.<Lazy<?>>asList(qcStatements, psd2QcStatement, authorityInfoAccess,
+                organizationId)) {
+            ValidationResult<?> result = facet.get();
+            if (!result.isValid()) {
+                return result;
+            }
         }
+        return null;
+    }
+
+    /**
+     * @return the primary certificate the information describes
+     */
+    public X509Certificate getCertificate() {
+        return certs.get(0);
     }
 
     public Boolean isPsd2Cert() {
@@ -92,24 +228,31 @@ public class Psd2CertInfo {
         // eidas certificates, so we need to look to see if the qcType is set.
         // boolean isPsd2Cert =  (this.qcStatements != null && this.qcStatements.isEUQualifiedCert()
         //        && this.psd2QcStatement != null);
-        boolean isPsd2Cert = false;
-        try {
-            isPsd2Cert = (this.qcStatements != null && this.qcStatements.getEidasCertificateType().isPresent()
-                    && this.psd2QcStatement != null);
-        } catch (InvalidEidasCertType invalidCertType){
-            isPsd2Cert = false;
-        }
-        return isPsd2Cert;
+        QCStatements qcStatements = orNull(this.qcStatements);
+        return qcStatements != null && qcStatements.findEidasCertificateType().getValue().isPresent()
+                && orNull(this.psd2QcStatement) != null;
     }
 
     public Optional<String> getAuthorityAccessInfoCAIssuer(){
+        return getAuthorityAccessInfoLocation(AccessDescription.id_ad_caIssuers);
+    }
+
+    /**
+     * @return the URL of the OCSP responder for the certificate, if the authority information access extension has
+     * one.
+     */
+    public Optional<String> getAuthorityAccessInfoOcsp(){
+        return getAuthorityAccessInfoLocation(AccessDescription.id_ad_ocsp);
+    }
+
+    private Optional<String> getAuthorityAccessInfoLocation(ASN1ObjectIdentifier accessMethod){
         if(getAuthorityAccessInfo().isPresent()){
             AuthorityInformationAccess authInfoAccess =  getAuthorityAccessInfo().get();
             AccessDescription[] accessDescriptions = authInfoAccess.getAccessDescriptions();
             for(int i = 0; i < accessDescriptions.length; ++i){
                 AccessDescription accessDescription = accessDescriptions[i];
                 if(accessDescription != null){
-                    if(accessDescription.getAccessMethod().getId().equals(AccessDescription.id_ad_caIssuers.getId())){
+                    if(accessDescription.getAccessMethod().equals(accessMethod)){
                         GeneralName generalName = accessDescription.getAccessLocation();
                         ASN1Encodable gName = generalName.getName();
                         ASN1String name = (ASN1String)gName;
@@ -122,23 +265,38 @@ public class Psd2CertInfo {
     }
 
     public Optional<AuthorityInformationAccess> getAuthorityAccessInfo() {
-        return Optional.ofNullable(this.authorityInfoAccess);
+        return Optional.ofNullable(orNull(this.authorityInfoAccess));
     }
 
     public Optional<QCStatement> getQCStatement(ASN1ObjectIdentifier oid) {
-        if(this.qcStatements != null){
-            return this.qcStatements.getQCStatement(oid);
+        QCStatements qcStatements = orNull(this.qcStatements);
+        if(qcStatements != null){
+            return qcStatements.getQCStatement(oid);
         }
         return Optional.empty();
     }
 
     public Optional<EidasCertType> getEidasCertType() throws InvalidEidasCertType {
-       return qcStatements.getEidasCertificateType();
+        QCStatements qcStatements = orNull(this.qcStatements);
+        if(qcStatements != null){
+            return qcStatements.getEidasCertificateType();
+        }
+        return Optional.empty();
     }
 
 
     public Optional<String> getOrganizationId(){
-        return Optional.ofNullable(this.organizationId);
+        return Optional.ofNullable(orNull(this.organizationId));
+    }
+
+    /**
+     * Split the organisation identifier into its type, country, NCA and identifier.
+     * @return a valid result holding the parsed identifier, or no value if the certificate has no organisation
+     * identifier. An invalid result if the identifier doesn't follow ETSI TS 119 412-1.
+     */
+    public ValidationResult<OrganisationIdentifier> parseOrganizationId(){
+        String organizationId = orNull(this.organizationId);
+        return organizationId == null ? ValidationResult.valid(null) : OrganisationIdentifier.parse(organizationId);
     }
 
     public String getApplicationId() throws NoSuchRDNInField, CertificateEncodingException {
@@ -146,8 +304,64 @@ public class Psd2CertInfo {
         return CertificateUtils.getRDNAsString(appCert, RdnField.SUBJECT, BCStyle.CN);
     }
 
+    /**
+     * @return the PSD2 QCStatement of the certificate, if it has one. An instance shared through
+     * {@link Psd2CertInfoCache} returns a copy, so changes a caller makes to it, such as adding roles, are not seen by
+     * other callers.
+     * @throws InvalidPsd2EidasCertificate if the statement can't be decoded
+     */
     public Optional<Psd2QcStatement> getPsd2QCStatement() throws InvalidPsd2EidasCertificate {
-        return Optional.ofNullable(this.psd2QcStatement);
+        Psd2QcStatement statement = this.psd2QcStatement.get().getOrThrow();
+        if (shared && statement != null) {
+            statement = Psd2QcStatement.getInstance(statement.toASN1Primitive());
+        }
+        return Optional.ofNullable(statement);
+    }
+
+    /**
+     * Take a compact, immutable copy of the PSD2 information of the primary certificate, which holds no reference to
+     * the certificate itself.
+     * @return the snapshot
+     * @throws InvalidPsd2EidasCertificate if the certificate can't be decoded
+     * @throws InvalidEidasCertType if the certificate has an unrecognised eIDAS certificate type
+     */
+    public Psd2CertSnapshot snapshot() throws InvalidPsd2EidasCertificate, InvalidEidasCertType {
+        ValidationResult<?> problem = firstProblem();
+        if (problem != null) {
+            problem.getOrThrow();
+        }
+        X509Certificate cert = this.certs.get(0);
+        CertificateFingerprint fingerprint;
+        try {
+            fingerprint = CertificateFingerprint.of(cert);
+        } catch (CertificateEncodingException e) {
+            throw new InvalidPsd2EidasCertificate(ValidationError.CERTIFICATE_ENCODING.getDescription(), e);
+        }
+        Psd2QcStatement psd2QcStatement = orNull(this.psd2QcStatement);
+        int roleMask = psd2QcStatement == null ? 0 : psd2QcStatement.getRoles().getRoleMask();
+        return new Psd2CertSnapshot(fingerprint, isPsd2Cert(), getEidasCertType().orElse(null), roleMask,
+                orNull(this.organizationId),
+                psd2QcStatement == null ? null : psd2QcStatement.getNcaName(),
+                psd2QcStatement == null ? null : psd2QcStatement.getNcaId(),
+                getAuthorityAccessInfoCAIssuer().orElse(null),
+                getAuthorityAccessInfoOcsp().orElse(null),
+                cert.getNotBefore().getTime(), cert.getNotAfter().getTime());
+    }
+
+    private ValidationResult<ASN1Primitive> extensionValue(ASN1ObjectIdentifier oid, ValidationError malformed) {
+        ValidationResult<RawCertificate> rawCert = this.rawCert.get();
+        if (!rawCert.isValid()) {
+            return rawCert.propagate();
+        }
+        try {
+            return ValidationResult.valid(rawCert.getValue().get().getExtensionValue(oid));
+        } catch (CertificateEncodingException e) {
+            return ValidationResult.invalid(malformed, e);
+        }
+    }
+
+    private static <T> T orNull(Lazy<T> lazy) {
+        return lazy.get().getValue().orElse(null);
     }
 
 
@@ -156,10 +370,10 @@ public class Psd2CertInfo {
         String LINE_SEP =  System.getProperty("line.separator");
         StringBuilder sb = new StringBuilder("Psd2Cert: ");
         if(isPsd2Cert()){
-            sb.append("OrganizationId is '").append(this.organizationId).append("'").append(LINE_SEP);
+            sb.append("OrganizationId is '").append(orNull(this.organizationId)).append("'").append(LINE_SEP);
             sb.append("Subject is: ").append(this.certs.get(0).getSubjectDN().getName()).append(LINE_SEP);
-            sb.append("Psd2Statements: ").append(this.psd2QcStatement.toString()).append(LINE_SEP);
-            sb.append("QCStatements: ").append(this.qcStatements.toString()).append(LINE_SEP);
+            sb.append("Psd2Statements: ").append(orNull(this.psd2QcStatement)).append(LINE_SEP);
+            sb.append("QCStatements: ").append(orNull(this.qcStatements)).append(LINE_SEP);
         } else {
             sb.append("Constructed from non PSD2 certificate");
         }
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches {@link Psd2CertInfo} instances against the fingerprint of the primary (first) certificate in the chain, so
+ * that certificates which are presented repeatedly are only parsed once.
+ *
+ * Psd2CertInfo only reads the primary certificate, so two chains that share a primary certificate share a cached
+ * entry. Entries are built from the primary certificate alone, so they hold no reference to the rest of whichever
+ * chain was presented first. The cached instances are shared between callers, so each call to
+ * {@link Psd2CertInfo#getPsd2QCStatement()} on one returns a copy of the statement and its roles.
+ */
+public class Psd2CertInfoCache {
+
+    /**
+     * The name this cache reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "psd2-cert-info";
+
+    private final BoundedCache<CertificateFingerprint, Psd2CertInfo> cache;
+
+    /**
+     * @param maximumSize the maximum number of certificates to hold
+     * @param timeToLive how long a parsed certificate may be served from the cache, or null to only evict when full
+     */
+    public Psd2CertInfoCache(int maximumSize, Duration timeToLive) {
+        this.cache = BoundedCache.<CertificateFingerprint, Psd2CertInfo>builder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .metricsName(METRICS_NAME)
+                .build();
+    }
+
+    public Psd2CertInfo get(X509Certificate[] certs) throws InvalidPsd2EidasCertificate {
+        return get(Arrays.asList(certs));
+    }
+
+    /**
+     * Get the PSD2 information of a certificate chain, parsing the primary certificate only if it is not already
+     * cached.
+     * @param certs chain of certificates ordered with the primary certificate first
+     * @return the cached, or newly parsed, Psd2CertInfo
+     * @throws InvalidPsd2EidasCertificate if the primary certificate can't be parsed. Failures are not cached.
+     */
+    public Psd2CertInfo get(List<X509Certificate> certs) throws InvalidPsd2EidasCertificate {
+        if (certs == null || certs.isEmpty()) {
+            throw new InvalidPsd2EidasCertificate("No certificates provided");
+        }
+        CertificateFingerprint fingerprint;
+        try {
+            fingerprint = CertificateFingerprint.of(certs.get(0));
+        } catch (CertificateEncodingException e) {
+            throw new InvalidPsd2EidasCertificate("Failed to understand certificate ", e);
+        }
+
+        Psd2CertInfo certInfo = cache.getIfPresent(fingerprint);
+        if (certInfo == null) {
+            certInfo = new Psd2CertInfo(Collections.singletonList(certs.get(0)), true);
+            cache.put(fingerprint, certInfo);
+        }
+        return certInfo;
+    }
+
+    public void invalidate(X509Certificate cert) throws CertificateEncodingException {
+        cache.invalidate(CertificateFingerprint.of(cert));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
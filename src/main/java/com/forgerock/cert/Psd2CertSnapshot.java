@@ -0,0 +1,196 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The PSD2 information of a certificate, reduced to the handful of values that are needed once the certificate has
+ * been parsed. A snapshot holds no reference to the certificate or to any ASN.1 structures, so it is a small fraction
+ * of the size of a {@link Psd2CertInfo} and suitable for keeping large numbers of certificates in memory.
+ *
+ * Roles are held as a bit mask, see {@link Psd2Role#mask()}, so {@link #hasRole(Psd2Role)} is a constant time test.
+ * The NCA name and id are interned because the same few values are shared by every TPP an authority regulates.
+ *
+ * Snapshots are immutable and safe to share between threads. Create them with {@link Psd2CertInfo#snapshot()}, or
+ * decode them with {@link Psd2CertSnapshotCodec}.
+ */
+public final class Psd2CertSnapshot {
+
+    private final CertificateFingerprint fingerprint;
+    private final boolean psd2Cert;
+    private final EidasCertType eidasCertType;
+    private final int roleMask;
+    private final String organisationId;
+    private final String ncaName;
+    private final String ncaId;
+    private final String caIssuerCertUrl;
+    private final String ocspUrl;
+    private final long notBefore;
+    private final long notAfter;
+
+    Psd2CertSnapshot(CertificateFingerprint fingerprint, boolean psd2Cert, EidasCertType eidasCertType, int roleMask,
+                     String organisationId, String ncaName, String ncaId, String caIssuerCertUrl, String ocspUrl,
+                     long notBefore, long notAfter) {
+        this.fingerprint = Objects.requireNonNull(fingerprint, "fingerprint");
+        this.psd2Cert = psd2Cert;
+        this.eidasCertType = eidasCertType;
+        this.roleMask = roleMask;
+        this.organisationId = organisationId;
+        this.ncaName = ncaName == null ? null : ncaName.intern();
+        this.ncaId = ncaId == null ? null : ncaId.intern();
+        this.caIssuerCertUrl = caIssuerCertUrl;
+        this.ocspUrl = ocspUrl;
+        this.notBefore = notBefore;
+        this.notAfter = notAfter;
+    }
+
+    /**
+     * @return the fingerprint of the certificate the snapshot was taken from
+     */
+    public CertificateFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return true if the certificate was a PSD2 certificate, see {@link Psd2CertInfo#isPsd2Cert()}
+     */
+    public boolean isPsd2Cert() {
+        return psd2Cert;
+    }
+
+    public Optional<EidasCertType> getEidasCertType() {
+        return Optional.ofNullable(eidasCertType);
+    }
+
+    /**
+     * @param role a PSD2 role
+     * @return true if the certificate grants the role
+     */
+    public boolean hasRole(Psd2Role role) {
+        return (roleMask & role.mask()) != 0;
+    }
+
+    /**
+     * @return a new set of the roles the certificate grants
+     */
+    public EnumSet<Psd2Role> getRoles() {
+        return Psd2Role.fromMask(roleMask);
+    }
+
+    /**
+     * @return the roles the certificate grants as a bit mask, see {@link Psd2Role#mask()}
+     */
+    public int getRoleMask() {
+        return roleMask;
+    }
+
+    public Optional<String> getOrganisationId() {
+        return Optional.ofNullable(organisationId);
+    }
+
+    public Optional<String> getNcaName() {
+        return Optional.ofNullable(ncaName);
+    }
+
+    public Optional<String> getNcaId() {
+        return Optional.ofNullable(ncaId);
+    }
+
+    public Optional<String> getCaIssuerCertUrl() {
+        return Optional.ofNullable(caIssuerCertUrl);
+    }
+
+    public Optional<String> getOcspUrl() {
+        return Optional.ofNullable(ocspUrl);
+    }
+
+    long getNotBeforeMillis() {
+        return notBefore;
+    }
+
+    long getNotAfterMillis() {
+        return notAfter;
+    }
+
+    public Instant getNotBefore() {
+        return Instant.ofEpochMilli(notBefore);
+    }
+
+    public Instant getNotAfter() {
+        return Instant.ofEpochMilli(notAfter);
+    }
+
+    /**
+     * @param instant a point in time
+     * @return true if the certificate is valid at the instant
+     */
+    public boolean isValidAt(Instant instant) {
+        long millis = instant.toEpochMilli();
+        return millis >= notBefore && millis <= notAfter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Psd2CertSnapshot)) return false;
+        Psd2CertSnapshot that = (Psd2CertSnapshot) o;
+        return psd2Cert == that.psd2Cert &&
+                roleMask == that.roleMask &&
+                notBefore == that.notBefore &&
+                notAfter == that.notAfter &&
+                fingerprint.equals(that.fingerprint) &&
+                eidasCertType == that.eidasCertType &&
+                Objects.equals(organisationId, that.organisationId) &&
+                Objects.equals(ncaName, that.ncaName) &&
+                Objects.equals(ncaId, that.ncaId) &&
+                Objects.equals(caIssuerCertUrl, that.caIssuerCertUrl) &&
+                Objects.equals(ocspUrl, that.ocspUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return fingerprint.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Psd2CertSnapshot{" +
+                "fingerprint=" + fingerprint.toHex() +
+                ", psd2Cert=" + psd2Cert +
+                ", eidasCertType=" + eidasCertType +
+                ", roles=" + getRoles() +
+                ", organisationId='" + organisationId + '\'' +
+                ", ncaName='" + ncaName + '\'' +
+                ", ncaId='" + ncaId + '\'' +
+                ", caIssuerCertUrl='" + caIssuerCertUrl + '\'' +
+                ", ocspUrl='" + ocspUrl + '\'' +
+                ", notBefore=" + getNotBefore() +
+                ", notAfter=" + getNotAfter() +
+                '}';
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact, versioned binary encoding of {@link Psd2CertSnapshot}, for sharing parsed certificates between nodes
+ * through a cache such as Redis or Hazelcast. Decoding a snapshot reads the buffer directly and never touches ASN.1.
+ *
+ * Version 1 of the encoding is, in network byte order:
+ * <pre>
+ * version         1 byte, currently 1
+ * flags           1 byte, bit 0 set for a PSD2 certificate
+ * eidasCertType   1 byte, 0 for none or EidasCertType#getWireCode()
+ * roleMask        1 byte, see Psd2Role#mask()
+ * fingerprint     32 bytes, SHA-256
+ * notBefore       8 bytes, milliseconds since the epoch
+ * notAfter        8 bytes, milliseconds since the epoch
+ * organisationId  string
+ * ncaName         string
+ * ncaId           string
+ * caIssuerCertUrl string
+ * ocspUrl         string
+ * </pre>
+ * Each string is an unsigned LEB128 varint of its UTF-8 length plus one, with zero meaning null, followed by its UTF-8
+ * bytes. A snapshot of a typical certificate encodes in under 200 bytes.
+ *
+ * Both the type code and the role bits are fixed per constant rather than derived from enum ordinals, so adding or
+ * reordering constants does not change the meaning of snapshots already encoded.
+ *
+ * Decoders reject versions they don't know, so a new version must be rolled out to every node that reads the shared
+ * cache before any node writes it.
+ */
+public final class Psd2CertSnapshotCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_PSD2_CERT = 1;
+    private static final int FIXED_LENGTH = 4 + CertificateFingerprint.LENGTH + 8 + 8;
+
+    private Psd2CertSnapshotCodec() {
+    }
+
+    /**
+     * @param snapshot the snapshot to measure
+     * @return the number of bytes {@link #encode(Psd2CertSnapshot, ByteBuffer)} will write
+     */
+    public static int encodedLength(Psd2CertSnapshot snapshot) {
+        return FIXED_LENGTH
+                + stringLength(snapshot.getOrganisationId().orElse(null))
+                + stringLength(snapshot.getNcaName().orElse(null))
+                + stringLength(snapshot.getNcaId().orElse(null))
+                + stringLength(snapshot.getCaIssuerCertUrl().orElse(null))
+                + stringLength(snapshot.getOcspUrl().orElse(null));
+    }
+
+    /**
+     * Encode a snapshot into a new heap buffer.
+     * @param snapshot the snapshot to encode
+     * @return a buffer holding the encoding, positioned at its start
+     */
+    public static ByteBuffer encode(Psd2CertSnapshot snapshot) {
+        ByteBuffer out = ByteBuffer.allocate(encodedLength(snapshot));
+        encode(snapshot, out);
+        // Called through Buffer so that the class links on Java 8, where ByteBuffer doesn't override flip, limit and
+        // position.
+        ((Buffer) out).flip();
+        return out;
+    }
+
+    /**
+     * Encode a snapshot at the position of a buffer, advancing the position past it.
+     * @param snapshot the snapshot to encode
+     * @param out the buffer to write to, which must have {@link #encodedLength(Psd2CertSnapshot)} bytes remaining
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough space remaining
+     */
+    public static void encode(Psd2CertSnapshot snapshot, ByteBuffer out) {
+        out.put(VERSION);
+        out.put((byte) (snapshot.isPsd2Cert() ? FLAG_PSD2_CERT : 0));
+        out.put((byte) snapshot.getEidasCertType().map(EidasCertType::getWireCode).orElse(0).intValue());
+        out.put((byte) snapshot.getRoleMask());
+        snapshot.getFingerprint().writeTo(out);
+        out.putLong(snapshot.getNotBeforeMillis());
+        out.putLong(snapshot.getNotAfterMillis());
+        putString(out, snapshot.getOrganisationId().orElse(null));
+        putString(out, snapshot.getNcaName().orElse(null));
+        putString(out, snapshot.getNcaId().orElse(null));
+        putString(out, snapshot.getCaIssuerCertUrl().orElse(null));
+        putString(out, snapshot.getOcspUrl().orElse(null));
+    }
+
+    /**
+     * Decode a snapshot from the position of a buffer, advancing the position past it.
+     * @param in the buffer to read from
+     * @return the snapshot
+     * @throws IllegalArgumentException if the buffer does not hold a snapshot encoded by a known version
+     */
+    public static Psd2CertSnapshot decode(ByteBuffer in) {
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported Psd2CertSnapshot encoding version " + version);
+            }
+            int flags = in.get();
+            int certType = in.get() & 0xff;
+            EidasCertType eidasCertType = EidasCertType.fromWireCode(certType);
+            if (certType != 0 && eidasCertType == null) {
+                throw new IllegalArgumentException("Unknown eIDAS certificate type " + certType);
+            }
+            int roleMask = in.get() & 0xff;
+            byte[] digest = new byte[CertificateFingerprint.LENGTH];
+            in.get(digest);
+            long notBefore = in.getLong();
+            long notAfter = in.getLong();
+            String organisationId = getString(in);
+            String ncaName = getString(in);
+            String ncaId = getString(in);
+            String caIssuerCertUrl = getString(in);
+            String ocspUrl = getString(in);
+            return new Psd2CertSnapshot(CertificateFingerprint.wrap(digest), (flags & FLAG_PSD2_CERT) != 0,
+                    eidasCertType, roleMask, organisationId, ncaName, ncaId,
+                    caIssuerCertUrl, ocspUrl, notBefore, notAfter);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated Psd2CertSnapshot encoding", e);
+        }
+    }
+
+    private static int stringLength(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintLength(length + 1) + length;
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        putVarint(out, utf8Length(value) + 1);
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xf0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                // Unpaired surrogates are replaced with '?', as String.getBytes does.
+                if (Character.isSurrogate(c)) {
+                    out.put((byte) '?');
+                } else {
+                    out.put((byte) (0xe0 | (c >> 12)));
+                    out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                    out.put((byte) (0x80 | (c & 0x3f)));
+                }
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = getVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            ByteBuffer slice = in.slice();
+            ((Buffer) slice).limit(length);
+            value = StandardCharsets.UTF_8.decode(slice).toString();
+        }
+        ((Buffer) in).position(in.position() + length);
+        return value;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            ++length;
+        }
+        return length;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Malformed length in Psd2CertSnapshot encoding");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed length in Psd2CertSnapshot encoding");
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Holds {@link Psd2CertSnapshot}s for large numbers of certificates outside of the Java heap, so that keeping millions
+ * of certificates live adds nothing for the garbage collector to trace. Snapshots can be looked up by fingerprint,
+ * organisation identifier and NCA identifier.
+ *
+ * Each certificate is a fixed size record in a direct buffer. Strings are stored once, however many records share
+ * them, in an off-heap string table. The fingerprint, organisation and NCA indexes are open addressing hash tables,
+ * also in direct buffers; records with the same organisation or NCA are chained through the records themselves.
+ *
+ * Writers are serialised by a lock. Reads take no locks and are snapshot consistent: a {@link View} sees exactly the
+ * certificates that had been added when it was created, however many are added while it is in use. Each read
+ * decodes a new Psd2CertSnapshot on the heap, so results should not be held longer than needed.
+ *
+ * Certificates can't be removed; the store is meant for inventories that keep every issued certificate.
+ */
+public class Psd2CertStore {
+
+    private static final int RECORD_LENGTH = 80;
+    private static final int FINGERPRINT = 0;
+    private static final int NOT_BEFORE = 32;
+    private static final int NOT_AFTER = 40;
+    private static final int FLAGS = 48;
+    private static final int CERT_TYPE = 49;
+    private static final int ROLE_MASK = 50;
+    private static final int ORGANISATION_ID = 52;
+    private static final int NCA_NAME = 56;
+    private static final int NCA_ID = 60;
+    private static final int CA_ISSUER_CERT_URL = 64;
+    private static final int OCSP_URL = 68;
+    private static final int NEXT_BY_ORGANISATION = 72;
+    private static final int NEXT_BY_NCA = 76;
+
+    private static final int FLAG_PSD2_CERT = 1;
+
+    private static final int RECORD_SEGMENT_SHIFT = 14;
+    private static final int RECORDS_PER_SEGMENT = 1 << RECORD_SEGMENT_SHIFT;
+    private static final int STRING_SEGMENT_SHIFT = 20;
+    private static final int STRING_SEGMENT_LENGTH = 1 << STRING_SEGMENT_SHIFT;
+    private static final int MAX_STRING_LENGTH = 0xffff;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile State state;
+
+    // Guarded by writeLock. The tables and the last segments are shared with the published state and are only ever
+    // written beyond what it can see.
+    private int count;
+    private ByteBuffer[] records = new ByteBuffer[0];
+    private ByteBuffer[] strings = new ByteBuffer[0];
+    private int stringEnd;
+    private Table fingerprints;
+    private Table stringTable;
+    private Table organisations;
+    private Table ncas;
+
+    public Psd2CertStore() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSize the number of certificates the store is expected to hold. The store grows beyond it as
+     *                     needed, but sizing it up front avoids rebuilding the indexes.
+     */
+    public Psd2CertStore(int expectedSize) {
+        if (expectedSize <= 0) {
+            throw new IllegalArgumentException("expectedSize must be positive, was " + expectedSize);
+        }
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize) - 1) << 2;
+        fingerprints = new Table(capacity, 2);
+        stringTable = new Table(Math.max(1024, capacity / 4), 2);
+        organisations = new Table(Math.max(64, capacity / 4), 4);
+        ncas = new Table(64, 4);
+        publish();
+    }
+
+    /**
+     * Add a certificate.
+     * @param snapshot the certificate
+     * @return false if a certificate with the same fingerprint was already held
+     * @throws IllegalArgumentException if one of the snapshot's strings is longer than 65535 UTF-8 bytes
+     */
+    public boolean add(Psd2CertSnapshot snapshot) {
+        writeLock.lock();
+        try {
+            boolean added = addLocked(snapshot);
+            if (added) {
+                publish();
+            }
+            return added;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Add certificates, making them visible to readers together.
+     * @param snapshots the certificates
+     * @return the number of certificates added, which excludes those already held
+     * @throws IllegalArgumentException if one of the snapshots' strings is longer than 65535 UTF-8 bytes. The
+     * certificates before it are still added.
+     */
+    public int addAll(Collection<Psd2CertSnapshot> snapshots) {
+        writeLock.lock();
+        try {
+            int added = 0;
+            try {
+                for (Psd2CertSnapshot snapshot : snapshots) {
+                    if (addLocked(snapshot)) {
+                        ++added;
+                    }
+                }
+            } finally {
+                publish();
+            }
+            return added;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return a consistent view of the certificates held now
+     */
+    public View view() {
+        return new View(state);
+    }
+
+    public Optional<Psd2CertSnapshot> get(CertificateFingerprint fingerprint) {
+        return view().get(fingerprint);
+    }
+
+    public boolean contains(CertificateFingerprint fingerprint) {
+        return view().contains(fingerprint);
+    }
+
+    public List<Psd2CertSnapshot> findByOrganisationId(String organisationId) {
+        return view().findByOrganisationId(organisationId);
+    }
+
+    public List<Psd2CertSnapshot> findByNcaId(String ncaId) {
+        return view().findByNcaId(ncaId);
+    }
+
+    public int size() {
+        return state.count;
+    }
+
+    /**
+     * @return the number of bytes of direct memory allocated for records, strings and indexes
+     */
+    public long offHeapBytes() {
+        State current = state;
+        long total = 0;
+        for (ByteBuffer segment : current.records) {
+            total += segment.capacity();
+        }
+        for (ByteBuffer segment : current.strings) {
+            total += segment.capacity();
+        }
+        return total + current.fingerprints.slots.capacity() + current.stringTable.slots.capacity()
+                + current.organisations.slots.capacity() + current.ncas.slots.capacity();
+    }
+
+    private boolean addLocked(Psd2CertSnapshot snapshot) {
+        byte[] digest = snapshot.getFingerprint().digest();
+        int hash = snapshot.getFingerprint().hashCode();
+        if (findRecord(fingerprints, records, count, digest, hash) >= 0) {
+            return false;
+        }
+        // Intern every string first so that a string that is too long leaves nothing behind
+        byte[][] values = {
+                utf8(snapshot.getOrganisationId().orElse(null)),
+                utf8(snapshot.getNcaName().orElse(null)),
+                utf8(snapshot.getNcaId().orElse(null)),
+                utf8(snapshot.getCaIssuerCertUrl().orElse(null)),
+                utf8(snapshot.getOcspUrl().orElse(null))};
+        int[] refs = new int[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            refs[i] = intern(values[i]);
+        }
+        int record = count;
+        if ((record >>> RECORD_SEGMENT_SHIFT) == records.length) {
+            records = Arrays.copyOf(records, records.length + 1);
+            records[records.length - 1] = ByteBuffer.allocateDirect(RECORDS_PER_SEGMENT * RECORD_LENGTH);
+        }
+        ByteBuffer segment = records[record >>> RECORD_SEGMENT_SHIFT];
+        int base = (record & (RECORDS_PER_SEGMENT - 1)) * RECORD_LENGTH;
+        for (int i = 0; i < CertificateFingerprint.LENGTH; ++i) {
+            segment.put(base + FINGERPRINT + i, digest[i]);
+        }
+        segment.putLong(base + NOT_BEFORE, snapshot.getNotBeforeMillis());
+        segment.putLong(base + NOT_AFTER, snapshot.getNotAfterMillis());
+        segment.put(base + FLAGS, (byte) (snapshot.isPsd2Cert() ? FLAG_PSD2_CERT : 0));
+        segment.put(base + CERT_TYPE, (byte) snapshot.getEidasCertType().map(EidasCertType::getWireCode).orElse(0)
+                .intValue());
+        segment.put(base + ROLE_MASK, (byte) snapshot.getRoleMask());
+        segment.putInt(base + ORGANISATION_ID, refs[0]);
+        segment.putInt(base + NCA_NAME, refs[1]);
+        segment.putInt(base + NCA_ID, refs[2]);
+        segment.putInt(base + CA_ISSUER_CERT_URL, refs[3]);
+        segment.putInt(base + OCSP_URL, refs[4]);
+
+        if (fingerprints.isFull()) {
+            fingerprints = fingerprints.grow();
+        }
+        fingerprints.insert(hash, record + 1, 0, 0);
+        organisations = link(organisations, refs[0], NEXT_BY_ORGANISATION, record);
+        ncas = link(ncas, refs[2], NEXT_BY_NCA, record);
+        count = record + 1;
+        return true;
+    }
+
+    /**
+     * Append the record to the chain of records sharing the string. Only the previous tail of the chain and the
+     * index are modified, both of them after the record itself has been written.
+     */
+    private Table link(Table index, int ref, int nextOffset, int record) {
+        if (ref == 0) {
+            return index;
+        }
+        int slot = index.find(mix(ref), ref);
+        if (slot >= 0) {
+            int tail = index.get(slot, 3) - 1;
+            recordSegment(records, tail).putInt(recordBase(tail) + nextOffset, record + 1);
+            index.set(slot, 3, record + 1);
+            return index;
+        }
+        Table grown = index.isFull() ? index.grow() : index;
+        grown.insert(mix(ref), ref, record + 1, record + 1);
+        return grown;
+    }
+
+    /**
+     * @return the reference to the stored copy of the string, adding it if it is new. Zero for null.
+     */
+    private int intern(byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+        int hash = hash(value);
+        int ref = findString(stringTable, strings, stringEnd, value, hash);
+        if (ref != 0) {
+            return ref;
+        }
+        int length = 2 + value.length;
+        int offset = stringEnd & (STRING_SEGMENT_LENGTH - 1);
+        if (strings.length == 0 || offset + length > STRING_SEGMENT_LENGTH) {
+            // Strings never span segments, so start a new one
+            strings = Arrays.copyOf(strings, strings.length + 1);
+            strings[strings.length - 1] = ByteBuffer.allocateDirect(STRING_SEGMENT_LENGTH);
+            stringEnd = (strings.length - 1) << STRING_SEGMENT_SHIFT;
+            offset = 0;
+        }
+        ByteBuffer segment = strings[strings.length - 1];
+        segment.putShort(offset, (short) value.length);
+        for (int i = 0; i < value.length; ++i) {
+            segment.put(offset + 2 + i, value[i]);
+        }
+        ref = stringEnd + 1;
+        stringEnd += length;
+        if (stringTable.isFull()) {
+            stringTable = stringTable.grow();
+        }
+        stringTable.insert(hash, ref, 0, 0);
+        return ref;
+    }
+
+    private void publish() {
+        state = new State(count, records, strings, stringEnd, fingerprints, stringTable, organisations, ncas);
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long to store");
+        }
+        return bytes;
+    }
+
+    private static int findRecord(Table index, ByteBuffer[] records, int count, byte[] digest, int hash) {
+        for (int slot = index.start(hash); ; slot = index.next(slot)) {
+            int value = index.get(slot, 1);
+            if (value == 0) {
+                return -1;
+            }
+            int record = value - 1;
+            if (index.get(slot, 0) == hash && record < count && digestEquals(records, record, digest)) {
+                return record;
+            }
+        }
+    }
+
+    private static boolean digestEquals(ByteBuffer[] records, int record, byte[] digest) {
+        ByteBuffer segment = recordSegment(records, record);
+        int base = recordBase(record) + FINGERPRINT;
+        for (int i = 0; i < digest.length; ++i) {
+            if (segment.get(base + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int findString(Table index, ByteBuffer[] strings, int stringEnd, byte[] value, int hash) {
+        for (int slot = index.start(hash); ; slot = index.next(slot)) {
+            int ref = index.get(slot, 1);
+            if (ref == 0) {
+                return 0;
+            }
+            if (index.get(slot, 0) == hash && ref - 1 < stringEnd && stringEquals(strings, ref, value)) {
+                return ref;
+            }
+        }
+    }
+
+    private static boolean stringEquals(ByteBuffer[] strings, int ref, byte[] value) {
+        int location = ref - 1;
+        ByteBuffer segment = strings[location >>> STRING_SEGMENT_SHIFT];
+        int offset = location & (STRING_SEGMENT_LENGTH - 1);
+        if ((segment.getShort(offset) & 0xffff) != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; ++i) {
+            if (segment.get(offset + 2 + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer[] strings, int ref) {
+        if (ref == 0) {
+            return null;
+        }
+        int location = ref - 1;
+        ByteBuffer segment = strings[location >>> STRING_SEGMENT_SHIFT];
+        int offset = location & (STRING_SEGMENT_LENGTH - 1);
+        byte[] value = new byte[segment.getShort(offset) & 0xffff];
+        for (int i = 0; i < value.length; ++i) {
+            value[i] = segment.get(offset + 2 + i);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer recordSegment(ByteBuffer[] records, int record) {
+        return records[record >>> RECORD_SEGMENT_SHIFT];
+    }
+
+    private static int recordBase(int record) {
+        return (record & (RECORDS_PER_SEGMENT - 1)) * RECORD_LENGTH;
+    }
+
+    /**
+     * FNV-1a
+     */
+    private static int hash(byte[] value) {
+        int hash = 0x811c9dc5;
+        for (byte b : value) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * What a reader may see: the first {@code count} records, and the strings before {@code stringEnd}. The writer
+     * only ever writes beyond those, so anything a reader finds beyond them is ignored.
+     */
+    private static final class State {
+        private final int count;
+        private final ByteBuffer[] records;
+        private final ByteBuffer[] strings;
+        private final int stringEnd;
+        private final Table fingerprints;
+        private final Table stringTable;
+        private final Table organisations;
+        private final Table ncas;
+
+        private State(int count, ByteBuffer[] records, ByteBuffer[] strings, int stringEnd, Table fingerprints,
+                      Table stringTable, Table organisations, Table ncas) {
+            this.count = count;
+            this.records = records;
+            this.strings = strings;
+            this.stringEnd = stringEnd;
+            this.fingerprints = fingerprints;
+            this.stringTable = stringTable;
+            this.organisations = organisations;
+            this.ncas = ncas;
+        }
+    }
+
+    /**
+     * An open addressing hash table with linear probing, held in a direct buffer. Each slot is a few ints: the hash
+     * of the key first, then a value that is zero while the slot is empty, then anything else the index needs. The
+     * table is kept at most half full, so probes are short and always reach an empty slot.
+     */
+    private static final class Table {
+        private final ByteBuffer slots;
+        private final int slotInts;
+        private final int mask;
+        private int size;
+
+        private Table(int capacity, int slotInts) {
+            this.slots = ByteBuffer.allocateDirect(capacity * slotInts * 4);
+            this.slotInts = slotInts;
+            this.mask = capacity - 1;
+        }
+
+        private int start(int hash) {
+            return mix(hash) & mask;
+        }
+
+        private int next(int slot) {
+            return (slot + 1) & mask;
+        }
+
+        private int get(int slot, int column) {
+            return slots.getInt((slot * slotInts + column) << 2);
+        }
+
+        private void set(int slot, int column, int value) {
+            slots.putInt((slot * slotInts + column) << 2, value);
+        }
+
+        /**
+         * @return the slot holding the value, or -1
+         */
+        private int find(int hash, int value) {
+            for (int slot = start(hash); ; slot = next(slot)) {
+                int current = get(slot, 1);
+                if (current == 0) {
+                    return -1;
+                }
+                if (current == value && get(slot, 0) == hash) {
+                    return slot;
+                }
+            }
+        }
+
+        private boolean isFull() {
+            return (size + 1) * 2 > mask + 1;
+        }
+
+        /**
+         * Fill a new slot. The value, which marks the slot as used, is written last.
+         */
+        private void insert(int hash, int value, int third, int fourth) {
+            int slot = start(hash);
+            while (get(slot, 1) != 0) {
+                slot = next(slot);
+            }
+            set(slot, 0, hash);
+            if (slotInts > 2) {
+                set(slot, 2, third);
+                set(slot, 3, fourth);
+            }
+            set(slot, 1, value);
+            ++size;
+        }
+
+        /**
+         * @return a copy with twice the capacity. This table is left untouched for readers still using it.
+         */
+        private Table grow() {
+            Table grown = new Table((mask + 1) * 2, slotInts);
+            for (int slot = 0; slot <= mask; ++slot) {
+                if (get(slot, 1) != 0) {
+                    grown.insert(get(slot, 0), get(slot, 1), slotInts > 2 ? get(slot, 2) : 0,
+                            slotInts > 2 ? get(slot, 3) : 0);
+                }
+            }
+            return grown;
+        }
+    }
+
+    /**
+     * The certificates held when the view was created. Views are cheap to create and may be used from any thread.
+     */
+    public static final class View {
+        private final State state;
+
+        private View(State state) {
+            this.state = state;
+        }
+
+        public int size() {
+            return state.count;
+        }
+
+        public boolean contains(CertificateFingerprint fingerprint) {
+            return find(fingerprint) >= 0;
+        }
+
+        public Optional<Psd2CertSnapshot> get(CertificateFingerprint fingerprint) {
+            int record = find(fingerprint);
+            return record < 0 ? Optional.empty() : Optional.of(read(record));
+        }
+
+        /**
+         * @param organisationId an organisation identifier, e.g. PSDGB-FCA-123456
+         * @return the certificates of the organisation, in the order they were added
+         */
+        public List<Psd2CertSnapshot> findByOrganisationId(String organisationId) {
+            return chain(state.organisations, organisationId, NEXT_BY_ORGANISATION);
+        }
+
+        /**
+         * @param ncaId an NCA identifier as it appears in the PSD2 QCStatement, e.g. GB-FCA
+         * @return the certificates naming the NCA, in the order they were added
+         */
+        public List<Psd2CertSnapshot> findByNcaId(String ncaId) {
+            return chain(state.ncas, ncaId, NEXT_BY_NCA);
+        }
+
+        /**
+         * @param action called with each certificate, in the order they were added
+         */
+        public void forEach(Consumer<Psd2CertSnapshot> action) {
+            for (int record = 0; record < state.count; ++record) {
+                action.accept(read(record));
+            }
+        }
+
+        private int find(CertificateFingerprint fingerprint) {
+            return findRecord(state.fingerprints, state.records, state.count, fingerprint.digest(),
+                    fingerprint.hashCode());
+        }
+
+        private List<Psd2CertSnapshot> chain(Table index, String key, int nextOffset) {
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            byte[] value = key.getBytes(StandardCharsets.UTF_8);
+            int ref = findString(state.stringTable, state.strings, state.stringEnd, value, hash(value));
+            if (ref == 0) {
+                return Collections.emptyList();
+            }
+            int slot = index.find(mix(ref), ref);
+            if (slot < 0) {
+                return Collections.emptyList();
+            }
+            List<Psd2CertSnapshot> found = new ArrayList<>();
+            int record = index.get(slot, 2) - 1;
+            while (record >= 0 && record < state.count) {
+                found.add(read(record));
+                record = recordSegment(state.records, record).getInt(recordBase(record) + nextOffset) - 1;
+            }
+            return found;
+        }
+
+        private Psd2CertSnapshot read(int record) {
+            ByteBuffer segment = recordSegment(state.records, record);
+            int base = recordBase(record);
+            byte[] digest = new byte[CertificateFingerprint.LENGTH];
+            for (int i = 0; i < digest.length; ++i) {
+                digest[i] = segment.get(base + FINGERPRINT + i);
+            }
+            int certType = segment.get(base + CERT_TYPE) & 0xff;
+            ByteBuffer[] strings = state.strings;
+            return new Psd2CertSnapshot(CertificateFingerprint.wrap(digest),
+                    (segment.get(base + FLAGS) & FLAG_PSD2_CERT) != 0,
+                    EidasCertType.fromWireCode(certType),
+                    segment.get(base + ROLE_MASK) & 0xff,
+                    string(strings, segment.getInt(base + ORGANISATION_ID)),
+                    string(strings, segment.getInt(base + NCA_NAME)),
+                    string(strings, segment.getInt(base + NCA_ID)),
+                    string(strings, segment.getInt(base + CA_ISSUER_CERT_URL)),
+                    string(strings, segment.getInt(base + OCSP_URL)),
+                    segment.getLong(base + NOT_BEFORE),
+                    segment.getLong(base + NOT_AFTER));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.psd2.Psd2Role;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a client certificate grants the PSD2 roles an endpoint needs, e.g. PSP_AI for account information
+ * or PSP_PI for payment initiation.
+ *
+ * Decisions are cached against the fingerprint of the client certificate and the mask of the roles asked for, so a
+ * client calling the same endpoint again is answered without parsing its certificate or walking its roles.
+ * Certificates that can't be parsed, or that aren't PSD2 certificates, deny every role set; they are remembered in a
+ * separate cache with a short time to live, so a client retrying with a bad certificate isn't parsed on every request
+ * but a certificate that was only misread isn't denied for long.
+ */
+public class Psd2RoleAuthorizer {
+
+    /**
+     * The name the decision cache reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "psd2-role-decisions";
+
+    /**
+     * The name the cache of certificates that aren't PSD2 certificates reports to
+     * {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String NEGATIVE_METRICS_NAME = "psd2-role-rejections";
+
+    private final BoundedCache<DecisionKey, Boolean> decisions;
+    private final BoundedCache<CertificateFingerprint, Boolean> rejections;
+
+    private Psd2RoleAuthorizer(Builder builder) {
+        this.decisions = BoundedCache.<DecisionKey, Boolean>builder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.timeToLive)
+                .ticker(builder.ticker)
+                .metricsName(METRICS_NAME)
+                .build();
+        this.rejections = BoundedCache.<CertificateFingerprint, Boolean>builder()
+                .maximumSize(builder.negativeMaximumSize)
+                .expireAfterWrite(builder.negativeTimeToLive)
+                .ticker(builder.ticker)
+                .metricsName(NEGATIVE_METRICS_NAME)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Decide whether a client may use an endpoint.
+     * @param chain the client's chain, ordered with the client certificate first. Only the client certificate is
+     *              read; the chain should already have been validated.
+     * @param requiredRoles the roles the client certificate must all grant
+     * @return true if the client certificate is a PSD2 certificate that grants every required role
+     */
+    public boolean isAllowed(X509Certificate[] chain, Set<Psd2Role> requiredRoles) {
+        if (chain == null || chain.length == 0 || chain[0] == null) {
+            return false;
+        }
+        CertificateFingerprint fingerprint;
+        try {
+            fingerprint = CertificateFingerprint.of(chain[0]);
+        } catch (CertificateEncodingException e) {
+            return false;
+        }
+        if (rejections.getIfPresent(fingerprint) != null) {
+            return false;
+        }
+        int requiredMask = Psd2Role.maskOf(requiredRoles);
+        DecisionKey key = new DecisionKey(fingerprint, requiredMask);
+        Boolean allowed = decisions.getIfPresent(key);
+        if (allowed == null) {
+            int grantedMask = grantedRoleMask(chain);
+            if (grantedMask < 0) {
+                rejections.put(fingerprint, Boolean.FALSE);
+                return false;
+            }
+            allowed = (grantedMask & requiredMask) == requiredMask;
+            decisions.put(key, allowed);
+        }
+        return allowed;
+    }
+
+    /**
+     * @return the statistics of the decision cache
+     */
+    public CacheStats cacheStats() {
+        return decisions.stats();
+    }
+
+    /**
+     * @return the statistics of the cache of certificates that aren't PSD2 certificates
+     */
+    public CacheStats negativeCacheStats() {
+        return rejections.stats();
+    }
+
+    /**
+     * @return the mask of the roles the client certificate grants, or -1 if it isn't a PSD2 certificate
+     */
+    private static int grantedRoleMask(X509Certificate[] chain) {
+        try {
+            Psd2CertInfo certInfo = new Psd2CertInfo(chain);
+            if (!certInfo.isPsd2Cert()) {
+                return -1;
+            }
+            Optional<Psd2QcStatement> psd2QcStatement = certInfo.getPsd2QCStatement();
+            return psd2QcStatement.isPresent() ? psd2QcStatement.get().getRoles().getRoleMask() : -1;
+        } catch (InvalidPsd2EidasCertificate e) {
+            return -1;
+        }
+    }
+
+    private static final class DecisionKey {
+        private final CertificateFingerprint fingerprint;
+        private final int roleMask;
+
+        private DecisionKey(CertificateFingerprint fingerprint, int roleMask) {
+            this.fingerprint = fingerprint;
+            this.roleMask = roleMask;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DecisionKey)) return false;
+            DecisionKey that = (DecisionKey) o;
+            return roleMask == that.roleMask && fingerprint.equals(that.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fingerprint.hashCode() + roleMask;
+        }
+    }
+
+    public static class Builder {
+        private int maximumSize = 10_000;
+        private Duration timeToLive = Duration.ofHours(1);
+        private int negativeMaximumSize = 1_000;
+        private Duration negativeTimeToLive = Duration.ofSeconds(30);
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize the maximum number of (certificate, role set) decisions cached
+         * @return this builder
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param timeToLive how long a decision is cached for, an hour by default
+         * @return this builder
+         */
+        public Builder timeToLive(Duration timeToLive) {
+            if (timeToLive == null || timeToLive.isNegative()) {
+                throw new IllegalArgumentException("timeToLive may not be null or negative, was " + timeToLive);
+            }
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * @param maximumSize the maximum number of certificates that aren't PSD2 certificates remembered
+         * @return this builder
+         */
+        public Builder negativeMaximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("negativeMaximumSize must be positive, was " + maximumSize);
+            }
+            this.negativeMaximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param timeToLive how long a certificate that isn't a PSD2 certificate is remembered, 30 seconds by default
+         * @return this builder
+         */
+        public Builder negativeTimeToLive(Duration timeToLive) {
+            if (timeToLive == null || timeToLive.isNegative()) {
+                throw new IllegalArgumentException("negativeTimeToLive may not be null or negative, was "
+                        + timeToLive);
+            }
+            this.negativeTimeToLive = timeToLive;
+            return this;
+        }
+
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public Psd2RoleAuthorizer build() {
+            return new Psd2RoleAuthorizer(this);
+        }
+    }
+}
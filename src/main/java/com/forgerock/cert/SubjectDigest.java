@@ -0,0 +1,223 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.utils.ByteEncoder;
+import com.forgerock.cert.utils.RawCertificate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+
+/**
+ * A collision resistant digest of the subject of a certificate, for use as a cache or rate limiting key.
+ *
+ * Unlike {@link SubjectHash}, which is a 32 bit hash code of the decoded subject, this is the SHA-256 digest of the
+ * DER encoding of the subject, taken directly from the encoded certificate without decoding the subject. Certificates
+ * with the same subject have the same digest, whoever issued them.
+ *
+ * A digester may memoize digests against certificate instances, which saves re-encoding and re-hashing when the same
+ * {@link X509Certificate} object is presented repeatedly, as it is for a pooled TLS session. The memo compares
+ * certificates by identity so a lookup never encodes the certificate.
+ *
+ * Digesters are immutable, apart from their memo, and safe to share between threads.
+ */
+public final class SubjectDigest {
+
+    /**
+     * The name the memo reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "subject-digest";
+
+    /**
+     * How much of the SHA-256 digest to keep.
+     */
+    public enum Length {
+        /**
+         * The whole 256 bit digest.
+         */
+        SHA_256(32),
+        /**
+         * The first 128 bits of the digest, which is still ample to avoid collisions between subjects and makes for
+         * shorter keys.
+         */
+        BITS_128(16);
+
+        private final int bytes;
+
+        Length(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * How the digest is presented as text.
+     */
+    public enum Encoding {
+        /**
+         * Lower case hex.
+         */
+        HEX,
+        /**
+         * The URL and filename safe base64 alphabet, without padding.
+         */
+        BASE64_URL
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Length length;
+    private final Encoding encoding;
+    private final BoundedCache<Identity, String> memo;
+
+    private SubjectDigest(Builder builder) {
+        this.length = builder.length;
+        this.encoding = builder.encoding;
+        this.memo = builder.memoSize > 0
+                ? BoundedCache.<Identity, String>builder().maximumSize(builder.memoSize)
+                        .metricsName(METRICS_NAME).build()
+                : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Digest the subject of the primary certificate of a chain
+     * @param certChain chain of certificates ordered with the primary certificate first
+     * @return the encoded digest, or empty if there are no certificates
+     * @throws CertificateEncodingException if there is a problem extracting the subject
+     */
+    public Optional<String> digest(X509Certificate[] certChain) throws CertificateEncodingException {
+        X509Certificate firstCert = certChain != null && certChain.length > 0 ? certChain[0] : null;
+        return firstCert == null ? Optional.empty() : Optional.of(digest(firstCert));
+    }
+
+    /**
+     * Digest the subject of a certificate
+     * @param cert the certificate
+     * @return the encoded digest
+     * @throws CertificateEncodingException if there is a problem extracting the subject
+     */
+    public String digest(X509Certificate cert) throws CertificateEncodingException {
+        if (memo == null) {
+            return compute(cert);
+        }
+        Identity key = new Identity(cert);
+        String digest = memo.getIfPresent(key);
+        if (digest == null) {
+            digest = compute(cert);
+            memo.put(key, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * @return the statistics of the memo, or empty if this digester does not memoize
+     */
+    public Optional<CacheStats> memoStats() {
+        return memo == null ? Optional.empty() : Optional.of(memo.stats());
+    }
+
+    private String compute(X509Certificate cert) throws CertificateEncodingException {
+        MessageDigest sha256 = SHA_256.get();
+        sha256.reset();
+        RawCertificate.scan(cert).digestSubject(sha256);
+        byte[] digest = sha256.digest();
+        return encoding == Encoding.HEX
+                ? ByteEncoder.toHex(digest, 0, length.bytes)
+                : ByteEncoder.toBase64Url(digest, 0, length.bytes);
+    }
+
+    /**
+     * Compares certificates by reference, so that neither hashing nor comparing a key encodes the certificate.
+     */
+    private static final class Identity {
+        private final X509Certificate cert;
+
+        private Identity(X509Certificate cert) {
+            this.cert = cert;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity && ((Identity) o).cert == cert;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(cert);
+        }
+    }
+
+    public static final class Builder {
+        private Length length = Length.SHA_256;
+        private Encoding encoding = Encoding.HEX;
+        private int memoSize;
+
+        private Builder() {
+        }
+
+        public Builder length(Length length) {
+            if (length == null) {
+                throw new IllegalArgumentException("length must not be null");
+            }
+            this.length = length;
+            return this;
+        }
+
+        public Builder encoding(Encoding encoding) {
+            if (encoding == null) {
+                throw new IllegalArgumentException("encoding must not be null");
+            }
+            this.encoding = encoding;
+            return this;
+        }
+
+        /**
+         * @param memoSize the number of certificate instances to remember digests for, or zero to not memoize
+         * @return this builder
+         */
+        public Builder memoize(int memoSize) {
+            if (memoSize < 0) {
+                throw new IllegalArgumentException("memoSize must not be negative");
+            }
+            this.memoSize = memoSize;
+            return this;
+        }
+
+        public SubjectDigest build() {
+            return new SubjectDigest(this);
+        }
+    }
+}
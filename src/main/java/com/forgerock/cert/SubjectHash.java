@@ -20,12 +20,16 @@
  */
 package com.forgerock.cert;
 
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import com.forgerock.cert.utils.RawCertificate;
 
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Optional;
 
+/**
+ * A 32 bit hash code of the subject of a certificate. Hash codes of different subjects can collide, so use
+ * {@link SubjectDigest} where the hash identifies a subject, for example as a cache or rate limiting key.
+ */
 public class SubjectHash {
     /**
      * Produce a hash of the subject of the primary certificate
@@ -36,7 +40,7 @@ public class SubjectHash {
     public static Optional<String> hash(X509Certificate[] certChain) throws CertificateEncodingException {
         X509Certificate firstCert = certChain != null && certChain.length > 0 ? certChain[0] : null;
         if (firstCert != null) {
-            int certHashCode = new JcaX509CertificateHolder(firstCert).getSubject().hashCode();
+            int certHashCode = RawCertificate.scan(firstCert).getSubject().hashCode();
             return Optional.of(String.valueOf(certHashCode));
         }
         else return Optional.empty();
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.cache;
+
+import com.forgerock.cert.metrics.CacheOutcome;
+import com.forgerock.cert.metrics.CertMetrics;
+import com.forgerock.cert.metrics.Metrics;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, thread safe cache with least recently used eviction and an optional time to live.
+ *
+ * The cache is split into lock striped segments, each of which is an access ordered {@link LinkedHashMap}, so that
+ * concurrent callers working on different keys rarely contend with each other. The maximum size is shared equally
+ * between the segments, which means eviction is LRU per segment rather than strictly LRU across the whole cache.
+ *
+ * @param <K> the type of the keys. Keys must have well behaved {@code equals} and {@code hashCode} methods.
+ * @param <V> the type of the cached values. Values are shared between callers so should be immutable.
+ */
+public class BoundedCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final long timeToLiveNanos;
+    private final LongSupplier ticker;
+    private final String metricsName;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BoundedCache(Builder<K, V> builder) {
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 <= builder.maximumSize) {
+            segmentCount <<= 1;
+        }
+        int segmentCapacity = (builder.maximumSize + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            this.segments[i] = new Segment<>(segmentCapacity);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.timeToLiveNanos = builder.timeToLive == null ? 0 : builder.timeToLive.toNanos();
+        this.ticker = builder.ticker;
+        this.metricsName = builder.metricsName;
+    }
+
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Get the value cached against the key.
+     * @param key the key to look up
+     * @return the cached value, or null if there is no entry for the key or the entry has expired.
+     */
+    public V getIfPresent(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = ticker.getAsLong();
+        V value = null;
+        boolean expired = false;
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null) {
+                if (isExpired(entry, now)) {
+                    segment.map.remove(key);
+                    evictions.increment();
+                    expired = true;
+                } else {
+                    value = entry.value;
+                }
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        if (metricsName != null) {
+            CertMetrics metrics = Metrics.current();
+            if (metrics != CertMetrics.NO_OP) {
+                if (expired) {
+                    metrics.cacheAccess(metricsName, CacheOutcome.EVICTION);
+                }
+                metrics.cacheAccess(metricsName, value == null ? CacheOutcome.MISS : CacheOutcome.HIT);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Add a value to the cache, replacing any existing value for the key. If the cache is full the least recently
+     * used entry of the key's segment is evicted.
+     * @param key the key
+     * @param value the value, must not be null
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Cached values may not be null");
+        }
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry = new Entry<>(value, ticker.getAsLong());
+        boolean evicted = false;
+        segment.lock.lock();
+        try {
+            segment.map.put(key, entry);
+            if (segment.map.size() > segment.capacity) {
+                Iterator<Map.Entry<K, Entry<V>>> eldest = segment.map.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+                evicted = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (evicted && metricsName != null) {
+            Metrics.current().cacheAccess(metricsName, CacheOutcome.EVICTION);
+        }
+    }
+
+    /**
+     * Remove the entry for the key, if there is one.
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache. Statistics are not reset.
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries currently held, which may include entries that have expired but have not yet
+     * been looked up.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a point in time snapshot of the hit, miss and eviction counts of this cache.
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return timeToLiveNanos > 0 && now - entry.writtenAt >= timeToLiveNanos;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        // Spread the higher bits down so that keys with poor low order bits still use all the segments.
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    private static final class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> map;
+        private final int capacity;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long writtenAt;
+
+        private Entry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public static class Builder<K, V> {
+        private int maximumSize = 1024;
+        private Duration timeToLive;
+        private LongSupplier ticker = System::nanoTime;
+        private String metricsName;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize the maximum number of entries the cache may hold.
+         * @return this builder
+         */
+        public Builder<K, V> maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param timeToLive how long an entry may be served after it was written. Null or zero means entries only
+         *                   leave the cache when they are evicted.
+         * @return this builder
+         */
+        public Builder<K, V> expireAfterWrite(Duration timeToLive) {
+            if (timeToLive != null && timeToLive.isNegative()) {
+                throw new IllegalArgumentException("timeToLive may not be negative, was " + timeToLive);
+            }
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * @param ticker the source of nanosecond time used to expire entries. Defaults to {@link System#nanoTime()};
+         *               intended to be replaced in tests.
+         * @return this builder
+         */
+        public Builder<K, V> ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @param metricsName the name hits, misses and evictions are reported under to the registered
+         *                    {@link CertMetrics}. Null, the default, means they aren't reported.
+         * @return this builder
+         */
+        public Builder<K, V> metricsName(String metricsName) {
+            this.metricsName = metricsName;
+            return this;
+        }
+
+        public BoundedCache<K, V> build() {
+            return new BoundedCache<>(this);
+        }
+    }
+}
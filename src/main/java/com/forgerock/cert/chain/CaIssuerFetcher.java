@@ -0,0 +1,506 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.utils.BlockingIoExecutors;
+import com.forgerock.cert.utils.ByteEncoder;
+import com.forgerock.cert.utils.CertificateStreamDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fetches the certificates published at caIssuers URLs over HTTP, as DER certificates or PKCS#7 bundles.
+ *
+ * Results are served from memory first and then, if a cache directory is configured, from disk, so that they
+ * survive restarts. Concurrent requests for a URL that is not cached share a single download (single flight), so a
+ * burst of connections from clients of a new issuer triggers one fetch rather than one each. Results are cached for
+ * as long as the response's Cache-Control max-age or Expires header allows, falling back to a default time to live
+ * when neither is present, and never for longer than a maximum. Failed fetches are remembered briefly, so that
+ * connections naming an unreachable URL don't each wait out the timeouts.
+ *
+ * Downloads block an executor thread while they run, so they run on a small dedicated pool unless another executor
+ * is configured.
+ */
+public class CaIssuerFetcher implements IssuerFetcher {
+
+    /**
+     * The name the in memory cache reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "ca-issuers";
+
+    private static final int DISK_FORMAT_VERSION = 1;
+    private static final String DISK_SUFFIX = ".issuers";
+
+    private final BoundedCache<String, Cached> memory;
+    private final ConcurrentHashMap<String, CompletableFuture<List<X509Certificate>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final Path cacheDirectory;
+    private final Executor executor;
+    private final Clock clock;
+    private final Duration defaultTimeToLive;
+    private final Duration maximumTimeToLive;
+    private final long failureTimeToLiveMillis;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int maximumResponseSize;
+    private final LongAdder downloads = new LongAdder();
+
+    private CaIssuerFetcher(Builder builder) {
+        this.memory = BoundedCache.<String, Cached>builder().maximumSize(builder.maximumSize)
+                .metricsName(METRICS_NAME).build();
+        this.cacheDirectory = builder.cacheDirectory;
+        this.executor = builder.executor;
+        this.clock = builder.clock;
+        this.defaultTimeToLive = builder.defaultTimeToLive;
+        this.maximumTimeToLive = builder.maximumTimeToLive;
+        this.failureTimeToLiveMillis = builder.failureTimeToLive.toMillis();
+        this.connectTimeoutMillis = (int) builder.connectTimeout.toMillis();
+        this.readTimeoutMillis = (int) builder.readTimeout.toMillis();
+        this.maximumResponseSize = builder.maximumResponseSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param url an http or https caIssuers URL
+     * @return a future of the certificates published at the URL, which completes exceptionally with an
+     * {@link IOException} if they can't be downloaded or a {@link CertificateException} if they can't be decoded
+     */
+    @Override
+    public CompletableFuture<List<X509Certificate>> fetch(String url) {
+        CompletableFuture<List<X509Certificate>> cached = fromMemory(url);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<List<X509Certificate>> created = new CompletableFuture<>();
+        CompletableFuture<List<X509Certificate>> existing = inFlight.putIfAbsent(url, created);
+        if (existing != null) {
+            return existing;
+        }
+        // A load may have finished between the first look and joining the in flight map
+        cached = fromMemory(url);
+        if (cached != null) {
+            inFlight.remove(url, created);
+            return cached;
+        }
+        try {
+            executor.execute(() -> load(url, created));
+        } catch (RuntimeException e) {
+            inFlight.remove(url, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * @return the number of HTTP downloads made, as opposed to requests answered from the caches or joined to a
+     * download already in flight
+     */
+    public long getDownloadCount() {
+        return downloads.sum();
+    }
+
+    /**
+     * @return statistics of the in memory cache
+     */
+    public CacheStats memoryStats() {
+        return memory.stats();
+    }
+
+    /**
+     * @return the cached result for the URL, or null if there is none that is current
+     */
+    private CompletableFuture<List<X509Certificate>> fromMemory(String url) {
+        Cached cached = memory.getIfPresent(url);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(clock.millis())) {
+            memory.invalidate(url);
+            return null;
+        }
+        if (cached.failure != null) {
+            CompletableFuture<List<X509Certificate>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cached.failure);
+            return failed;
+        }
+        return CompletableFuture.completedFuture(cached.certificates);
+    }
+
+    private void load(String url, CompletableFuture<List<X509Certificate>> result) {
+        try {
+            Cached cached = readFromDisk(url);
+            if (cached == null) {
+                cached = download(url);
+                writeToDisk(url, cached);
+            }
+            if (!cached.isExpired(clock.millis())) {
+                memory.put(url, cached);
+            }
+            // Leave the in flight entry in place until the memory cache is populated; fetch looks in the cache again
+            // after joining the in flight map, so no caller can miss both
+            inFlight.remove(url, result);
+            result.complete(cached.certificates);
+        } catch (IOException | CertificateException | RuntimeException e) {
+            if (failureTimeToLiveMillis > 0) {
+                memory.put(url, Cached.failed(e, clock.millis() + failureTimeToLiveMillis));
+            }
+            inFlight.remove(url, result);
+            result.completeExceptionally(e);
+        }
+    }
+
+    private Cached download(String url) throws IOException, CertificateException {
+        URL location = new URL(url);
+        String protocol = location.getProtocol().toLowerCase(Locale.ROOT);
+        if (!protocol.equals("http") && !protocol.equals("https")) {
+            throw new IOException("Unsupported caIssuers URL scheme " + protocol);
+        }
+        downloads.increment();
+        HttpURLConnection connection = (HttpURLConnection) location.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setInstanceFollowRedirects(true);
+            connection.setRequestProperty("Accept", "application/pkix-cert, application/pkcs7-mime");
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Fetching " + url + " returned HTTP " + status);
+            }
+            byte[] body;
+            try (InputStream in = connection.getInputStream()) {
+                body = readBody(in);
+            }
+            long now = clock.millis();
+            long expiresAt = now + timeToLive(connection, now);
+            return new Cached(decode(body), body, expiresAt);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(2048);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > maximumResponseSize) {
+                throw new IOException("caIssuers response is larger than " + maximumResponseSize + " bytes");
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * @return how long the response may be cached for in milliseconds, which is zero if it must not be cached
+     */
+    private long timeToLive(HttpURLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String d = directive.trim().toLowerCase(Locale.ROOT);
+                if (d.equals("no-store") || d.equals("no-cache")) {
+                    return 0;
+                }
+                if (d.startsWith("max-age=")) {
+                    try {
+                        return clamp(Long.parseLong(d.substring("max-age=".length()).trim()) * 1000);
+                    } catch (NumberFormatException e) {
+                        // Fall through to the Expires header
+                    }
+                }
+            }
+        }
+        String expires = connection.getHeaderField("Expires");
+        if (expires != null) {
+            try {
+                long expiresAt = ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                long date = connection.getHeaderFieldDate("Date", now);
+                return clamp(expiresAt - date);
+            } catch (DateTimeParseException e) {
+                // An invalid Expires header means already expired
+                return 0;
+            }
+        }
+        return clamp(defaultTimeToLive.toMillis());
+    }
+
+    private long clamp(long timeToLive) {
+        return Math.max(0, Math.min(timeToLive, maximumTimeToLive.toMillis()));
+    }
+
+    private static List<X509Certificate> decode(byte[] body) throws IOException, CertificateException {
+        X509Certificate[] certs = CertificateStreamDecoder.of(new ByteArrayInputStream(body)).readChain();
+        if (certs.length == 0) {
+            throw new CertificateException("caIssuers response holds no certificates");
+        }
+        return Collections.unmodifiableList(Arrays.asList(certs));
+    }
+
+    private Cached readFromDisk(String url) throws IOException {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        Path file = cacheDirectory.resolve(fileName(url));
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            if (in.readInt() != DISK_FORMAT_VERSION || !in.readUTF().equals(url)) {
+                return null;
+            }
+            long expiresAt = in.readLong();
+            if (clock.millis() >= expiresAt) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Cached(decode(body), body, expiresAt);
+        } catch (IOException | CertificateException | RuntimeException e) {
+            // A corrupt or truncated entry is discarded and fetched again
+            Files.deleteIfExists(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String url, Cached cached) throws IOException {
+        if (cacheDirectory == null || cached.isExpired(clock.millis())) {
+            return;
+        }
+        Files.createDirectories(cacheDirectory);
+        Path file = cacheDirectory.resolve(fileName(url));
+        Path temp = Files.createTempFile(cacheDirectory, "fetch", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(out)) {
+                data.writeInt(DISK_FORMAT_VERSION);
+                data.writeUTF(url);
+                data.writeLong(cached.expiresAt);
+                data.writeInt(cached.encoded.length);
+                data.write(cached.encoded);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return ByteEncoder.toHex(digest) + DISK_SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Cached {
+        private final List<X509Certificate> certificates;
+        private final byte[] encoded;
+        private final long expiresAt;
+        private final Exception failure;
+
+        private Cached(List<X509Certificate> certificates, byte[] encoded, long expiresAt) {
+            this(certificates, encoded, expiresAt, null);
+        }
+
+        private Cached(List<X509Certificate> certificates, byte[] encoded, long expiresAt, Exception failure) {
+            this.certificates = certificates;
+            this.encoded = encoded;
+            this.expiresAt = expiresAt;
+            this.failure = failure;
+        }
+
+        private static Cached failed(Exception failure, long expiresAt) {
+            return new Cached(Collections.<X509Certificate>emptyList(), new byte[0], expiresAt, failure);
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    public static class Builder {
+        private int maximumSize = 256;
+        private Path cacheDirectory;
+        private Executor executor;
+        private Clock clock = Clock.systemUTC();
+        private Duration defaultTimeToLive = Duration.ofHours(1);
+        private Duration maximumTimeToLive = Duration.ofDays(1);
+        private Duration failureTimeToLive = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private int maximumResponseSize = 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize the maximum number of URLs whose certificates are held in memory
+         * @return this builder
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param cacheDirectory where fetched certificates are persisted, created if it doesn't exist. Null, the
+         *                       default, means only cache in memory.
+         * @return this builder
+         */
+        public Builder cacheDirectory(Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        /**
+         * @param executor runs downloads and disk reads. Defaults to a pool of 4 threads for this fetcher.
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param clock the source of wall clock time used to expire entries; intended to be replaced in tests.
+         * @return this builder
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param defaultTimeToLive how long to cache responses that have neither a max-age nor an Expires header
+         * @return this builder
+         */
+        public Builder defaultTimeToLive(Duration defaultTimeToLive) {
+            this.defaultTimeToLive = requireNonNegative(defaultTimeToLive, "defaultTimeToLive");
+            return this;
+        }
+
+        /**
+         * @param maximumTimeToLive the longest any response is cached for, whatever its headers say
+         * @return this builder
+         */
+        public Builder maximumTimeToLive(Duration maximumTimeToLive) {
+            this.maximumTimeToLive = requireNonNegative(maximumTimeToLive, "maximumTimeToLive");
+            return this;
+        }
+
+        /**
+         * @param failureTimeToLive how long a failed fetch is remembered before the URL is tried again. Zero means
+         *                          failures aren't remembered.
+         * @return this builder
+         */
+        public Builder failureTimeToLive(Duration failureTimeToLive) {
+            this.failureTimeToLive = requireNonNegative(failureTimeToLive, "failureTimeToLive");
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = requireNonNegative(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = requireNonNegative(readTimeout, "readTimeout");
+            return this;
+        }
+
+        /**
+         * @param maximumResponseSize responses larger than this many bytes are rejected
+         * @return this builder
+         */
+        public Builder maximumResponseSize(int maximumResponseSize) {
+            if (maximumResponseSize <= 0) {
+                throw new IllegalArgumentException("maximumResponseSize must be positive, was "
+                        + maximumResponseSize);
+            }
+            this.maximumResponseSize = maximumResponseSize;
+            return this;
+        }
+
+        public CaIssuerFetcher build() {
+            if (executor == null) {
+                executor = BlockingIoExecutors.bounded("ca-issuer-fetcher", 4, 256);
+            }
+            return new CaIssuerFetcher(this);
+        }
+
+        private static Duration requireNonNegative(Duration duration, String name) {
+            if (duration == null || duration.isNegative()) {
+                throw new IllegalArgumentException(name + " may not be null or negative, was " + duration);
+            }
+            return duration;
+        }
+    }
+}
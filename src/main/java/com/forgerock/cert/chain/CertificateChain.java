@@ -0,0 +1,67 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A certificate chain assembled by {@link CertificateChainBuilder}, ordered from the end entity certificate towards
+ * the root.
+ */
+public final class CertificateChain {
+
+    private final X509Certificate[] certificates;
+    private final boolean complete;
+
+    CertificateChain(X509Certificate[] certificates, boolean complete) {
+        this.certificates = certificates;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the certificates, end entity first
+     */
+    public List<X509Certificate> getCertificates() {
+        return Collections.unmodifiableList(Arrays.asList(certificates));
+    }
+
+    /**
+     * @return a copy of the certificates, end entity first, in the form Psd2CertInfo and the JSSE expect
+     */
+    public X509Certificate[] toArray() {
+        return certificates.clone();
+    }
+
+    /**
+     * @return true if the chain ends with a self issued certificate. Whether that root is trusted is a matter for
+     * validation.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int length() {
+        return certificates.length;
+    }
+}
@@ -0,0 +1,378 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.utils.RawCertificate;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Completes the certificate chains presented by clients, which often leave out intermediates.
+ *
+ * Starting from the end entity certificate, the issuer of each certificate is looked for, in order, among the
+ * certificates that were presented, in the {@link IssuerIndex} by authority key identifier, in the index by issuer
+ * name and finally, if a fetcher is configured, at the caIssuers URL of the certificate's authority information
+ * access extension. Each step is a hash lookup, so assembling a chain costs O(depth) however many CA certificates are
+ * indexed.
+ *
+ * The caIssuers URL is chosen by whoever issued the certificate, so a fetched certificate is only used if its key
+ * verifies the certificate's signature. Fetched issuers are remembered in a bounded cache of their own, never in the
+ * index, and are only used for a later chain if they verify that chain's certificate too.
+ *
+ * Where several candidates share a name, for example after a CA key roll over, the one whose key verifies the
+ * certificate's signature is chosen. Otherwise signatures of presented and indexed issuers are not checked; the chain
+ * must still be validated.
+ */
+public class CertificateChainBuilder {
+
+    /**
+     * Chains longer than this are cut off, which also guards against loops between cross certificates.
+     */
+    public static final int MAX_DEPTH = 10;
+
+    /**
+     * The name the cache of fetched issuers reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "fetched-issuers";
+
+    /**
+     * The number of issuer names whose fetched certificates are remembered, unless another is given.
+     */
+    public static final int DEFAULT_MAX_FETCHED_ISSUERS = 1024;
+
+    // A name is rarely shared by more than a couple of CA certificates; more are only remembered up to this many.
+    private static final int MAX_FETCHED_PER_NAME = 4;
+
+    private final IssuerIndex index;
+    private final IssuerFetcher fetcher;
+    private final BoundedCache<X500Principal, X509Certificate[]> fetchedIssuers;
+
+    /**
+     * @param index the known intermediates and roots
+     */
+    public CertificateChainBuilder(IssuerIndex index) {
+        this(index, null);
+    }
+
+    /**
+     * @param index the known intermediates and roots
+     * @param fetcher fetches issuers that aren't presented or indexed, or null to not fetch
+     */
+    public CertificateChainBuilder(IssuerIndex index, IssuerFetcher fetcher) {
+        this(index, fetcher, DEFAULT_MAX_FETCHED_ISSUERS);
+    }
+
+    /**
+     * @param index the known intermediates and roots
+     * @param fetcher fetches issuers that aren't presented or indexed, or null to not fetch
+     * @param maxFetchedIssuers the maximum number of issuer names whose fetched certificates are remembered
+     */
+    public CertificateChainBuilder(IssuerIndex index, IssuerFetcher fetcher, int maxFetchedIssuers) {
+        this.index = index;
+        this.fetcher = fetcher;
+        this.fetchedIssuers = BoundedCache.<X500Principal, X509Certificate[]>builder()
+                .maximumSize(maxFetchedIssuers)
+                .metricsName(METRICS_NAME)
+                .build();
+    }
+
+    public CertificateChain build(X509Certificate[] presented) throws CertificateEncodingException {
+        return build(Arrays.asList(presented));
+    }
+
+    /**
+     * Assemble the chain of the first presented certificate.
+     * @param presented the certificates presented, with the end entity certificate first. The others may be in any
+     *                  order, and may be missing or unrelated.
+     * @return the chain, which is incomplete if an issuer could not be found
+     * @throws CertificateEncodingException if a certificate can't be decoded
+     */
+    public CertificateChain build(List<X509Certificate> presented) throws CertificateEncodingException {
+        if (presented == null || presented.isEmpty()) {
+            throw new IllegalArgumentException("No certificates provided");
+        }
+        List<X509Certificate> chain = new ArrayList<>(4);
+        X509Certificate current = presented.get(0);
+        chain.add(current);
+        while (chain.size() < MAX_DEPTH) {
+            if (current.getSubjectX500Principal().equals(current.getIssuerX500Principal())) {
+                return new CertificateChain(chain.toArray(new X509Certificate[0]), true);
+            }
+            X509Certificate issuer = findIssuer(current, presented);
+            if (issuer == null || chain.contains(issuer)) {
+                break;
+            }
+            chain.add(issuer);
+            current = issuer;
+        }
+        return new CertificateChain(chain.toArray(new X509Certificate[0]), false);
+    }
+
+    /**
+     * Assemble the chain of the first presented certificate without blocking on issuers that have to be fetched.
+     * @param presented the certificates presented, with the end entity certificate first
+     * @return a future of the chain, which completes exceptionally with a {@link CertificateEncodingException} if a
+     * certificate can't be decoded
+     * @see #build(List)
+     */
+    public CompletableFuture<CertificateChain> buildAsync(List<X509Certificate> presented) {
+        return buildAsync(presented, Runnable::run);
+    }
+
+    /**
+     * Assemble the chain of the first presented certificate without blocking on issuers that have to be fetched,
+     * carrying on with the chain on the given executor once a fetched issuer arrives rather than on the fetcher's
+     * thread.
+     * @param presented the certificates presented, with the end entity certificate first
+     * @param executor checks fetched issuers and extends the chain from them
+     * @return a future of the chain, which completes exceptionally with a {@link CertificateEncodingException} if a
+     * certificate can't be decoded
+     * @see #build(List)
+     */
+    public CompletableFuture<CertificateChain> buildAsync(List<X509Certificate> presented, Executor executor) {
+        if (presented == null || presented.isEmpty()) {
+            throw new IllegalArgumentException("No certificates provided");
+        }
+        List<X509Certificate> chain = new ArrayList<>(4);
+        chain.add(presented.get(0));
+        try {
+            return extend(chain, presented, executor);
+        } catch (CertificateEncodingException e) {
+            CompletableFuture<CertificateChain> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Extend the chain with issuers found locally, and continue once any issuer that has to be fetched arrives.
+     */
+    private CompletableFuture<CertificateChain> extend(List<X509Certificate> chain, List<X509Certificate> presented,
+                                                       Executor executor) throws CertificateEncodingException {
+        X509Certificate current = chain.get(chain.size() - 1);
+        while (chain.size() < MAX_DEPTH) {
+            if (current.getSubjectX500Principal().equals(current.getIssuerX500Principal())) {
+                return CompletableFuture.completedFuture(
+                        new CertificateChain(chain.toArray(new X509Certificate[0]), true));
+            }
+            X509Certificate issuer = findLocalIssuer(current, presented);
+            if (issuer == null) {
+                String url = fetcher == null ? null : caIssuersUrl(current);
+                if (url == null) {
+                    break;
+                }
+                X509Certificate subject = current;
+                return fetcher.fetch(url)
+                        .handle((fetched, error) -> error == null ? fetched : Collections.<X509Certificate>emptyList())
+                        .thenComposeAsync(fetched -> {
+                            try {
+                                X509Certificate fetchedIssuer = chooseFetched(subject, fetched);
+                                if (fetchedIssuer == null || chain.contains(fetchedIssuer)) {
+                                    return CompletableFuture.completedFuture(
+                                            new CertificateChain(chain.toArray(new X509Certificate[0]), false));
+                                }
+                                chain.add(fetchedIssuer);
+                                return extend(chain, presented, executor);
+                            } catch (CertificateEncodingException e) {
+                                throw new CompletionException(e);
+                            }
+                        }, executor);
+            }
+            if (chain.contains(issuer)) {
+                break;
+            }
+            chain.add(issuer);
+            current = issuer;
+        }
+        return CompletableFuture.completedFuture(new CertificateChain(chain.toArray(new X509Certificate[0]), false));
+    }
+
+    private X509Certificate findIssuer(X509Certificate cert, List<X509Certificate> presented)
+            throws CertificateEncodingException {
+        X509Certificate issuer = findLocalIssuer(cert, presented);
+        if (issuer != null || fetcher == null) {
+            return issuer;
+        }
+        String url = caIssuersUrl(cert);
+        if (url == null) {
+            return null;
+        }
+        List<X509Certificate> fetched;
+        try {
+            fetched = fetcher.fetch(url).join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+        return chooseFetched(cert, fetched);
+    }
+
+    /**
+     * Look for the issuer among the presented certificates, in the index and among the issuers fetched before.
+     */
+    private X509Certificate findLocalIssuer(X509Certificate cert, List<X509Certificate> presented)
+            throws CertificateEncodingException {
+        X500Principal issuerName = cert.getIssuerX500Principal();
+        KeyIdentifier aki = KeyIdentifier.authorityKeyIdentifier(RawCertificate.scan(cert));
+
+        List<X509Certificate> candidates = new ArrayList<>(2);
+        for (int i = 1; i < presented.size(); ++i) {
+            X509Certificate candidate = presented.get(i);
+            if (candidate.getSubjectX500Principal().equals(issuerName)) {
+                candidates.add(candidate);
+            }
+        }
+        X509Certificate issuer = choose(cert, candidates, aki);
+        if (issuer != null) {
+            return issuer;
+        }
+
+        if (aki != null) {
+            issuer = choose(cert, withSubject(index.bySubjectKeyIdentifier(aki), issuerName), null);
+            if (issuer != null) {
+                return issuer;
+            }
+        }
+        issuer = choose(cert, Arrays.asList(index.bySubject(issuerName)), aki);
+        if (issuer != null) {
+            return issuer;
+        }
+        X509Certificate[] fetched = fetchedIssuers.getIfPresent(issuerName);
+        return fetched == null ? null : chooseVerified(cert, Arrays.asList(fetched), aki);
+    }
+
+    private static String caIssuersUrl(X509Certificate cert) {
+        return Psd2CertInfo.lazy(Collections.singletonList(cert)).getAuthorityAccessInfoCAIssuer().orElse(null);
+    }
+
+    /**
+     * Pick the issuer of the certificate from those fetched from its caIssuers URL, and remember it.
+     */
+    private X509Certificate chooseFetched(X509Certificate cert, List<X509Certificate> fetched)
+            throws CertificateEncodingException {
+        KeyIdentifier aki = KeyIdentifier.authorityKeyIdentifier(RawCertificate.scan(cert));
+        X500Principal issuerName = cert.getIssuerX500Principal();
+        X509Certificate issuer = chooseVerified(cert,
+                withSubject(fetched.toArray(new X509Certificate[0]), issuerName), aki);
+        if (issuer != null) {
+            remember(issuerName, issuer);
+        }
+        return issuer;
+    }
+
+    private void remember(X500Principal issuerName, X509Certificate issuer) {
+        X509Certificate[] known = fetchedIssuers.getIfPresent(issuerName);
+        if (known == null) {
+            fetchedIssuers.put(issuerName, new X509Certificate[]{issuer});
+        } else if (!Arrays.asList(known).contains(issuer)) {
+            // Keep the most recently fetched, so a CA that rolls its key over more often than this still chains
+            X509Certificate[] updated = new X509Certificate[Math.min(known.length + 1, MAX_FETCHED_PER_NAME)];
+            updated[0] = issuer;
+            System.arraycopy(known, 0, updated, 1, updated.length - 1);
+            fetchedIssuers.put(issuerName, updated);
+        }
+    }
+
+    private static List<X509Certificate> withSubject(X509Certificate[] certs, X500Principal subject) {
+        List<X509Certificate> matching = new ArrayList<>(certs.length);
+        for (X509Certificate cert : certs) {
+            if (cert.getSubjectX500Principal().equals(subject)) {
+                matching.add(cert);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Pick the issuer of a certificate from candidates that have its issuer name.
+     * @param aki the certificate's authority key identifier, used to narrow the candidates, or null
+     */
+    private static X509Certificate choose(X509Certificate cert, List<X509Certificate> candidates, KeyIdentifier aki)
+            throws CertificateEncodingException {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (aki != null && candidates.size() > 1) {
+            List<X509Certificate> matching = new ArrayList<>(candidates.size());
+            for (X509Certificate candidate : candidates) {
+                if (aki.equals(KeyIdentifier.subjectKeyIdentifier(RawCertificate.scan(candidate)))) {
+                    matching.add(candidate);
+                }
+            }
+            if (!matching.isEmpty()) {
+                candidates = matching;
+            }
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        for (X509Certificate candidate : candidates) {
+            if (verifies(cert, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pick the issuer of a certificate from untrusted candidates, only accepting one whose key verifies the
+     * certificate's signature.
+     * @param aki the certificate's authority key identifier, used to try the likeliest candidates first, or null
+     */
+    private static X509Certificate chooseVerified(X509Certificate cert, List<X509Certificate> candidates,
+                                                  KeyIdentifier aki) throws CertificateEncodingException {
+        if (aki != null) {
+            for (X509Certificate candidate : candidates) {
+                if (aki.equals(KeyIdentifier.subjectKeyIdentifier(RawCertificate.scan(candidate)))
+                        && verifies(cert, candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        for (X509Certificate candidate : candidates) {
+            if (verifies(cert, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean verifies(X509Certificate cert, X509Certificate issuer) {
+        try {
+            cert.verify(issuer.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
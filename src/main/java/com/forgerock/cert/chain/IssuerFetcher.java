@@ -0,0 +1,40 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches the certificates published at the caIssuers location of a certificate's authority information access
+ * extension.
+ */
+@FunctionalInterface
+public interface IssuerFetcher {
+
+    /**
+     * @param url the caIssuers URL
+     * @return a future of the certificates published at the URL, which completes exceptionally if they can't be
+     * fetched
+     */
+    CompletableFuture<List<X509Certificate>> fetch(String url);
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.cert.CertificateFingerprint;
+import com.forgerock.cert.utils.RawCertificate;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent index of CA certificates, intermediates and roots, by subject key identifier and by subject name, so
+ * that the issuer of a certificate can be found with a hash lookup rather than by scanning a key store.
+ *
+ * Being in the index does not make a certificate trusted; the index only helps assemble chains, which must still be
+ * validated against trust anchors.
+ */
+public class IssuerIndex {
+
+    private static final X509Certificate[] NONE = new X509Certificate[0];
+
+    private final ConcurrentMap<CertificateFingerprint, X509Certificate> certificates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<KeyIdentifier, X509Certificate[]> bySubjectKeyIdentifier = new ConcurrentHashMap<>();
+    private final ConcurrentMap<X500Principal, X509Certificate[]> bySubject = new ConcurrentHashMap<>();
+
+    /**
+     * Index a CA certificate.
+     * @param cert the certificate
+     * @return true if the certificate was added, false if it was already indexed
+     * @throws CertificateEncodingException if the certificate can't be decoded
+     */
+    public boolean add(X509Certificate cert) throws CertificateEncodingException {
+        RawCertificate raw = RawCertificate.scan(cert);
+        KeyIdentifier ski = KeyIdentifier.subjectKeyIdentifier(raw);
+        if (certificates.putIfAbsent(CertificateFingerprint.of(cert), cert) != null) {
+            return false;
+        }
+        if (ski != null) {
+            bySubjectKeyIdentifier.merge(ski, new X509Certificate[]{cert}, IssuerIndex::concat);
+        }
+        bySubject.merge(cert.getSubjectX500Principal(), new X509Certificate[]{cert}, IssuerIndex::concat);
+        return true;
+    }
+
+    /**
+     * Index every certificate entry of a key store, such as a trust store of QTSP intermediates and roots.
+     * @param keyStore the key store
+     * @return the number of certificates added
+     * @throws KeyStoreException if the key store can't be read
+     * @throws CertificateEncodingException if a certificate can't be decoded
+     */
+    public int addAll(KeyStore keyStore) throws KeyStoreException, CertificateEncodingException {
+        int added = 0;
+        for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+            Certificate cert = keyStore.getCertificate(aliases.nextElement());
+            if (cert instanceof X509Certificate && add((X509Certificate) cert)) {
+                ++added;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @param cert the certificate to remove
+     * @return true if the certificate was indexed
+     * @throws CertificateEncodingException if the certificate can't be decoded
+     */
+    public boolean remove(X509Certificate cert) throws CertificateEncodingException {
+        if (certificates.remove(CertificateFingerprint.of(cert)) == null) {
+            return false;
+        }
+        KeyIdentifier ski = KeyIdentifier.subjectKeyIdentifier(RawCertificate.scan(cert));
+        if (ski != null) {
+            bySubjectKeyIdentifier.computeIfPresent(ski, (key, certs) -> without(certs, cert));
+        }
+        bySubject.computeIfPresent(cert.getSubjectX500Principal(), (key, certs) -> without(certs, cert));
+        return true;
+    }
+
+    /**
+     * @param subject a subject name
+     * @return the indexed certificates with the subject
+     */
+    public List<X509Certificate> findBySubject(X500Principal subject) {
+        return Collections.unmodifiableList(Arrays.asList(bySubject.getOrDefault(subject, NONE)));
+    }
+
+    X509Certificate[] bySubject(X500Principal subject) {
+        return bySubject.getOrDefault(subject, NONE);
+    }
+
+    X509Certificate[] bySubjectKeyIdentifier(KeyIdentifier ski) {
+        return bySubjectKeyIdentifier.getOrDefault(ski, NONE);
+    }
+
+    /**
+     * @return the number of certificates indexed
+     */
+    public int size() {
+        return certificates.size();
+    }
+
+    private static X509Certificate[] concat(X509Certificate[] existing, X509Certificate[] added) {
+        X509Certificate[] merged = Arrays.copyOf(existing, existing.length + added.length);
+        System.arraycopy(added, 0, merged, existing.length, added.length);
+        return merged;
+    }
+
+    /**
+     * @return the certificates without the one given, or null to remove the mapping if none are left
+     */
+    private static X509Certificate[] without(X509Certificate[] certs, X509Certificate removed) {
+        X509Certificate[] remaining = new X509Certificate[certs.length];
+        int count = 0;
+        for (X509Certificate cert : certs) {
+            if (!cert.equals(removed)) {
+                remaining[count++] = cert;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(remaining, count);
+    }
+}
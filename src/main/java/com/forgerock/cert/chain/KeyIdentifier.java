@@ -0,0 +1,89 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.cert.utils.ByteEncoder;
+import com.forgerock.cert.utils.RawCertificate;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+
+/**
+ * The key identifier of a SubjectKeyIdentifier or AuthorityKeyIdentifier extension, as a map key.
+ */
+final class KeyIdentifier {
+
+    private final byte[] id;
+    private final int hashCode;
+
+    private KeyIdentifier(byte[] id) {
+        this.id = id;
+        this.hashCode = Arrays.hashCode(id);
+    }
+
+    /**
+     * @return the subject key identifier of the certificate, or null if it has none
+     */
+    static KeyIdentifier subjectKeyIdentifier(RawCertificate cert) throws CertificateEncodingException {
+        ASN1Primitive value = cert.getExtensionValue(Extension.subjectKeyIdentifier);
+        if (!(value instanceof ASN1OctetString)) {
+            return null;
+        }
+        return new KeyIdentifier(((ASN1OctetString) value).getOctets());
+    }
+
+    /**
+     * @return the key identifier of the authority key identifier of the certificate, or null if it has none
+     */
+    static KeyIdentifier authorityKeyIdentifier(RawCertificate cert) throws CertificateEncodingException {
+        ASN1Primitive value = cert.getExtensionValue(Extension.authorityKeyIdentifier);
+        if (value == null) {
+            return null;
+        }
+        try {
+            byte[] id = AuthorityKeyIdentifier.getInstance(value).getKeyIdentifier();
+            return id == null ? null : new KeyIdentifier(id);
+        } catch (IllegalArgumentException e) {
+            throw new CertificateEncodingException("Malformed authority key identifier: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyIdentifier)) return false;
+        return Arrays.equals(id, ((KeyIdentifier) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return ByteEncoder.toHex(id);
+    }
+}
@@ -21,6 +21,10 @@
 package com.forgerock.cert.eidas;
 
 import com.forgerock.cert.exception.InvalidEidasCertType;
+import com.forgerock.cert.utils.OidRegistry;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 
 /**
  * An enum that also ties the ASN.1 oid to the type for use when creating
@@ -43,33 +47,86 @@ public enum EidasCertType {
     /**
      * ESIGN - A Certificate for electronic signatures as defined in Regulation (EU) No 910/2014
      */
-    ESIGN("0.4.0.1862.1.6.1")
+    ESIGN("0.4.0.1862.1.6.1", 1)
     ,
     /**
      * ESEAL - A Certificate for electronic seals as defined in Regulation (EU) No 910/2014
      */
-    ESEAL("0.4.0.1862.1.6.2"),
+    ESEAL("0.4.0.1862.1.6.2", 2),
 
     /**
      * Certificate for website authentication as defined in Regulation (EU) No 910/2014
      */
-    WEB("0.4.0.1862.1.6.3");
+    WEB("0.4.0.1862.1.6.3", 3);
 
 
+    private static final OidRegistry<EidasCertType> REGISTRY =
+            new OidRegistry<>(values(), EidasCertType::getAsn1Oid);
+
+    // Indexed by wire code; the code of a type is stored and shared between nodes, so it must never change.
+    private static final EidasCertType[] BY_WIRE_CODE = new EidasCertType[4];
+
+    static {
+        for (EidasCertType type : values()) {
+            BY_WIRE_CODE[type.wireCode] = type;
+        }
+    }
+
     // The ASN.1 Object Identifier.
-    private String oid;
+    private final String oid;
+    private final ASN1ObjectIdentifier asn1Oid;
+    private final int wireCode;
 
-    EidasCertType(String oid){
+    EidasCertType(String oid, int wireCode){
         this.oid = oid;
+        this.asn1Oid = new ASN1ObjectIdentifier(oid).intern();
+        this.wireCode = wireCode;
     }
 
     public static EidasCertType getInstance(String oid) throws InvalidEidasCertType {
-        for(EidasCertType value: EidasCertType.values()){
-            if(oid.equals(value.getOid())){
-                return value;
-            }
+        ValidationResult<EidasCertType> type = fromOid(oid);
+        if(!type.isValid()){
+            throw new InvalidEidasCertType(type.getMessage());
+        }
+        return type.getValue().get();
+    }
+
+    /**
+     * Find the eIDAS certificate type with the given Object Identifier without throwing if there isn't one.
+     * @param oid the Object Identifier in a dot separated format
+     * @return a valid result holding the type, or an invalid result if the oid is not a known type
+     */
+    public static ValidationResult<EidasCertType> fromOid(String oid) {
+        EidasCertType type = REGISTRY.get(oid);
+        if(type == null){
+            return ValidationResult.invalid(ValidationError.UNRECOGNISED_EIDAS_CERT_TYPE, () -> oid);
+        }
+        return ValidationResult.valid(type);
+    }
+
+    /**
+     * Find the eIDAS certificate type with the given Object Identifier without throwing if there isn't one.
+     * @param oid the Object Identifier
+     * @return a valid result holding the type, or an invalid result if the oid is not a known type
+     */
+    public static ValidationResult<EidasCertType> fromOid(ASN1ObjectIdentifier oid) {
+        EidasCertType type = REGISTRY.get(oid);
+        if(type == null){
+            return ValidationResult.invalid(ValidationError.UNRECOGNISED_EIDAS_CERT_TYPE, () -> String.valueOf(oid));
         }
-        throw new InvalidEidasCertType("Unrecognised Object Identifier " + oid);
+        return ValidationResult.valid(type);
+    }
+
+    /**
+     * Find the eIDAS certificate type with the given wire code.
+     * @param wireCode the code, as returned by {@link #getWireCode()}
+     * @return the type, or null if no type has the code
+     */
+    public static EidasCertType fromWireCode(int wireCode) {
+        if(wireCode <= 0 || wireCode >= BY_WIRE_CODE.length){
+            return null;
+        }
+        return BY_WIRE_CODE[wireCode];
     }
 
     /**
@@ -80,4 +137,19 @@ public enum EidasCertType {
     public String getOid() {
         return oid;
     }
+
+    /**
+     * @return the ASN.1 Object Identifier for this eIDAS certificate type
+     */
+    public ASN1ObjectIdentifier getAsn1Oid() {
+        return asn1Oid;
+    }
+
+    /**
+     * @return the stable, non-zero code that identifies this type in compact binary encodings. Unlike the ordinal it
+     * does not change when types are added or reordered.
+     */
+    public int getWireCode() {
+        return wireCode;
+    }
 }
@@ -23,6 +23,8 @@ package com.forgerock.cert.eidas;
 import com.forgerock.cert.exception.InvalidEidasCertType;
 import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
 import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
 import org.bouncycastle.asn1.*;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
@@ -35,7 +37,12 @@ import java.util.*;
 
 public class QCStatements extends ASN1Object {
 
-    Map<String, QCStatement> qcStatements = new TreeMap<>();
+    // Keyed by the statement OID itself so that lookups and inserts hash and compare the identifier BouncyCastle
+    // already holds rather than building a new String. Ordered by identifier to keep the encoding stable.
+    Map<ASN1ObjectIdentifier, QCStatement> qcStatements =
+            new TreeMap<>(Comparator.comparing(ASN1ObjectIdentifier::getId));
+    // The encoding of the statements, built on first use and discarded whenever a statement is added or replaced.
+    private volatile ASN1Primitive encoded;
 
     public QCStatements(){}
 
@@ -90,7 +97,7 @@ public class QCStatements extends ASN1Object {
                     } else {
                         qcItem = new QCStatement(itemOid);
                     }
-                    this.qcStatements.put(itemOid.getId(), qcItem);
+                    this.qcStatements.put(itemOid, qcItem);
                 } else {
                     throw new InvalidPsd2EidasCertificate("No ASN1ObjectIdentifier in Sequence");
                 }
@@ -111,7 +118,8 @@ public class QCStatements extends ASN1Object {
      */
     public void addStatement(ASN1ObjectIdentifier id) {
         QCStatement qcStatement = new QCStatement(id);
-        qcStatements.put(id.getId(), qcStatement);
+        qcStatements.put(id, qcStatement);
+        encoded = null;
     }
 
     /**
@@ -119,53 +127,80 @@ public class QCStatements extends ASN1Object {
      * @param statement - is added to the the list of statements.
      */
     public void addStatement(QCStatement statement){
-        qcStatements.put(statement.getStatementId().getId(), statement);
+        qcStatements.put(statement.getStatementId(), statement);
+        encoded = null;
     }
 
 
     @Override
     public ASN1Primitive toASN1Primitive() {
-        ASN1EncodableVector inner = new ASN1EncodableVector();
-        for(QCStatement statement: qcStatements.values()){
-            inner.add(statement.toASN1Primitive());
+        ASN1Primitive encoded = this.encoded;
+        if(encoded == null){
+            ASN1EncodableVector inner = new ASN1EncodableVector();
+            for(QCStatement statement: qcStatements.values()){
+                inner.add(statement.toASN1Primitive());
+            }
+            encoded = new DERSequence(inner);
+            this.encoded = encoded;
         }
-        return new DERSequence(inner);
+        return encoded;
     }
 
     public boolean isEUQualifiedCert() {
-        return this.qcStatements.containsKey(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance.getId());
+        return this.qcStatements.containsKey(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance);
     }
 
     public void setEidasCertificateType(EidasCertType esign) {
-        ASN1ObjectIdentifier oid = new ASN1ObjectIdentifier(esign.getOid());
+        ASN1ObjectIdentifier oid = esign.getAsn1Oid();
         QCStatement qcStatement = new QCStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcType, oid);
-        this.qcStatements.put(oid.getId(), qcStatement);
+        this.qcStatements.put(oid, qcStatement);
+        encoded = null;
     }
 
     public Optional<EidasCertType> getEidasCertificateType() throws InvalidEidasCertType {
-        EidasCertType type = null;
-        QCStatement qcTypeStatement = this.qcStatements.get(ETSIQCObjectIdentifiers.id_etsi_qcs_QcType.getId());
-        if(qcTypeStatement != null){
-           ASN1Encodable qcTypeValue = qcTypeStatement.getStatementInfo();
-           ASN1Encodable seq = ((DLSequence)qcTypeValue).getObjectAt(0);
-           ASN1ObjectIdentifier qcTypeValueOid = ASN1ObjectIdentifier.getInstance(seq);
-           return Optional.of(EidasCertType.getInstance(qcTypeValueOid.getId()));
+        ValidationResult<EidasCertType> type = findEidasCertificateType();
+        if(!type.isValid()){
+            throw new InvalidEidasCertType(type.getMessage());
         }
-        return Optional.empty();
+        return type.getValue();
+    }
+
+    /**
+     * Get the eIDAS certificate type from the QcType statement without throwing if it is malformed or unknown.
+     * @return a valid result holding the type, or no value if there is no QcType statement. An invalid result if the
+     * statement is malformed or holds an unrecognised type.
+     */
+    public ValidationResult<EidasCertType> findEidasCertificateType() {
+        QCStatement qcTypeStatement = this.qcStatements.get(ETSIQCObjectIdentifiers.id_etsi_qcs_QcType);
+        if(qcTypeStatement == null){
+            return ValidationResult.valid(null);
+        }
+        ASN1Encodable qcTypeValue = qcTypeStatement.getStatementInfo();
+        if(!(qcTypeValue instanceof ASN1Sequence) || ((ASN1Sequence) qcTypeValue).size() == 0
+                || !(((ASN1Sequence) qcTypeValue).getObjectAt(0) instanceof ASN1ObjectIdentifier)){
+            return ValidationResult.invalid(ValidationError.MALFORMED_EIDAS_CERT_TYPE,
+                    () -> String.valueOf(qcTypeValue));
+        }
+        ASN1ObjectIdentifier qcTypeValueOid = (ASN1ObjectIdentifier) ((ASN1Sequence) qcTypeValue).getObjectAt(0);
+        return EidasCertType.fromOid(qcTypeValueOid);
     }
 
     public void setPsd2QcStatement(Psd2QcStatement psd2QCStatement) {
         QCStatement qcStatement = new QCStatement(Psd2QcStatement.getOid(), psd2QCStatement.toASN1Primitive());
-        this.qcStatements.put(Psd2QcStatement.getOid().getId(), qcStatement);
+        this.qcStatements.put(Psd2QcStatement.getOid(), qcStatement);
+        encoded = null;
     }
 
     public Optional<Psd2QcStatement> getPsd2QcStatement() throws InvalidPsd2EidasCertificate {
-        QCStatement qcStatement = this.qcStatements.get(Psd2QcStatement.getOid().getId());
+        QCStatement qcStatement = this.qcStatements.get(Psd2QcStatement.getOid());
+        if(qcStatement == null){
+            return Optional.empty();
+        }
         return Optional.ofNullable(Psd2QcStatement.getInstance(qcStatement.getStatementInfo()));
     }
 
     public Optional<QCStatement> getQCStatement(ASN1ObjectIdentifier oid) {
-        return Optional.ofNullable(this.qcStatements.get(oid.getId()));
+        return Optional.ofNullable(this.qcStatements.get(oid));
     }
 
     @Override
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.expiry;
+
+import java.util.List;
+
+/**
+ * Told when certificates tracked by an {@link ExpiryTracker} are about to expire and when they have expired. Each
+ * call carries every certificate that became due in one {@link ExpiryTracker#advance()}, so listeners can process
+ * them as a batch.
+ *
+ * Listeners are called on the thread that advances the tracker, without any locks held. They may register and
+ * cancel certificates.
+ */
+public interface ExpiryListener {
+
+    /**
+     * @param registrations the certificates that entered their warning period
+     */
+    default void expiringSoon(List<ExpiryRegistration> registrations) {
+    }
+
+    /**
+     * @param registrations the certificates that passed their notAfter time. They are no longer tracked.
+     */
+    default void expired(List<ExpiryRegistration> registrations) {
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.expiry;
+
+import com.forgerock.cert.CertificateFingerprint;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A certificate tracked by an {@link ExpiryTracker}.
+ */
+public final class ExpiryRegistration {
+
+    private final ExpiryTracker tracker;
+    private final CertificateFingerprint fingerprint;
+    private final Instant notAfter;
+    private final String organisationId;
+    final ExpiryTracker.Timer warning;
+    final ExpiryTracker.Timer expiry;
+    // Guarded by the tracker's lock
+    boolean active = true;
+
+    ExpiryRegistration(ExpiryTracker tracker, CertificateFingerprint fingerprint, Instant notAfter,
+                       String organisationId, long warningTick, long expiryTick) {
+        this.tracker = tracker;
+        this.fingerprint = fingerprint;
+        this.notAfter = notAfter;
+        this.organisationId = organisationId;
+        this.warning = new ExpiryTracker.Timer(this, warningTick, false);
+        this.expiry = new ExpiryTracker.Timer(this, expiryTick, true);
+    }
+
+    public CertificateFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    public Instant getNotAfter() {
+        return notAfter;
+    }
+
+    /**
+     * @return the organisation identifier of the certificate, if it was registered with one
+     */
+    public Optional<String> getOrganisationId() {
+        return Optional.ofNullable(organisationId);
+    }
+
+    /**
+     * Stop tracking the certificate.
+     * @return false if it had already expired, been cancelled or been replaced by a newer registration
+     */
+    public boolean cancel() {
+        return tracker.cancel(this);
+    }
+
+    @Override
+    public String toString() {
+        return "ExpiryRegistration{" +
+                "fingerprint=" + fingerprint.toHex() +
+                ", notAfter=" + notAfter +
+                ", organisationId='" + organisationId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,431 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.expiry;
+
+import com.forgerock.cert.CertificateFingerprint;
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.Psd2CertSnapshot;
+
+import java.security.cert.CertificateEncodingException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks when certificates expire, telling an {@link ExpiryListener} when each enters its warning period and when
+ * it expires.
+ *
+ * Deadlines are kept in a hierarchical timing wheel: five levels of 64 slots, where each slot of a level spans a
+ * whole turn of the level below. Registering and cancelling a certificate are constant time, whatever the number
+ * of certificates tracked. Advancing visits one slot per tick, skipping stretches where the lower levels are empty,
+ * and moves each deadline down a level a few times over its life. There is no periodic scan of every certificate.
+ * With the default one minute tick the wheel spans two thousand years; deadlines beyond that are parked at the far
+ * edge and rescheduled when they reach it.
+ *
+ * Time only moves when {@link #advance()} is called, either by the caller or on a schedule set up by
+ * {@link #start(ScheduledExecutorService)}. Events are never early, and are late by at most a tick plus however
+ * long it is between calls to advance.
+ */
+public class ExpiryTracker {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+    private static final long HORIZON = 1L << (SLOT_BITS * LEVELS);
+
+    private final Clock clock;
+    private final long tickMillis;
+    private final long warningMillis;
+    private final ExpiryListener listener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+    private final Timer due = Timer.sentinel();
+    private final Map<CertificateFingerprint, ExpiryRegistration> registrations = new HashMap<>();
+    private final int[] counts = new int[LEVELS];
+    private long currentTick;
+
+    private ExpiryTracker(Builder builder) {
+        this.clock = builder.clock;
+        this.tickMillis = builder.tick.toMillis();
+        this.warningMillis = builder.warningPeriod.toMillis();
+        this.listener = builder.listener;
+        for (Timer[] wheel : wheels) {
+            for (int slot = 0; slot < SLOTS; ++slot) {
+                wheel[slot] = Timer.sentinel();
+            }
+        }
+        this.currentTick = Math.floorDiv(clock.millis(), tickMillis);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @see #register(CertificateFingerprint, Instant, String)
+     */
+    public ExpiryRegistration register(Psd2CertInfo certInfo) throws CertificateEncodingException {
+        return register(CertificateFingerprint.of(certInfo.getCertificate()),
+                certInfo.getCertificate().getNotAfter().toInstant(), certInfo.getOrganizationId().orElse(null));
+    }
+
+    /**
+     * @see #register(CertificateFingerprint, Instant, String)
+     */
+    public ExpiryRegistration register(Psd2CertSnapshot snapshot) {
+        return register(snapshot.getFingerprint(), snapshot.getNotAfter(),
+                snapshot.getOrganisationId().orElse(null));
+    }
+
+    /**
+     * Start tracking a certificate, replacing any registration of the same fingerprint. A certificate that is
+     * already in its warning period is reported as expiring soon on the next advance, and one that has already
+     * expired is reported as expired.
+     * @param fingerprint identifies the certificate
+     * @param notAfter when the certificate expires
+     * @param organisationId passed back to the listener, may be null
+     * @return the registration, which can be used to cancel it
+     */
+    public ExpiryRegistration register(CertificateFingerprint fingerprint, Instant notAfter, String organisationId) {
+        long notAfterMillis = notAfter.toEpochMilli();
+        long expiryTick = ceilTick(notAfterMillis);
+        long warningTick = ceilTick(notAfterMillis - warningMillis);
+        ExpiryRegistration registration = new ExpiryRegistration(this, fingerprint, notAfter, organisationId,
+                warningTick, expiryTick);
+        lock.lock();
+        try {
+            ExpiryRegistration replaced = registrations.put(fingerprint, registration);
+            if (replaced != null) {
+                deactivate(replaced);
+            }
+            if (warningTick < expiryTick && expiryTick > currentTick) {
+                schedule(registration.warning);
+            }
+            schedule(registration.expiry);
+        } finally {
+            lock.unlock();
+        }
+        return registration;
+    }
+
+    /**
+     * Stop tracking a certificate.
+     * @param fingerprint identifies the certificate
+     * @return false if the certificate wasn't tracked
+     */
+    public boolean cancel(CertificateFingerprint fingerprint) {
+        lock.lock();
+        try {
+            ExpiryRegistration registration = registrations.remove(fingerprint);
+            if (registration == null) {
+                return false;
+            }
+            deactivate(registration);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean cancel(ExpiryRegistration registration) {
+        lock.lock();
+        try {
+            if (!registration.active) {
+                return false;
+            }
+            registrations.remove(registration.getFingerprint(), registration);
+            deactivate(registration);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of certificates tracked
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return registrations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the wheel up to the clock's current time and tell the listener about every certificate that became
+     * due, in at most one call of each kind.
+     * @return the number of events fired
+     */
+    public int advance() {
+        List<ExpiryRegistration> expiringSoon = new ArrayList<>();
+        List<ExpiryRegistration> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = Math.floorDiv(clock.millis(), tickMillis);
+            fire(due, Long.MAX_VALUE, expiringSoon, expired);
+            while (currentTick < now) {
+                long tick = nextBusyTick();
+                if (tick > now) {
+                    currentTick = now;
+                    break;
+                }
+                currentTick = tick;
+                // Cascade from the top so that deadlines moved down are picked up by the levels below this tick
+                for (int level = LEVELS - 1; level > 0; --level) {
+                    if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                        cascade(wheels[level][slot(tick, level)], tick);
+                    }
+                }
+                fire(wheels[0][(int) (tick & SLOT_MASK)], tick, expiringSoon, expired);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!expiringSoon.isEmpty()) {
+            listener.expiringSoon(Collections.unmodifiableList(expiringSoon));
+        }
+        if (!expired.isEmpty()) {
+            listener.expired(Collections.unmodifiableList(expired));
+        }
+        return expiringSoon.size() + expired.size();
+    }
+
+    /**
+     * Advance the tracker once a tick. If the listener throws, the schedule stops.
+     * @param executor runs the advances
+     * @return the schedule, which can be cancelled
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService executor) {
+        return executor.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * While the lowest levels are empty nothing can fire or cascade until the next slot boundary of the lowest level
+     * in use, so skip straight to it.
+     * @return the next tick at which something can happen, Long.MAX_VALUE if nothing is scheduled
+     */
+    private long nextBusyTick() {
+        int level = 0;
+        while (level < LEVELS && counts[level] == 0) {
+            ++level;
+        }
+        if (level == LEVELS) {
+            return Long.MAX_VALUE;
+        }
+        if (level == 0) {
+            return currentTick + 1;
+        }
+        long span = 1L << (SLOT_BITS * level);
+        return (Math.floorDiv(currentTick, span) + 1) * span;
+    }
+
+    private long ceilTick(long millis) {
+        return -Math.floorDiv(-millis, tickMillis);
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    private void schedule(Timer timer) {
+        if (timer.deadline <= currentTick) {
+            link(due, timer, -1);
+        } else {
+            place(timer, currentTick);
+        }
+    }
+
+    /**
+     * Put the timer in the lowest level whose span reaches its deadline, measured from the given tick.
+     */
+    private void place(Timer timer, long from) {
+        long delta = Math.min(timer.deadline - from, HORIZON - 1);
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            ++level;
+        }
+        link(wheels[level][slot(from + delta, level)], timer, level);
+    }
+
+    private void cascade(Timer slot, long tick) {
+        Timer timer = slot.next;
+        while (timer != slot) {
+            Timer next = timer.next;
+            unlink(timer);
+            place(timer, tick);
+            timer = next;
+        }
+    }
+
+    private void fire(Timer slot, long tick, List<ExpiryRegistration> expiringSoon,
+                      List<ExpiryRegistration> expired) {
+        Timer timer = slot.next;
+        while (timer != slot) {
+            Timer next = timer.next;
+            unlink(timer);
+            if (timer.deadline > tick) {
+                // Parked at the edge of the wheel, not yet due
+                place(timer, tick);
+            } else if (timer.expiry) {
+                ExpiryRegistration registration = timer.registration;
+                registrations.remove(registration.getFingerprint(), registration);
+                deactivate(registration);
+                expired.add(registration);
+            } else {
+                expiringSoon.add(timer.registration);
+            }
+            timer = next;
+        }
+    }
+
+    private void deactivate(ExpiryRegistration registration) {
+        registration.active = false;
+        if (registration.warning.isLinked()) {
+            unlink(registration.warning);
+        }
+        if (registration.expiry.isLinked()) {
+            unlink(registration.expiry);
+        }
+    }
+
+    /**
+     * @param level the level of the wheel the slot is in, or -1 for the due list
+     */
+    private void link(Timer slot, Timer timer, int level) {
+        timer.prev = slot.prev;
+        timer.next = slot;
+        slot.prev.next = timer;
+        slot.prev = timer;
+        timer.level = level;
+        if (level >= 0) {
+            ++counts[level];
+        }
+    }
+
+    private void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        if (timer.level >= 0) {
+            --counts[timer.level];
+        }
+    }
+
+    /**
+     * A deadline in a slot's circular doubly linked list, so it can be unlinked in constant time. Each slot has a
+     * sentinel that carries no registration.
+     */
+    static final class Timer {
+        private final ExpiryRegistration registration;
+        private final long deadline;
+        private final boolean expiry;
+        private Timer prev;
+        private Timer next;
+        private int level;
+
+        Timer(ExpiryRegistration registration, long deadline, boolean expiry) {
+            this.registration = registration;
+            this.deadline = deadline;
+            this.expiry = expiry;
+        }
+
+        private static Timer sentinel() {
+            Timer sentinel = new Timer(null, 0, false);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        private boolean isLinked() {
+            return next != null;
+        }
+    }
+
+    public static class Builder {
+        private Clock clock = Clock.systemUTC();
+        private Duration tick = Duration.ofMinutes(1);
+        private Duration warningPeriod = Duration.ofDays(30);
+        private ExpiryListener listener;
+
+        private Builder() {
+        }
+
+        public Builder clock(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("clock may not be null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param tick the resolution of the wheel, at least a millisecond
+         * @return this builder
+         */
+        public Builder tick(Duration tick) {
+            if (tick == null || tick.toMillis() < 1) {
+                throw new IllegalArgumentException("tick must be at least a millisecond, was " + tick);
+            }
+            this.tick = tick;
+            return this;
+        }
+
+        /**
+         * @param warningPeriod how long before notAfter a certificate is reported as expiring soon. Zero to only
+         *                      report expiry.
+         * @return this builder
+         */
+        public Builder warningPeriod(Duration warningPeriod) {
+            if (warningPeriod == null || warningPeriod.isNegative()) {
+                throw new IllegalArgumentException("warningPeriod may not be null or negative, was " + warningPeriod);
+            }
+            this.warningPeriod = warningPeriod;
+            return this;
+        }
+
+        public Builder listener(ExpiryListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public ExpiryTracker build() {
+            if (listener == null) {
+                throw new IllegalStateException("A listener is required");
+            }
+            return new ExpiryTracker(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.metrics;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.validation.ValidationError;
+
+/**
+ * Receives measurements of certificate handling from the SDK, for adapting to a metrics library such as Micrometer
+ * or Dropwizard Metrics. Register an implementation with {@link Metrics#register(CertMetrics)}.
+ *
+ * Every method has an empty default so that adapters only implement what they record. Methods are called on the
+ * threads doing the work, often concurrently, so implementations must be thread safe and should be cheap.
+ */
+public interface CertMetrics {
+
+    /**
+     * A listener that records nothing, used when none is registered.
+     */
+    CertMetrics NO_OP = new CertMetrics() {
+    };
+
+    /**
+     * A phase of decoding a certificate completed, successfully or not.
+     * @param phase the phase
+     * @param nanos how long it took. A phase that depends on another phase which had not yet run includes the time
+     *              taken by that phase.
+     */
+    default void phaseCompleted(Phase phase, long nanos) {
+    }
+
+    /**
+     * A phase of decoding a certificate failed. A phase that depends on a phase that failed fails too, and is
+     * reported with the same error.
+     * @param phase the phase
+     * @param error why it failed
+     * @param cause the exception that caused the failure, or null if there was none
+     */
+    default void phaseFailed(Phase phase, ValidationError error, Throwable cause) {
+    }
+
+    /**
+     * The QCStatements of a certificate were decoded.
+     * @param type the eIDAS certificate type they declare, or null if they declare none
+     */
+    default void eidasCertType(EidasCertType type) {
+    }
+
+    /**
+     * A cache was used.
+     * @param cache the name of the cache
+     * @param outcome what happened
+     */
+    default void cacheAccess(String cache, CacheOutcome outcome) {
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.metrics;
+
+/**
+ * Holds the {@link CertMetrics} listener the SDK reports to. There is one listener per class loader; to report to
+ * several, register one that forwards to each.
+ *
+ * Instrumented code reads the listener once per measurement and skips taking timestamps when it is
+ * {@link CertMetrics#NO_OP}, so the cost without a listener is a volatile read.
+ */
+public final class Metrics {
+
+    private static volatile CertMetrics listener = CertMetrics.NO_OP;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param metrics the listener to report to, replacing any registered before
+     */
+    public static void register(CertMetrics metrics) {
+        if (metrics == null) {
+            throw new NullPointerException("metrics");
+        }
+        listener = metrics;
+    }
+
+    /**
+     * Stop reporting.
+     */
+    public static void unregister() {
+        listener = CertMetrics.NO_OP;
+    }
+
+    /**
+     * @return the registered listener, or {@link CertMetrics#NO_OP} if there is none
+     */
+    public static CertMetrics current() {
+        return listener;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.metrics;
+
+/**
+ * The pieces of work {@link com.forgerock.cert.Psd2CertInfo} does to decode a certificate. Each is done at most once
+ * per instance, eagerly by the constructor or on first use by a lazy instance.
+ */
+public enum Phase {
+    /**
+     * Locating the fields and extensions of the certificate's TBSCertificate, which stands in for creating an
+     * X509CertificateHolder.
+     */
+    CERTIFICATE,
+    QC_STATEMENTS,
+    PSD2_QC_STATEMENT,
+    AUTHORITY_INFO_ACCESS,
+    ORGANISATION_ID
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.psd2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Identifies a National Competent Authority, by the country code and the 2 to 8 letter identifier that ETSI
+ * TS 119 495 uses in PSD2 organisation identifiers, e.g. GB and FCA in PSDGB-FCA-123456.
+ *
+ * Instances are canonical: every parse of the same authority returns the same instance, so they are cheap to hold in
+ * large numbers and fast to use as map keys. The interning table is lock free and sized far beyond the number of
+ * authorities in the EEA; should it ever fill up, new authorities are still returned, just not shared.
+ */
+public final class NcaId {
+
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 8;
+    private static final int TABLE_SIZE = 1024;
+
+    private static final AtomicLongArray KEYS = new AtomicLongArray(TABLE_SIZE);
+    private static final AtomicReferenceArray<NcaId> VALUES = new AtomicReferenceArray<>(TABLE_SIZE);
+
+    private final String countryCode;
+    private final String id;
+    private final String text;
+
+    private NcaId(String countryCode, String id) {
+        this.countryCode = countryCode;
+        this.id = id;
+        this.text = countryCode + '-' + id;
+    }
+
+    /**
+     * @param countryCode the two letter country code of the authority
+     * @param id the identifier of the authority, 2 to 8 upper case letters
+     * @return the canonical instance
+     * @throws IllegalArgumentException if the country code or identifier is malformed
+     */
+    public static NcaId of(String countryCode, String id) {
+        if (countryCode == null || countryCode.length() != 2 || !isUpper(countryCode.charAt(0))
+                || !isUpper(countryCode.charAt(1))) {
+            throw new IllegalArgumentException("Malformed country code " + countryCode);
+        }
+        if (id == null || !isValidId(id, 0, id.length())) {
+            throw new IllegalArgumentException("Malformed NCA identifier " + id);
+        }
+        return intern(id, 0, id.length(), OrganisationIdentifier.countryCode(countryCode, 0));
+    }
+
+    /**
+     * @return true if the region holds 2 to 8 upper case letters
+     */
+    static boolean isValidId(CharSequence value, int start, int end) {
+        int length = end - start;
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; ++i) {
+            if (!isUpper(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the canonical instance for an authority without creating any strings once it has been seen.
+     * @param value holds the identifier, which must already have been checked with {@link #isValidId}
+     * @param start the start of the identifier
+     * @param end the end of the identifier
+     * @param countryCode the canonical country code
+     */
+    static NcaId intern(CharSequence value, int start, int end, String countryCode) {
+        // 5 bits per letter of the identifier, then 5 bits for each letter of the country code. The key is never
+        // zero, which marks an empty slot, because identifiers have at least two letters.
+        long key = 0;
+        for (int i = start; i < end; ++i) {
+            key = (key << 5) | (value.charAt(i) - 'A' + 1);
+        }
+        key = (key << 10) | ((countryCode.charAt(0) - 'A' + 1) << 5) | (countryCode.charAt(1) - 'A' + 1);
+
+        int slot = (int) (mix(key) & (TABLE_SIZE - 1));
+        for (int probe = 0; probe < TABLE_SIZE; ++probe) {
+            long existing = KEYS.get(slot);
+            if (existing == key) {
+                NcaId nca = VALUES.get(slot);
+                if (nca != null) {
+                    return nca;
+                }
+                // Another thread has claimed the slot and is about to publish the value
+                return awaitValue(slot);
+            }
+            if (existing == 0) {
+                if (KEYS.compareAndSet(slot, 0, key)) {
+                    NcaId nca = new NcaId(countryCode, value.subSequence(start, end).toString().intern());
+                    VALUES.set(slot, nca);
+                    return nca;
+                }
+                // Lost the race for this slot, so look at it again
+                --probe;
+                continue;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return new NcaId(countryCode, value.subSequence(start, end).toString());
+    }
+
+    private static NcaId awaitValue(int slot) {
+        NcaId nca;
+        while ((nca = VALUES.get(slot)) == null) {
+            Thread.yield();
+        }
+        return nca;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * @return the two letter country code of the authority
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * @return the identifier of the authority within its country, e.g. FCA
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NcaId)) return false;
+        NcaId that = (NcaId) o;
+        return countryCode.equals(that.countryCode) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    /**
+     * @return the country code and identifier separated by a hyphen, e.g. GB-FCA
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.psd2;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index of PSD2 organisation identifiers by the National Competent Authority that authorised them, so that all
+ * of the TPPs under an authority can be found with a single lookup.
+ *
+ * The index is safe for concurrent use. Identifiers that are not PSD2 authorisation numbers have no NCA and are not
+ * indexed.
+ */
+public class NcaIndex {
+
+    private final ConcurrentMap<NcaId, Set<OrganisationIdentifier>> organisations = new ConcurrentHashMap<>();
+
+    /**
+     * @param organisation the organisation to index
+     * @return true if the organisation was added, false if it was already indexed or has no NCA
+     */
+    public boolean add(OrganisationIdentifier organisation) {
+        NcaId nca = organisation.getNca().orElse(null);
+        if (nca == null) {
+            return false;
+        }
+        return organisations.computeIfAbsent(nca, key -> ConcurrentHashMap.newKeySet()).add(organisation);
+    }
+
+    /**
+     * @param organisation the organisation to remove
+     * @return true if the organisation was indexed
+     */
+    public boolean remove(OrganisationIdentifier organisation) {
+        NcaId nca = organisation.getNca().orElse(null);
+        if (nca == null) {
+            return false;
+        }
+        Set<OrganisationIdentifier> regulated = organisations.get(nca);
+        // Empty sets are left in place; there are few authorities and removing them would race with add.
+        return regulated != null && regulated.remove(organisation);
+    }
+
+    /**
+     * @param nca a National Competent Authority
+     * @return a live, unmodifiable view of the organisations indexed under the authority
+     */
+    public Set<OrganisationIdentifier> getOrganisations(NcaId nca) {
+        Set<OrganisationIdentifier> regulated = organisations.get(nca);
+        return regulated == null ? Collections.emptySet() : Collections.unmodifiableSet(regulated);
+    }
+
+    /**
+     * @return a live, unmodifiable view of the authorities that have, or have had, organisations indexed
+     */
+    public Set<NcaId> getAuthorities() {
+        return Collections.unmodifiableSet(organisations.keySet());
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.psd2;
+
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An organisation identifier, as carried in the organizationIdentifier attribute of the subject of an eIDAS
+ * certificate, split into its parts.
+ *
+ * The format is defined by section 5.1.4 of ETSI TS 119 412-1, with the PSD2 specific form defined by section 5.2.1
+ * of ETSI TS 119 495:
+ * <pre>
+ * PSD GB - FCA - 123456     PSD2 authorisation number: type, country, NCA identifier, authorisation number
+ * NTR GB - 01234567         National trade register:   type, country, registration number
+ * VAT GB - 123456789        VAT number:                type, country, VAT number
+ * </pre>
+ *
+ * Parsing checks each character in place and creates no strings: the country code and NCA are canonical instances,
+ * and the identifier is only cut out of the value when it is asked for.
+ */
+public final class OrganisationIdentifier {
+
+    /**
+     * The legal person identity types of ETSI TS 119 412-1 that this parser supports.
+     */
+    public enum Type {
+        /**
+         * Authorisation number of a PSD2 payment service provider, issued by a National Competent Authority
+         */
+        PSD,
+        /**
+         * Identifier from a national trade register
+         */
+        NTR,
+        /**
+         * Value Added Tax identification number
+         */
+        VAT
+    }
+
+    private static final int TYPE_LENGTH = 3;
+    private static final int COUNTRY_LENGTH = 2;
+    private static final AtomicReferenceArray<String> COUNTRY_CODES = new AtomicReferenceArray<>(26 * 26);
+
+    private final String value;
+    private final Type type;
+    private final String countryCode;
+    private final NcaId nca;
+    private final int identifierStart;
+
+    private OrganisationIdentifier(String value, Type type, String countryCode, NcaId nca, int identifierStart) {
+        this.value = value;
+        this.type = type;
+        this.countryCode = countryCode;
+        this.nca = nca;
+        this.identifierStart = identifierStart;
+    }
+
+    /**
+     * Parse an organisation identifier.
+     * @param value the value of the organizationIdentifier attribute, e.g. PSDGB-FCA-123456
+     * @return a valid result holding the parts of the identifier, or an invalid result describing the first problem
+     */
+    public static ValidationResult<OrganisationIdentifier> parse(String value) {
+        if (value == null) {
+            return ValidationResult.invalid(ValidationError.NO_ORGANISATION_IDENTIFIER);
+        }
+        int length = value.length();
+        if (length < TYPE_LENGTH + COUNTRY_LENGTH + 2) {
+            return malformed(value, "too short");
+        }
+
+        Type type = type(value);
+        if (type == null) {
+            return malformed(value, "unsupported identity type");
+        }
+        if (!isUpper(value.charAt(3)) || !isUpper(value.charAt(4))) {
+            return malformed(value, "country code must be two upper case letters");
+        }
+        if (value.charAt(5) != '-') {
+            return malformed(value, "expected '-' after the country code");
+        }
+        String countryCode = countryCode(value, TYPE_LENGTH);
+
+        int identifierStart = TYPE_LENGTH + COUNTRY_LENGTH + 1;
+        NcaId nca = null;
+        if (type == Type.PSD) {
+            int ncaEnd = value.indexOf('-', identifierStart);
+            if (ncaEnd < 0) {
+                return malformed(value, "expected '-' after the NCA identifier");
+            }
+            if (!NcaId.isValidId(value, identifierStart, ncaEnd)) {
+                return malformed(value, "NCA identifier must be 2 to 8 upper case letters");
+            }
+            nca = NcaId.intern(value, identifierStart, ncaEnd, countryCode);
+            identifierStart = ncaEnd + 1;
+        }
+
+        if (identifierStart >= length) {
+            return malformed(value, "identifier is empty");
+        }
+        for (int i = identifierStart; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c == 0x7f) {
+                return malformed(value, "identifier contains whitespace or a control character");
+            }
+        }
+        return ValidationResult.valid(new OrganisationIdentifier(value, type, countryCode, nca, identifierStart));
+    }
+
+    private static Type type(String value) {
+        char first = value.charAt(0);
+        char second = value.charAt(1);
+        char third = value.charAt(2);
+        if (first == 'P' && second == 'S' && third == 'D') {
+            return Type.PSD;
+        }
+        if (first == 'N' && second == 'T' && third == 'R') {
+            return Type.NTR;
+        }
+        if (first == 'V' && second == 'A' && third == 'T') {
+            return Type.VAT;
+        }
+        return null;
+    }
+
+    /**
+     * @return the canonical instance of the two upper case letters at offset in value
+     */
+    static String countryCode(CharSequence value, int offset) {
+        int index = (value.charAt(offset) - 'A') * 26 + (value.charAt(offset + 1) - 'A');
+        String code = COUNTRY_CODES.get(index);
+        if (code == null) {
+            COUNTRY_CODES.compareAndSet(index, null, value.subSequence(offset, offset + 2).toString().intern());
+            code = COUNTRY_CODES.get(index);
+        }
+        return code;
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static ValidationResult<OrganisationIdentifier> malformed(String value, String reason) {
+        return ValidationResult.invalid(ValidationError.MALFORMED_ORGANISATION_IDENTIFIER,
+                () -> reason + ": " + value);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the two letter country code
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * @return the National Competent Authority that issued a PSD2 authorisation number, empty for other types
+     */
+    public Optional<NcaId> getNca() {
+        return Optional.ofNullable(nca);
+    }
+
+    /**
+     * @return the identifier within the scheme, e.g. the authorisation number 123456 of PSDGB-FCA-123456
+     */
+    public String getIdentifier() {
+        return value.substring(identifierStart);
+    }
+
+    /**
+     * @return the whole organisation identifier
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OrganisationIdentifier)) return false;
+        return value.equals(((OrganisationIdentifier) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
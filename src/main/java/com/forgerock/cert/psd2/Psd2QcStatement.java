@@ -34,6 +34,8 @@ public class Psd2QcStatement extends ASN1Object {
     private RolesOfPsp roles;
     private String ncaName;
     private String ncaId;
+    // The last encoding, which stays valid for as long as the roles encode to the same primitive.
+    private volatile Encoding encoding;
 
     public Psd2QcStatement(RolesOfPsp rolesOfPsp, String ncaName, String ncaId){
         this.roles = rolesOfPsp;
@@ -100,11 +102,27 @@ public class Psd2QcStatement extends ASN1Object {
 
     @Override
     public ASN1Primitive toASN1Primitive() {
-        ASN1EncodableVector inner = new ASN1EncodableVector();
-        inner.add(this.roles.toASN1Primitive());
-        inner.add(new DERUTF8String(this.ncaName));
-        inner.add(new DERUTF8String(this.ncaId));
-        return new DERSequence(inner);
+        ASN1Primitive encodedRoles = this.roles.toASN1Primitive();
+        Encoding encoding = this.encoding;
+        if(encoding == null || encoding.roles != encodedRoles){
+            ASN1EncodableVector inner = new ASN1EncodableVector();
+            inner.add(encodedRoles);
+            inner.add(new DERUTF8String(this.ncaName));
+            inner.add(new DERUTF8String(this.ncaId));
+            encoding = new Encoding(encodedRoles, new DERSequence(inner));
+            this.encoding = encoding;
+        }
+        return encoding.statement;
+    }
+
+    private static final class Encoding {
+        private final ASN1Primitive roles;
+        private final ASN1Primitive statement;
+
+        private Encoding(ASN1Primitive roles, ASN1Primitive statement) {
+            this.roles = roles;
+            this.statement = statement;
+        }
     }
 
     public RolesOfPsp getRoles() {
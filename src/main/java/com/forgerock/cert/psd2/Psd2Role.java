@@ -20,6 +20,12 @@
  */
 package com.forgerock.cert.psd2;
 
+import com.forgerock.cert.utils.OidRegistry;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * And enum class used to specify PSD2 TPP roles.
  * This enum ties the roles to the OID's specified for those
@@ -27,23 +33,48 @@ package com.forgerock.cert.psd2;
  * <a href="https://www.etsi.org/deliver/etsi_ts/119400_119499/119495/01.01.02_60/ts_119495v010102p.pdf"></a>
  */
 public enum Psd2Role {
-    PSP_AS ("0.4.0.19495.1.1", "Account Servicing"),
-    PSP_PI("0.4.0.19495.1.2", "Payment Initiation"),
-    PSP_AI("0.4.0.19495.1.3", "Account Information"),
-    PSP_IC("0.4.0.19495.1.4", "Card Based Payment Instruments");
+    PSP_AS ("0.4.0.19495.1.1", "Account Servicing", 0),
+    PSP_PI("0.4.0.19495.1.2", "Payment Initiation", 1),
+    PSP_AI("0.4.0.19495.1.3", "Account Information", 2),
+    PSP_IC("0.4.0.19495.1.4", "Card Based Payment Instruments", 3);
+
+    /**
+     * One more than the largest role mask; every mask built by {@link #maskOf(Set)} is below it.
+     */
+    public static final int MASK_LIMIT = 1 << 4;
+
+    // values() clones its array on every call, so iterate over a shared copy instead.
+    static final Psd2Role[] VALUES = values();
+
+    private static final OidRegistry<Psd2Role> REGISTRY = new OidRegistry<>(VALUES, Psd2Role::getAsn1Oid);
 
     private final String oid;
+    private final ASN1ObjectIdentifier asn1Oid;
     private final String roleName;
+    private final int maskBit;
 
     /**
      * Constructor used by the enum Value definitions above
      * @param oid this ASN.1 OID of the PSD2 role as defined in the ETSI doc ref'd. in the
      *            class javadoc.
      * @param roleName a human readable name for the role.
+     * @param maskBit the position of the role's bit in a role mask. Masks are stored and shared between nodes, so
+     *                the bit of a role must never change.
      */
-    private Psd2Role(String oid, String roleName){
+    private Psd2Role(String oid, String roleName, int maskBit){
         this.oid = oid;
+        this.asn1Oid = new ASN1ObjectIdentifier(oid).intern();
         this.roleName = roleName;
+        this.maskBit = maskBit;
+    }
+
+    /**
+     * Find the PSD2 role with the given Object Identifier.
+     * @param oid the Object Identifier of the role
+     * @return the role, or null if the oid is not a PSD2 role
+     */
+    public static Psd2Role fromOid(ASN1ObjectIdentifier oid) {
+        return REGISTRY.get(oid);
     }
 
     /**
@@ -54,6 +85,48 @@ public enum Psd2Role {
         return oid;
     }
 
+    /**
+     * @return the ASN.1 Object Identifier of the role
+     */
+    public ASN1ObjectIdentifier getAsn1Oid() {
+        return asn1Oid;
+    }
+
+    /**
+     * @return the bit that represents this role in a role mask, which does not change when roles are added or
+     * reordered
+     */
+    public int mask() {
+        return 1 << maskBit;
+    }
+
+    /**
+     * Build a bit mask of roles, suitable for compact storage and constant time membership tests.
+     * @param roles the roles
+     * @return the mask with the bit of each role set
+     */
+    public static int maskOf(Set<Psd2Role> roles) {
+        int mask = 0;
+        for (Psd2Role role : roles) {
+            mask |= role.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * @param mask a bit mask of roles, as built by {@link #maskOf(Set)}
+     * @return the roles whose bits are set in the mask
+     */
+    public static EnumSet<Psd2Role> fromMask(int mask) {
+        EnumSet<Psd2Role> roles = EnumSet.noneOf(Psd2Role.class);
+        for (Psd2Role role : VALUES) {
+            if ((mask & role.mask()) != 0) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
+
     /**
      * Returns a role name for the role (used for descriptions etc)
      * @return the role name
@@ -22,6 +22,9 @@ package com.forgerock.cert.psd2;
 
 import org.bouncycastle.asn1.*;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  *
  * ASN.1 definition
@@ -55,6 +58,16 @@ import org.bouncycastle.asn1.*;
  */
 public class RoleOfPsp extends ASN1Object {
 
+    // Every role has exactly one encoding, so build each of them once and share it.
+    private static final Map<Psd2Role, ASN1Primitive> ENCODED_ROLES = new EnumMap<>(Psd2Role.class);
+
+    static {
+        for(Psd2Role role : Psd2Role.VALUES){
+            ENCODED_ROLES.put(role, new DERSequence(new ASN1Encodable[] {
+                    role.getAsn1Oid(), new DERUTF8String(role.getRoleName())}));
+        }
+    }
+
     public Psd2Role role;
 
     public static RoleOfPsp getInstance(Object obj){
@@ -69,28 +82,28 @@ public class RoleOfPsp extends ASN1Object {
 
     private RoleOfPsp(ASN1Sequence seq){
         ASN1ObjectIdentifier oid = ASN1ObjectIdentifier.getInstance(seq.getObjectAt(0));
-        String oidString = oid.toString();
-        for(Psd2Role role : Psd2Role.values()){
-            if(oidString.equals(role.getOid())){
-                this.role = role;
-            }
-        }
+        this.role = Psd2Role.fromOid(oid);
     }
 
     public RoleOfPsp(Psd2Role role){
         this.role = role;
-        // This might throw so check it here on construction rather than when required later
-        // as this might aid debugging should things go wrong.
-        ASN1ObjectIdentifier oid = new ASN1ObjectIdentifier(role.getOid());
     }
 
     @Override
     public ASN1Primitive toASN1Primitive() {
-        ASN1EncodableVector v = new ASN1EncodableVector();
-        ASN1ObjectIdentifier oid = new ASN1ObjectIdentifier(role.getOid());
-        v.add(oid);
-        v.add(new DERUTF8String(this.role.getRoleName()));
-        return new DERSequence(v);
+        return encoded(role);
+    }
+
+    /**
+     * @param role a PSD2 role
+     * @return the shared encoding of the RoleOfPSP sequence for the role
+     */
+    static ASN1Primitive encoded(Psd2Role role) {
+        ASN1Primitive encoded = ENCODED_ROLES.get(role);
+        if(encoded == null){
+            throw new IllegalStateException("RoleOfPsp has no role to encode");
+        }
+        return encoded;
     }
 
     public Psd2Role getRole() {
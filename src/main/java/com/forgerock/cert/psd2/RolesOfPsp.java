@@ -26,9 +26,15 @@ import org.bouncycastle.asn1.*;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class RolesOfPsp extends ASN1Object {
 
+    // The encoding of a set of distinct roles depends only on which roles are present, so the encodings are shared
+    // between instances and indexed by the role mask. Roles are encoded in declaration order so that
+    // equal sets of roles always have the same encoding.
+    private static final AtomicReferenceArray<ASN1Primitive> ENCODED_ROLE_SETS =
+            new AtomicReferenceArray<>(Psd2Role.MASK_LIMIT);
 
     private Set<RoleOfPsp> roles = new HashSet<RoleOfPsp>();
 
@@ -68,6 +74,35 @@ public class RolesOfPsp extends ASN1Object {
 
     @Override
     public ASN1Primitive toASN1Primitive() {
+        int mask = 0;
+        for(RoleOfPsp roleOfPsp : roles){
+            Psd2Role role = roleOfPsp.getRole();
+            int bit = role == null ? 0 : role.mask();
+            if(bit == 0 || (mask & bit) != 0){
+                // A role we can't encode, or the same role more than once, so there is no shared encoding.
+                return encode(roles);
+            }
+            mask |= bit;
+        }
+        ASN1Primitive encoded = ENCODED_ROLE_SETS.get(mask);
+        if(encoded == null){
+            encoded = encode(mask);
+            ENCODED_ROLE_SETS.compareAndSet(mask, null, encoded);
+        }
+        return encoded;
+    }
+
+    private static ASN1Primitive encode(int mask) {
+        ASN1EncodableVector roleVector = new ASN1EncodableVector();
+        for(Psd2Role role : Psd2Role.VALUES){
+            if((mask & role.mask()) != 0){
+                roleVector.add(RoleOfPsp.encoded(role));
+            }
+        }
+        return new DERSequence(roleVector);
+    }
+
+    private static ASN1Primitive encode(Set<RoleOfPsp> roles) {
         ASN1EncodableVector roleVector = new ASN1EncodableVector();
         roles.forEach((s)->{
             roleVector.add(s.toASN1Primitive());
@@ -90,4 +125,19 @@ public class RolesOfPsp extends ASN1Object {
     public Set<RoleOfPsp> getRolesOfPsp(){
         return this.roles;
     }
+
+    /**
+     * @return the mask, as built by {@link Psd2Role#maskOf(Set)}, of the roles granted. Roles that aren't recognised
+     * are left out.
+     */
+    public int getRoleMask(){
+        int mask = 0;
+        for(RoleOfPsp roleOfPsp : roles){
+            Psd2Role role = roleOfPsp.getRole();
+            if(role != null){
+                mask |= role.mask();
+            }
+        }
+        return mask;
+    }
 }
@@ -0,0 +1,430 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.utils.ByteEncoder;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Revocation checking from CRLs, for issuers that don't run an OCSP responder.
+ *
+ * CRLs are parsed as a stream, with their signatures verified against the issuer's key, and the serial numbers they
+ * list are written to one file per issuer as sorted fixed width records. The files are memory mapped, so the
+ * revoked serials of even very large CRLs live outside the Java heap, and a lookup is a binary search over the
+ * mapping that allocates nothing beyond the serial number's bytes. The files are reopened when an index is created
+ * over the same directory, so a restart doesn't need the CRLs to be downloaded again.
+ *
+ * Delta CRLs are merged into the records of the complete CRL they apply to. A CRL that is older than the one
+ * already indexed is ignored. A CRL is no longer current after its nextUpdate time or, if it has none, once it is
+ * older than the maximum age.
+ *
+ * Lookups are lock free. Updates are serialised, and replace an issuer's file atomically, so lookups always see
+ * either the old or the new CRL.
+ */
+public class CrlIndex {
+
+    private static final int MAGIC = 0x43524c49;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAX_CRL_NUMBER_LENGTH = 24;
+    private static final String SUFFIX = ".crl-index";
+
+    /**
+     * How long a CRL without a nextUpdate time is treated as current, unless another maximum age is given.
+     */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+
+    private final Path directory;
+    private final Clock clock;
+    private final long maxAgeMillis;
+    private final ConcurrentHashMap<X500Principal, Table> tables = new ConcurrentHashMap<>();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    /**
+     * Open an index, loading the CRLs already stored in the directory.
+     * @param directory where the index files are kept, created if it doesn't exist
+     * @throws IOException if the directory can't be read
+     */
+    public CrlIndex(Path directory) throws IOException {
+        this(directory, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock the source of wall clock time used to decide whether a CRL is current; intended to be replaced
+     *              in tests.
+     */
+    public CrlIndex(Path directory, Clock clock) throws IOException {
+        this(directory, clock, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param maxAge how long after its thisUpdate time a CRL that has no nextUpdate time is treated as current
+     */
+    public CrlIndex(Path directory, Clock clock, Duration maxAge) throws IOException {
+        if (maxAge == null || maxAge.isNegative()) {
+            throw new IllegalArgumentException("maxAge may not be null or negative, was " + maxAge);
+        }
+        this.directory = directory;
+        this.clock = clock;
+        this.maxAgeMillis = maxAge.toMillis();
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    try {
+                        Table table = Table.open(file);
+                        tables.put(table.issuer, table);
+                    } catch (IOException | RuntimeException e) {
+                        // A damaged file is dropped; the issuer's CRL will be fetched again
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a complete or delta CRL to the index.
+     * @param crl the DER encoded CRL, which is read but not closed
+     * @param issuer the certificate of the CRL's issuer
+     * @return true if the index changed, false if the CRL is no newer than the one already indexed
+     * @throws IOException if the CRL can't be read or the index can't be written
+     * @throws CRLException if the CRL is malformed, its signature doesn't verify, or it is a delta CRL whose base
+     * CRL has not been indexed
+     */
+    public boolean update(InputStream crl, X509Certificate issuer) throws IOException, CRLException {
+        CrlStreamParser parsed = CrlStreamParser.parse(crl, issuer);
+        updateLock.lock();
+        try {
+            Table current = tables.get(parsed.getIssuer());
+            Table updated;
+            if (parsed.getDeltaBase() == null) {
+                if (current != null && !isNewer(parsed, current)) {
+                    return false;
+                }
+                updated = write(parsed, null);
+            } else {
+                if (current == null || current.crlNumber == null
+                        || current.crlNumber.compareTo(parsed.getDeltaBase()) < 0) {
+                    throw new CRLException("Delta CRL from " + parsed.getIssuer() + " needs base CRL number "
+                            + parsed.getDeltaBase() + " to be indexed first");
+                }
+                if (!isNewer(parsed, current)) {
+                    return false;
+                }
+                updated = write(parsed, current);
+            }
+            tables.put(updated.issuer, updated);
+            return true;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * @param crlFile a file holding a DER encoded CRL
+     * @see #update(InputStream, X509Certificate)
+     */
+    public boolean update(Path crlFile, X509Certificate issuer) throws IOException, CRLException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(crlFile), 64 * 1024)) {
+            return update(in, issuer);
+        }
+    }
+
+    /**
+     * Check whether the certificate is listed in the indexed CRL of its issuer, whether or not that CRL is current.
+     * @param cert the certificate to check
+     * @return true if the certificate is revoked or on hold
+     */
+    public boolean isRevoked(X509Certificate cert) {
+        return isRevoked(cert.getIssuerX500Principal(), cert.getSerialNumber());
+    }
+
+    /**
+     * Check whether a serial number is listed in the indexed CRL of an issuer, whether or not that CRL is current.
+     * @param issuer the issuer of the certificate
+     * @param serialNumber the serial number of the certificate
+     * @return true if the certificate is revoked or on hold
+     */
+    public boolean isRevoked(X500Principal issuer, BigInteger serialNumber) {
+        Table table = tables.get(issuer);
+        return table != null && table.find(serialNumber) >= 0;
+    }
+
+    /**
+     * Check the revocation status of a certificate.
+     * @param cert the certificate to check
+     * @return the status, which is {@link CertStatus#UNKNOWN} if no CRL from the certificate's issuer has been
+     * indexed, or the indexed CRL is past its nextUpdate time or, lacking one, older than the maximum age
+     */
+    public RevocationResult check(X509Certificate cert) {
+        Table table = tables.get(cert.getIssuerX500Principal());
+        if (table == null) {
+            return RevocationResult.unknown(null, null);
+        }
+        Instant thisUpdate = Instant.ofEpochMilli(table.thisUpdate);
+        Instant nextUpdate = table.nextUpdate < 0 ? null : Instant.ofEpochMilli(table.nextUpdate);
+        long now = clock.millis();
+        if (nextUpdate != null ? now >= table.nextUpdate : now - table.thisUpdate >= maxAgeMillis) {
+            return RevocationResult.unknown(thisUpdate, nextUpdate);
+        }
+        int index = table.find(cert.getSerialNumber());
+        if (index < 0) {
+            return RevocationResult.good(thisUpdate, nextUpdate);
+        }
+        int reason = table.reason(index);
+        return RevocationResult.revoked(thisUpdate, nextUpdate, Instant.ofEpochMilli(table.revocationTime(index)),
+                reason == CrlRecords.NO_REASON ? null : reason);
+    }
+
+    /**
+     * @see #check(X509Certificate)
+     */
+    public RevocationResult check(Psd2CertInfo certInfo) {
+        return check(certInfo.getCertificate());
+    }
+
+    /**
+     * @return the number of the latest CRL indexed for the issuer, if there is one and it was numbered
+     */
+    public Optional<BigInteger> getCrlNumber(X500Principal issuer) {
+        Table table = tables.get(issuer);
+        return table == null ? Optional.empty() : Optional.ofNullable(table.crlNumber);
+    }
+
+    /**
+     * @return the number of certificates the issuer's indexed CRL lists, or zero if none is indexed
+     */
+    public int getRevokedCount(X500Principal issuer) {
+        Table table = tables.get(issuer);
+        return table == null ? 0 : table.count;
+    }
+
+    private static boolean isNewer(CrlStreamParser parsed, Table current) {
+        if (parsed.getCrlNumber() != null && current.crlNumber != null) {
+            return parsed.getCrlNumber().compareTo(current.crlNumber) > 0;
+        }
+        return parsed.getThisUpdate() > current.thisUpdate;
+    }
+
+    /**
+     * Write the parsed CRL, merged into the current records if it is a delta, to a new file and map it.
+     */
+    private Table write(CrlStreamParser parsed, Table base) throws IOException, CRLException {
+        byte[] issuer = parsed.getIssuer().getEncoded();
+        byte[] crlNumber = parsed.getCrlNumber() == null ? new byte[0] : parsed.getCrlNumber().toByteArray();
+        if (crlNumber.length > MAX_CRL_NUMBER_LENGTH) {
+            throw new CRLException("CRL number is too long");
+        }
+        int recordsOffset = align(HEADER_SIZE + issuer.length);
+        Path file = directory.resolve(fileName(issuer));
+        Path temp = Files.createTempFile(directory, "crl", ".tmp");
+        try {
+            int count;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.position(recordsOffset);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                count = base == null ? writeRecords(parsed.getRecords(), out) : merge(base, parsed.getRecords(), out);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(recordsOffset);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(issuer.length)
+                        .putLong(parsed.getThisUpdate()).putLong(parsed.getNextUpdate())
+                        .putInt(crlNumber.length).put(crlNumber);
+                ((Buffer) header).position(HEADER_SIZE);
+                header.put(issuer);
+                ((Buffer) header).clear();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return Table.open(file);
+    }
+
+    private static int writeRecords(CrlRecords records, OutputStream out) throws IOException {
+        byte[] data = records.array();
+        int count = 0;
+        for (int i = 0; i < records.size(); ++i) {
+            // removeFromCRL only has meaning in a delta CRL
+            if (records.reason(i) != CrlRecords.REMOVE_FROM_CRL) {
+                out.write(data, i * CrlRecords.RECORD_SIZE, CrlRecords.RECORD_SIZE);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Merge the sorted records of a delta CRL into the sorted records of the base. Entries of the delta replace those
+     * of the base, and removeFromCRL entries delete them.
+     */
+    private static int merge(Table base, CrlRecords delta, OutputStream out) throws IOException {
+        ByteBuffer baseRecords = base.records.duplicate();
+        byte[] baseRecord = new byte[CrlRecords.RECORD_SIZE];
+        byte[] deltaData = delta.array();
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        int loaded = -1;
+        while (i < base.count || j < delta.size()) {
+            if (i < base.count && loaded != i) {
+                baseRecords.get(baseRecord);
+                loaded = i;
+            }
+            int c = i >= base.count ? 1 : j >= delta.size() ? -1
+                    : CrlRecords.compare(baseRecord, 0, deltaData, j * CrlRecords.RECORD_SIZE);
+            if (c < 0) {
+                out.write(baseRecord);
+                count++;
+                i++;
+            } else {
+                if (c == 0) {
+                    i++;
+                }
+                if (delta.reason(j) != CrlRecords.REMOVE_FROM_CRL) {
+                    out.write(deltaData, j * CrlRecords.RECORD_SIZE, CrlRecords.RECORD_SIZE);
+                    count++;
+                }
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static int align(int offset) {
+        return (offset + CrlRecords.RECORD_SIZE - 1) / CrlRecords.RECORD_SIZE * CrlRecords.RECORD_SIZE;
+    }
+
+    private static String fileName(byte[] issuer) {
+        try {
+            return ByteEncoder.toHex(MessageDigest.getInstance("SHA-256").digest(issuer)) + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The mapped records of one issuer's CRL.
+     */
+    private static final class Table {
+        private final X500Principal issuer;
+        private final long thisUpdate;
+        private final long nextUpdate;
+        private final BigInteger crlNumber;
+        private final int count;
+        private final ByteBuffer records;
+
+        private Table(X500Principal issuer, long thisUpdate, long nextUpdate, BigInteger crlNumber, int count,
+                      ByteBuffer records) {
+            this.issuer = issuer;
+            this.thisUpdate = thisUpdate;
+            this.nextUpdate = nextUpdate;
+            this.crlNumber = crlNumber;
+            this.count = count;
+            this.records = records;
+        }
+
+        static Table open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC
+                        || mapped.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("Not a CRL index file: " + file);
+                }
+                int count = mapped.getInt(8);
+                int issuerLength = mapped.getInt(12);
+                long thisUpdate = mapped.getLong(16);
+                long nextUpdate = mapped.getLong(24);
+                int crlNumberLength = mapped.getInt(32);
+                int recordsOffset = align(HEADER_SIZE + issuerLength);
+                if (count < 0 || crlNumberLength < 0 || crlNumberLength > MAX_CRL_NUMBER_LENGTH || issuerLength < 0
+                        || (long) recordsOffset + (long) count * CrlRecords.RECORD_SIZE != mapped.capacity()) {
+                    throw new IOException("Corrupt CRL index file: " + file);
+                }
+                byte[] crlNumber = new byte[crlNumberLength];
+                byte[] issuer = new byte[issuerLength];
+                ByteBuffer view = mapped.duplicate();
+                ((Buffer) view).position(36);
+                view.get(crlNumber);
+                ((Buffer) view).position(HEADER_SIZE);
+                view.get(issuer);
+                ((Buffer) view).position(recordsOffset);
+                return new Table(new X500Principal(issuer), thisUpdate, nextUpdate,
+                        crlNumberLength == 0 ? null : new BigInteger(crlNumber), count, view.slice());
+            }
+        }
+
+        int find(BigInteger serial) {
+            CrlRecords.Key key = CrlRecords.Key.of(serial);
+            return key == null ? -1 : CrlRecords.find(records, count, key);
+        }
+
+        long revocationTime(int index) {
+            return records.getLong(index * CrlRecords.RECORD_SIZE + CrlRecords.SERIAL_LENGTH);
+        }
+
+        int reason(int index) {
+            return records.getInt(index * CrlRecords.RECORD_SIZE + CrlRecords.SERIAL_LENGTH + 8);
+        }
+    }
+}
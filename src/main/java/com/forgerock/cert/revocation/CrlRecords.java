@@ -0,0 +1,260 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.cert.CRLException;
+import java.util.Arrays;
+
+/**
+ * Revoked certificate entries held as fixed width records in a single array, which is how they are also laid out in
+ * the files of a {@link CrlIndex}. Each record is {@value #RECORD_SIZE} bytes:
+ *
+ * <pre>
+ * serial          20 bytes, big endian, left padded with zeros
+ * revocationTime  8 bytes, milliseconds since the epoch
+ * reason          4 bytes, the CRLReason code or -1
+ * </pre>
+ *
+ * Serial numbers are compared as unsigned 160 bit integers. RFC 5280 limits serial numbers to 20 octets; a CRL
+ * listing a longer one is rejected.
+ */
+final class CrlRecords {
+
+    static final int SERIAL_LENGTH = 20;
+    static final int RECORD_SIZE = 32;
+    static final int NO_REASON = -1;
+    static final int REMOVE_FROM_CRL = 8;
+
+    private byte[] data = new byte[RECORD_SIZE * 64];
+    private int count;
+
+    int size() {
+        return count;
+    }
+
+    byte[] array() {
+        return data;
+    }
+
+    void add(byte[] serial, int off, int len, long revocationTime, int reason) throws CRLException {
+        // Drop the sign octet, and any other leading zeros, so every encoding of a number has one key
+        while (len > 1 && serial[off] == 0) {
+            off++;
+            len--;
+        }
+        if (len > SERIAL_LENGTH) {
+            throw new CRLException("CRL lists a serial number longer than " + SERIAL_LENGTH + " octets");
+        }
+        if ((count + 1) * RECORD_SIZE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        int record = count * RECORD_SIZE;
+        Arrays.fill(data, record, record + SERIAL_LENGTH - len, (byte) 0);
+        System.arraycopy(serial, off, data, record + SERIAL_LENGTH - len, len);
+        putLong(data, record + SERIAL_LENGTH, revocationTime);
+        putInt(data, record + SERIAL_LENGTH + 8, reason);
+        count++;
+    }
+
+    /**
+     * Sort the records by serial number, keeping one record for each serial number listed more than once.
+     */
+    void sort() {
+        if (count > 1) {
+            quickSort(0, count - 1, new byte[RECORD_SIZE]);
+            int unique = 1;
+            for (int i = 1; i < count; ++i) {
+                if (compare(data, i * RECORD_SIZE, data, (unique - 1) * RECORD_SIZE) != 0) {
+                    if (unique != i) {
+                        System.arraycopy(data, i * RECORD_SIZE, data, unique * RECORD_SIZE, RECORD_SIZE);
+                    }
+                    unique++;
+                }
+            }
+            count = unique;
+        }
+    }
+
+    int reason(int index) {
+        return getInt(data, index * RECORD_SIZE + SERIAL_LENGTH + 8);
+    }
+
+    /**
+     * A serial number in the form records are searched by: the three big endian words of its 20 byte record key.
+     */
+    static final class Key {
+        final long high;
+        final long middle;
+        final int low;
+
+        private Key(long high, long middle, int low) {
+            this.high = high;
+            this.middle = middle;
+            this.low = low;
+        }
+
+        /**
+         * @return the key, or null if the serial number is too long to be in an index
+         */
+        static Key of(BigInteger serial) {
+            byte[] bytes = serial.toByteArray();
+            int off = 0;
+            int len = bytes.length;
+            while (len > 1 && bytes[off] == 0) {
+                off++;
+                len--;
+            }
+            if (len > SERIAL_LENGTH) {
+                return null;
+            }
+            long high = 0;
+            long middle = 0;
+            int low = 0;
+            int pad = SERIAL_LENGTH - len;
+            for (int i = 0; i < SERIAL_LENGTH; ++i) {
+                int b = i < pad ? 0 : bytes[off + i - pad] & 0xff;
+                if (i < 8) {
+                    high = (high << 8) | b;
+                } else if (i < 16) {
+                    middle = (middle << 8) | b;
+                } else {
+                    low = (low << 8) | b;
+                }
+            }
+            return new Key(high, middle, low);
+        }
+
+        /**
+         * @return the negative, zero or positive result of comparing this key with the record at the offset
+         */
+        int compareTo(ByteBuffer records, int offset) {
+            int c = Long.compareUnsigned(high, records.getLong(offset));
+            if (c == 0) {
+                c = Long.compareUnsigned(middle, records.getLong(offset + 8));
+                if (c == 0) {
+                    c = Integer.compareUnsigned(low, records.getInt(offset + 16));
+                }
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Binary search sorted records.
+     * @return the index of the record with the key, or -1 if there is none
+     */
+    static int find(ByteBuffer records, int count, Key key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = key.compareTo(records, mid * RECORD_SIZE);
+            if (c > 0) {
+                low = mid + 1;
+            } else if (c < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    static int compare(byte[] a, int aOff, byte[] b, int bOff) {
+        for (int i = 0; i < SERIAL_LENGTH; ++i) {
+            int c = (a[aOff + i] & 0xff) - (b[bOff + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private void quickSort(int low, int high, byte[] swap) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            // Median of three as the pivot, moved to the end
+            if (compareRecords(mid, low) < 0) {
+                swap(mid, low, swap);
+            }
+            if (compareRecords(high, low) < 0) {
+                swap(high, low, swap);
+            }
+            if (compareRecords(high, mid) < 0) {
+                swap(high, mid, swap);
+            }
+            swap(mid, high, swap);
+            int store = low;
+            for (int i = low; i < high; ++i) {
+                if (compareRecords(i, high) < 0) {
+                    swap(i, store++, swap);
+                }
+            }
+            swap(store, high, swap);
+            // Recurse into the smaller side to bound the stack depth
+            if (store - low < high - store) {
+                quickSort(low, store - 1, swap);
+                low = store + 1;
+            } else {
+                quickSort(store + 1, high, swap);
+                high = store - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; ++i) {
+            for (int j = i; j > low && compareRecords(j, j - 1) < 0; --j) {
+                swap(j, j - 1, swap);
+            }
+        }
+    }
+
+    private int compareRecords(int i, int j) {
+        return compare(data, i * RECORD_SIZE, data, j * RECORD_SIZE);
+    }
+
+    private void swap(int i, int j, byte[] swap) {
+        if (i != j) {
+            System.arraycopy(data, i * RECORD_SIZE, swap, 0, RECORD_SIZE);
+            System.arraycopy(data, j * RECORD_SIZE, data, i * RECORD_SIZE, RECORD_SIZE);
+            System.arraycopy(swap, 0, data, j * RECORD_SIZE, RECORD_SIZE);
+        }
+    }
+
+    static void putLong(byte[] b, int off, long value) {
+        for (int i = 7; i >= 0; --i) {
+            b[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    static void putInt(byte[] b, int off, int value) {
+        for (int i = 3; i >= 0; --i) {
+            b[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8)
+                | (b[off + 3] & 0xff);
+    }
+}
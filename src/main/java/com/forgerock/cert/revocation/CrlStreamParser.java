@@ -0,0 +1,552 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * Parses a DER encoded CRL from a stream in one pass, verifying its signature as it goes, without holding the
+ * encoded CRL or an object per revoked certificate in memory. Revoked certificates are collected as fixed width
+ * records in a {@link CrlRecords}.
+ *
+ * Only complete and delta CRLs that cover every certificate of their issuer are accepted. Partitioned CRLs, which
+ * carry an issuingDistributionPoint, indirect CRLs, whose entries name a certificateIssuer, and CRLs or entries with
+ * any other critical extension that isn't understood are rejected, rather than being read as the issuer's full list.
+ *
+ * Instances parse a single CRL and are not thread safe.
+ */
+final class CrlStreamParser {
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_BIT_STRING = 0x03;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_OID = 0x06;
+    private static final int TAG_ENUMERATED = 0x0a;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_UTC_TIME = 0x17;
+    private static final int TAG_GENERALIZED_TIME = 0x18;
+    private static final int TAG_BOOLEAN = 0x01;
+    private static final int TAG_CRL_EXTENSIONS = 0xa0;
+    private static final int MAX_ELEMENT_LENGTH = 1024 * 1024;
+    private static final int MAX_ENTRY_LENGTH = 64 * 1024;
+    private static final byte[] REASON_CODE_OID = {0x55, 0x1d, 0x15};
+    private static final byte[] CERTIFICATE_ISSUER_OID = {0x55, 0x1d, 0x1d};
+
+    private final VerifyingInputStream in;
+    private final X509Certificate issuer;
+    private final CrlRecords records = new CrlRecords();
+    private byte[] entry = new byte[128];
+    private int entryPos;
+    private int peeked = -1;
+
+    private X500Principal issuerName;
+    private long thisUpdate;
+    private long nextUpdate = -1;
+    private BigInteger crlNumber;
+    private BigInteger deltaBase;
+
+    private CrlStreamParser(InputStream in, X509Certificate issuer) {
+        this.in = new VerifyingInputStream(in);
+        this.issuer = issuer;
+    }
+
+    /**
+     * @param in the DER encoded CRL, which is read to the end of the CRL but not closed
+     * @param issuer the issuer of the CRL, whose key must verify its signature
+     * @return the parsed CRL
+     * @throws IOException if the stream can't be read
+     * @throws CRLException if the CRL is malformed, isn't issued by the issuer or its signature doesn't verify
+     */
+    static CrlStreamParser parse(InputStream in, X509Certificate issuer) throws IOException, CRLException {
+        CrlStreamParser parser = new CrlStreamParser(in, issuer);
+        parser.parse();
+        return parser;
+    }
+
+    X500Principal getIssuer() {
+        return issuerName;
+    }
+
+    long getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @return the nextUpdate time in milliseconds since the epoch, or -1 if there is none
+     */
+    long getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /**
+     * @return the CRL number, or null if the CRL has none
+     */
+    BigInteger getCrlNumber() {
+        return crlNumber;
+    }
+
+    /**
+     * @return the number of the base CRL a delta CRL applies to, or null if this is a complete CRL
+     */
+    BigInteger getDeltaBase() {
+        return deltaBase;
+    }
+
+    /**
+     * @return the revoked certificates, sorted by serial number
+     */
+    CrlRecords getRecords() {
+        return records;
+    }
+
+    private void parse() throws IOException, CRLException {
+        expectTag(TAG_SEQUENCE);
+        readLength();
+        in.recording = true;
+        expectTag(TAG_SEQUENCE);
+        long tbsLength = readLength();
+        long tbsEnd = consumed() + tbsLength;
+
+        if (peekTag() == TAG_INTEGER) {
+            readTag();
+            readContent(readLength());
+        }
+        byte[] algorithm = readElement(TAG_SEQUENCE);
+        ContentVerifier verifier;
+        try {
+            verifier = new JcaContentVerifierProviderBuilder().build(issuer.getPublicKey())
+                    .get(AlgorithmIdentifier.getInstance(algorithm));
+        } catch (OperatorCreationException | IllegalArgumentException e) {
+            throw new CRLException("Unsupported CRL signature algorithm", e);
+        }
+        in.startVerifying(verifier.getOutputStream());
+
+        issuerName = new X500Principal(readElement(TAG_SEQUENCE));
+        if (!issuerName.equals(issuer.getSubjectX500Principal())) {
+            throw new CRLException("CRL is issued by " + issuerName + " not " + issuer.getSubjectX500Principal());
+        }
+        thisUpdate = readTime(readTag());
+        if (consumed() < tbsEnd && isTime(peekTag())) {
+            nextUpdate = readTime(readTag());
+        }
+        if (consumed() < tbsEnd && peekTag() == TAG_SEQUENCE) {
+            readTag();
+            long revokedLength = readLength();
+            long revokedEnd = consumed() + revokedLength;
+            while (consumed() < revokedEnd) {
+                readEntry();
+            }
+        }
+        if (consumed() < tbsEnd && peekTag() == TAG_CRL_EXTENSIONS) {
+            readTag();
+            readExtensions(readContent(readLength()));
+        }
+        if (consumed() != tbsEnd) {
+            throw new CRLException("Malformed CRL, unexpected content in TBSCertList");
+        }
+        in.recording = false;
+
+        if (!Arrays.equals(readElement(TAG_SEQUENCE), algorithm)) {
+            throw new CRLException("CRL signature algorithm doesn't match TBSCertList signature algorithm");
+        }
+        expectTag(TAG_BIT_STRING);
+        byte[] signature = readContent(readLength());
+        if (signature.length < 1 || signature[0] != 0) {
+            throw new CRLException("Malformed CRL signature");
+        }
+        if (!verifier.verify(Arrays.copyOfRange(signature, 1, signature.length))) {
+            throw new CRLException("CRL signature does not verify with the key of " + issuer.getSubjectX500Principal());
+        }
+        records.sort();
+    }
+
+    private void readEntry() throws IOException, CRLException {
+        expectTag(TAG_SEQUENCE);
+        long length = readLength();
+        if (length > MAX_ENTRY_LENGTH) {
+            throw new CRLException("CRL entry is too long");
+        }
+        int end = (int) length;
+        if (entry.length < end) {
+            entry = new byte[Math.max(end, entry.length * 2)];
+        }
+        readFully(entry, end);
+        entryPos = 0;
+
+        expectEntryTag(TAG_INTEGER, end);
+        int serialLength = entryLength(end);
+        int serialStart = entryPos;
+        entryPos += serialLength;
+        int timeTag = entry[entryPos++] & 0xff;
+        int timeLength = entryLength(end);
+        long revocationTime = parseTime(timeTag, entry, entryPos, timeLength);
+        entryPos += timeLength;
+        int reason = entryPos < end ? readEntryExtensions(end) : CrlRecords.NO_REASON;
+        records.add(entry, serialStart, serialLength, revocationTime, reason);
+    }
+
+    /**
+     * Read the entry's extensions, returning its reasonCode.
+     * @throws CRLException if the entry belongs to an indirect CRL or has a critical extension that isn't understood
+     */
+    private int readEntryExtensions(int end) throws CRLException {
+        expectEntryTag(TAG_SEQUENCE, end);
+        int extensionsLength = entryLength(end);
+        int extensionsEnd = entryPos + extensionsLength;
+        int reason = CrlRecords.NO_REASON;
+        while (entryPos < extensionsEnd) {
+            expectEntryTag(TAG_SEQUENCE, extensionsEnd);
+            int extensionLength = entryLength(extensionsEnd);
+            int extensionEnd = entryPos + extensionLength;
+            expectEntryTag(TAG_OID, extensionEnd);
+            int oidLength = entryLength(extensionEnd);
+            boolean isReason = entryOidIs(REASON_CODE_OID, oidLength);
+            if (entryOidIs(CERTIFICATE_ISSUER_OID, oidLength)) {
+                throw new CRLException("Indirect CRLs, whose entries have a certificateIssuer, are not supported");
+            }
+            entryPos += oidLength;
+            boolean critical = false;
+            if (entryPos < extensionEnd && (entry[entryPos] & 0xff) == TAG_BOOLEAN) {
+                entryPos++;
+                if (entryLength(extensionEnd) != 1) {
+                    throw new CRLException("Malformed CRL entry extension");
+                }
+                critical = entry[entryPos++] != 0;
+            }
+            if (isReason) {
+                expectEntryTag(TAG_OCTET_STRING, extensionEnd);
+                entryLength(extensionEnd);
+                expectEntryTag(TAG_ENUMERATED, extensionEnd);
+                if (entryLength(extensionEnd) != 1) {
+                    throw new CRLException("Malformed reasonCode in CRL entry");
+                }
+                reason = entry[entryPos] & 0xff;
+            } else if (critical) {
+                throw new CRLException("CRL entry has an unsupported critical extension");
+            }
+            entryPos = extensionEnd;
+        }
+        return reason;
+    }
+
+    private boolean entryOidIs(byte[] oid, int oidLength) {
+        if (oidLength != oid.length) {
+            return false;
+        }
+        for (int i = 0; i < oidLength; ++i) {
+            if (entry[entryPos + i] != oid[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readExtensions(byte[] encoded) throws IOException, CRLException {
+        try {
+            Extensions extensions = Extensions.getInstance(ASN1Primitive.fromByteArray(encoded));
+            if (extensions.getExtension(Extension.issuingDistributionPoint) != null) {
+                throw new CRLException("Partitioned CRLs, with an issuingDistributionPoint, are not supported");
+            }
+            for (ASN1ObjectIdentifier oid : extensions.getCriticalExtensionOIDs()) {
+                if (!oid.equals(Extension.cRLNumber) && !oid.equals(Extension.deltaCRLIndicator)) {
+                    throw new CRLException("CRL has an unsupported critical extension " + oid);
+                }
+            }
+            Extension number = extensions.getExtension(Extension.cRLNumber);
+            if (number != null) {
+                crlNumber = ASN1Integer.getInstance(number.getParsedValue()).getValue();
+            }
+            Extension delta = extensions.getExtension(Extension.deltaCRLIndicator);
+            if (delta != null) {
+                deltaBase = ASN1Integer.getInstance(delta.getParsedValue()).getValue();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new CRLException("Malformed CRL extensions", e);
+        }
+    }
+
+    private void expectEntryTag(int tag, int end) throws CRLException {
+        if (entryPos >= end || (entry[entryPos] & 0xff) != tag) {
+            throw new CRLException("Malformed CRL entry");
+        }
+        entryPos++;
+    }
+
+    private int entryLength(int end) throws CRLException {
+        if (entryPos >= end) {
+            throw new CRLException("Malformed CRL entry");
+        }
+        int first = entry[entryPos++] & 0xff;
+        int length;
+        if (first < 0x80) {
+            length = first;
+        } else {
+            int count = first & 0x7f;
+            if (count == 0 || count > 3 || entryPos + count > end) {
+                throw new CRLException("Malformed CRL entry");
+            }
+            length = 0;
+            for (int i = 0; i < count; ++i) {
+                length = (length << 8) | (entry[entryPos++] & 0xff);
+            }
+        }
+        if (entryPos + length > end) {
+            throw new CRLException("Malformed CRL entry");
+        }
+        return length;
+    }
+
+    private long readTime(int tag) throws IOException, CRLException {
+        byte[] content = readContent(readLength());
+        return parseTime(tag, content, 0, content.length);
+    }
+
+    private static boolean isTime(int tag) {
+        return tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME;
+    }
+
+    /**
+     * Parse a DER UTCTime (YYMMDDHHMMSSZ) or GeneralizedTime (YYYYMMDDHHMMSS[.fff]Z).
+     * @return milliseconds since the epoch
+     */
+    static long parseTime(int tag, byte[] b, int off, int len) throws CRLException {
+        int year;
+        int p;
+        if (tag == TAG_UTC_TIME && len >= 13) {
+            year = digits(b, off, 2);
+            year += year < 50 ? 2000 : 1900;
+            p = off + 2;
+        } else if (tag == TAG_GENERALIZED_TIME && len >= 15) {
+            year = digits(b, off, 4);
+            p = off + 4;
+        } else {
+            throw new CRLException("Malformed time in CRL");
+        }
+        int month = digits(b, p, 2);
+        int day = digits(b, p + 2, 2);
+        int hour = digits(b, p + 4, 2);
+        int minute = digits(b, p + 6, 2);
+        int second = digits(b, p + 8, 2);
+        int millis = 0;
+        int q = p + 10;
+        if (q < off + len && b[q] == '.') {
+            int scale = 100;
+            for (++q; q < off + len && b[q] >= '0' && b[q] <= '9'; ++q) {
+                millis += (b[q] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (q != off + len - 1 || b[q] != 'Z' || month < 1 || month > 12 || day < 1 || day > 31) {
+            throw new CRLException("Malformed time in CRL");
+        }
+        long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        return seconds * 1000L + millis;
+    }
+
+    private static int digits(byte[] b, int off, int count) throws CRLException {
+        int value = 0;
+        for (int i = off; i < off + count; ++i) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new CRLException("Malformed time in CRL");
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of days between 1970-01-01 and the date in the proleptic Gregorian calendar
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private long consumed() {
+        return in.position - (peeked >= 0 ? 1 : 0);
+    }
+
+    private int peekTag() throws IOException {
+        if (peeked < 0) {
+            peeked = readByte();
+        }
+        return peeked;
+    }
+
+    private int readTag() throws IOException {
+        if (peeked >= 0) {
+            int tag = peeked;
+            peeked = -1;
+            return tag;
+        }
+        return readByte();
+    }
+
+    private void expectTag(int tag) throws IOException, CRLException {
+        int actual = readTag();
+        if (actual != tag) {
+            throw new CRLException(String.format("Malformed CRL, expected tag 0x%02x but found 0x%02x", tag, actual));
+        }
+    }
+
+    private long readLength() throws IOException, CRLException {
+        int first = readByte();
+        if (first < 0x80) {
+            return first;
+        }
+        int count = first & 0x7f;
+        if (count == 0) {
+            throw new CRLException("Indefinite length encoding is not allowed in a CRL");
+        }
+        if (count > 7) {
+            throw new CRLException("CRL element is too long");
+        }
+        long length = 0;
+        for (int i = 0; i < count; ++i) {
+            length = (length << 8) | readByte();
+        }
+        return length;
+    }
+
+    private byte[] readContent(long length) throws IOException, CRLException {
+        if (length > MAX_ELEMENT_LENGTH) {
+            throw new CRLException("CRL element is too long");
+        }
+        byte[] content = new byte[(int) length];
+        readFully(content, content.length);
+        return content;
+    }
+
+    /**
+     * @return the complete encoding of the next element, which must have the tag
+     */
+    private byte[] readElement(int tag) throws IOException, CRLException {
+        expectTag(tag);
+        byte[] content = readContent(readLength());
+        ByteArrayOutputStream element = new ByteArrayOutputStream(content.length + 6);
+        element.write(tag);
+        if (content.length < 0x80) {
+            element.write(content.length);
+        } else {
+            int count = (32 - Integer.numberOfLeadingZeros(content.length) + 7) / 8;
+            element.write(0x80 | count);
+            for (int i = count - 1; i >= 0; --i) {
+                element.write(content.length >>> (8 * i));
+            }
+        }
+        element.write(content, 0, content.length);
+        return element.toByteArray();
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("CRL truncated");
+        }
+        return b;
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("CRL truncated");
+            }
+            read += n;
+        }
+    }
+
+    /**
+     * Passes the bytes of the TBSCertList to the signature verifier as they are read. Bytes read before the
+     * signature algorithm is known are held back until it is.
+     */
+    private static final class VerifyingInputStream extends FilterInputStream {
+        private ByteArrayOutputStream held = new ByteArrayOutputStream(64);
+        private OutputStream verifier;
+        private boolean recording;
+        private long position;
+
+        private VerifyingInputStream(InputStream in) {
+            super(in);
+        }
+
+        private void startVerifying(OutputStream verifier) throws IOException {
+            held.writeTo(verifier);
+            held = null;
+            this.verifier = verifier;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                position++;
+                if (recording) {
+                    (verifier != null ? verifier : held).write(b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                position += n;
+                if (recording) {
+                    (verifier != null ? verifier : held).write(b, off, n);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip is not supported");
+        }
+    }
+}
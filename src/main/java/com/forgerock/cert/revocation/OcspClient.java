@@ -0,0 +1,601 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.exception.RevocationCheckException;
+import com.forgerock.cert.utils.BlockingIoExecutors;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the revocation status of certificates with OCSP (RFC 6960), caching responses for as long as they are
+ * valid so that a handshake rarely waits on the responder.
+ *
+ * Requests carry no nonce, which lets responders answer from pre-signed responses and lets this client cache each
+ * status until the response's nextUpdate time. A cached status is refreshed in the background once it is within the
+ * refresh window of expiry, so busy certificates never see a cache miss. Certificates checked together against the
+ * same issuer and responder are sent as one request holding several CertIDs, and concurrent checks of the same
+ * certificate share one request. A response without a nextUpdate time is only accepted, and cached, until it is
+ * older than the maximum response age, so old or replayed responses can't vouch for a certificate.
+ *
+ * Responses are matched to requests by serial number and by the hashes of the issuer's name and key, computed with
+ * whichever hash algorithm the responder used, so responders that answer with SHA-256 CertIDs are understood. Requests
+ * are made with SHA-1 CertIDs, which every responder accepts.
+ *
+ * Requests block a thread while they wait for the responder, so they run on a small dedicated pool unless another
+ * executor is configured.
+ *
+ * Responses must be signed by the issuer, or by a delegated responder certificate issued by the issuer for
+ * OCSP signing. When the status can't be determined the {@link FailurePolicy} decides whether the check reports
+ * {@link CertStatus#UNKNOWN} or fails.
+ */
+public class OcspClient {
+
+    /**
+     * The name the response cache reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "ocsp";
+
+    private static final long CLOCK_SKEW_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    private final BoundedCache<CertificateID, Entry> cache;
+    private final ConcurrentHashMap<CertificateID, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final DigestCalculatorProvider digestCalculatorProvider = new BcDigestCalculatorProvider();
+    private final OcspTransport transport;
+    private final Executor executor;
+    private final Clock clock;
+    private final FailurePolicy failurePolicy;
+    private final String responderUrl;
+    private final long refreshAheadMillis;
+    private final long defaultValidityMillis;
+    private final long maximumResponseAgeMillis;
+    private final long failureTimeToLiveMillis;
+    private final int maximumCertIdsPerRequest;
+    private final LongAdder requests = new LongAdder();
+
+    private OcspClient(Builder builder) {
+        this.cache = BoundedCache.<CertificateID, Entry>builder().maximumSize(builder.maximumSize)
+                .metricsName(METRICS_NAME).build();
+        this.transport = builder.transport;
+        this.executor = builder.executor;
+        this.clock = builder.clock;
+        this.failurePolicy = builder.failurePolicy;
+        this.responderUrl = builder.responderUrl;
+        this.refreshAheadMillis = builder.refreshAhead.toMillis();
+        this.defaultValidityMillis = builder.defaultValidity.toMillis();
+        this.maximumResponseAgeMillis = builder.maximumResponseAge.toMillis();
+        this.failureTimeToLiveMillis = builder.failureTimeToLive.toMillis();
+        this.maximumCertIdsPerRequest = builder.maximumCertIdsPerRequest;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check the revocation status of a certificate.
+     * @param cert the certificate to check
+     * @param issuer the certificate's issuer
+     * @return a future of the status. Under {@link FailurePolicy#HARD_FAIL} it completes exceptionally with a
+     * {@link RevocationCheckException} if the status can't be determined.
+     */
+    public CompletableFuture<RevocationResult> check(X509Certificate cert, X509Certificate issuer) {
+        return checkAll(Collections.singletonList(cert), issuer).thenApply(results -> results.get(0));
+    }
+
+    /**
+     * Check the revocation status of several certificates with the same issuer, sending the ones that aren't
+     * cached to each responder as a single request.
+     * @param certs the certificates to check
+     * @param issuer the issuer of all the certificates
+     * @return a future of the status of each certificate, in the same order. Under {@link FailurePolicy#HARD_FAIL}
+     * it completes exceptionally with a {@link RevocationCheckException} if any status can't be determined.
+     */
+    public CompletableFuture<List<RevocationResult>> checkAll(List<X509Certificate> certs, X509Certificate issuer) {
+        List<CompletableFuture<RevocationResult>> results = new ArrayList<>(certs.size());
+        Map<String, List<Pending>> batches = new LinkedHashMap<>();
+        long now = clock.millis();
+        JcaX509CertificateHolder issuerHolder;
+        try {
+            issuerHolder = new JcaX509CertificateHolder(issuer);
+        } catch (CertificateException e) {
+            return failed(new RevocationCheckException("Could not encode issuer certificate", e));
+        }
+        for (X509Certificate cert : certs) {
+            CertificateID id;
+            try {
+                id = new CertificateID(digestCalculatorProvider.get(CertificateID.HASH_SHA1), issuerHolder,
+                        cert.getSerialNumber());
+            } catch (OCSPException | OperatorCreationException e) {
+                results.add(toResult(failedEntry(new RevocationCheckException("Could not create CertID", e))));
+                continue;
+            }
+            Entry cached = cache.getIfPresent(id);
+            if (cached != null && !cached.isExpired(now)) {
+                if (cached.shouldRefresh(now)) {
+                    enqueue(id, cert, true, batches);
+                }
+                results.add(toResult(CompletableFuture.completedFuture(cached)));
+            } else {
+                results.add(toResult(enqueue(id, cert, false, batches)));
+            }
+        }
+        for (Map.Entry<String, List<Pending>> batch : batches.entrySet()) {
+            List<Pending> pending = batch.getValue();
+            for (int from = 0; from < pending.size(); from += maximumCertIdsPerRequest) {
+                List<Pending> chunk = pending.subList(from, Math.min(pending.size(), from + maximumCertIdsPerRequest));
+                submit(batch.getKey(), chunk, issuer);
+            }
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<RevocationResult> list = new ArrayList<>(results.size());
+            for (CompletableFuture<RevocationResult> result : results) {
+                list.add(result.join());
+            }
+            return list;
+        });
+    }
+
+    /**
+     * @return the number of requests sent to responders
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return statistics of the response cache
+     */
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Join the request already in flight for the certificate, or add it to the batch for its responder.
+     */
+    private CompletableFuture<Entry> enqueue(CertificateID id, X509Certificate cert, boolean refresh,
+                                             Map<String, List<Pending>> batches) {
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(id, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (!refresh) {
+            // A request may have finished between the look in the cache and joining the in flight map
+            Entry cached = cache.getIfPresent(id);
+            if (cached != null && !cached.isExpired(clock.millis())) {
+                inFlight.remove(id, created);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        String url = responderUrl != null ? responderUrl
+                : Psd2CertInfo.lazy(Collections.singletonList(cert)).getAuthorityAccessInfoOcsp().orElse(null);
+        Pending pending = new Pending(id, created, refresh);
+        if (url == null) {
+            fail(pending, new RevocationCheckException("Certificate " + cert.getSerialNumber()
+                    + " has no OCSP responder URL"));
+        } else {
+            batches.computeIfAbsent(url, u -> new ArrayList<>()).add(pending);
+        }
+        return created;
+    }
+
+    private void submit(String url, List<Pending> batch, X509Certificate issuer) {
+        try {
+            executor.execute(() -> send(url, batch, issuer));
+        } catch (RuntimeException e) {
+            for (Pending pending : batch) {
+                fail(pending, new RevocationCheckException("Could not schedule OCSP request", e));
+            }
+        }
+    }
+
+    private void send(String url, List<Pending> batch, X509Certificate issuer) {
+        Map<BigInteger, Entry> entries;
+        try {
+            OCSPReqBuilder request = new OCSPReqBuilder();
+            for (Pending pending : batch) {
+                request.addRequest(pending.id);
+            }
+            requests.increment();
+            byte[] response = transport.post(url, request.build().getEncoded());
+            entries = parse(response, issuer, clock.millis());
+        } catch (IOException | OCSPException | RuntimeException e) {
+            RevocationCheckException failure = new RevocationCheckException("OCSP request to " + url + " failed", e);
+            batch.forEach(pending -> fail(pending, failure));
+            return;
+        } catch (RevocationCheckException e) {
+            batch.forEach(pending -> fail(pending, e));
+            return;
+        }
+        for (Pending pending : batch) {
+            Entry entry = entries.get(pending.id.getSerialNumber());
+            if (entry == null) {
+                fail(pending, new RevocationCheckException("OCSP response from " + url
+                        + " has no current status for serial " + pending.id.getSerialNumber()));
+            } else {
+                // Populate the cache before leaving the in flight map; enqueue looks in the cache again after joining
+                // the in flight map, so no caller can miss both
+                cache.put(pending.id, entry);
+                inFlight.remove(pending.id, pending.future);
+                pending.future.complete(entry);
+            }
+        }
+    }
+
+    /**
+     * @return the current statuses in the response of certificates of the issuer, by serial number
+     */
+    private Map<BigInteger, Entry> parse(byte[] encoded, X509Certificate issuer, long now)
+            throws IOException, OCSPException, RevocationCheckException {
+        OCSPResp response = new OCSPResp(encoded);
+        if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+            throw new RevocationCheckException("OCSP responder returned status " + response.getStatus());
+        }
+        Object responseObject = response.getResponseObject();
+        if (!(responseObject instanceof BasicOCSPResp)) {
+            throw new RevocationCheckException("OCSP responder did not return a basic response");
+        }
+        BasicOCSPResp basic = (BasicOCSPResp) responseObject;
+        verifySignature(basic, issuer, now);
+
+        X509CertificateHolder issuerHolder;
+        try {
+            issuerHolder = new JcaX509CertificateHolder(issuer);
+        } catch (CertificateException e) {
+            throw new RevocationCheckException("Could not encode issuer certificate", e);
+        }
+        Map<BigInteger, Entry> entries = new HashMap<>();
+        for (SingleResp single : basic.getResponses()) {
+            CertificateID id = single.getCertID();
+            if (!id.matchesIssuer(issuerHolder, digestCalculatorProvider)) {
+                continue;
+            }
+            Instant thisUpdate = single.getThisUpdate().toInstant();
+            Instant nextUpdate = single.getNextUpdate() == null ? null : single.getNextUpdate().toInstant();
+            long staleAt = nextUpdate != null ? nextUpdate.toEpochMilli()
+                    : thisUpdate.toEpochMilli() + maximumResponseAgeMillis;
+            if (thisUpdate.toEpochMilli() > now + CLOCK_SKEW_MILLIS || staleAt <= now) {
+                continue;
+            }
+            CertificateStatus status = single.getCertStatus();
+            RevocationResult result;
+            if (status == CertificateStatus.GOOD) {
+                result = RevocationResult.good(thisUpdate, nextUpdate);
+            } else if (status instanceof RevokedStatus) {
+                RevokedStatus revoked = (RevokedStatus) status;
+                result = RevocationResult.revoked(thisUpdate, nextUpdate, revoked.getRevocationTime().toInstant(),
+                        revoked.hasRevocationReason() ? revoked.getRevocationReason() : null);
+            } else {
+                result = RevocationResult.unknown(thisUpdate, nextUpdate);
+            }
+            long expiresAt = nextUpdate == null ? Math.min(now + defaultValidityMillis, staleAt) : staleAt;
+            // Refresh well before expiry, but no sooner than half way through a short validity period
+            long refreshAt = Math.max(expiresAt - refreshAheadMillis, now + (expiresAt - now) / 2);
+            entries.put(id.getSerialNumber(), new Entry(result, expiresAt, refreshAt));
+        }
+        return entries;
+    }
+
+    private static void verifySignature(BasicOCSPResp basic, X509Certificate issuer, long now)
+            throws OCSPException, RevocationCheckException {
+        try {
+            ContentVerifierProvider issuerVerifier = new JcaContentVerifierProviderBuilder()
+                    .build(issuer.getPublicKey());
+            if (basic.isSignatureValid(issuerVerifier)) {
+                return;
+            }
+            X500Name issuerName = X500Name.getInstance(issuer.getSubjectX500Principal().getEncoded());
+            for (X509CertificateHolder responder : basic.getCerts()) {
+                if (!responder.getIssuer().equals(issuerName) || !responder.isValidOn(new Date(now))) {
+                    continue;
+                }
+                ExtendedKeyUsage keyUsage = ExtendedKeyUsage.fromExtensions(responder.getExtensions());
+                if (keyUsage == null || !keyUsage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning)) {
+                    continue;
+                }
+                if (responder.isSignatureValid(issuerVerifier)
+                        && basic.isSignatureValid(new JcaContentVerifierProviderBuilder().build(responder))) {
+                    return;
+                }
+            }
+        } catch (OperatorCreationException | CertificateException | CertException e) {
+            throw new RevocationCheckException("Could not verify OCSP response signature", e);
+        }
+        throw new RevocationCheckException("OCSP response is not signed by the issuer or an authorised responder");
+    }
+
+    private void fail(Pending pending, RevocationCheckException failure) {
+        long now = clock.millis();
+        Entry cached = cache.getIfPresent(pending.id);
+        boolean stillValid = cached != null && !cached.isExpired(now);
+        if (failurePolicy == FailurePolicy.SOFT_FAIL && failureTimeToLiveMillis > 0 && !stillValid) {
+            // Remember the failure briefly so that an unreachable responder doesn't delay every handshake
+            long expiresAt = now + failureTimeToLiveMillis;
+            cache.put(pending.id, new Entry(RevocationResult.softFailure(failure), expiresAt, expiresAt));
+        }
+        inFlight.remove(pending.id, pending.future);
+        if (pending.refresh && stillValid) {
+            // A failed background refresh leaves the cached status in place until it expires
+            pending.future.complete(cached);
+        } else {
+            pending.future.completeExceptionally(failure);
+        }
+    }
+
+    private CompletableFuture<RevocationResult> toResult(CompletableFuture<Entry> entry) {
+        return entry.handle((value, error) -> {
+            if (error == null) {
+                if (value.result.isSoftFailure() && failurePolicy == FailurePolicy.HARD_FAIL) {
+                    throw new CompletionException(value.result.getFailure().get());
+                }
+                return value.result;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (failurePolicy == FailurePolicy.SOFT_FAIL) {
+                return RevocationResult.softFailure(cause);
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(cause);
+        });
+    }
+
+    private static CompletableFuture<Entry> failedEntry(Throwable failure) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    private static final class Pending {
+        private final CertificateID id;
+        private final CompletableFuture<Entry> future;
+        private final boolean refresh;
+
+        private Pending(CertificateID id, CompletableFuture<Entry> future, boolean refresh) {
+            this.id = id;
+            this.future = future;
+            this.refresh = refresh;
+        }
+    }
+
+    private static final class Entry {
+        private final RevocationResult result;
+        private final long expiresAt;
+        private final long refreshAt;
+
+        private Entry(RevocationResult result, long expiresAt, long refreshAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        private boolean shouldRefresh(long now) {
+            return now >= refreshAt;
+        }
+    }
+
+    public static class Builder {
+        private int maximumSize = 10_000;
+        private OcspTransport transport;
+        private Executor executor;
+        private Clock clock = Clock.systemUTC();
+        private FailurePolicy failurePolicy = FailurePolicy.HARD_FAIL;
+        private String responderUrl;
+        private Duration refreshAhead = Duration.ofHours(1);
+        private Duration defaultValidity = Duration.ofMinutes(5);
+        private Duration maximumResponseAge = Duration.ofHours(1);
+        private Duration failureTimeToLive = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private int maximumCertIdsPerRequest = 16;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maximumSize the maximum number of certificate statuses cached
+         * @return this builder
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param transport sends requests to responders. Defaults to HTTP POST with the configured timeouts.
+         * @return this builder
+         */
+        public Builder transport(OcspTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * @param executor runs requests to responders. Defaults to a pool of 4 threads for this client.
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param clock the source of wall clock time used to validate and expire responses; intended to be replaced
+         *              in tests.
+         * @return this builder
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param failurePolicy what to do when a status can't be determined. Defaults to
+         *                      {@link FailurePolicy#HARD_FAIL}.
+         * @return this builder
+         */
+        public Builder failurePolicy(FailurePolicy failurePolicy) {
+            this.failurePolicy = failurePolicy;
+            return this;
+        }
+
+        /**
+         * @param responderUrl the responder to ask about every certificate, overriding the OCSP location of their
+         *                     authority information access extension. Null, the default, uses that extension.
+         * @return this builder
+         */
+        public Builder responderUrl(String responderUrl) {
+            this.responderUrl = responderUrl;
+            return this;
+        }
+
+        /**
+         * @param refreshAhead how long before a cached status expires that a check refreshes it in the background
+         * @return this builder
+         */
+        public Builder refreshAhead(Duration refreshAhead) {
+            this.refreshAhead = requireNonNegative(refreshAhead, "refreshAhead");
+            return this;
+        }
+
+        /**
+         * @param defaultValidity how long to cache a status whose response has no nextUpdate
+         * @return this builder
+         */
+        public Builder defaultValidity(Duration defaultValidity) {
+            this.defaultValidity = requireNonNegative(defaultValidity, "defaultValidity");
+            return this;
+        }
+
+        /**
+         * @param maximumResponseAge how long after its thisUpdate time a status whose response has no nextUpdate is
+         *                           accepted. Older statuses are treated as missing from the response.
+         * @return this builder
+         */
+        public Builder maximumResponseAge(Duration maximumResponseAge) {
+            this.maximumResponseAge = requireNonNegative(maximumResponseAge, "maximumResponseAge");
+            return this;
+        }
+
+        /**
+         * @param failureTimeToLive how long a soft failure is remembered before the responder is asked again. Only
+         *                          applies under {@link FailurePolicy#SOFT_FAIL}.
+         * @return this builder
+         */
+        public Builder failureTimeToLive(Duration failureTimeToLive) {
+            this.failureTimeToLive = requireNonNegative(failureTimeToLive, "failureTimeToLive");
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = requireNonNegative(connectTimeout, "connectTimeout");
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = requireNonNegative(readTimeout, "readTimeout");
+            return this;
+        }
+
+        /**
+         * @param maximumCertIdsPerRequest the most certificates asked about in one request
+         * @return this builder
+         */
+        public Builder maximumCertIdsPerRequest(int maximumCertIdsPerRequest) {
+            if (maximumCertIdsPerRequest <= 0) {
+                throw new IllegalArgumentException("maximumCertIdsPerRequest must be positive, was "
+                        + maximumCertIdsPerRequest);
+            }
+            this.maximumCertIdsPerRequest = maximumCertIdsPerRequest;
+            return this;
+        }
+
+        public OcspClient build() {
+            if (transport == null) {
+                transport = OcspTransport.http(connectTimeout, readTimeout);
+            }
+            if (executor == null) {
+                executor = BlockingIoExecutors.bounded("ocsp-client", 4, 1024);
+            }
+            return new OcspClient(this);
+        }
+
+        private static Duration requireNonNegative(Duration duration, String name) {
+            if (duration == null || duration.isNegative()) {
+                throw new IllegalArgumentException(name + " may not be null or negative, was " + duration);
+            }
+            return duration;
+        }
+    }
+}
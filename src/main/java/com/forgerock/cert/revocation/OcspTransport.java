@@ -0,0 +1,86 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+
+/**
+ * Sends an encoded OCSP request to a responder and returns the encoded response. Implementations block, and are
+ * called on the {@link OcspClient}'s executor.
+ */
+@FunctionalInterface
+public interface OcspTransport {
+
+    int MAX_RESPONSE_SIZE = 1024 * 1024;
+
+    /**
+     * @param url the responder URL
+     * @param request the DER encoded OCSPRequest
+     * @return the DER encoded OCSPResponse
+     * @throws IOException if the responder can't be reached or doesn't answer with an OCSP response
+     */
+    byte[] post(String url, byte[] request) throws IOException;
+
+    /**
+     * @return a transport that POSTs requests over HTTP as described by RFC 6960 appendix A
+     */
+    static OcspTransport http(Duration connectTimeout, Duration readTimeout) {
+        return (url, request) -> {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                connection.setConnectTimeout((int) connectTimeout.toMillis());
+                connection.setReadTimeout((int) readTimeout.toMillis());
+                connection.setDoOutput(true);
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/ocsp-request");
+                connection.setRequestProperty("Accept", "application/ocsp-response");
+                connection.setFixedLengthStreamingMode(request.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request);
+                }
+                int status = connection.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("OCSP responder " + url + " returned HTTP " + status);
+                }
+                ByteArrayOutputStream body = new ByteArrayOutputStream(2048);
+                try (InputStream in = connection.getInputStream()) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        body.write(buffer, 0, read);
+                        if (body.size() > MAX_RESPONSE_SIZE) {
+                            throw new IOException("OCSP response is larger than " + MAX_RESPONSE_SIZE + " bytes");
+                        }
+                    }
+                }
+                return body.toByteArray();
+            } finally {
+                connection.disconnect();
+            }
+        };
+    }
+}
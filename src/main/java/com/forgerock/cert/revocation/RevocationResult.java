@@ -0,0 +1,125 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * The revocation status of a certificate together with the period the status is valid for.
+ */
+public final class RevocationResult {
+
+    private final CertStatus status;
+    private final Instant thisUpdate;
+    private final Instant nextUpdate;
+    private final Instant revocationTime;
+    private final Integer revocationReason;
+    private final Throwable failure;
+
+    private RevocationResult(CertStatus status, Instant thisUpdate, Instant nextUpdate, Instant revocationTime,
+                             Integer revocationReason, Throwable failure) {
+        this.status = status;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.revocationTime = revocationTime;
+        this.revocationReason = revocationReason;
+        this.failure = failure;
+    }
+
+    static RevocationResult good(Instant thisUpdate, Instant nextUpdate) {
+        return new RevocationResult(CertStatus.GOOD, thisUpdate, nextUpdate, null, null, null);
+    }
+
+    static RevocationResult revoked(Instant thisUpdate, Instant nextUpdate, Instant revocationTime,
+                                    Integer revocationReason) {
+        return new RevocationResult(CertStatus.REVOKED, thisUpdate, nextUpdate, revocationTime, revocationReason,
+                null);
+    }
+
+    static RevocationResult unknown(Instant thisUpdate, Instant nextUpdate) {
+        return new RevocationResult(CertStatus.UNKNOWN, thisUpdate, nextUpdate, null, null, null);
+    }
+
+    static RevocationResult softFailure(Throwable failure) {
+        return new RevocationResult(CertStatus.UNKNOWN, null, null, null, null, failure);
+    }
+
+    public CertStatus getStatus() {
+        return status;
+    }
+
+    public boolean isGood() {
+        return status == CertStatus.GOOD;
+    }
+
+    public boolean isRevoked() {
+        return status == CertStatus.REVOKED;
+    }
+
+    /**
+     * @return when the status was known to be correct, absent for a soft failure
+     */
+    public Optional<Instant> getThisUpdate() {
+        return Optional.ofNullable(thisUpdate);
+    }
+
+    /**
+     * @return when newer information will be available, if the issuer said
+     */
+    public Optional<Instant> getNextUpdate() {
+        return Optional.ofNullable(nextUpdate);
+    }
+
+    public Optional<Instant> getRevocationTime() {
+        return Optional.ofNullable(revocationTime);
+    }
+
+    /**
+     * @return the CRLReason code given for the revocation, if there was one
+     */
+    public Optional<Integer> getRevocationReason() {
+        return Optional.ofNullable(revocationReason);
+    }
+
+    /**
+     * @return why the status could not be determined, present only for a soft failure
+     */
+    public Optional<Throwable> getFailure() {
+        return Optional.ofNullable(failure);
+    }
+
+    public boolean isSoftFailure() {
+        return failure != null;
+    }
+
+    @Override
+    public String toString() {
+        return "RevocationResult{" +
+                "status=" + status +
+                ", thisUpdate=" + thisUpdate +
+                ", nextUpdate=" + nextUpdate +
+                ", revocationTime=" + revocationTime +
+                ", revocationReason=" + revocationReason +
+                ", failure=" + failure +
+                '}';
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.tls;
+
+import com.forgerock.cert.CertificateFingerprint;
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.Psd2CertSnapshot;
+import com.forgerock.cert.cache.BoundedCache;
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.exception.InvalidEidasCertType;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.psd2.Psd2Role;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A trust manager for servers that only accept PSD2 clients. Client chains are first validated by a delegate trust
+ * manager, then the client's certificate must be a PSD2 certificate of an allowed eIDAS type (QWAC by default),
+ * grant every required role and, if NCAs are restricted, be registered with an allowed NCA. Server chains are left
+ * to the delegate alone.
+ *
+ * Decisions are cached against the fingerprint of the client certificate, so a client that reconnects is not parsed
+ * again, and stored in the TLS session, so the application can read the client's PSD2 details with
+ * {@link #getClientSnapshot(SSLSession)} on every request of a connection, and of resumed sessions, without parsing.
+ * Rejections are cached too.
+ */
+public class Psd2TrustManager extends X509ExtendedTrustManager {
+
+    /**
+     * The name this trust manager's decision cache reports to {@link com.forgerock.cert.metrics.CertMetrics} under.
+     */
+    public static final String METRICS_NAME = "psd2-trust";
+
+    private static final String SESSION_KEY = Psd2TrustManager.class.getName() + ".snapshot";
+
+    private final X509ExtendedTrustManager delegate;
+    private final Set<EidasCertType> allowedCertTypes;
+    private final int requiredRoleMask;
+    private final Set<String> allowedNcaIds;
+    private final BoundedCache<CertificateFingerprint, Decision> decisions;
+
+    private Psd2TrustManager(Builder builder) {
+        this.delegate = builder.delegate;
+        this.allowedCertTypes = EnumSet.copyOf(builder.allowedCertTypes);
+        this.requiredRoleMask = Psd2Role.maskOf(builder.requiredRoles);
+        this.allowedNcaIds = Collections.unmodifiableSet(new HashSet<>(builder.allowedNcaIds));
+        this.decisions = BoundedCache.<CertificateFingerprint, Decision>builder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.timeToLive)
+                .metricsName(METRICS_NAME)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate.checkClientTrusted(chain, authType);
+        checkPsd2(chain, null);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+        delegate.checkClientTrusted(chain, authType, socket);
+        checkPsd2(chain, socket instanceof SSLSocket ? ((SSLSocket) socket).getHandshakeSession() : null);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+        delegate.checkClientTrusted(chain, authType, engine);
+        checkPsd2(chain, engine == null ? null : engine.getHandshakeSession());
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+        delegate.checkServerTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+        delegate.checkServerTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    /**
+     * Get the PSD2 details of the client of a session, without parsing its certificate if this trust manager has
+     * already seen it.
+     * @param session an established session whose client was checked by this trust manager
+     * @return the snapshot of the client's certificate, absent if the client didn't present one or it isn't allowed
+     */
+    public Optional<Psd2CertSnapshot> getClientSnapshot(SSLSession session) {
+        Object stored = session.getValue(SESSION_KEY);
+        if (stored instanceof Psd2CertSnapshot) {
+            return Optional.of((Psd2CertSnapshot) stored);
+        }
+        // Resumed sessions don't always carry the values of the session they resume
+        Certificate[] peer;
+        try {
+            peer = session.getPeerCertificates();
+        } catch (SSLPeerUnverifiedException e) {
+            return Optional.empty();
+        }
+        if (peer.length == 0 || !(peer[0] instanceof X509Certificate)) {
+            return Optional.empty();
+        }
+        X509Certificate[] chain = new X509Certificate[peer.length];
+        for (int i = 0; i < peer.length; ++i) {
+            chain[i] = (X509Certificate) peer[i];
+        }
+        try {
+            return Optional.of(checkPsd2(chain, session));
+        } catch (CertificateException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the statistics of the decision cache
+     */
+    public CacheStats cacheStats() {
+        return decisions.stats();
+    }
+
+    private Psd2CertSnapshot checkPsd2(X509Certificate[] chain, SSLSession session) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new CertificateException("No client certificate");
+        }
+        CertificateFingerprint fingerprint = CertificateFingerprint.of(chain[0]);
+        if (session != null) {
+            Object stored = session.getValue(SESSION_KEY);
+            if (stored instanceof Psd2CertSnapshot
+                    && ((Psd2CertSnapshot) stored).getFingerprint().equals(fingerprint)) {
+                return (Psd2CertSnapshot) stored;
+            }
+        }
+        Decision decision = decisions.getIfPresent(fingerprint);
+        if (decision == null) {
+            decision = decide(chain);
+            decisions.put(fingerprint, decision);
+        }
+        if (decision.rejection != null) {
+            throw new CertificateException(decision.rejection);
+        }
+        if (session != null) {
+            session.putValue(SESSION_KEY, decision.snapshot);
+        }
+        return decision.snapshot;
+    }
+
+    private Decision decide(X509Certificate[] chain) {
+        Psd2CertSnapshot snapshot;
+        try {
+            snapshot = new Psd2CertInfo(chain).snapshot();
+        } catch (InvalidPsd2EidasCertificate | InvalidEidasCertType e) {
+            return Decision.rejected("Client certificate could not be parsed: " + e.getMessage());
+        }
+        if (!snapshot.isPsd2Cert()) {
+            return Decision.rejected("Client certificate is not a PSD2 certificate");
+        }
+        EidasCertType certType = snapshot.getEidasCertType().orElse(null);
+        if (!allowedCertTypes.contains(certType)) {
+            return Decision.rejected("Client certificate type " + certType + " is not one of " + allowedCertTypes);
+        }
+        if ((snapshot.getRoleMask() & requiredRoleMask) != requiredRoleMask) {
+            EnumSet<Psd2Role> missing = Psd2Role.fromMask(requiredRoleMask & ~snapshot.getRoleMask());
+            return Decision.rejected("Client certificate does not grant " + missing);
+        }
+        if (!allowedNcaIds.isEmpty() && !allowedNcaIds.contains(snapshot.getNcaId().orElse(null))) {
+            return Decision.rejected("Client certificate NCA " + snapshot.getNcaId().orElse(null)
+                    + " is not allowed");
+        }
+        return new Decision(snapshot, null);
+    }
+
+    private static final class Decision {
+        private final Psd2CertSnapshot snapshot;
+        private final String rejection;
+
+        private Decision(Psd2CertSnapshot snapshot, String rejection) {
+            this.snapshot = snapshot;
+            this.rejection = rejection;
+        }
+
+        private static Decision rejected(String rejection) {
+            return new Decision(null, rejection);
+        }
+    }
+
+    public static class Builder {
+        private X509ExtendedTrustManager delegate;
+        private Set<EidasCertType> allowedCertTypes = EnumSet.of(EidasCertType.WEB);
+        private Set<Psd2Role> requiredRoles = EnumSet.noneOf(Psd2Role.class);
+        private Set<String> allowedNcaIds = Collections.emptySet();
+        private int maximumSize = 10_000;
+        private Duration timeToLive = Duration.ofHours(1);
+
+        private Builder() {
+        }
+
+        /**
+         * @param delegate validates the chains before the PSD2 checks
+         * @return this builder
+         */
+        public Builder delegate(X509ExtendedTrustManager delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Validate chains with the platform's default trust manager, trusting the anchors in the key store.
+         * @param trustStore the trusted certificates
+         * @return this builder
+         * @throws GeneralSecurityException if the default trust manager can't be created
+         */
+        public Builder trustAnchors(KeyStore trustStore) throws GeneralSecurityException {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(trustStore);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509ExtendedTrustManager) {
+                    return delegate((X509ExtendedTrustManager) trustManager);
+                }
+            }
+            throw new GeneralSecurityException("The default trust manager factory has no X509ExtendedTrustManager");
+        }
+
+        /**
+         * @param certTypes the eIDAS certificate types a client may present, WEB (QWAC) by default
+         * @return this builder
+         */
+        public Builder allowedCertTypes(EidasCertType... certTypes) {
+            if (certTypes.length == 0) {
+                throw new IllegalArgumentException("At least one certificate type must be allowed");
+            }
+            this.allowedCertTypes = EnumSet.copyOf(Arrays.asList(certTypes));
+            return this;
+        }
+
+        /**
+         * @param roles the roles a client certificate must all grant
+         * @return this builder
+         */
+        public Builder requiredRoles(Psd2Role... roles) {
+            this.requiredRoles = roles.length == 0 ? EnumSet.noneOf(Psd2Role.class)
+                    : EnumSet.copyOf(Arrays.asList(roles));
+            return this;
+        }
+
+        /**
+         * @param ncaIds the NCA ids, as they appear in the PSD2 QCStatement (e.g. GB-FCA), a client may be registered
+         *               with. Empty, the default, allows any.
+         * @return this builder
+         */
+        public Builder allowedNcaIds(Collection<String> ncaIds) {
+            this.allowedNcaIds = new HashSet<>(ncaIds);
+            return this;
+        }
+
+        /**
+         * @param maximumSize the maximum number of client certificate decisions cached
+         * @return this builder
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive, was " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param timeToLive how long a decision is cached for
+         * @return this builder
+         */
+        public Builder timeToLive(Duration timeToLive) {
+            if (timeToLive == null || timeToLive.isNegative()) {
+                throw new IllegalArgumentException("timeToLive may not be null or negative, was " + timeToLive);
+            }
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        public Psd2TrustManager build() {
+            if (delegate == null) {
+                throw new IllegalStateException("A delegate trust manager or trust anchors are required");
+            }
+            return new Psd2TrustManager(this);
+        }
+    }
+}
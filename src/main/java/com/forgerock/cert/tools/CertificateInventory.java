@@ -0,0 +1,207 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.tools;
+
+import com.forgerock.cert.Psd2CertBatchClassifier;
+import com.forgerock.cert.utils.CertificateStreamDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scans files holding any mix of PEM blocks, DER certificates and PKCS#7 bundles, of any size, and summarises the
+ * PSD2 certificates in them.
+ *
+ * Each file is memory mapped a window at a time and split into records in place; the records are then classified in
+ * batches on the configured {@link Executor}. Records are only copied when they are decoded, so a scan runs in
+ * memory proportional to the window and batch sizes regardless of the size of the files.
+ *
+ * Run as {@code java -cp ... com.forgerock.cert.tools.CertificateInventory [--top N] FILE...} to print a report.
+ */
+public class CertificateInventory {
+
+    private final Executor executor;
+    private final int windowSize;
+    private final int batchSize;
+
+    private CertificateInventory(Builder builder) {
+        this.executor = builder.executor;
+        this.windowSize = builder.windowSize;
+        this.batchSize = builder.batchSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public InventoryReport scan(Path... files) throws IOException {
+        return scan(Arrays.asList(files));
+    }
+
+    /**
+     * Scan the files.
+     * @param files the files to scan
+     * @return a report on all the files together
+     * @throws IOException if a file can't be read, or holds a record larger than the window size
+     */
+    public InventoryReport scan(Collection<Path> files) throws IOException {
+        InventoryReport report = new InventoryReport();
+        for (Path file : files) {
+            scanFile(file, report);
+        }
+        return report;
+    }
+
+    private void scanFile(Path file, InventoryReport report) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset < size) {
+                long length = Math.min(windowSize, size - offset);
+                boolean last = offset + length == size;
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                List<ByteBuffer> records = new ArrayList<>();
+                int consumed = RecordSplitter.split(window, last, windowSize, records);
+                classify(records, report);
+                if (last) {
+                    if (consumed < length) {
+                        report.addTruncated();
+                    }
+                    break;
+                }
+                if (consumed == 0) {
+                    throw new IOException("Record at offset " + offset + " of " + file
+                            + " is larger than the window size of " + windowSize + " bytes");
+                }
+                offset += consumed;
+            }
+        }
+    }
+
+    /**
+     * Classify the records in batches in parallel, waiting for them all so that the window can be released.
+     */
+    private void classify(List<ByteBuffer> records, InventoryReport report) {
+        List<CompletableFuture<InventoryReport>> batches = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += batchSize) {
+            List<ByteBuffer> batch = records.subList(from, Math.min(records.size(), from + batchSize));
+            batches.add(CompletableFuture.supplyAsync(() -> classifyBatch(batch), executor));
+        }
+        for (CompletableFuture<InventoryReport> batch : batches) {
+            report.merge(batch.join());
+        }
+    }
+
+    private static InventoryReport classifyBatch(List<ByteBuffer> records) {
+        InventoryReport report = new InventoryReport();
+        for (ByteBuffer record : records) {
+            report.addRecord();
+            try (CertificateStreamDecoder decoder = CertificateStreamDecoder.of(record)) {
+                X509Certificate cert;
+                while ((cert = decoder.read()) != null) {
+                    report.add(Psd2CertBatchClassifier.classify(new X509Certificate[]{cert}));
+                }
+            } catch (IOException | CertificateException | RuntimeException e) {
+                report.addUndecodable();
+            }
+        }
+        return report;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int top = 20;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if ("--top".equals(args[i]) && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else {
+                files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: CertificateInventory [--top N] FILE...");
+            System.exit(2);
+        }
+        CertificateInventory.builder().build().scan(files).print(System.out, top);
+    }
+
+    public static class Builder {
+        private Executor executor = ForkJoinPool.commonPool();
+        private int windowSize = 256 * 1024 * 1024;
+        private int batchSize = 256;
+
+        private Builder() {
+        }
+
+        /**
+         * @param executor classifies the batches of records
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor may not be null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param windowSize the number of bytes of a file mapped at a time. Must exceed the largest record.
+         * @return this builder
+         */
+        public Builder windowSize(int windowSize) {
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("windowSize must be positive, was " + windowSize);
+            }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param batchSize the number of records classified by each task
+         * @return this builder
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public CertificateInventory build() {
+            return new CertificateInventory(this);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.tools;
+
+import com.forgerock.cert.Psd2CertClassification;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A summary of the certificates found by {@link CertificateInventory}, counted by eIDAS certificate type, PSD2 role,
+ * National Competent Authority and organisation identifier.
+ */
+public final class InventoryReport {
+
+    private long records;
+    private long certificates;
+    private long undecodable;
+    private long truncated;
+    private long failed;
+    private long psd2Certificates;
+    private final Map<EidasCertType, Long> byEidasCertType = new EnumMap<>(EidasCertType.class);
+    private final Map<Psd2Role, Long> byRole = new EnumMap<>(Psd2Role.class);
+    private final Map<String, Long> byNcaId = new HashMap<>();
+    private final Map<String, Long> byOrganisationId = new HashMap<>();
+
+    InventoryReport() {
+    }
+
+    void addRecord() {
+        ++records;
+    }
+
+    void addUndecodable() {
+        ++undecodable;
+    }
+
+    void addTruncated() {
+        ++truncated;
+    }
+
+    void add(Psd2CertClassification classification) {
+        ++certificates;
+        if (!classification.isSuccess()) {
+            ++failed;
+            return;
+        }
+        if (!classification.isPsd2Cert()) {
+            return;
+        }
+        ++psd2Certificates;
+        classification.getEidasCertType().ifPresent(type -> byEidasCertType.merge(type, 1L, Long::sum));
+        for (Psd2Role role : classification.getRoles()) {
+            byRole.merge(role, 1L, Long::sum);
+        }
+        classification.getNcaId().ifPresent(nca -> byNcaId.merge(nca, 1L, Long::sum));
+        classification.getOrganisationId().ifPresent(id -> byOrganisationId.merge(id, 1L, Long::sum));
+    }
+
+    void merge(InventoryReport other) {
+        records += other.records;
+        certificates += other.certificates;
+        undecodable += other.undecodable;
+        truncated += other.truncated;
+        failed += other.failed;
+        psd2Certificates += other.psd2Certificates;
+        other.byEidasCertType.forEach((key, count) -> byEidasCertType.merge(key, count, Long::sum));
+        other.byRole.forEach((key, count) -> byRole.merge(key, count, Long::sum));
+        other.byNcaId.forEach((key, count) -> byNcaId.merge(key, count, Long::sum));
+        other.byOrganisationId.forEach((key, count) -> byOrganisationId.merge(key, count, Long::sum));
+    }
+
+    /**
+     * @return the number of PEM blocks and DER records found
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return the number of certificates decoded from the records; a PKCS#7 record may hold several
+     */
+    public long getCertificateCount() {
+        return certificates;
+    }
+
+    /**
+     * @return the number of records that could not be decoded as certificates
+     */
+    public long getUndecodableCount() {
+        return undecodable;
+    }
+
+    /**
+     * @return the number of records cut short by the end of their file
+     */
+    public long getTruncatedCount() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of certificates that could not be classified
+     */
+    public long getFailedCount() {
+        return failed;
+    }
+
+    public long getPsd2CertificateCount() {
+        return psd2Certificates;
+    }
+
+    public Map<EidasCertType, Long> getByEidasCertType() {
+        return Collections.unmodifiableMap(byEidasCertType);
+    }
+
+    public Map<Psd2Role, Long> getByRole() {
+        return Collections.unmodifiableMap(byRole);
+    }
+
+    public Map<String, Long> getByNcaId() {
+        return Collections.unmodifiableMap(byNcaId);
+    }
+
+    public Map<String, Long> getByOrganisationId() {
+        return Collections.unmodifiableMap(byOrganisationId);
+    }
+
+    /**
+     * Print the report.
+     * @param out where to print
+     * @param top the number of organisations to list, most certificates first
+     */
+    public void print(PrintStream out, int top) {
+        out.printf("Records:             %d%n", records);
+        out.printf("Certificates:        %d%n", certificates);
+        out.printf("Undecodable records: %d%n", undecodable);
+        out.printf("Truncated records:   %d%n", truncated);
+        out.printf("Unclassifiable:      %d%n", failed);
+        out.printf("PSD2 certificates:   %d%n", psd2Certificates);
+        printCounts(out, "By eIDAS certificate type", byEidasCertType, Integer.MAX_VALUE);
+        printCounts(out, "By PSD2 role", byRole, Integer.MAX_VALUE);
+        printCounts(out, "By NCA", byNcaId, Integer.MAX_VALUE);
+        printCounts(out, "By organisation (" + byOrganisationId.size() + " distinct, top " + top + ")",
+                byOrganisationId, top);
+    }
+
+    private static <K> void printCounts(PrintStream out, String title, Map<K, Long> counts, int top) {
+        out.println();
+        out.println(title);
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<K, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(entry -> out.printf("  %-40s %d%n", entry.getKey(), entry.getValue()));
+    }
+}
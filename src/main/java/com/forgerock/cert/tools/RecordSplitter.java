@@ -0,0 +1,214 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.tools;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Finds the DER and PEM certificate records in a window of a larger source, handing each one out as a slice of the
+ * window so that nothing is copied. Follows the same rules as
+ * {@link com.forgerock.cert.utils.CertificateStreamDecoder}: a record starting with what looks like the header of a
+ * certificate or PKCS#7 bundle is DER, anything else is text to be searched line by line for PEM blocks holding
+ * certificates.
+ *
+ * The SEQUENCE tag is also the ASCII digit 0, so a record is only taken to be DER if its header is plausible: a
+ * minimally encoded long form length no greater than the maximum record size, followed by the SEQUENCE of a
+ * certificate or the content type OID of a PKCS#7 bundle. Otherwise the byte is treated as the start of a line of
+ * text, so the splitter resynchronises on the next line rather than swallowing what follows. Likewise a BEGIN line
+ * that is not followed by its END line before the next BEGIN line is taken to be a block that was cut off, and
+ * scanning carries on from the line after it.
+ */
+final class RecordSplitter {
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_OID = 0x06;
+    private static final byte[] PEM_BEGIN = ascii("-----BEGIN ");
+    private static final byte[] PEM_END = ascii("-----END ");
+    private static final byte[] DASHES = ascii("-----");
+    private static final String[] CERTIFICATE_LABELS = {"CERTIFICATE", "X509 CERTIFICATE", "PKCS7", "CMS"};
+
+    private RecordSplitter() {
+    }
+
+    /**
+     * Split the window into records.
+     * @param window the bytes from its position 0 to its limit are split
+     * @param last true if the window runs to the end of the source
+     * @param maximumRecordSize the largest DER record that is believed; a longer length is taken to be text
+     * @param records each complete record found is added as a slice of the window
+     * @return the offset of the first byte not consumed. Unless the window is the last, the next window should start
+     * there; for the last window anything before the limit is a truncated record.
+     */
+    static int split(ByteBuffer window, boolean last, int maximumRecordSize, List<ByteBuffer> records) {
+        int limit = window.limit();
+        int pos = 0;
+        while (pos < limit) {
+            if ((window.get(pos) & 0xff) == TAG_SEQUENCE) {
+                long end = derEnd(window, pos, limit, maximumRecordSize);
+                if (end == INCOMPLETE_HEADER && !last) {
+                    return pos;
+                }
+                if (end > limit && !last) {
+                    return pos;
+                }
+                if (end >= 0 && end <= limit) {
+                    records.add(slice(window, pos, (int) end));
+                    pos = (int) end;
+                    continue;
+                }
+                // Not DER, or DER cut off by the end of the source: fall through and resynchronise as text
+            }
+            int lineEnd = indexOf(window, (byte) '\n', pos, limit);
+            if (lineEnd < 0) {
+                if (!last) {
+                    return pos;
+                }
+                lineEnd = limit;
+            }
+            int begin = indexOf(window, PEM_BEGIN, pos, lineEnd);
+            if (begin < 0) {
+                pos = lineEnd + 1;
+                continue;
+            }
+            int labelStart = begin + PEM_BEGIN.length;
+            int labelEnd = indexOf(window, DASHES, labelStart, lineEnd);
+            if (labelEnd < 0) {
+                pos = lineEnd + 1;
+                continue;
+            }
+            // A block can't contain another BEGIN line, so an END marker past the next one belongs to another block
+            int nextBegin = indexOf(window, PEM_BEGIN, lineEnd, limit);
+            byte[] endMarker = endMarker(window, labelStart, labelEnd);
+            int end = indexOf(window, endMarker, labelEnd + DASHES.length, nextBegin < 0 ? limit : nextBegin);
+            boolean certificate = isCertificateLabel(window, labelStart, labelEnd);
+            if (end < 0) {
+                if (certificate && nextBegin < 0) {
+                    // The certificate may still end in the next window, or was cut off by the end of the source
+                    return begin;
+                }
+                // Never terminated, as in a log that cut a block off, so carry on from the next line
+                pos = lineEnd + 1;
+                continue;
+            }
+            end += endMarker.length;
+            if (certificate) {
+                records.add(slice(window, begin, end));
+            }
+            pos = end;
+        }
+        return Math.min(pos, limit);
+    }
+
+    private static final long INCOMPLETE_HEADER = -1;
+    private static final long NOT_DER = -2;
+
+    /**
+     * @return the offset just past the DER record at pos, which may be past the limit, {@link #INCOMPLETE_HEADER} if
+     * its header runs past the limit or {@link #NOT_DER} if the header isn't that of a certificate or bundle
+     */
+    private static long derEnd(ByteBuffer window, int pos, int limit, int maximumRecordSize) {
+        if (pos + 1 >= limit) {
+            return INCOMPLETE_HEADER;
+        }
+        int first = window.get(pos + 1) & 0xff;
+        int count = first & 0x7f;
+        // Certificates and bundles are always longer than 127 bytes, so their lengths are in the long form
+        if (first < 0x80 || count == 0 || count > 4) {
+            return NOT_DER;
+        }
+        int contentStart = pos + 2 + count;
+        if (contentStart >= limit) {
+            return INCOMPLETE_HEADER;
+        }
+        if (window.get(pos + 2) == 0) {
+            return NOT_DER;
+        }
+        long length = 0;
+        for (int i = 0; i < count; ++i) {
+            length = (length << 8) | (window.get(pos + 2 + i) & 0xff);
+        }
+        int inner = window.get(contentStart) & 0xff;
+        if (length < 0x80 || length > maximumRecordSize - 2 - count || (inner != TAG_SEQUENCE && inner != TAG_OID)) {
+            return NOT_DER;
+        }
+        return contentStart + length;
+    }
+
+    private static byte[] endMarker(ByteBuffer window, int labelStart, int labelEnd) {
+        byte[] marker = new byte[PEM_END.length + (labelEnd - labelStart) + DASHES.length];
+        System.arraycopy(PEM_END, 0, marker, 0, PEM_END.length);
+        for (int i = labelStart; i < labelEnd; ++i) {
+            marker[PEM_END.length + i - labelStart] = window.get(i);
+        }
+        System.arraycopy(DASHES, 0, marker, marker.length - DASHES.length, DASHES.length);
+        return marker;
+    }
+
+    private static boolean isCertificateLabel(ByteBuffer window, int labelStart, int labelEnd) {
+        for (String label : CERTIFICATE_LABELS) {
+            if (label.length() == labelEnd - labelStart && regionMatches(window, labelStart, ascii(label))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(ByteBuffer window, byte b, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (window.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer window, byte[] pattern, int from, int to) {
+        for (int i = from; i <= to - pattern.length; ++i) {
+            if (window.get(i) == pattern[0] && regionMatches(window, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(ByteBuffer window, int offset, byte[] pattern) {
+        for (int i = 0; i < pattern.length; ++i) {
+            if (window.get(offset + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer window, int start, int end) {
+        ByteBuffer record = window.duplicate();
+        ((Buffer) record).limit(end);
+        ((Buffer) record).position(start);
+        return record.slice();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking network I/O, such as HTTP requests to OCSP responders and caIssuers URLs, which must not
+ * tie up the threads of the common fork join pool.
+ */
+public final class BlockingIoExecutors {
+
+    private BlockingIoExecutors() {
+    }
+
+    /**
+     * Create a bounded pool of daemon threads. Idle threads exit after a minute, so a pool that is no longer used
+     * holds no threads. Once every thread is busy and the queue is full, submissions are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException} rather than queued without limit.
+     * @param name the prefix of the threads' names
+     * @param threads the most threads that run at once
+     * @param queueSize the most tasks waiting for a thread
+     * @return the executor
+     */
+    public static ExecutorService bounded(String name, int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive, was " + threads);
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be positive, was " + queueSize);
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(queueSize), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Text encodings of binary values such as digests, without the JAXB {@code DatatypeConverter} and without
+ * intermediate copies of the input.
+ */
+public final class ByteEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private ByteEncoder() {
+    }
+
+    /**
+     * @param bytes the bytes to encode
+     * @return the bytes as lower case hex
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes the array holding the bytes to encode
+     * @param offset the offset of the first byte to encode
+     * @param length the number of bytes to encode
+     * @return the bytes as lower case hex
+     */
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+        for (int i = 0; i < length; ++i) {
+            int b = bytes[offset + i];
+            chars[i * 2] = HEX_DIGITS[(b >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param bytes the bytes to encode
+     * @return the bytes in the URL and filename safe base64 alphabet of RFC 4648, without padding
+     */
+    public static String toBase64Url(byte[] bytes) {
+        return BASE64_URL.encodeToString(bytes);
+    }
+
+    /**
+     * @param bytes the array holding the bytes to encode
+     * @param offset the offset of the first byte to encode
+     * @param length the number of bytes to encode
+     * @return the bytes in the URL and filename safe base64 alphabet of RFC 4648, without padding
+     */
+    public static String toBase64Url(byte[] bytes, int offset, int length) {
+        ByteBuffer encoded = BASE64_URL.encode(ByteBuffer.wrap(bytes, offset, length));
+        return new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.US_ASCII);
+    }
+}
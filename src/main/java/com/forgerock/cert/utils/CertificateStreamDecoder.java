@@ -0,0 +1,345 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads X.509 certificates one at a time from a source holding any number of concatenated PEM blocks, DER
+ * certificates and PKCS#7 bundles, in any mix. Certificates are only decoded as they are read, so arbitrarily large
+ * sources can be processed in constant memory.
+ *
+ * Text outside of PEM blocks, such as the "Bag Attributes" and "subject=" lines written by openssl, is skipped, as
+ * are PEM blocks that don't hold certificates. DER input must use definite length encoding. As the SEQUENCE tag that
+ * starts DER is also the ASCII digit 0, a line is only read as DER if it starts with the header of a certificate or
+ * PKCS#7 bundle no longer than {@link #MAX_DER_LENGTH}; otherwise it is skipped like any other text.
+ *
+ * Instances are not thread safe.
+ */
+public class CertificateStreamDecoder implements Closeable {
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_OID = 0x06;
+    private static final String PEM_BEGIN = "-----BEGIN ";
+    private static final String PEM_END = "-----END ";
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * The longest DER certificate or PKCS#7 bundle that is read. A longer length is taken to be text.
+     */
+    public static final int MAX_DER_LENGTH = 4 * 1024 * 1024;
+
+    // Tag, long form length of up to 4 bytes, and the tag of the first element of the content
+    private static final int MAX_HEADER_LENGTH = 7;
+
+    private final InputStream in;
+    private final Deque<X509Certificate> pending = new ArrayDeque<>();
+    // Text following a PEM end marker on the same line, as left by concatenating files without trailing newlines.
+    private String pushedBack;
+
+    public CertificateStreamDecoder(InputStream in) {
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+    }
+
+    public static CertificateStreamDecoder of(InputStream in) {
+        return new CertificateStreamDecoder(in);
+    }
+
+    /**
+     * @param buffer read from its position to its limit. The buffer's position is advanced as certificates are read.
+     * @return a decoder reading the buffer
+     */
+    public static CertificateStreamDecoder of(ByteBuffer buffer) {
+        return new CertificateStreamDecoder(new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * @param file the file to read. The decoder must be closed to release it.
+     * @return a decoder reading the file
+     * @throws IOException if the file can't be opened
+     */
+    public static CertificateStreamDecoder of(Path file) throws IOException {
+        return new CertificateStreamDecoder(new BufferedInputStream(Files.newInputStream(file)));
+    }
+
+    /**
+     * Read the next certificate.
+     * @return the next certificate, or null if there are no more.
+     * @throws IOException if the source can't be read or ends part way through a certificate
+     * @throws CertificateException if a record can't be decoded as a certificate or PKCS#7 bundle
+     */
+    public X509Certificate read() throws IOException, CertificateException {
+        while (pending.isEmpty()) {
+            if (!readRecord()) {
+                return null;
+            }
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Read all remaining certificates, in the order they appear, as a chain suitable for
+     * {@link com.forgerock.cert.Psd2CertInfo}.
+     * @return the remaining certificates, which may be empty
+     * @throws IOException if the source can't be read or ends part way through a certificate
+     * @throws CertificateException if a record can't be decoded as a certificate or PKCS#7 bundle
+     */
+    public X509Certificate[] readChain() throws IOException, CertificateException {
+        List<X509Certificate> chain = new ArrayList<>();
+        X509Certificate cert;
+        while ((cert = read()) != null) {
+            chain.add(cert);
+        }
+        return chain.toArray(new X509Certificate[0]);
+    }
+
+    /**
+     * A lazily evaluated stream of the remaining certificates. Failures are rethrown as {@link UncheckedIOException};
+     * a {@link CertificateException} is wrapped in an IOException first.
+     * @return the stream of certificates
+     */
+    public Stream<X509Certificate> stream() {
+        Iterator<X509Certificate> iterator = new Iterator<X509Certificate>() {
+            private X509Certificate next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = read();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (CertificateException e) {
+                        throw new UncheckedIOException(new IOException("Could not decode certificate", e));
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public X509Certificate next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                X509Certificate cert = next;
+                next = null;
+                return cert;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Read the next DER or PEM record and queue the certificates it holds.
+     * @return false if the end of the source was reached without finding a record
+     */
+    private boolean readRecord() throws IOException, CertificateException {
+        while (true) {
+            if (pushedBack == null) {
+                int first = peek();
+                if (first == -1) {
+                    return false;
+                }
+                if (first == TAG_SEQUENCE) {
+                    long length = peekDerLength();
+                    if (length >= 0) {
+                        decodeDer(readDer(length));
+                        return true;
+                    }
+                }
+            }
+            String line = readLine();
+            int begin = line.indexOf(PEM_BEGIN);
+            if (begin >= 0 && readPem(line.substring(begin))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the block held certificates
+     */
+    private boolean readPem(String beginLine) throws IOException, CertificateException {
+        int labelEnd = beginLine.indexOf("-----", PEM_BEGIN.length());
+        if (labelEnd < 0) {
+            return false;
+        }
+        String label = beginLine.substring(PEM_BEGIN.length(), labelEnd);
+        String endMarker = PEM_END + label + "-----";
+        StringBuilder base64 = new StringBuilder(beginLine.substring(labelEnd + "-----".length()).trim());
+        while (true) {
+            String line = readLine();
+            int end = line.indexOf(endMarker);
+            if (end >= 0) {
+                base64.append(line, 0, end);
+                String rest = line.substring(end + endMarker.length());
+                pushedBack = rest.trim().isEmpty() ? null : rest;
+                break;
+            }
+            if (line.isEmpty() && peek() == -1) {
+                throw new EOFException("Missing " + endMarker);
+            }
+            base64.append(line.trim());
+        }
+        switch (label) {
+            case "CERTIFICATE":
+            case "X509 CERTIFICATE":
+            case "PKCS7":
+            case "CMS":
+                byte[] der;
+                try {
+                    der = Base64.getMimeDecoder().decode(base64.toString());
+                } catch (IllegalArgumentException e) {
+                    throw new CertificateException("Invalid base64 in PEM block " + label, e);
+                }
+                decodeDer(der);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void decodeDer(byte[] der) throws CertificateException {
+        // A PKCS#7 ContentInfo starts with its content type OID, a certificate with its TBSCertificate SEQUENCE
+        int inner = 1 + (der.length > 1 && (der[1] & 0x80) != 0 ? 1 + (der[1] & 0x7f) : 1);
+        ByteArrayInputStream derIn = new ByteArrayInputStream(der);
+        if (inner < der.length && (der[inner] & 0xff) == TAG_OID) {
+            for (Certificate cert : CertificateUtils.x509Factory().generateCertificates(derIn)) {
+                pending.add((X509Certificate) cert);
+            }
+        } else {
+            pending.add((X509Certificate) CertificateUtils.x509Factory().generateCertificate(derIn));
+        }
+    }
+
+    /**
+     * Look at the header of what may be a DER record, without consuming it.
+     * @return the length of the whole record, or -1 if the header isn't that of a certificate or PKCS#7 bundle of at
+     * most {@link #MAX_DER_LENGTH} bytes. Both are always longer than 127 bytes, so have long form lengths.
+     */
+    private long peekDerLength() throws IOException {
+        byte[] header = new byte[MAX_HEADER_LENGTH];
+        in.mark(MAX_HEADER_LENGTH);
+        int available = 0;
+        int read;
+        while (available < header.length && (read = in.read(header, available, header.length - available)) != -1) {
+            available += read;
+        }
+        in.reset();
+        if (available < 3) {
+            return -1;
+        }
+        int first = header[1] & 0xff;
+        int count = first & 0x7f;
+        if (first < 0x80 || count == 0 || count > 4 || header[2] == 0 || available < 2 + count + 1) {
+            return -1;
+        }
+        long length = 0;
+        for (int i = 0; i < count; ++i) {
+            length = (length << 8) | (header[2 + i] & 0xff);
+        }
+        int inner = header[2 + count] & 0xff;
+        if (length < 0x80 || 2 + count + length > MAX_DER_LENGTH || (inner != TAG_SEQUENCE && inner != TAG_OID)) {
+            return -1;
+        }
+        return 2 + count + length;
+    }
+
+    private byte[] readDer(long length) throws IOException {
+        byte[] record = new byte[(int) length];
+        int filled = 0;
+        while (filled < record.length) {
+            int read = in.read(record, filled, record.length - filled);
+            if (read == -1) {
+                throw new EOFException("DER record truncated, " + (record.length - filled) + " bytes missing");
+            }
+            filled += read;
+        }
+        return record;
+    }
+
+    private int peek() throws IOException {
+        in.mark(1);
+        int b = in.read();
+        in.reset();
+        return b;
+    }
+
+    /**
+     * @return the next line without its terminator. Empty at the end of the source.
+     */
+    private String readLine() throws IOException {
+        if (pushedBack != null) {
+            String line = pushedBack;
+            pushedBack = null;
+            return line;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_LINE_LENGTH) {
+                throw new IOException("Line too long, the source is not PEM or DER");
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
@@ -22,17 +22,12 @@ package com.forgerock.cert.utils;
 
 import com.forgerock.cert.eidas.EidasCertType;
 import com.forgerock.cert.eidas.EidasInformation;
-import com.forgerock.cert.eidas.QCStatements;
-import com.forgerock.cert.psd2.ASN1ObjectIdentifiers;
-import com.forgerock.cert.psd2.Psd2QcStatement;
-import com.forgerock.cert.psd2.Psd2Role;
-import com.forgerock.cert.psd2.RolesOfPsp;
 import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
 import com.forgerock.cert.exception.NoSuchRDNInField;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.DLSequence;
-import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -40,8 +35,6 @@ import org.bouncycastle.asn1.x500.X500NameBuilder;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.asn1.x509.*;
-import org.bouncycastle.asn1.x509.qualified.ETSIQCObjectIdentifiers;
-import org.bouncycastle.asn1.x509.qualified.QCStatement;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
 
@@ -56,16 +49,30 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.text.MessageFormat;
 import java.util.Arrays;
-import java.util.Set;
-import javax.xml.bind.DatatypeConverter;
 
 
 public class CertificateUtils {
 
+    // CertificateFactory instances aren't documented as thread safe, so each thread keeps its own.
+    private static final ThreadLocal<CertificateFactory> X509_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            // Every Java platform is required to support X.509
+            throw new IllegalStateException("X.509 CertificateFactory is not available", e);
+        }
+    });
+
     public static X509Certificate decodeCertificate(byte encodedCert[]) throws CertificateException {
         ByteArrayInputStream inputStream  =  new ByteArrayInputStream(encodedCert);
-        CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        return (X509Certificate)certFactory.generateCertificate(inputStream);
+        return (X509Certificate)x509Factory().generateCertificate(inputStream);
+    }
+
+    /**
+     * @return the calling thread's X.509 CertificateFactory
+     */
+    static CertificateFactory x509Factory() {
+        return X509_FACTORY.get();
     }
 
 
@@ -74,52 +81,19 @@ public class CertificateUtils {
         byte[] der = x509Cert.getEncoded();
         md.update(der);
         byte[] digest = md.digest();
-        String digestHex = DatatypeConverter.printHexBinary(digest);
-        return digestHex.toLowerCase();
+        return ByteEncoder.toHex(digest);
     }
 
 
+    /**
+     * Add the eIDAS and PSD2 extensions to a certificate signing request. When building many requests with the same
+     * extensions compile an {@link EidasExtensionsTemplate} once and apply it to each request instead.
+     */
     public static PKCS10CertificationRequestBuilder addEidasExtensionsToCSR(PKCS10CertificationRequestBuilder csr,
                                                                             EidasCertType certType,
                                                                             EidasInformation eidasInfo)
             throws IOException {
-
-        ExtensionsGenerator generator = new ExtensionsGenerator();
-
-        //ToDo: what is the URI where a TPP can access the FR CA signing Cert?
-        AccessDescription[] accessDescriptions = new AccessDescription[2];
-        GeneralName caIssuerName = new GeneralName(GeneralName.uniformResourceIdentifier, eidasInfo.getCaIssuerCertURL());
-        accessDescriptions[0] = new AccessDescription(AccessDescription.id_ad_caIssuers, caIssuerName);
-        GeneralName oscpName = new GeneralName(GeneralName.uniformResourceIdentifier, eidasInfo.getOcspUri());
-        accessDescriptions[1] = new AccessDescription(AccessDescription.id_ad_ocsp, oscpName);
-        AuthorityInformationAccess authInfoAccess = new AuthorityInformationAccess(accessDescriptions);
-        generator.addExtension(Extension.authorityInfoAccess, false, authInfoAccess);
-
-        // Create the PSD2 QCStatement
-        // Add the roles.
-        RolesOfPsp roles = new RolesOfPsp();
-        Set<Psd2Role> psd2Roles = eidasInfo.getPsd2Roles();
-        for(Psd2Role psd2Role: psd2Roles){
-            roles.addRole(psd2Role);
-        }
-        Psd2QcStatement psd2QCStatement = new Psd2QcStatement(roles, eidasInfo.getNcaName(), eidasInfo.getNcaId());
-
-        // Add the eIDAS certificate extensions
-        QCStatements qcStatements = new QCStatements();
-        qcStatements.addStatement(ASN1ObjectIdentifiers.id_etsi_qcs_SemanticsId_Legal);
-        qcStatements.addStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance);
-        ASN1ObjectIdentifier certTypeOid = new ASN1ObjectIdentifier(certType.getOid());
-        DLSequence certTypeSequence = new DLSequence(certTypeOid);
-        QCStatement certTypeStatement = new QCStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcType, certTypeSequence);
-        qcStatements.addStatement(certTypeStatement);
-        qcStatements.setPsd2QcStatement(psd2QCStatement);
-        generator.addExtension(Extension.qCStatements, false, qcStatements.toASN1Primitive());
-
-        Extensions extensions = generator.generate();
-
-        csr.addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, extensions);
-
-        return csr;
+        return EidasExtensionsTemplate.compile(certType, eidasInfo).apply(csr);
     }
 
     public static X500Name getX500Name(CertificateConfiguration certConf){
@@ -164,15 +138,33 @@ public class CertificateUtils {
 
     public static String getOrganisationIdentifier(X509Certificate cert) throws CertificateEncodingException,
             InvalidPsd2EidasCertificate {
-        JcaX509CertificateHolder certHolder = new JcaX509CertificateHolder(cert);
-        return CertificateUtils.getOrganisationIdentifier(certHolder);
+        return CertificateUtils.getOrganisationIdentifier(RawCertificate.scan(cert).getSubject());
     }
 
     public static String getOrganisationIdentifier(JcaX509CertificateHolder certHolder )
             throws InvalidPsd2EidasCertificate {
-        X500Name subject = certHolder.getSubject();
+        return CertificateUtils.getOrganisationIdentifier(certHolder.getSubject());
+    }
+
+    /**
+     * Get the organisation identifier from a certificate subject.
+     * @param subject the subject of the certificate
+     * @return the organisation identifier
+     * @throws InvalidPsd2EidasCertificate if the subject has no, or a malformed, organisation identifier
+     */
+    public static String getOrganisationIdentifier(X500Name subject) throws InvalidPsd2EidasCertificate {
+        return findOrganisationIdentifier(subject).getOrThrow();
+    }
+
+    /**
+     * Get the organisation identifier from a certificate subject without throwing if it is missing or malformed.
+     * @param subject the subject of the certificate
+     * @return a valid result holding the organisation identifier, or an invalid result describing why there isn't
+     * one.
+     */
+    public static ValidationResult<String> findOrganisationIdentifier(X500Name subject) {
         if(subject == null){
-            throw new InvalidPsd2EidasCertificate("Certificate has no subject");
+            return ValidationResult.invalid(ValidationError.NO_SUBJECT);
         }
 
         RDN[] rdns = subject.getRDNs(BCStyle.ORGANIZATION_IDENTIFIER);
@@ -181,52 +173,43 @@ public class CertificateUtils {
         }
 
         if(rdns == null || rdns.length == 0){
-            throw new InvalidPsd2EidasCertificate("No Organization Identifier in certificate. Expected an " +
-                    "organization ID in the subject RDN with OID of " + BCStyle.ORGANIZATION_IDENTIFIER.getId() +
-                    " Format should follow the id-etsi-qcs-SemanticsId-Legal format as described in section 5.1.4 of " +
-                    " ETSI TS 119 412-1 V1.2.1 (2018-05). Link: " +
-                    "https://www.etsi.org/deliver/etsi_ts/119400_119499/11941201/01.02.01_60/ts_11941201v010201p.pdf");
+            return ValidationResult.invalid(ValidationError.NO_ORGANISATION_IDENTIFIER);
         }
 
         RDN rdn = rdns[0];
-        String errorMessage = "";
         if(rdn != null){
             AttributeTypeAndValue attributeTypeAndValue = rdn.getFirst();
             if(attributeTypeAndValue != null){
                 ASN1Encodable attributeValue = attributeTypeAndValue.getValue();
                 if(attributeValue != null){
-                    return IETFUtils.valueToString(attributeValue);
+                    return ValidationResult.valid(IETFUtils.valueToString(attributeValue));
                 } else {
-                    errorMessage = "Malformed Organization Identifier - attribute type and value was null, rdn was " + rdn;
+                    return ValidationResult.invalid(ValidationError.MALFORMED_ORGANISATION_IDENTIFIER, () ->
+                            "Malformed Organization Identifier - attribute type and value was null, rdn was " + rdn);
                 }
             } else {
-                errorMessage = "Malformed Organization Identifier - rdn was null, rdns was " + Arrays.toString(rdns);
+                RDN[] allRdns = rdns;
+                return ValidationResult.invalid(ValidationError.MALFORMED_ORGANISATION_IDENTIFIER, () ->
+                        "Malformed Organization Identifier - rdn was null, rdns was " + Arrays.toString(allRdns));
             }
         } else {
-            errorMessage = "Malformed Organization Identifier - rdn was null";
+            return ValidationResult.invalid(ValidationError.MALFORMED_ORGANISATION_IDENTIFIER, () ->
+                    "Malformed Organization Identifier - rdn was null");
         }
-        throw new InvalidPsd2EidasCertificate("Malformed Organization Identifier in certificate. Expected an " +
-                "organization ID in the subject RDN with OID of " + BCStyle.ORGANIZATION_IDENTIFIER.getId() +
-                " Format should follow the id-etsi-qcs-SemanticsId-Legal format as described in section 5.1.4 of " +
-                " ETSI TS 119 412-1 V1.2.1 (2018-05). Link: " +
-                "https://www.etsi.org/deliver/etsi_ts/119400_119499/11941201/01.02.01_60/ts_11941201v010201p.pdf. " +
-                "Error details: " + errorMessage
-
-        );
     }
 
 
     public static String getRDNAsString(X509Certificate cert, RdnField field, ASN1ObjectIdentifier rdnOid)
             throws CertificateEncodingException, NoSuchRDNInField {
-        JcaX509CertificateHolder holder = new JcaX509CertificateHolder(cert);
+        RawCertificate raw = RawCertificate.scan(cert);
         X500Name name;
 
         switch(field){
             case ISSUER:
-                name = holder.getIssuer();
+                name = raw.getIssuer();
                 break;
             case SUBJECT:
-                name = holder.getSubject();
+                name = raw.getSubject();
                 break;
             default:
                 throw new IllegalArgumentException("Unrecognised RdnField value: " + field.toString());
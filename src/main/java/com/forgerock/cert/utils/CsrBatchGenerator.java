@@ -0,0 +1,148 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates signed PKCS#10 certificate signing requests for many subjects in parallel on a caller supplied
+ * {@link Executor}. Every request carries the same pre-built {@link EidasExtensionsTemplate}, and its subject is built
+ * from a {@link CertificateConfiguration} by {@link CertificateUtils#getX500Name(CertificateConfiguration)}.
+ *
+ * Each request has a key pair of its own, taken from the key pair supplier on the thread that builds the request, so
+ * the supplier must be thread safe. Generating the key pair is usually the most expensive step.
+ *
+ * Only a bounded number of CSRs are in flight at once, so generating CSRs for a large stream of subjects holds at
+ * most that many key pairs and requests in memory rather than one for every subject in the stream.
+ */
+public class CsrBatchGenerator {
+
+    /**
+     * The number of CSRs submitted ahead of the one being consumed, unless another limit is given.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final EidasExtensionsTemplate template;
+    private final Supplier<KeyPair> keyPairs;
+    private final String signatureAlgorithm;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /**
+     * @param template the extensions to request in every CSR
+     * @param keyPairs supplies a new key pair for each CSR
+     * @param signatureAlgorithm the JCA name of the algorithm used to sign the CSRs, such as SHA256withRSA. It must
+     *                           suit the keys supplied.
+     * @param executor builds and signs each CSR
+     */
+    public CsrBatchGenerator(EidasExtensionsTemplate template, Supplier<KeyPair> keyPairs, String signatureAlgorithm,
+                             Executor executor) {
+        this(template, keyPairs, signatureAlgorithm, executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param template the extensions to request in every CSR
+     * @param keyPairs supplies a new key pair for each CSR
+     * @param signatureAlgorithm the JCA name of the algorithm used to sign the CSRs, such as SHA256withRSA. It must
+     *                           suit the keys supplied.
+     * @param executor builds and signs each CSR
+     * @param maxInFlight the most CSRs to have submitted to the executor but not yet consumed
+     */
+    public CsrBatchGenerator(EidasExtensionsTemplate template, Supplier<KeyPair> keyPairs, String signatureAlgorithm,
+                             Executor executor, int maxInFlight) {
+        this.template = template;
+        this.keyPairs = keyPairs;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.executor = executor;
+        this.maxInFlight = InFlightWindow.requirePositive(maxInFlight);
+    }
+
+    /**
+     * Generate a CSR for each configuration, waiting for all of them to complete.
+     * @param configurations the subjects to generate CSRs for
+     * @return a CSR for each configuration, in the iteration order of the collection
+     * @throws CompletionException if a CSR could not be signed, or the executor rejected it. The cause is the
+     * failure.
+     */
+    public List<GeneratedCsr> generate(Collection<CertificateConfiguration> configurations) {
+        return generate(configurations.stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * Generate a CSR for each configuration. Configurations are submitted to the executor as the returned stream is
+     * consumed, keeping up to the maximum in flight ahead of it, and the stream yields the CSRs in encounter order as
+     * they complete.
+     * @param configurations the subjects to generate CSRs for
+     * @return the CSR for each configuration, in encounter order. Consuming the stream throws a
+     * {@link CompletionException} when it reaches a CSR that could not be signed, or that the executor rejected.
+     */
+    public Stream<GeneratedCsr> generate(Stream<CertificateConfiguration> configurations) {
+        return InFlightWindow.stream(configurations, maxInFlight, this::submit);
+    }
+
+    private CompletableFuture<GeneratedCsr> submit(CertificateConfiguration configuration) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return generate(configuration);
+                } catch (OperatorCreationException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<GeneratedCsr> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Generate one CSR on the calling thread.
+     * @param configuration the subject of the CSR
+     * @return the signed CSR
+     * @throws OperatorCreationException if the CSR can't be signed with the key pair and signature algorithm
+     */
+    public GeneratedCsr generate(CertificateConfiguration configuration) throws OperatorCreationException {
+        KeyPair keyPair = keyPairs.get();
+        PKCS10CertificationRequestBuilder builder = new JcaPKCS10CertificationRequestBuilder(
+                CertificateUtils.getX500Name(configuration), keyPair.getPublic());
+        template.apply(builder);
+        ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate());
+        PKCS10CertificationRequest request = builder.build(signer);
+        return new GeneratedCsr(configuration, keyPair, request);
+    }
+}
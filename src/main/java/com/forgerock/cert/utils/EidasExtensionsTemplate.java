@@ -0,0 +1,135 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.eidas.EidasInformation;
+import com.forgerock.cert.eidas.QCStatements;
+import com.forgerock.cert.psd2.ASN1ObjectIdentifiers;
+import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.psd2.RolesOfPsp;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DLSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.qualified.ETSIQCObjectIdentifiers;
+import org.bouncycastle.asn1.x509.qualified.QCStatement;
+import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+
+import java.io.IOException;
+
+/**
+ * The eIDAS and PSD2 extensions for a certificate signing request, built and encoded once from an
+ * {@link EidasCertType} and {@link EidasInformation} so that they can be added to any number of requests.
+ *
+ * The extensions hold the authority information access locations and the QCStatements, including the PSD2
+ * statement with the roles and competent authority of the TPP. The extensions are encoded once when the template is
+ * compiled, and requests carry that encoding, so adding the template to a request does not rebuild any of the ASN.1
+ * structures.
+ *
+ * Templates are immutable and safe to share between threads. Changes made to the EidasInformation after the
+ * template is compiled do not affect it.
+ */
+public final class EidasExtensionsTemplate {
+
+    private final Extensions extensions;
+    private final byte[] encoded;
+    // Parsed back from the DER encoding, so requests carry the encoded structure as it is rather than rebuilding it
+    // from the Extensions each time.
+    private final ASN1Primitive requested;
+
+    private EidasExtensionsTemplate(Extensions extensions) throws IOException {
+        this.extensions = extensions;
+        this.encoded = extensions.getEncoded(ASN1Encoding.DER);
+        this.requested = ASN1Primitive.fromByteArray(encoded);
+    }
+
+    /**
+     * Build the extensions for a type of eIDAS certificate.
+     * @param certType the type of eIDAS certificate being requested
+     * @param eidasInfo the PSD2 roles, competent authority and authority locations to include
+     * @return the template
+     * @throws IOException if the extensions can't be encoded
+     */
+    public static EidasExtensionsTemplate compile(EidasCertType certType, EidasInformation eidasInfo)
+            throws IOException {
+        ExtensionsGenerator generator = new ExtensionsGenerator();
+
+        AccessDescription[] accessDescriptions = new AccessDescription[2];
+        GeneralName caIssuerName = new GeneralName(GeneralName.uniformResourceIdentifier,
+                eidasInfo.getCaIssuerCertURL());
+        accessDescriptions[0] = new AccessDescription(AccessDescription.id_ad_caIssuers, caIssuerName);
+        GeneralName oscpName = new GeneralName(GeneralName.uniformResourceIdentifier, eidasInfo.getOcspUri());
+        accessDescriptions[1] = new AccessDescription(AccessDescription.id_ad_ocsp, oscpName);
+        AuthorityInformationAccess authInfoAccess = new AuthorityInformationAccess(accessDescriptions);
+        generator.addExtension(Extension.authorityInfoAccess, false, authInfoAccess);
+
+        // Create the PSD2 QCStatement
+        // Add the roles.
+        RolesOfPsp roles = new RolesOfPsp();
+        for(Psd2Role psd2Role: eidasInfo.getPsd2Roles()){
+            roles.addRole(psd2Role);
+        }
+        Psd2QcStatement psd2QCStatement = new Psd2QcStatement(roles, eidasInfo.getNcaName(), eidasInfo.getNcaId());
+
+        // Add the eIDAS certificate extensions
+        QCStatements qcStatements = new QCStatements();
+        qcStatements.addStatement(ASN1ObjectIdentifiers.id_etsi_qcs_SemanticsId_Legal);
+        qcStatements.addStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance);
+        DLSequence certTypeSequence = new DLSequence(certType.getAsn1Oid());
+        QCStatement certTypeStatement = new QCStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcType, certTypeSequence);
+        qcStatements.addStatement(certTypeStatement);
+        qcStatements.setPsd2QcStatement(psd2QCStatement);
+        generator.addExtension(Extension.qCStatements, false, qcStatements.toASN1Primitive());
+
+        return new EidasExtensionsTemplate(generator.generate());
+    }
+
+    /**
+     * Request the extensions in a certificate signing request.
+     * @param csr the request being built
+     * @return the request being built
+     */
+    public PKCS10CertificationRequestBuilder apply(PKCS10CertificationRequestBuilder csr) {
+        return csr.addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, requested);
+    }
+
+    /**
+     * @return the extensions
+     */
+    public Extensions getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * @return a copy of the DER encoding of the extensions
+     */
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+}
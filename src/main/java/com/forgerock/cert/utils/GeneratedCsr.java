@@ -0,0 +1,56 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+
+import java.security.KeyPair;
+
+/**
+ * A signed certificate signing request together with the configuration it was built from and its key pair.
+ */
+public final class GeneratedCsr {
+
+    private final CertificateConfiguration configuration;
+    private final KeyPair keyPair;
+    private final PKCS10CertificationRequest request;
+
+    GeneratedCsr(CertificateConfiguration configuration, KeyPair keyPair, PKCS10CertificationRequest request) {
+        this.configuration = configuration;
+        this.keyPair = keyPair;
+        this.request = request;
+    }
+
+    public CertificateConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return the key pair whose public key is in the request and whose private key signed it
+     */
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public PKCS10CertificationRequest getRequest() {
+        return request;
+    }
+}
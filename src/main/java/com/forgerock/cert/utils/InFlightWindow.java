@@ -0,0 +1,95 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs asynchronous work for each element of a stream while keeping only a bounded window of it in flight. Elements
+ * are submitted as the returned stream is consumed, up to the maximum ahead of the consumer, and their results are
+ * handed on in encounter order. However long the input, at most that many results are held in memory at once.
+ *
+ * @param <T> the type of the inputs
+ * @param <R> the type of the results
+ */
+public final class InFlightWindow<T, R> extends Spliterators.AbstractSpliterator<R> {
+
+    private final Iterator<T> inputs;
+    private final Function<T, CompletableFuture<R>> submit;
+    private final int maxInFlight;
+    private final ArrayDeque<CompletableFuture<R>> window = new ArrayDeque<>();
+
+    private InFlightWindow(Iterator<T> inputs, Function<T, CompletableFuture<R>> submit, int maxInFlight) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.inputs = inputs;
+        this.submit = submit;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param inputs the elements to submit
+     * @param maxInFlight the most elements to have submitted but not yet consumed
+     * @param submit starts the work for an element. It should not throw; work that can't be started should be
+     *               reported through the future it returns.
+     * @param <T> the type of the inputs
+     * @param <R> the type of the results
+     * @return a sequential stream of the results, in encounter order. Closing it closes the inputs.
+     */
+    public static <T, R> Stream<R> stream(Stream<T> inputs, int maxInFlight,
+                                          Function<T, CompletableFuture<R>> submit) {
+        requirePositive(maxInFlight);
+        return StreamSupport.stream(new InFlightWindow<>(inputs.iterator(), submit, maxInFlight), false)
+                .onClose(inputs::close);
+    }
+
+    /**
+     * @param maxInFlight a maximum number of elements in flight
+     * @return the maximum
+     * @throws IllegalArgumentException if it isn't positive
+     */
+    public static int requirePositive(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive, was " + maxInFlight);
+        }
+        return maxInFlight;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        while (window.size() < maxInFlight && inputs.hasNext()) {
+            window.add(submit.apply(inputs.next()));
+        }
+        CompletableFuture<R> next = window.poll();
+        if (next == null) {
+            return false;
+        }
+        action.accept(next.join());
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Maps ASN.1 Object Identifiers to the enum constants that represent them, without comparing dotted strings.
+ *
+ * Lookups by {@link ASN1ObjectIdentifier} use a hash map keyed on the identifier objects, whose hash codes
+ * BouncyCastle caches, so a lookup allocates nothing.
+ *
+ * Registries are immutable and safe to share between threads.
+ *
+ * @param <E> the enum type
+ */
+public final class OidRegistry<E extends Enum<E>> {
+
+    private final Map<ASN1ObjectIdentifier, E> byOid = new HashMap<>();
+    private final Map<String, E> byId = new HashMap<>();
+
+    /**
+     * @param values the enum constants to register, typically {@code E.values()}
+     * @param oidOf gets the Object Identifier of a constant
+     */
+    public OidRegistry(E[] values, Function<E, ASN1ObjectIdentifier> oidOf) {
+        for (E value : values) {
+            ASN1ObjectIdentifier oid = oidOf.apply(value);
+            if (byOid.put(oid, value) != null) {
+                throw new IllegalArgumentException("Duplicate Object Identifier " + oid.getId());
+            }
+            byId.put(oid.getId(), value);
+        }
+    }
+
+    /**
+     * @param oid the Object Identifier
+     * @return the registered constant, or null if the OID is not registered
+     */
+    public E get(ASN1ObjectIdentifier oid) {
+        return oid == null ? null : byOid.get(oid);
+    }
+
+    /**
+     * @param oid the Object Identifier in dot separated form
+     * @return the registered constant, or null if the OID is not registered
+     */
+    public E get(String oid) {
+        return oid == null ? null : byId.get(oid);
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x500.X500Name;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+/**
+ * A view over the DER encoding of an X.509 certificate. A single pass over the encoding records where the issuer,
+ * subject and extensions are, and only those parts of the certificate that are asked for are then decoded. This
+ * avoids building a {@link org.bouncycastle.cert.X509CertificateHolder}, which decodes the whole certificate.
+ *
+ * <pre>
+ * Certificate ::= SEQUENCE {
+ *     tbsCertificate       TBSCertificate,
+ *     ... }
+ * TBSCertificate ::= SEQUENCE {
+ *     version         [0]  EXPLICIT Version DEFAULT v1,
+ *     serialNumber         CertificateSerialNumber,
+ *     signature            AlgorithmIdentifier,
+ *     issuer               Name,
+ *     validity             Validity,
+ *     subject              Name,
+ *     subjectPublicKeyInfo SubjectPublicKeyInfo,
+ *     issuerUniqueID  [1]  IMPLICIT UniqueIdentifier OPTIONAL,
+ *     subjectUniqueID [2]  IMPLICIT UniqueIdentifier OPTIONAL,
+ *     extensions      [3]  EXPLICIT Extensions OPTIONAL }
+ * Extension ::= SEQUENCE {
+ *     extnID      OBJECT IDENTIFIER,
+ *     critical    BOOLEAN DEFAULT FALSE,
+ *     extnValue   OCTET STRING }
+ * </pre>
+ */
+public final class RawCertificate {
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_OID = 0x06;
+    private static final int TAG_BOOLEAN = 0x01;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_VERSION = 0xa0;
+    private static final int TAG_EXTENSIONS = 0xa3;
+
+    private final byte[] der;
+    private int issuerOffset;
+    private int issuerLength;
+    private int subjectOffset;
+    private int subjectLength;
+    // Offset and length of the contents of the SEQUENCE OF Extension, or -1 if there are no extensions.
+    private int extensionsOffset = -1;
+    private int extensionsLength;
+
+    private RawCertificate(byte[] der) {
+        this.der = der;
+    }
+
+    public static RawCertificate scan(X509Certificate cert) throws CertificateEncodingException {
+        return scan(cert.getEncoded());
+    }
+
+    /**
+     * Locate the fields of a DER encoded certificate.
+     * @param der the DER encoded certificate. The array is used directly and must not be modified.
+     * @return a view over the certificate
+     * @throws CertificateEncodingException if the encoding is not the expected structure.
+     */
+    public static RawCertificate scan(byte[] der) throws CertificateEncodingException {
+        RawCertificate raw = new RawCertificate(der);
+        try {
+            raw.scan();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new CertificateEncodingException("Malformed certificate: truncated DER encoding");
+        }
+        return raw;
+    }
+
+    private void scan() throws CertificateEncodingException {
+        int certContents = enter(0, TAG_SEQUENCE, der.length, "Certificate");
+        int tbsContents = enter(certContents, TAG_SEQUENCE, der.length, "TBSCertificate");
+        int tbsEnd = tbsContents + contentLength(certContents);
+
+        int pos = tbsContents;
+        if ((der[pos] & 0xff) == TAG_VERSION) {
+            pos = next(pos);
+        }
+        pos = next(pos); // serialNumber
+        pos = next(pos); // signature
+
+        expectTag(pos, TAG_SEQUENCE, "issuer");
+        issuerOffset = pos;
+        issuerLength = next(pos) - pos;
+        pos = next(pos);
+
+        pos = next(pos); // validity
+
+        expectTag(pos, TAG_SEQUENCE, "subject");
+        subjectOffset = pos;
+        subjectLength = next(pos) - pos;
+        pos = next(pos);
+
+        pos = next(pos); // subjectPublicKeyInfo
+
+        while (pos < tbsEnd) {
+            if ((der[pos] & 0xff) == TAG_EXTENSIONS) {
+                int extensions = enter(pos, TAG_EXTENSIONS, tbsEnd, "extensions");
+                int sequenceOf = enter(extensions, TAG_SEQUENCE, tbsEnd, "Extensions");
+                extensionsOffset = sequenceOf;
+                extensionsLength = contentLength(extensions);
+                break;
+            }
+            pos = next(pos);
+        }
+    }
+
+    /**
+     * @return the subject of the certificate
+     * @throws CertificateEncodingException if the subject can't be decoded
+     */
+    public X500Name getSubject() throws CertificateEncodingException {
+        return X500Name.getInstance(decode(subjectOffset, subjectLength));
+    }
+
+    /**
+     * @return the issuer of the certificate
+     * @throws CertificateEncodingException if the issuer can't be decoded
+     */
+    public X500Name getIssuer() throws CertificateEncodingException {
+        return X500Name.getInstance(decode(issuerOffset, issuerLength));
+    }
+
+    /**
+     * Add the DER encoding of the subject to a digest without copying it.
+     * @param digest the digest to update
+     */
+    public void digestSubject(MessageDigest digest) {
+        digest.update(der, subjectOffset, subjectLength);
+    }
+
+    /**
+     * @return true if the certificate has an extensions field, even if it is empty.
+     */
+    public boolean hasExtensions() {
+        return extensionsOffset >= 0;
+    }
+
+    /**
+     * Find and decode the value of an extension.
+     * @param oid the Object Identifier of the extension
+     * @return the decoded contents of the extnValue OCTET STRING, or null if the certificate does not contain the
+     * extension.
+     * @throws CertificateEncodingException if the extensions are not the expected structure.
+     */
+    public ASN1Primitive getExtensionValue(ASN1ObjectIdentifier oid) throws CertificateEncodingException {
+        if (!hasExtensions()) {
+            return null;
+        }
+        byte[] wanted = encodedOid(oid);
+        int end = extensionsOffset + extensionsLength;
+        try {
+            int pos = extensionsOffset;
+            while (pos < end) {
+                int extension = enter(pos, TAG_SEQUENCE, end, "Extension");
+                if (regionMatches(extension, wanted)) {
+                    int field = next(extension);
+                    if ((der[field] & 0xff) == TAG_BOOLEAN) {
+                        field = next(field);
+                    }
+                    int value = enter(field, TAG_OCTET_STRING, end, "extnValue");
+                    return decode(value, contentLength(field));
+                }
+                pos = next(pos);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new CertificateEncodingException("Malformed certificate: truncated extensions");
+        }
+        return null;
+    }
+
+    private static byte[] encodedOid(ASN1ObjectIdentifier oid) throws CertificateEncodingException {
+        try {
+            return oid.getEncoded();
+        } catch (IOException e) {
+            throw new CertificateEncodingException("Could not encode " + oid.getId());
+        }
+    }
+
+    private boolean regionMatches(int offset, byte[] expected) {
+        if (offset + expected.length > der.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; ++i) {
+            if (der[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ASN1Primitive decode(int offset, int length) throws CertificateEncodingException {
+        try (ASN1InputStream in = new ASN1InputStream(new ByteArrayInputStream(der, offset, length), length)) {
+            return in.readObject();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CertificateEncodingException("Malformed certificate: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the offset of the contents of the element at pos, after checking its tag and that it fits before end.
+     */
+    private int enter(int pos, int tag, int end, String name) throws CertificateEncodingException {
+        expectTag(pos, tag, name);
+        int contents = pos + 1 + lengthOfLength(pos);
+        if (contents + contentLength(pos) > end) {
+            throw new CertificateEncodingException("Malformed certificate: " + name + " overruns its container");
+        }
+        return contents;
+    }
+
+    private void expectTag(int pos, int tag, String name) throws CertificateEncodingException {
+        if ((der[pos] & 0xff) != tag) {
+            throw new CertificateEncodingException("Malformed certificate: unexpected tag " +
+                    Integer.toHexString(der[pos] & 0xff) + " for " + name);
+        }
+    }
+
+    /**
+     * @return the offset of the element following the one at pos
+     */
+    private int next(int pos) throws CertificateEncodingException {
+        return pos + 1 + lengthOfLength(pos) + contentLength(pos);
+    }
+
+    private int lengthOfLength(int pos) {
+        int first = der[pos + 1] & 0xff;
+        return first < 0x80 ? 1 : 1 + (first & 0x7f);
+    }
+
+    private int contentLength(int pos) throws CertificateEncodingException {
+        int first = der[pos + 1] & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+        int count = first & 0x7f;
+        if (count == 0 || count > 4) {
+            throw new CertificateEncodingException("Malformed certificate: unsupported length encoding");
+        }
+        int length = 0;
+        for (int i = 0; i < count; ++i) {
+            length = (length << 8) | (der[pos + 2 + i] & 0xff);
+        }
+        if (length < 0) {
+            throw new CertificateEncodingException("Malformed certificate: negative length");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.validation;
+
+import org.bouncycastle.asn1.x500.style.BCStyle;
+
+/**
+ * The reasons a certificate, or part of one, can fail validation. Each error has a fixed description which
+ * {@link ValidationResult#getMessage()} combines with any details of the particular failure.
+ */
+public enum ValidationError {
+    NO_CERTIFICATE("No certificates provided"),
+    CERTIFICATE_ENCODING("Failed to understand certificate "),
+    NO_SUBJECT("Certificate has no subject"),
+    NO_ORGANISATION_IDENTIFIER("No Organization Identifier in certificate. Expected an " +
+            "organization ID in the subject RDN with OID of " + BCStyle.ORGANIZATION_IDENTIFIER.getId() +
+            " Format should follow the id-etsi-qcs-SemanticsId-Legal format as described in section 5.1.4 of " +
+            " ETSI TS 119 412-1 V1.2.1 (2018-05). Link: " +
+            "https://www.etsi.org/deliver/etsi_ts/119400_119499/11941201/01.02.01_60/ts_11941201v010201p.pdf"),
+    MALFORMED_ORGANISATION_IDENTIFIER("Malformed Organization Identifier in certificate. Expected an " +
+            "organization ID in the subject RDN with OID of " + BCStyle.ORGANIZATION_IDENTIFIER.getId() +
+            " Format should follow the id-etsi-qcs-SemanticsId-Legal format as described in section 5.1.4 of " +
+            " ETSI TS 119 412-1 V1.2.1 (2018-05). Link: " +
+            "https://www.etsi.org/deliver/etsi_ts/119400_119499/11941201/01.02.01_60/ts_11941201v010201p.pdf. " +
+            "Error details: "),
+    MALFORMED_QC_STATEMENTS("Malformed QCStatements extension "),
+    MALFORMED_PSD2_QC_STATEMENT("Malformed PSD2 QCStatement "),
+    MALFORMED_AUTHORITY_INFO_ACCESS("Malformed authority information access "),
+    MALFORMED_EIDAS_CERT_TYPE("Malformed eIDAS QcType statement "),
+    UNRECOGNISED_EIDAS_CERT_TYPE("Unrecognised Object Identifier ");
+
+    private final String description;
+
+    ValidationError(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return the fixed description of the error, without the details of any particular failure
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.validation;
+
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The outcome of validating, or extracting a value from, a certificate without using exceptions for control flow.
+ *
+ * A valid result holds a value, which may be absent when the certificate simply doesn't contain it. An invalid
+ * result holds a {@link ValidationError}. The human readable message of an invalid result is only built if
+ * {@link #getMessage()} is called, so rejecting a certificate is cheap when nobody reads the reason.
+ *
+ * @param <T> the type of the value
+ */
+public final class ValidationResult<T> {
+
+    private static final ValidationResult<?> ABSENT = new ValidationResult<>(null, null, null, null);
+
+    private final T value;
+    private final ValidationError error;
+    private final Supplier<String> details;
+    private final Throwable cause;
+
+    private ValidationResult(T value, ValidationError error, Supplier<String> details, Throwable cause) {
+        this.value = value;
+        this.error = error;
+        this.details = details;
+        this.cause = cause;
+    }
+
+    /**
+     * @param value the value, or null if the certificate doesn't contain one
+     * @param <T> the type of the value
+     * @return a valid result
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValidationResult<T> valid(T value) {
+        return value == null ? (ValidationResult<T>) ABSENT : new ValidationResult<>(value, null, null, null);
+    }
+
+    public static <T> ValidationResult<T> invalid(ValidationError error) {
+        return new ValidationResult<>(null, error, null, null);
+    }
+
+    /**
+     * @param error the error
+     * @param details supplies details of this failure to append to the error's description. Only called if the
+     *                message is requested.
+     * @param <T> the type of the value
+     * @return an invalid result
+     */
+    public static <T> ValidationResult<T> invalid(ValidationError error, Supplier<String> details) {
+        return new ValidationResult<>(null, error, details, null);
+    }
+
+    /**
+     * @param error the error
+     * @param cause the exception that caused the failure, typically from a lower level decoder
+     * @param <T> the type of the value
+     * @return an invalid result
+     */
+    public static <T> ValidationResult<T> invalid(ValidationError error, Throwable cause) {
+        return new ValidationResult<>(null, error, null, cause);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * @return the value of a valid result, empty if the result is invalid or the value is absent
+     */
+    public Optional<T> getValue() {
+        return Optional.ofNullable(value);
+    }
+
+    /**
+     * @return the error of an invalid result, or null if the result is valid
+     */
+    public ValidationError getError() {
+        return error;
+    }
+
+    public Optional<Throwable> getCause() {
+        return Optional.ofNullable(cause);
+    }
+
+    /**
+     * @return a description of why the result is invalid, or null if it is valid
+     */
+    public String getMessage() {
+        if (error == null) {
+            return null;
+        }
+        if (details == null) {
+            return error.getDescription();
+        }
+        return error.getDescription() + details.get();
+    }
+
+    /**
+     * Re-type an invalid result, so that a failure to extract one value can be returned as the failure of a
+     * value that depends on it.
+     * @param <U> the new value type
+     * @return this result
+     * @throws IllegalStateException if this result is valid
+     */
+    @SuppressWarnings("unchecked")
+    public <U> ValidationResult<U> propagate() {
+        if (error == null) {
+            throw new IllegalStateException("Only invalid results can be propagated");
+        }
+        return (ValidationResult<U>) this;
+    }
+
+    /**
+     * @return the value, which may be null if it is absent
+     * @throws InvalidPsd2EidasCertificate if the result is invalid
+     */
+    public T getOrThrow() throws InvalidPsd2EidasCertificate {
+        if (error != null) {
+            throw cause == null ? new InvalidPsd2EidasCertificate(getMessage())
+                    : new InvalidPsd2EidasCertificate(getMessage(), cause);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "ValidationResult{value=" + value + '}' : "ValidationResult{error=" + error + '}';
+    }
+}
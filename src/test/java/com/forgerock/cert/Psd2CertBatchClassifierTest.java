@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class Psd2CertBatchClassifierTest {
+
+    private static X509Certificate[] obTransport() throws Exception {
+        return new CertificateTestSpec("OBDirectoryPsd2Certificate", "src/test/resources/ob-transport.pem", true,
+                EidasCertType.WEB).getCert();
+    }
+
+    @Test
+    public void classifiesEachChainAndIsolatesFailures() throws Exception {
+        X509Certificate[] obTransport = new CertificateTestSpec("OBDirectoryPsd2Certificate",
+                "src/test/resources/ob-transport.pem", true, EidasCertType.WEB).getCert();
+        X509Certificate[] frDirectory = new CertificateTestSpec("FrDirectoryPrePsd2Cert",
+                "src/test/resources/fr-directory.pem", false, null).getCert();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Psd2CertClassification> results = new Psd2CertBatchClassifier(pool)
+                    .classify(Arrays.asList(obTransport, new X509Certificate[0], frDirectory));
+
+            assertThat(results.size(), is(3));
+
+            Psd2CertClassification psd2 = results.get(0);
+            assertThat(psd2.isSuccess(), is(true));
+            assertThat(psd2.isPsd2Cert(), is(true));
+            assertThat(psd2.getEidasCertType().get(), is(EidasCertType.WEB));
+            assertThat(psd2.getOrganisationId().isPresent(), is(true));
+            assertThat(psd2.getRoles().isEmpty(), is(false));
+            assertThat(psd2.getNcaId(), is(Optional.of("GB-FCA")));
+
+            assertThat(results.get(1).isSuccess(), is(false));
+            assertThat(results.get(1).getFailure().isPresent(), is(true));
+
+            Psd2CertClassification nonPsd2 = results.get(2);
+            assertThat(nonPsd2.isSuccess(), is(true));
+            assertThat(nonPsd2.isPsd2Cert(), is(false));
+            assertThat(nonPsd2.getRoles().isEmpty(), is(true));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectedChainsAreFailuresOfTheirOwn() throws Exception {
+        X509Certificate[] chain = obTransport();
+        AtomicInteger submitted = new AtomicInteger();
+        // Run every other chain and reject the rest, as a saturated pool would
+        Executor executor = task -> {
+            if (submitted.getAndIncrement() % 2 == 1) {
+                throw new RejectedExecutionException("saturated");
+            }
+            task.run();
+        };
+
+        List<Psd2CertClassification> results = new Psd2CertBatchClassifier(executor)
+                .classify(Arrays.asList(chain, chain, chain));
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(results.get(1).getFailure().get(), instanceOf(RejectedExecutionException.class));
+        assertThat(results.get(2).isSuccess(), is(true));
+    }
+
+    @Test
+    public void onlySubmitsAWindowOfChainsAheadOfTheConsumer() throws Exception {
+        X509Certificate[] chain = obTransport();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            submitted.incrementAndGet();
+            task.run();
+        };
+
+        Iterator<Psd2CertClassification> results = new Psd2CertBatchClassifier(executor, 2)
+                .classify(Stream.generate(() -> chain).limit(100))
+                .iterator();
+
+        assertThat(results.next().isPsd2Cert(), is(true));
+        assertThat(submitted.get(), is(2));
+        results.next();
+        assertThat(submitted.get(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveMaxInFlight() {
+        new Psd2CertBatchClassifier(Runnable::run, 0);
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.chain.CertificateChainBuilder;
+import com.forgerock.cert.chain.IssuerIndex;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.revocation.CertStatus;
+import com.forgerock.cert.revocation.CrlIndex;
+import com.forgerock.cert.revocation.OcspClient;
+import com.forgerock.test_helpers.TestOcspResponder;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class Psd2CertEvaluatorTest {
+
+    private static Issued root;
+    private static Issued issuer;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private TestOcspResponder responder;
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        root = TestPki.root("CN=Evaluator Root CA, O=Example, C=GB");
+        issuer = TestPki.intermediate("CN=Evaluator Issuing CA, O=Example, C=GB", root, null);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        responder = new TestOcspResponder(issuer);
+    }
+
+    @After
+    public void tearDown() {
+        responder.close();
+        executor.shutdownNow();
+    }
+
+    private Issued leaf(String cn) throws Exception {
+        return TestPki.leaf("CN=" + cn + ", OU=PSDGB-FCA-123456, O=Example TPP, C=GB", issuer, null,
+                responder.getUrl());
+    }
+
+    private OcspClient ocspClient() {
+        return OcspClient.builder().executor(executor).build();
+    }
+
+    private CertificateChainBuilder chainBuilder() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        index.add(issuer.cert);
+        return new CertificateChainBuilder(index);
+    }
+
+    @Test
+    public void parsesOnly() throws Exception {
+        X509Certificate[] presented = new CertificateTestSpec("OBDirectoryPsd2Certificate",
+                "src/test/resources/ob-transport.pem", true, EidasCertType.WEB).getCert();
+
+        Psd2CertEvaluation evaluation = Psd2CertEvaluator.builder().executor(executor).build()
+                .evaluateAsync(presented).join();
+
+        assertThat(evaluation.isSuccess(), is(true));
+        assertThat(evaluation.getCertInfo().get().isPsd2Cert(), is(true));
+        assertThat(evaluation.getChain().isPresent(), is(false));
+        assertThat(evaluation.getRevocation().isPresent(), is(false));
+    }
+
+    @Test
+    public void parseFailureIsAFailedEvaluation() {
+        Psd2CertEvaluation evaluation = Psd2CertEvaluator.builder().executor(executor).build()
+                .evaluateAsync(new X509Certificate[0]).join();
+
+        assertThat(evaluation.isSuccess(), is(false));
+        assertThat(evaluation.getFailure().get(), instanceOf(InvalidPsd2EidasCertificate.class));
+    }
+
+    @Test
+    public void buildsChainAndChecksOcsp() throws Exception {
+        Issued good = leaf("good");
+        Issued revoked = leaf("revoked");
+        responder.revoke(revoked.cert.getSerialNumber(), Instant.now().minus(Duration.ofHours(1)),
+                CRLReason.keyCompromise);
+        Psd2CertEvaluator evaluator = Psd2CertEvaluator.builder()
+                .executor(executor)
+                .chainBuilder(chainBuilder())
+                .ocspClient(ocspClient())
+                .build();
+
+        Psd2CertEvaluation goodEvaluation = evaluator.evaluateAsync(new X509Certificate[]{good.cert}).join();
+        Psd2CertEvaluation revokedEvaluation = evaluator.evaluateAsync(new X509Certificate[]{revoked.cert}).join();
+
+        assertThat(goodEvaluation.getChain().get().isComplete(), is(true));
+        assertThat(goodEvaluation.getChain().get().length(), is(3));
+        assertThat(goodEvaluation.getRevocation().get().getStatus(), is(CertStatus.GOOD));
+        assertThat(revokedEvaluation.getRevocation().get().getStatus(), is(CertStatus.REVOKED));
+    }
+
+    @Test
+    public void usesPresentedIssuerWithoutChainBuilding() throws Exception {
+        Issued leaf = leaf("presented");
+        Psd2CertEvaluator evaluator = Psd2CertEvaluator.builder()
+                .executor(executor)
+                .ocspClient(ocspClient())
+                .build();
+
+        Psd2CertEvaluation withIssuer = evaluator.evaluateAsync(new X509Certificate[]{leaf.cert, issuer.cert}).join();
+        Psd2CertEvaluation withoutIssuer = evaluator.evaluateAsync(new X509Certificate[]{leaf.cert}).join();
+
+        assertThat(withIssuer.getRevocation().get().isGood(), is(true));
+        assertThat(withoutIssuer.getRevocation().isPresent(), is(false));
+        assertThat(responder.getRequestCount(), is(1));
+    }
+
+    @Test
+    public void prefersIndexedCrlOverOcsp() throws Exception {
+        Issued leaf = leaf("crl-revoked");
+        CrlIndex crlIndex = new CrlIndex(folder.getRoot().toPath());
+        crlIndex.update(new ByteArrayInputStream(crl(leaf)), issuer.cert);
+        Psd2CertEvaluator evaluator = Psd2CertEvaluator.builder()
+                .executor(executor)
+                .chainBuilder(chainBuilder())
+                .ocspClient(ocspClient())
+                .crlIndex(crlIndex)
+                .build();
+
+        Psd2CertEvaluation evaluation = evaluator.evaluateAsync(new X509Certificate[]{leaf.cert}).join();
+
+        assertThat(evaluation.getRevocation().get().isRevoked(), is(true));
+        assertThat(responder.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void doesNotRunOnTheCallingThread() throws Exception {
+        Queue<Runnable> queued = new ArrayDeque<>();
+        Psd2CertEvaluator evaluator = Psd2CertEvaluator.builder()
+                .executor(queued::add)
+                .chainBuilder(chainBuilder())
+                .build();
+
+        CompletableFuture<Psd2CertEvaluation> evaluation =
+                evaluator.evaluateAsync(new X509Certificate[]{leaf("queued").cert});
+
+        assertThat(evaluation.isDone(), is(false));
+        assertThat(queued.size(), is(1));
+        queued.poll().run();
+        assertThat(queued.isEmpty(), is(true));
+        assertThat(evaluation.isDone(), is(true));
+        assertThat(evaluation.join().getChain().get().isComplete(), is(true));
+    }
+
+    @Test
+    public void completesOnTheExecutorAfterOcsp() throws Exception {
+        Queue<Runnable> evaluatorTasks = new ArrayDeque<>();
+        Queue<Runnable> ocspTasks = new ArrayDeque<>();
+        Psd2CertEvaluator evaluator = Psd2CertEvaluator.builder()
+                .executor(evaluatorTasks::add)
+                .chainBuilder(chainBuilder())
+                .ocspClient(OcspClient.builder().executor(ocspTasks::add).build())
+                .build();
+
+        CompletableFuture<Psd2CertEvaluation> evaluation =
+                evaluator.evaluateAsync(new X509Certificate[]{leaf("handed-back").cert});
+        List<String> completedOn = new ArrayList<>();
+        CompletableFuture<Void> dependent = evaluation.thenRun(() -> completedOn.add(Thread.currentThread().getName()));
+        evaluatorTasks.poll().run();
+        assertThat(ocspTasks.size(), is(1));
+
+        // The OCSP request completes on this thread, standing in for the OCSP client's pool
+        ocspTasks.poll().run();
+        assertThat(evaluation.isDone(), is(false));
+        assertThat(evaluatorTasks.size(), is(1));
+
+        Thread evaluatorThread = new Thread(evaluatorTasks.poll(), "evaluator");
+        evaluatorThread.start();
+        evaluatorThread.join();
+        assertThat(dependent.isDone(), is(true));
+        assertThat(completedOn, is(Collections.singletonList("evaluator")));
+        assertThat(evaluation.join().getRevocation().get().isGood(), is(true));
+    }
+
+    private static byte[] crl(Issued revoked) throws Exception {
+        Instant now = Instant.now();
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(issuer.getName(), Date.from(now));
+        builder.setNextUpdate(Date.from(now.plus(Duration.ofDays(1))));
+        builder.addCRLEntry(revoked.cert.getSerialNumber(), Date.from(now), CRLReason.keyCompromise);
+        return builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuer.keyPair.getPrivate()))
+                .getEncoded();
+    }
+}
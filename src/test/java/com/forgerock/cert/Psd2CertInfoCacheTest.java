@@ -0,0 +1,85 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.cache.CacheStats;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.psd2.RoleOfPsp;
+import com.forgerock.cert.psd2.RolesOfPsp;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class Psd2CertInfoCacheTest {
+
+    private final CertificateTestSpec obTransport = new CertificateTestSpec("OBDirectoryPsd2Certificate",
+            "src/test/resources/ob-transport.pem", true, EidasCertType.WEB);
+    private final CertificateTestSpec devTransport = new CertificateTestSpec("FrDirectoryPsd2Certificate",
+            "src/test/resources/dev-transport.pem", true, EidasCertType.WEB);
+
+    @Test
+    public void returnsSharedInstanceForTheSameCertificate() throws Exception {
+        Psd2CertInfoCache cache = new Psd2CertInfoCache(100, Duration.ofMinutes(5));
+
+        // Decode twice so the cache can't rely on the certificate instances being the same
+        Psd2CertInfo first = cache.get(obTransport.getCert());
+        Psd2CertInfo second = cache.get(obTransport.getCert());
+        Psd2CertInfo other = cache.get(devTransport.getCert());
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(other, is(not(sameInstance(first))));
+        assertThat(first.isPsd2Cert(), is(true));
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(2L));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    public void fingerprintsMatchForEqualCertificates() throws Exception {
+        X509Certificate cert = obTransport.getCert()[0];
+        assertThat(CertificateFingerprint.of(cert), is(CertificateFingerprint.of(obTransport.getCert()[0])));
+        assertThat(CertificateFingerprint.of(cert).toHex().length(), is(CertificateFingerprint.LENGTH * 2));
+    }
+
+    @Test
+    public void rolesChangedByOneCallerAreNotSeenByAnother() throws Exception {
+        Psd2CertInfoCache cache = new Psd2CertInfoCache(100, Duration.ofMinutes(5));
+        RolesOfPsp roles = cache.get(obTransport.getCert()).getPsd2QCStatement().get().getRoles();
+        int mask = roles.getRoleMask();
+
+        roles.addRole(Psd2Role.PSP_IC);
+        roles.getRolesOfPsp().add(new RoleOfPsp(Psd2Role.PSP_AS));
+
+        assertThat(roles.getRoleMask(), is(mask | Psd2Role.PSP_IC.mask() | Psd2Role.PSP_AS.mask()));
+        Psd2CertInfo cached = cache.get(obTransport.getCert());
+        assertThat(cached.getPsd2QCStatement().get().getRoles().getRoleMask(), is(mask));
+        assertThat(cached.snapshot().getRoleMask(), is(mask));
+    }
+}
@@ -23,8 +23,13 @@ package com.forgerock.cert;
 import com.forgerock.cert.eidas.EidasCertType;
 import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
 import com.forgerock.cert.exception.NoSuchRDNInField;
+import com.forgerock.cert.psd2.OrganisationIdentifier;
+import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.psd2.RoleOfPsp;
 import com.forgerock.cert.utils.CertificateUtils;
 import com.forgerock.cert.utils.RdnField;
+import com.forgerock.cert.validation.ValidationResult;
 import com.forgerock.test_helpers.RegexMatcher;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
@@ -38,6 +43,7 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -103,6 +109,8 @@ public class Psd2CertInfoTest {
         assertThat(orgIdOptional.isPresent(), is(this.testSpec.isPsd2Cert()));
         if(this.testSpec.isPsd2Cert()) {
             assertThat(orgIdOptional.get(), RegexMatcher.matches("PSD[A-Z]{2}-[A-Z]{2,8}-.*"));
+            assertThat(this.psd2CertInfo.parseOrganizationId().getValue().get().getType(),
+                    is(OrganisationIdentifier.Type.PSD));
         }
     }
 
@@ -111,4 +119,53 @@ public class Psd2CertInfoTest {
         String applicationId = this.psd2CertInfo.getApplicationId();
         assertThat(applicationId, is(CertificateUtils.getRDNAsString(this.certs[0], RdnField.SUBJECT, BCStyle.CN)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void lazyInfoMatchesEagerInfo() throws Exception {
+        Psd2CertInfo lazyInfo = Psd2CertInfo.lazy(this.testSpec.getCert());
+        assertThat(lazyInfo.getOrganizationId(), is(this.psd2CertInfo.getOrganizationId()));
+        assertThat(lazyInfo.isPsd2Cert(), is(this.psd2CertInfo.isPsd2Cert()));
+        assertThat(lazyInfo.getEidasCertType(), is(this.psd2CertInfo.getEidasCertType()));
+        assertThat(lazyInfo.getAuthorityAccessInfoCAIssuer(), is(this.psd2CertInfo.getAuthorityAccessInfoCAIssuer()));
+        assertThat(lazyInfo.getPsd2QCStatement().isPresent(), is(this.psd2CertInfo.getPsd2QCStatement().isPresent()));
+    }
+
+    @Test
+    public void validateMatchesConstructor() throws Exception {
+        ValidationResult<Psd2CertInfo> result = Psd2CertInfo.validate(this.certs);
+        assertThat(result.isValid(), is(true));
+        assertThat(result.getValue().get().isPsd2Cert(), is(this.psd2CertInfo.isPsd2Cert()));
+        assertThat(result.getValue().get().getOrganizationId(), is(this.psd2CertInfo.getOrganizationId()));
+    }
+
+    @Test
+    public void snapshotMatchesCertInfo() throws Exception {
+        Psd2CertSnapshot snapshot = this.psd2CertInfo.snapshot();
+        X509Certificate cert = this.certs[0];
+
+        assertThat(snapshot.getFingerprint(), is(CertificateFingerprint.of(cert)));
+        assertThat(snapshot.isPsd2Cert(), is(this.psd2CertInfo.isPsd2Cert()));
+        assertThat(snapshot.getEidasCertType(), is(this.psd2CertInfo.getEidasCertType()));
+        assertThat(snapshot.getOrganisationId(), is(this.psd2CertInfo.getOrganizationId()));
+        assertThat(snapshot.getCaIssuerCertUrl(), is(this.psd2CertInfo.getAuthorityAccessInfoCAIssuer()));
+        assertThat(snapshot.getOcspUrl(), is(this.psd2CertInfo.getAuthorityAccessInfoOcsp()));
+        assertThat(snapshot.getNotBefore(), is(cert.getNotBefore().toInstant()));
+        assertThat(snapshot.getNotAfter(), is(cert.getNotAfter().toInstant()));
+        assertThat(snapshot.isValidAt(cert.getNotBefore().toInstant()), is(true));
+
+        EnumSet<Psd2Role> roles = EnumSet.noneOf(Psd2Role.class);
+        Optional<Psd2QcStatement> psd2QcStatement = this.psd2CertInfo.getPsd2QCStatement();
+        if (psd2QcStatement.isPresent()) {
+            assertThat(snapshot.getNcaId(), is(Optional.of(psd2QcStatement.get().getNcaId())));
+            assertThat(snapshot.getNcaName(), is(Optional.of(psd2QcStatement.get().getNcaName())));
+            for (RoleOfPsp roleOfPsp : psd2QcStatement.get().getRoles().getRolesOfPsp()) {
+                roles.add(roleOfPsp.getRole());
+            }
+        }
+        assertThat(snapshot.getRoles(), is(roles));
+        for (Psd2Role role : Psd2Role.values()) {
+            assertThat(snapshot.hasRole(role), is(roles.contains(role)));
+        }
+        assertThat(Psd2CertInfo.lazy(this.certs).snapshot(), is(snapshot));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class Psd2CertSnapshotCodecTest {
+
+    private static final List<CertificateTestSpec> CERTIFICATES = Arrays.asList(
+            new CertificateTestSpec("FrDirectoryPsd2Certificate", "src/test/resources/dev-transport.pem", true,
+                    EidasCertType.WEB),
+            new CertificateTestSpec("OBDirectoryPsd2Certificate", "src/test/resources/ob-transport.pem", true,
+                    EidasCertType.WEB),
+            new CertificateTestSpec("FrDirectoryPrePsd2Cert", "src/test/resources/fr-directory.pem", false, null),
+            new CertificateTestSpec("MultiCertPsd2Certificate", "src/test/resources/multicert-psd2-eidas.cer", true,
+                    EidasCertType.WEB));
+
+    @Test
+    public void roundTripsParsedCertificates() throws Exception {
+        for (CertificateTestSpec spec : CERTIFICATES) {
+            Psd2CertSnapshot snapshot = new Psd2CertInfo(spec.getCert()).snapshot();
+            ByteBuffer encoded = Psd2CertSnapshotCodec.encode(snapshot);
+            assertThat(encoded.remaining(), is(Psd2CertSnapshotCodec.encodedLength(snapshot)));
+
+            Psd2CertSnapshot decoded = Psd2CertSnapshotCodec.decode(encoded);
+            assertThat(decoded, is(snapshot));
+            assertThat(decoded.toString(), is(snapshot.toString()));
+            assertThat(encoded.hasRemaining(), is(false));
+        }
+    }
+
+    @Test
+    public void roundTripsThroughDirectBuffersAtAnOffset() {
+        Psd2CertSnapshot first = snapshot("PSDGB-FCA-123456", "Financial Conduct Authority", "GB-FCA",
+                EnumSet.of(Psd2Role.PSP_AI, Psd2Role.PSP_PI));
+        Psd2CertSnapshot second = snapshot(null, "Autorité de contrôle prudentiel et de résolution 🇫🇷",
+                "FR-ACPR", EnumSet.allOf(Psd2Role.class));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(7 + Psd2CertSnapshotCodec.encodedLength(first)
+                + Psd2CertSnapshotCodec.encodedLength(second));
+        buffer.position(7);
+        Psd2CertSnapshotCodec.encode(first, buffer);
+        Psd2CertSnapshotCodec.encode(second, buffer);
+        assertThat(buffer.hasRemaining(), is(false));
+
+        buffer.position(7);
+        assertThat(Psd2CertSnapshotCodec.decode(buffer), is(first));
+        Psd2CertSnapshot decoded = Psd2CertSnapshotCodec.decode(buffer);
+        assertThat(decoded, is(second));
+        assertThat(decoded.getOrganisationId().isPresent(), is(false));
+        assertThat(decoded.hasRole(Psd2Role.PSP_IC), is(true));
+    }
+
+    @Test
+    public void encodesTypesAndRolesWithFixedCodes() {
+        ByteBuffer encoded = Psd2CertSnapshotCodec.encode(snapshot("PSDGB-FCA-123456", null, null,
+                EnumSet.of(Psd2Role.PSP_AS, Psd2Role.PSP_AI)));
+
+        // Snapshots already in a shared cache rely on these values, so they must not follow enum declaration order.
+        assertThat(encoded.get(2), is((byte) 2));
+        assertThat(encoded.get(3), is((byte) 0x05));
+        assertThat(EidasCertType.ESIGN.getWireCode(), is(1));
+        assertThat(EidasCertType.ESEAL.getWireCode(), is(2));
+        assertThat(EidasCertType.WEB.getWireCode(), is(3));
+        assertThat(Psd2Role.PSP_AS.mask(), is(0x01));
+        assertThat(Psd2Role.PSP_PI.mask(), is(0x02));
+        assertThat(Psd2Role.PSP_AI.mask(), is(0x04));
+        assertThat(Psd2Role.PSP_IC.mask(), is(0x08));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownCertTypes() {
+        ByteBuffer encoded = Psd2CertSnapshotCodec.encode(snapshot("PSDGB-FCA-123456", null, null,
+                EnumSet.noneOf(Psd2Role.class)));
+        encoded.put(2, (byte) 9);
+        Psd2CertSnapshotCodec.decode(encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersions() {
+        ByteBuffer encoded = Psd2CertSnapshotCodec.encode(snapshot("PSDGB-FCA-123456", null, null,
+                EnumSet.noneOf(Psd2Role.class)));
+        encoded.put(0, (byte) (Psd2CertSnapshotCodec.VERSION + 1));
+        Psd2CertSnapshotCodec.decode(encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedEncodings() {
+        ByteBuffer encoded = Psd2CertSnapshotCodec.encode(snapshot("PSDGB-FCA-123456", "Financial Conduct Authority",
+                "GB-FCA", EnumSet.of(Psd2Role.PSP_AS)));
+        encoded.limit(encoded.limit() - 3);
+        Psd2CertSnapshotCodec.decode(encoded);
+    }
+
+    private static Psd2CertSnapshot snapshot(String organisationId, String ncaName, String ncaId,
+                                             EnumSet<Psd2Role> roles) {
+        byte[] digest = new byte[CertificateFingerprint.LENGTH];
+        Arrays.fill(digest, (byte) 0x5a);
+        return new Psd2CertSnapshot(CertificateFingerprint.fromDigest(digest), true, EidasCertType.ESEAL,
+                Psd2Role.maskOf(roles), organisationId, ncaName, ncaId, "http://ca.example.com/issuer.crt",
+                "http://ca.example.com/ocsp", 1546300800000L, 1577836799000L);
+    }
+}
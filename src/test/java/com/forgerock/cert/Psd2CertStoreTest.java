@@ -0,0 +1,204 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class Psd2CertStoreTest {
+
+    private static CertificateFingerprint fingerprint(int i) {
+        return CertificateFingerprint.of(("certificate " + i).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Psd2CertSnapshot snapshot(int i, String organisationId, String ncaId) {
+        return new Psd2CertSnapshot(fingerprint(i), true, EidasCertType.WEB,
+                Psd2Role.PSP_AI.mask() | Psd2Role.PSP_PI.mask(), organisationId, "Financial Conduct Authority",
+                ncaId, "http://ca.example.com/issuing.cer", null, 1_500_000_000_000L + i, 1_600_000_000_000L + i);
+    }
+
+    @Test
+    public void roundTripsSnapshots() {
+        Psd2CertStore store = new Psd2CertStore();
+        Psd2CertSnapshot psd2 = snapshot(1, "PSDGB-FCA-123456", "GB-FCA");
+        Psd2CertSnapshot plain = new Psd2CertSnapshot(fingerprint(2), false, null, 0, null, null, null, null, null,
+                0, Long.MAX_VALUE);
+
+        assertThat(store.add(psd2), is(true));
+        assertThat(store.add(plain), is(true));
+
+        assertThat(store.get(fingerprint(1)), is(Optional.of(psd2)));
+        assertThat(store.get(fingerprint(2)), is(Optional.of(plain)));
+        assertThat(store.get(fingerprint(1)).get().getRoles(), is(psd2.getRoles()));
+        assertThat(store.contains(fingerprint(3)), is(false));
+        assertThat(store.size(), is(2));
+    }
+
+    @Test
+    public void ignoresDuplicateFingerprints() {
+        Psd2CertStore store = new Psd2CertStore();
+
+        assertThat(store.add(snapshot(1, "PSDGB-FCA-123456", "GB-FCA")), is(true));
+        assertThat(store.add(snapshot(1, "PSDGB-FCA-654321", "GB-FCA")), is(false));
+        assertThat(store.addAll(Arrays.asList(snapshot(1, null, null), snapshot(2, null, null))), is(1));
+
+        assertThat(store.size(), is(2));
+        assertThat(store.findByOrganisationId("PSDGB-FCA-654321").isEmpty(), is(true));
+    }
+
+    @Test
+    public void findsByOrganisationAndNca() {
+        Psd2CertStore store = new Psd2CertStore();
+        store.addAll(Arrays.asList(
+                snapshot(1, "PSDGB-FCA-111111", "GB-FCA"),
+                snapshot(2, "PSDFR-ACPR-222222", "FR-ACPR"),
+                snapshot(3, "PSDGB-FCA-111111", "GB-FCA"),
+                snapshot(4, "PSDGB-FCA-333333", "GB-FCA")));
+
+        assertThat(fingerprints(store.findByOrganisationId("PSDGB-FCA-111111")),
+                is(Arrays.asList(fingerprint(1), fingerprint(3))));
+        assertThat(fingerprints(store.findByNcaId("GB-FCA")),
+                is(Arrays.asList(fingerprint(1), fingerprint(3), fingerprint(4))));
+        assertThat(fingerprints(store.findByNcaId("FR-ACPR")), is(Collections.singletonList(fingerprint(2))));
+        assertThat(store.findByNcaId("DE-BAFIN").isEmpty(), is(true));
+        assertThat(store.findByOrganisationId("Financial Conduct Authority").isEmpty(), is(true));
+    }
+
+    @Test
+    public void growsBeyondExpectedSize() {
+        Psd2CertStore store = new Psd2CertStore(8);
+        int count = 40_000;
+        List<Psd2CertSnapshot> batch = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            batch.add(snapshot(i, "PSDGB-FCA-" + (i % 1000), i % 2 == 0 ? "GB-FCA" : "GB-PRA"));
+            if (batch.size() == 1000) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+
+        assertThat(store.size(), is(count));
+        for (int i = 0; i < count; i += 97) {
+            assertThat(store.get(fingerprint(i)).get().getNotBefore().toEpochMilli(), is(1_500_000_000_000L + i));
+        }
+        assertThat(store.findByOrganisationId("PSDGB-FCA-7").size(), is(count / 1000));
+        assertThat(store.findByNcaId("GB-PRA").size(), is(count / 2));
+        assertThat(store.offHeapBytes() > (long) count * 80, is(true));
+    }
+
+    @Test
+    public void viewsAreSnapshots() {
+        Psd2CertStore store = new Psd2CertStore();
+        store.add(snapshot(1, "PSDGB-FCA-111111", "GB-FCA"));
+        Psd2CertStore.View view = store.view();
+
+        store.add(snapshot(2, "PSDGB-FCA-111111", "GB-FCA"));
+        store.add(snapshot(3, "PSDGB-FCA-222222", "GB-FCA"));
+
+        assertThat(view.size(), is(1));
+        assertThat(view.contains(fingerprint(2)), is(false));
+        assertThat(view.findByOrganisationId("PSDGB-FCA-111111").size(), is(1));
+        assertThat(view.findByOrganisationId("PSDGB-FCA-222222").isEmpty(), is(true));
+        assertThat(store.view().findByOrganisationId("PSDGB-FCA-111111").size(), is(2));
+    }
+
+    @Test
+    public void readersSeeConsistentViewsWhileWriting() throws Exception {
+        Psd2CertStore store = new Psd2CertStore(16);
+        int count = 30_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; ++i) {
+                store.add(snapshot(i, "PSDGB-FCA-" + (i % 100), "GB-FCA"));
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; ++r) {
+            readers.add(new Thread(() -> {
+                try {
+                    while (writer.isAlive()) {
+                        Psd2CertStore.View view = store.view();
+                        int size = view.size();
+                        if (size == 0) {
+                            continue;
+                        }
+                        int i = ThreadLocalRandom.current().nextInt(size);
+                        if (!view.get(fingerprint(i)).isPresent() || view.contains(fingerprint(size))) {
+                            throw new AssertionError("Inconsistent view of " + size + " at " + i);
+                        }
+                        int organisation = i % 100;
+                        int expected = size / 100 + (organisation < size % 100 ? 1 : 0);
+                        int found = view.findByOrganisationId("PSDGB-FCA-" + organisation).size();
+                        if (found != expected) {
+                            throw new AssertionError("Found " + found + " of " + expected + " in a view of " + size);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        writer.start();
+        readers.forEach(Thread::start);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertThat(store.size(), is(count));
+    }
+
+    @Test
+    public void rejectsOverlongStrings() {
+        Psd2CertStore store = new Psd2CertStore();
+        char[] url = new char[70_000];
+        Arrays.fill(url, 'a');
+        try {
+            store.add(new Psd2CertSnapshot(fingerprint(1), false, null, 0, null, null, null, new String(url), null,
+                    0, 0));
+            fail("Expected the URL to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(store.size(), is(0));
+        }
+    }
+
+    private static List<CertificateFingerprint> fingerprints(List<Psd2CertSnapshot> snapshots) {
+        return snapshots.stream().map(Psd2CertSnapshot::getFingerprint).collect(Collectors.toList());
+    }
+}
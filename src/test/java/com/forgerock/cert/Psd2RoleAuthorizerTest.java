@@ -0,0 +1,138 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class Psd2RoleAuthorizerTest {
+
+    private static Issued issuer;
+    private static X509Certificate[] aisp;
+    private static X509Certificate[] aispPisp;
+    private static X509Certificate[] notPsd2;
+    private static X509Certificate[] unparseable;
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        Issued root = TestPki.root("CN=Role Root CA, O=Example, C=GB");
+        issuer = TestPki.intermediate("CN=Role Issuing CA, O=Example, C=GB", root, null);
+        aisp = chain(TestPki.psd2Leaf("CN=aisp.example.com, 2.5.4.97=PSDGB-FCA-111111, O=Example AISP, C=GB",
+                issuer, EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI));
+        aispPisp = chain(TestPki.psd2Leaf("CN=tpp.example.com, 2.5.4.97=PSDGB-FCA-222222, O=Example TPP, C=GB",
+                issuer, EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI, Psd2Role.PSP_PI));
+        notPsd2 = chain(TestPki.leaf("CN=plain.example.com, OU=0015800001041REAAY, O=Example, C=GB", issuer,
+                null));
+        unparseable = chain(TestPki.leaf("CN=nobody.example.com, O=Example, C=GB", issuer, null));
+    }
+
+    private static X509Certificate[] chain(Issued leaf) {
+        return new X509Certificate[]{leaf.cert, issuer.cert};
+    }
+
+    @Test
+    public void allowsOnlyWhenEveryRequiredRoleIsGranted() {
+        Psd2RoleAuthorizer authorizer = Psd2RoleAuthorizer.builder().build();
+
+        assertThat(authorizer.isAllowed(aisp, EnumSet.of(Psd2Role.PSP_AI)), is(true));
+        assertThat(authorizer.isAllowed(aisp, EnumSet.of(Psd2Role.PSP_PI)), is(false));
+        assertThat(authorizer.isAllowed(aispPisp, EnumSet.of(Psd2Role.PSP_AI, Psd2Role.PSP_PI)), is(true));
+        assertThat(authorizer.isAllowed(aispPisp, EnumSet.of(Psd2Role.PSP_AI, Psd2Role.PSP_IC)), is(false));
+        assertThat(authorizer.isAllowed(aisp, Collections.emptySet()), is(true));
+    }
+
+    @Test
+    public void cachesDecisionsPerCertificateAndRoleSet() {
+        Psd2RoleAuthorizer authorizer = Psd2RoleAuthorizer.builder().build();
+
+        for (int i = 0; i < 3; ++i) {
+            assertThat(authorizer.isAllowed(aispPisp, EnumSet.of(Psd2Role.PSP_AI)), is(true));
+            assertThat(authorizer.isAllowed(aispPisp, EnumSet.of(Psd2Role.PSP_PI)), is(true));
+            assertThat(authorizer.isAllowed(aispPisp, EnumSet.of(Psd2Role.PSP_AS)), is(false));
+        }
+
+        assertThat(authorizer.cacheStats().getMissCount(), is(3L));
+        assertThat(authorizer.cacheStats().getHitCount(), is(6L));
+    }
+
+    @Test
+    public void deniesCertificatesThatAreNotPsd2() {
+        Psd2RoleAuthorizer authorizer = Psd2RoleAuthorizer.builder().build();
+
+        assertThat(authorizer.isAllowed(notPsd2, Collections.emptySet()), is(false));
+        assertThat(authorizer.isAllowed(notPsd2, EnumSet.of(Psd2Role.PSP_AI)), is(false));
+        assertThat(authorizer.isAllowed(unparseable, EnumSet.of(Psd2Role.PSP_AI)), is(false));
+        assertThat(authorizer.isAllowed(unparseable, EnumSet.of(Psd2Role.PSP_PI)), is(false));
+
+        // Each certificate was parsed once, then remembered whatever roles were asked for
+        assertThat(authorizer.negativeCacheStats().getMissCount(), is(2L));
+        assertThat(authorizer.negativeCacheStats().getHitCount(), is(2L));
+        assertThat(authorizer.cacheStats().getMissCount(), is(2L));
+    }
+
+    @Test
+    public void forgetsRejectionsSoonerThanDecisions() {
+        AtomicLong now = new AtomicLong();
+        Psd2RoleAuthorizer authorizer = Psd2RoleAuthorizer.builder()
+                .timeToLive(Duration.ofHours(1))
+                .negativeTimeToLive(Duration.ofSeconds(30))
+                .ticker(now::get)
+                .build();
+        authorizer.isAllowed(aisp, EnumSet.of(Psd2Role.PSP_AI));
+        authorizer.isAllowed(notPsd2, EnumSet.of(Psd2Role.PSP_AI));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        assertThat(authorizer.isAllowed(aisp, EnumSet.of(Psd2Role.PSP_AI)), is(true));
+        assertThat(authorizer.cacheStats().getHitCount(), is(1L));
+        assertThat(authorizer.isAllowed(notPsd2, EnumSet.of(Psd2Role.PSP_AI)), is(false));
+        // Every call looks for a rejection first, so the PSD2 certificate's calls miss too
+        assertThat(authorizer.negativeCacheStats().getHitCount(), is(0L));
+        assertThat(authorizer.negativeCacheStats().getMissCount(), is(4L));
+    }
+
+    @Test
+    public void deniesMissingChains() {
+        Psd2RoleAuthorizer authorizer = Psd2RoleAuthorizer.builder().build();
+
+        assertThat(authorizer.isAllowed(null, EnumSet.of(Psd2Role.PSP_AI)), is(false));
+        assertThat(authorizer.isAllowed(new X509Certificate[0], Collections.emptySet()), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeTimeToLive() {
+        Psd2RoleAuthorizer.builder().negativeTimeToLive(Duration.ofSeconds(-1));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SubjectDigestTest {
+
+    private final CertificateTestSpec obTransport = new CertificateTestSpec("OBDirectoryPsd2Certificate",
+            "src/test/resources/ob-transport.pem", true, EidasCertType.WEB);
+    private final CertificateTestSpec devTransport = new CertificateTestSpec("FrDirectoryPsd2Certificate",
+            "src/test/resources/dev-transport.pem", true, EidasCertType.WEB);
+
+    @Test
+    public void digestsTheEncodedSubject() throws Exception {
+        X509Certificate cert = obTransport.getCert()[0];
+        byte[] subject = new JcaX509CertificateHolder(cert).getSubject().getEncoded(ASN1Encoding.DER);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(subject);
+
+        SubjectDigest hex = SubjectDigest.builder().build();
+        assertThat(hex.digest(cert).length(), is(64));
+        assertThat(hex.digest(obTransport.getCert()).get(), is(hex.digest(cert)));
+
+        SubjectDigest base64 = SubjectDigest.builder()
+                .length(SubjectDigest.Length.BITS_128)
+                .encoding(SubjectDigest.Encoding.BASE64_URL)
+                .build();
+        byte[] truncated = new byte[16];
+        System.arraycopy(expected, 0, truncated, 0, 16);
+        assertThat(base64.digest(cert), is(Base64.getUrlEncoder().withoutPadding().encodeToString(truncated)));
+    }
+
+    @Test
+    public void differentSubjectsHaveDifferentDigests() throws Exception {
+        SubjectDigest digest = SubjectDigest.builder().build();
+        assertThat(digest.digest(obTransport.getCert()[0]), is(not(digest.digest(devTransport.getCert()[0]))));
+    }
+
+    @Test
+    public void memoizesByCertificateInstance() throws Exception {
+        SubjectDigest digest = SubjectDigest.builder().memoize(10).build();
+        X509Certificate cert = obTransport.getCert()[0];
+        String first = digest.digest(cert);
+        assertThat(digest.digest(cert), is(first));
+
+        assertThat(digest.memoStats().get().getHitCount(), is(1L));
+        assertThat(digest.memoStats().get().getMissCount(), is(1L));
+        assertThat(SubjectDigest.builder().build().memoStats().isPresent(), is(false));
+    }
+
+    @Test
+    public void emptyChainHasNoDigest() throws Exception {
+        assertThat(SubjectDigest.builder().build().digest(new X509Certificate[0]).isPresent(), is(false));
+    }
+}
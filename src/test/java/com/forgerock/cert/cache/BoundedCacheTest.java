@@ -0,0 +1,82 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.cache;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void recordsHitsAndMisses() {
+        BoundedCache<String, String> cache = BoundedCache.<String, String>builder().maximumSize(10).build();
+        assertThat(cache.getIfPresent("a"), is(nullValue()));
+        cache.put("a", "A");
+        assertThat(cache.getIfPresent("a"), is("A"));
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getEvictionCount(), is(0L));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenFull() {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer>builder().maximumSize(1).build();
+        cache.put(1, 1);
+        cache.put(2, 2);
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getIfPresent(1), is(nullValue()));
+        assertThat(cache.getIfPresent(2), is(2));
+        assertThat(cache.stats().getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void neverExceedsMaximumSize() {
+        BoundedCache<Integer, Integer> cache = BoundedCache.<Integer, Integer>builder().maximumSize(64).build();
+        for (int i = 0; i < 10_000; ++i) {
+            cache.put(i, i);
+        }
+        assertThat(cache.size() <= 64, is(true));
+    }
+
+    @Test
+    public void expiresEntriesAfterTimeToLive() {
+        AtomicLong now = new AtomicLong();
+        BoundedCache<String, String> cache = BoundedCache.<String, String>builder()
+                .maximumSize(10)
+                .expireAfterWrite(Duration.ofSeconds(5))
+                .ticker(now::get)
+                .build();
+        cache.put("a", "A");
+        now.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertThat(cache.getIfPresent("a"), is("A"));
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(cache.getIfPresent("a"), is(nullValue()));
+        assertThat(cache.stats().getEvictionCount(), is(1L));
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.test_helpers.MutableClock;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CaIssuerFetcherTest {
+
+    private static Issued root;
+    private static Issued intermediate;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private volatile String cacheControl = "max-age=3600";
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        root = TestPki.root("CN=Fetcher Root CA, O=Example, C=GB");
+        intermediate = TestPki.intermediate("CN=Fetcher Issuing CA, O=Example, C=GB", root, null);
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/issuer.cer", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                byte[] body = intermediate.cert.getEncoded();
+                exchange.getResponseHeaders().add("Content-Type", "application/pkix-cert");
+                exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.createContext("/garbage.cer", exchange -> {
+            byte[] body = "not a certificate".getBytes("US-ASCII");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void fetchesDerCertificate() {
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).build();
+
+        List<X509Certificate> certs = fetcher.fetch(url("/issuer.cer")).join();
+
+        assertThat(certs, is(Collections.singletonList(intermediate.cert)));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneDownload() throws Exception {
+        release = new CountDownLatch(1);
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).build();
+
+        List<CompletableFuture<List<X509Certificate>>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            futures.add(fetcher.fetch(url("/issuer.cer")));
+        }
+        release.countDown();
+        for (CompletableFuture<List<X509Certificate>> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS).get(0), is(intermediate.cert));
+        }
+        assertThat(fetcher.fetch(url("/issuer.cer")).isDone(), is(true));
+
+        assertThat(requests.get(), is(1));
+        assertThat(fetcher.getDownloadCount(), is(1L));
+    }
+
+    @Test
+    public void servesFromDiskAfterRestart() throws Exception {
+        CaIssuerFetcher first = CaIssuerFetcher.builder().executor(executor).cacheDirectory(folder.getRoot().toPath())
+                .build();
+        first.fetch(url("/issuer.cer")).join();
+
+        CaIssuerFetcher second = CaIssuerFetcher.builder().executor(executor).cacheDirectory(folder.getRoot().toPath())
+                .build();
+        List<X509Certificate> certs = second.fetch(url("/issuer.cer")).join();
+
+        assertThat(certs.get(0), is(intermediate.cert));
+        assertThat(requests.get(), is(1));
+        assertThat(second.getDownloadCount(), is(0L));
+    }
+
+    @Test
+    public void refetchesWhenMaxAgeHasPassed() {
+        cacheControl = "public, max-age=60";
+        MutableClock clock = new MutableClock();
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).clock(clock)
+                .cacheDirectory(folder.getRoot().toPath()).build();
+
+        fetcher.fetch(url("/issuer.cer")).join();
+        clock.advance(Duration.ofSeconds(59));
+        fetcher.fetch(url("/issuer.cer")).join();
+        assertThat(requests.get(), is(1));
+
+        clock.advance(Duration.ofSeconds(1));
+        fetcher.fetch(url("/issuer.cer")).join();
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    public void noStoreResponsesAreNotCached() {
+        cacheControl = "no-store";
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).cacheDirectory(folder.getRoot().toPath())
+                .build();
+
+        fetcher.fetch(url("/issuer.cer")).join();
+        fetcher.fetch(url("/issuer.cer")).join();
+
+        assertThat(requests.get(), is(2));
+        assertThat(folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void failsOnUndecodableResponse() {
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).build();
+        try {
+            fetcher.fetch(url("/garbage.cer")).join();
+            fail("Expected the fetch to fail");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(CertificateException.class));
+        }
+    }
+
+    @Test
+    public void failsOnHttpError() {
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).build();
+        try {
+            fetcher.fetch(url("/missing.cer")).join();
+            fail("Expected the fetch to fail");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+    }
+
+    @Test
+    public void failuresAreRememberedBriefly() {
+        MutableClock clock = new MutableClock();
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).clock(clock)
+                .failureTimeToLive(Duration.ofSeconds(30)).build();
+
+        for (int i = 0; i < 3; ++i) {
+            try {
+                fetcher.fetch(url("/missing.cer")).join();
+                fail("Expected the fetch to fail");
+            } catch (CompletionException e) {
+                assertThat(e.getCause(), instanceOf(IOException.class));
+            }
+        }
+        assertThat(fetcher.getDownloadCount(), is(1L));
+
+        clock.advance(Duration.ofSeconds(30));
+        try {
+            fetcher.fetch(url("/missing.cer")).join();
+            fail("Expected the fetch to fail");
+        } catch (CompletionException e) {
+            assertThat(fetcher.getDownloadCount(), is(2L));
+        }
+    }
+
+    @Test
+    public void usesOwnPoolWhenNoExecutorIsGiven() {
+        List<X509Certificate> certs = CaIssuerFetcher.builder().build().fetch(url("/issuer.cer")).join();
+
+        assertThat(certs, is(Collections.singletonList(intermediate.cert)));
+    }
+
+    @Test
+    public void buildsChainThroughFetcher() throws Exception {
+        Issued leaf = TestPki.leaf("CN=tpp.example.com, O=Example TPP, C=GB", intermediate, url("/issuer.cer"));
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        CaIssuerFetcher fetcher = CaIssuerFetcher.builder().executor(executor).build();
+
+        CertificateChain chain = new CertificateChainBuilder(index, fetcher).build(new X509Certificate[]{leaf.cert});
+
+        assertThat(chain.isComplete(), is(true));
+        assertThat(chain.length(), is(3));
+    }
+}
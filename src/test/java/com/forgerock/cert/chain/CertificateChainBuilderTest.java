@@ -0,0 +1,223 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.chain;
+
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CertificateChainBuilderTest {
+
+    private static final String CA_ISSUERS_URL = "http://ca.example.com/intermediate.cer";
+
+    private static Issued root;
+    private static Issued intermediate;
+    private static Issued leaf;
+
+    @BeforeClass
+    public static void issueChain() throws Exception {
+        root = TestPki.root("CN=Test Root CA, O=Example, C=GB");
+        intermediate = TestPki.intermediate("CN=Test Issuing CA, O=Example, C=GB", root, null);
+        leaf = TestPki.leaf("CN=tpp.example.com, O=Example TPP, C=GB", intermediate, CA_ISSUERS_URL);
+    }
+
+    @Test
+    public void buildsChainFromIndex() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        index.add(intermediate.cert);
+
+        CertificateChain chain = new CertificateChainBuilder(index).build(new X509Certificate[]{leaf.cert});
+
+        assertThat(chain.isComplete(), is(true));
+        assertThat(chain.getCertificates(), is(Arrays.asList(leaf.cert, intermediate.cert, root.cert)));
+    }
+
+    @Test
+    public void usesPresentedIntermediates() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+
+        CertificateChain chain = new CertificateChainBuilder(index)
+                .build(Arrays.asList(leaf.cert, intermediate.cert));
+
+        assertThat(chain.isComplete(), is(true));
+        assertThat(chain.length(), is(3));
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void fetchesMissingIssuerAndRemembersIt() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        List<String> fetched = new CopyOnWriteArrayList<>();
+        IssuerFetcher fetcher = url -> {
+            fetched.add(url);
+            return CompletableFuture.completedFuture(Collections.singletonList(intermediate.cert));
+        };
+        CertificateChainBuilder builder = new CertificateChainBuilder(index, fetcher);
+
+        assertThat(builder.build(new X509Certificate[]{leaf.cert}).isComplete(), is(true));
+        assertThat(builder.build(new X509Certificate[]{leaf.cert}).isComplete(), is(true));
+
+        assertThat(fetched, is(Collections.singletonList(CA_ISSUERS_URL)));
+        // Fetched certificates are not trusted, so they stay out of the index
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void ignoresFetchedIssuerThatDidNotSignTheCertificate() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        Issued impostor = TestPki.intermediate("CN=Test Issuing CA, O=Example, C=GB", root, null);
+        List<String> fetched = new CopyOnWriteArrayList<>();
+        IssuerFetcher fetcher = url -> {
+            fetched.add(url);
+            return CompletableFuture.completedFuture(Collections.singletonList(impostor.cert));
+        };
+        CertificateChainBuilder builder = new CertificateChainBuilder(index, fetcher);
+
+        assertThat(builder.build(new X509Certificate[]{leaf.cert}).getCertificates(),
+                is(Collections.singletonList(leaf.cert)));
+        assertThat(builder.buildAsync(Collections.singletonList(leaf.cert)).join().getCertificates(),
+                is(Collections.singletonList(leaf.cert)));
+
+        // Nothing was remembered, so each chain fetched again, and the index is untouched
+        assertThat(fetched.size(), is(2));
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void fetchedIssuerIsOnlyUsedForCertificatesItSigned() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        Issued impostor = TestPki.intermediate("CN=Test Issuing CA, O=Example, C=GB", root, null);
+        Issued impostorLeaf = TestPki.leaf("CN=evil.example.com, O=Example TPP, C=GB", impostor, CA_ISSUERS_URL);
+        IssuerFetcher fetcher = url -> CompletableFuture.completedFuture(Collections.singletonList(impostor.cert));
+        CertificateChainBuilder builder = new CertificateChainBuilder(index, fetcher);
+
+        assertThat(builder.build(new X509Certificate[]{impostorLeaf.cert}).isComplete(), is(true));
+
+        CertificateChain chain = builder.build(new X509Certificate[]{leaf.cert});
+        assertThat(chain.getCertificates(), is(Collections.singletonList(leaf.cert)));
+    }
+
+    @Test
+    public void buildAsyncWaitsForFetchWithoutBlocking() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        CompletableFuture<List<X509Certificate>> fetch = new CompletableFuture<>();
+        CertificateChainBuilder builder = new CertificateChainBuilder(index, url -> fetch);
+
+        CompletableFuture<CertificateChain> chain = builder.buildAsync(Collections.singletonList(leaf.cert));
+
+        assertThat(chain.isDone(), is(false));
+        fetch.complete(Collections.singletonList(intermediate.cert));
+        assertThat(chain.isDone(), is(true));
+        assertThat(chain.join().getCertificates(), is(Arrays.asList(leaf.cert, intermediate.cert, root.cert)));
+    }
+
+    @Test
+    public void buildAsyncCarriesOnFromFetchOnTheExecutor() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        CompletableFuture<List<X509Certificate>> fetch = new CompletableFuture<>();
+        CertificateChainBuilder builder = new CertificateChainBuilder(index, url -> fetch);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+
+        CompletableFuture<CertificateChain> chain =
+                builder.buildAsync(Collections.singletonList(leaf.cert), tasks::add);
+
+        // Completing the fetch only hands the rest of the chain to the executor
+        fetch.complete(Collections.singletonList(intermediate.cert));
+        assertThat(chain.isDone(), is(false));
+        assertThat(tasks.size(), is(1));
+        tasks.poll().run();
+        assertThat(chain.isDone(), is(true));
+        assertThat(chain.join().getCertificates(), is(Arrays.asList(leaf.cert, intermediate.cert, root.cert)));
+    }
+
+    @Test
+    public void failedFetchLeavesChainIncomplete() throws Exception {
+        IssuerFetcher fetcher = url -> {
+            CompletableFuture<List<X509Certificate>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("unreachable"));
+            return failed;
+        };
+
+        CertificateChain chain = new CertificateChainBuilder(new IssuerIndex(), fetcher)
+                .build(new X509Certificate[]{leaf.cert});
+
+        assertThat(chain.isComplete(), is(false));
+        assertThat(chain.getCertificates(), is(Collections.singletonList(leaf.cert)));
+    }
+
+    @Test
+    public void incompleteWhenRootUnknown() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        index.add(intermediate.cert);
+
+        CertificateChain chain = new CertificateChainBuilder(index).build(new X509Certificate[]{leaf.cert});
+
+        assertThat(chain.isComplete(), is(false));
+        assertThat(chain.length(), is(2));
+    }
+
+    @Test
+    public void choosesIssuerByKeyIdentifier() throws Exception {
+        Issued rolledOver = TestPki.intermediate("CN=Test Issuing CA, O=Example, C=GB", root, null);
+        IssuerIndex index = new IssuerIndex();
+        index.add(root.cert);
+        index.add(rolledOver.cert);
+        index.add(intermediate.cert);
+
+        CertificateChain chain = new CertificateChainBuilder(index).build(new X509Certificate[]{leaf.cert});
+
+        assertThat(chain.getCertificates().get(1), is(intermediate.cert));
+    }
+
+    @Test
+    public void removeDropsCertificateFromIndex() throws Exception {
+        IssuerIndex index = new IssuerIndex();
+        assertThat(index.add(intermediate.cert), is(true));
+        assertThat(index.add(intermediate.cert), is(false));
+
+        assertThat(index.remove(intermediate.cert), is(true));
+
+        assertThat(index.size(), is(0));
+        assertThat(index.findBySubject(intermediate.cert.getSubjectX500Principal()).isEmpty(), is(true));
+        assertThat(new CertificateChainBuilder(index).build(new X509Certificate[]{leaf.cert}).length(), is(1));
+    }
+}
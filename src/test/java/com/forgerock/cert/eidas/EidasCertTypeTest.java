@@ -20,6 +20,8 @@
  */
 package com.forgerock.cert.eidas;
 
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
 import org.bouncycastle.asn1.x509.qualified.ETSIQCObjectIdentifiers;
 import org.junit.Test;
 
@@ -35,4 +37,14 @@ public class EidasCertTypeTest {
         assertThat(EidasCertType.ESEAL.getOid(), is(ETSIQCObjectIdentifiers.id_etsi_qct_eseal.toString()));
         assertThat(EidasCertType.ESIGN.getOid(), is(ETSIQCObjectIdentifiers.id_etsi_qct_esign.toString()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fromOidReportsUnrecognisedOidsWithoutThrowing(){
+        ValidationResult<EidasCertType> result = EidasCertType.fromOid("1.2.3.4");
+        assertThat(result.isValid(), is(false));
+        assertThat(result.getError(), is(ValidationError.UNRECOGNISED_EIDAS_CERT_TYPE));
+        assertThat(result.getMessage(), is("Unrecognised Object Identifier 1.2.3.4"));
+
+        assertThat(EidasCertType.fromOid(EidasCertType.ESEAL.getOid()).getValue().get(), is(EidasCertType.ESEAL));
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Optional;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
 
 
@@ -103,4 +104,21 @@ public class QCStatementsTest {
         assertThat(seq, CoreMatchers.is(notNullValue()));
         Optional<QCStatements> statements = QCStatements.getInstance(seq);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodingIsReusedUntilAStatementIsAdded() throws InvalidPsd2EidasCertificate {
+        QCStatements qcStatements = new QCStatements();
+        qcStatements.addStatement(ETSIQCObjectIdentifiers.id_etsi_qcs_QcCompliance);
+        ASN1Primitive first = qcStatements.toASN1Primitive();
+        assertThat(qcStatements.toASN1Primitive(), is(sameInstance(first)));
+
+        qcStatements.setEidasCertificateType(EidasCertType.WEB);
+        ASN1Primitive second = qcStatements.toASN1Primitive();
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(((ASN1Sequence) second).size(), is(2));
+
+        qcStatements.addStatement(ASN1ObjectIdentifiers.id_etsi_qcs_SemanticsId_Legal);
+        assertThat(((ASN1Sequence) qcStatements.toASN1Primitive()).size(), is(3));
+        assertThat(QCStatements.getInstance(qcStatements.toASN1Primitive()).get(), is(qcStatements));
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.expiry;
+
+import com.forgerock.cert.CertificateFingerprint;
+import com.forgerock.test_helpers.MutableClock;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryTrackerTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+    private final List<List<ExpiryRegistration>> expiringSoon = new ArrayList<>();
+    private final List<List<ExpiryRegistration>> expired = new ArrayList<>();
+
+    private final ExpiryListener listener = new ExpiryListener() {
+        @Override
+        public void expiringSoon(List<ExpiryRegistration> registrations) {
+            expiringSoon.add(registrations);
+        }
+
+        @Override
+        public void expired(List<ExpiryRegistration> registrations) {
+            expired.add(registrations);
+        }
+    };
+
+    private static CertificateFingerprint fingerprint(int i) {
+        return CertificateFingerprint.of(("certificate " + i).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private ExpiryTracker.Builder tracker() {
+        return ExpiryTracker.builder().clock(clock).listener(listener);
+    }
+
+    @Test
+    public void warnsThenExpires() {
+        ExpiryTracker tracker = tracker().warningPeriod(Duration.ofDays(30)).build();
+        Instant notAfter = clock.instant().plus(Duration.ofDays(31));
+        tracker.register(fingerprint(1), notAfter, "PSDGB-FCA-123456");
+
+        clock.advance(Duration.ofHours(23));
+        assertThat(tracker.advance(), is(0));
+
+        clock.advance(Duration.ofHours(1));
+        assertThat(tracker.advance(), is(1));
+        assertThat(expiringSoon.size(), is(1));
+        assertThat(expiringSoon.get(0).get(0).getOrganisationId().get(), is("PSDGB-FCA-123456"));
+        assertThat(expired.isEmpty(), is(true));
+
+        clock.advance(Duration.ofDays(30).minusMinutes(1));
+        assertThat(tracker.advance(), is(0));
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(tracker.advance(), is(1));
+        assertThat(expired.get(0).get(0).getNotAfter(), is(notAfter));
+        assertThat(tracker.size(), is(0));
+    }
+
+    @Test
+    public void firesDueEventsAsOneBatch() {
+        ExpiryTracker tracker = tracker().warningPeriod(Duration.ZERO).build();
+        for (int i = 0; i < 100; ++i) {
+            tracker.register(fingerprint(i), clock.instant().plus(Duration.ofMinutes(10 + i)), null);
+        }
+
+        clock.advance(Duration.ofHours(3));
+        assertThat(tracker.advance(), is(100));
+
+        assertThat(expired.size(), is(1));
+        assertThat(expired.get(0).size(), is(100));
+        assertThat(expiringSoon.isEmpty(), is(true));
+    }
+
+    @Test
+    public void cancelledCertificatesDoNotFire() {
+        ExpiryTracker tracker = tracker().build();
+        ExpiryRegistration first = tracker.register(fingerprint(1), clock.instant().plus(Duration.ofDays(1)), null);
+        tracker.register(fingerprint(2), clock.instant().plus(Duration.ofDays(1)), null);
+
+        assertThat(first.cancel(), is(true));
+        assertThat(first.cancel(), is(false));
+        assertThat(tracker.cancel(fingerprint(2)), is(true));
+        assertThat(tracker.cancel(fingerprint(3)), is(false));
+
+        clock.advance(Duration.ofDays(2));
+        assertThat(tracker.advance(), is(0));
+        assertThat(tracker.size(), is(0));
+    }
+
+    @Test
+    public void reRegistrationReplacesTheDeadline() {
+        ExpiryTracker tracker = tracker().warningPeriod(Duration.ZERO).build();
+        ExpiryRegistration old = tracker.register(fingerprint(1), clock.instant().plus(Duration.ofDays(1)), null);
+        tracker.register(fingerprint(1), clock.instant().plus(Duration.ofDays(365)), null);
+
+        clock.advance(Duration.ofDays(2));
+        assertThat(tracker.advance(), is(0));
+        assertThat(old.cancel(), is(false));
+        assertThat(tracker.size(), is(1));
+    }
+
+    @Test
+    public void reportsAlreadyExpiredCertificatesOnNextAdvance() {
+        ExpiryTracker tracker = tracker().build();
+        tracker.register(fingerprint(1), clock.instant().minus(Duration.ofDays(1)), null);
+        tracker.register(fingerprint(2), clock.instant().plus(Duration.ofDays(1)), null);
+
+        assertThat(tracker.advance(), is(2));
+        assertThat(expired.get(0).get(0).getFingerprint(), is(fingerprint(1)));
+        assertThat(expiringSoon.get(0).get(0).getFingerprint(), is(fingerprint(2)));
+    }
+
+    @Test
+    public void reschedulesDeadlinesBeyondTheWheel() {
+        // A millisecond tick gives a wheel of 2^30 ms, about twelve days
+        ExpiryTracker tracker = tracker().tick(Duration.ofMillis(1)).warningPeriod(Duration.ZERO).build();
+        Instant notAfter = clock.instant().plus(Duration.ofDays(40));
+        tracker.register(fingerprint(1), notAfter, null);
+
+        clock.advance(Duration.ofDays(40).minusMillis(1));
+        assertThat(tracker.advance(), is(0));
+        clock.advance(Duration.ofMillis(1));
+        assertThat(tracker.advance(), is(1));
+    }
+
+    @Test
+    public void neverFiresEarlyAndFiresEachDeadlineOnce() {
+        Duration tick = Duration.ofHours(1);
+        ExpiryTracker tracker = tracker().tick(tick).warningPeriod(Duration.ZERO).build();
+        Random random = new Random(42);
+        Map<CertificateFingerprint, Instant> deadlines = new HashMap<>();
+        for (int i = 0; i < 2000; ++i) {
+            Instant notAfter = clock.instant().plusSeconds(random.nextInt(5 * 365 * 24 * 3600));
+            deadlines.put(fingerprint(i), notAfter);
+            tracker.register(fingerprint(i), notAfter, null);
+        }
+
+        Instant end = clock.instant().plus(Duration.ofDays(6 * 365));
+        while (clock.instant().isBefore(end)) {
+            Instant previous = clock.instant();
+            clock.advance(Duration.ofMinutes(1 + random.nextInt(3 * 24 * 60)));
+            int batches = expired.size();
+            tracker.advance();
+            for (List<ExpiryRegistration> batch : expired.subList(batches, expired.size())) {
+                for (ExpiryRegistration registration : batch) {
+                    // Never early, and at most a tick later than the advance before it could have seen
+                    assertTrue(!registration.getNotAfter().isAfter(clock.instant()));
+                    assertTrue(registration.getNotAfter().isAfter(previous.minus(tick)));
+                }
+            }
+        }
+
+        int total = 0;
+        for (List<ExpiryRegistration> batch : expired) {
+            for (ExpiryRegistration registration : batch) {
+                assertThat(deadlines.remove(registration.getFingerprint()) != null, is(true));
+                ++total;
+            }
+        }
+        assertThat(total, is(2000));
+        assertThat(tracker.size(), is(0));
+    }
+}
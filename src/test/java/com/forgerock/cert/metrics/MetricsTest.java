@@ -0,0 +1,178 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.metrics;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.cert.Psd2CertInfoCache;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.eidas.QCStatements;
+import com.forgerock.cert.utils.CertificateStreamDecoder;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
+import com.forgerock.test_helpers.TestPki;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MetricsTest {
+
+    private final Recorder recorder = new Recorder();
+
+    @Before
+    public void register() {
+        Metrics.register(recorder);
+    }
+
+    @After
+    public void unregister() {
+        Metrics.unregister();
+    }
+
+    private static X509Certificate[] obTransport() throws Exception {
+        try (CertificateStreamDecoder decoder = CertificateStreamDecoder.of(Paths.get(
+                "src/test/resources/ob-transport.pem"))) {
+            return decoder.readChain();
+        }
+    }
+
+    @Test
+    public void reportsEveryPhaseOfEagerParsing() throws Exception {
+        new Psd2CertInfo(obTransport());
+
+        assertThat(recorder.phases.keySet(), is(EnumSet.allOf(Phase.class)));
+        assertThat(recorder.failures.isEmpty(), is(true));
+        assertThat(recorder.certTypes.get(EidasCertType.WEB).get(), is(1));
+    }
+
+    @Test
+    public void reportsOnlyThePhasesALazyInstanceRuns() throws Exception {
+        Psd2CertInfo.lazy(obTransport()).getOrganizationId();
+
+        assertThat(recorder.phases.keySet(), is(EnumSet.of(Phase.CERTIFICATE, Phase.ORGANISATION_ID)));
+        assertThat(recorder.certTypes.isEmpty(), is(true));
+    }
+
+    @Test
+    public void reportsFailuresWithTheirCause() throws Exception {
+        KeyPair keyPair = TestPki.newKeyPair();
+        X500Name name = new X500Name("CN=Broken QCStatements, O=Example, C=GB");
+        Date now = new Date();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE, now,
+                new Date(now.getTime() + 86400000L), name, keyPair.getPublic());
+        builder.addExtension(QCStatements.getOid(), false, new DERUTF8String("not a sequence"));
+        X509Certificate cert = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+
+        ValidationResult<Psd2CertInfo> result = Psd2CertInfo.validate(new X509Certificate[]{cert});
+
+        assertThat(result.isValid(), is(false));
+        assertThat(recorder.failures.get(Phase.QC_STATEMENTS), is(ValidationError.MALFORMED_QC_STATEMENTS));
+        assertThat(recorder.failureCauses.containsKey(Phase.QC_STATEMENTS), is(true));
+    }
+
+    @Test
+    public void reportsCacheOutcomes() throws Exception {
+        Psd2CertInfoCache cache = new Psd2CertInfoCache(10, null);
+
+        cache.get(obTransport());
+        cache.get(obTransport());
+
+        assertThat(recorder.count(Psd2CertInfoCache.METRICS_NAME, CacheOutcome.MISS), is(1));
+        assertThat(recorder.count(Psd2CertInfoCache.METRICS_NAME, CacheOutcome.HIT), is(1));
+    }
+
+    @Test
+    public void reportsNothingOnceUnregistered() throws Exception {
+        Metrics.unregister();
+
+        new Psd2CertInfo(obTransport());
+
+        assertThat(recorder.phases.isEmpty(), is(true));
+        assertThat(Metrics.current(), is(CertMetrics.NO_OP));
+    }
+
+    @Test
+    public void rejectsNullListener() {
+        try {
+            Metrics.register(null);
+            fail("Expected a NullPointerException");
+        } catch (NullPointerException e) {
+            assertThat(Metrics.current(), is((CertMetrics) recorder));
+        }
+    }
+
+    private static final class Recorder implements CertMetrics {
+        private final Map<Phase, AtomicInteger> phases = new ConcurrentHashMap<>();
+        private final Map<Phase, ValidationError> failures = new ConcurrentHashMap<>();
+        private final Map<Phase, Class<?>> failureCauses = new ConcurrentHashMap<>();
+        private final Map<EidasCertType, AtomicInteger> certTypes = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> cacheAccesses = new ConcurrentHashMap<>();
+
+        @Override
+        public void phaseCompleted(Phase phase, long nanos) {
+            phases.computeIfAbsent(phase, p -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void phaseFailed(Phase phase, ValidationError error, Throwable cause) {
+            failures.put(phase, error);
+            if (cause != null) {
+                failureCauses.put(phase, cause.getClass());
+            }
+        }
+
+        @Override
+        public void eidasCertType(EidasCertType type) {
+            if (type != null) {
+                certTypes.computeIfAbsent(type, t -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        @Override
+        public void cacheAccess(String cache, CacheOutcome outcome) {
+            cacheAccesses.computeIfAbsent(cache + "/" + outcome, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        int count(String cache, CacheOutcome outcome) {
+            AtomicInteger count = cacheAccesses.get(cache + "/" + outcome);
+            return count == null ? 0 : count.get();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.psd2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class NcaIndexTest {
+
+    @Test
+    public void indexesOrganisationsByAuthority() {
+        NcaIndex index = new NcaIndex();
+        assertThat(index.add(parse("PSDGB-FCA-1")), is(true));
+        assertThat(index.add(parse("PSDGB-FCA-2")), is(true));
+        assertThat(index.add(parse("PSDGB-FCA-2")), is(false));
+        assertThat(index.add(parse("PSDIE-CBI-1")), is(true));
+        assertThat(index.add(parse("NTRGB-01234567")), is(false));
+
+        assertThat(index.getOrganisations(NcaId.of("GB", "FCA")).size(), is(2));
+        assertThat(index.getOrganisations(NcaId.of("IE", "CBI")).contains(parse("PSDIE-CBI-1")), is(true));
+        assertThat(index.getOrganisations(NcaId.of("FR", "ACPR")).isEmpty(), is(true));
+        assertThat(index.getAuthorities().size(), is(2));
+
+        assertThat(index.remove(parse("PSDGB-FCA-1")), is(true));
+        assertThat(index.remove(parse("PSDGB-FCA-1")), is(false));
+        assertThat(index.getOrganisations(NcaId.of("GB", "FCA")).size(), is(1));
+    }
+
+    @Test
+    public void concurrentAddsAreAllIndexed() throws Exception {
+        NcaIndex index = new NcaIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; ++thread) {
+                int offset = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; ++i) {
+                        index.add(parse((i % 2 == 0 ? "PSDGB-FCA-" : "PSDNL-DNB-") + (offset + i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(index.getOrganisations(NcaId.of("GB", "FCA")).size(), is(4000));
+        assertThat(index.getOrganisations(NcaId.of("NL", "DNB")).size(), is(4000));
+    }
+
+    private static OrganisationIdentifier parse(String value) {
+        return OrganisationIdentifier.parse(value).getValue().get();
+    }
+}
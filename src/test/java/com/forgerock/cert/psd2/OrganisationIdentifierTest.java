@@ -0,0 +1,89 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.psd2;
+
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OrganisationIdentifierTest {
+
+    @Test
+    public void parsesPsd2AuthorisationNumbers() {
+        OrganisationIdentifier id = OrganisationIdentifier.parse("PSDGB-FCA-123456").getValue().get();
+        assertThat(id.getType(), is(OrganisationIdentifier.Type.PSD));
+        assertThat(id.getCountryCode(), is("GB"));
+        assertThat(id.getNca().get().getCountryCode(), is("GB"));
+        assertThat(id.getNca().get().getId(), is("FCA"));
+        assertThat(id.getNca().get().toString(), is("GB-FCA"));
+        assertThat(id.getIdentifier(), is("123456"));
+        assertThat(id.getValue(), is("PSDGB-FCA-123456"));
+    }
+
+    @Test
+    public void identifiersMayContainHyphens() {
+        OrganisationIdentifier id = OrganisationIdentifier.parse("PSDDE-BAFIN-12-34").getValue().get();
+        assertThat(id.getNca().get().getId(), is("BAFIN"));
+        assertThat(id.getIdentifier(), is("12-34"));
+    }
+
+    @Test
+    public void parsesTradeRegisterAndVatNumbers() {
+        OrganisationIdentifier ntr = OrganisationIdentifier.parse("NTRGB-01234567").getValue().get();
+        assertThat(ntr.getType(), is(OrganisationIdentifier.Type.NTR));
+        assertThat(ntr.getNca().isPresent(), is(false));
+        assertThat(ntr.getIdentifier(), is("01234567"));
+
+        OrganisationIdentifier vat = OrganisationIdentifier.parse("VATFR-12345678901").getValue().get();
+        assertThat(vat.getType(), is(OrganisationIdentifier.Type.VAT));
+        assertThat(vat.getCountryCode(), is("FR"));
+    }
+
+    @Test
+    public void codesAreCanonical() {
+        OrganisationIdentifier first = OrganisationIdentifier.parse(new String("PSDIE-CBI-C1")).getValue().get();
+        OrganisationIdentifier second = OrganisationIdentifier.parse(new String("PSDIE-CBI-C2")).getValue().get();
+        assertThat(second.getCountryCode(), is(sameInstance(first.getCountryCode())));
+        assertThat(second.getNca().get(), is(sameInstance(first.getNca().get())));
+        assertThat(NcaId.of("IE", "CBI"), is(sameInstance(first.getNca().get())));
+    }
+
+    @Test
+    public void rejectsMalformedIdentifiers() {
+        for (String value : new String[] {"", "PSDGB", "PSDGB-", "PSDGB-FCA", "PSDGB-FCA-", "PSDgb-FCA-1",
+                "PSDGB-F-1", "PSDGB-FCAFCAFCA-1", "PSDGB-fca-1", "PSDGBFCA-1", "XYZGB-1", "NTRGB-", "VATGB-12 3",
+                "0015800001041RHAAY"}) {
+            ValidationResult<OrganisationIdentifier> result = OrganisationIdentifier.parse(value);
+            assertThat(value, result.isValid(), is(false));
+            assertThat(result.getError(), is(ValidationError.MALFORMED_ORGANISATION_IDENTIFIER));
+        }
+        assertThat(OrganisationIdentifier.parse(null).getError(), is(ValidationError.NO_ORGANISATION_IDENTIFIER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ncaIdsAreValidated() {
+        NcaId.of("GB", "fca");
+    }
+}
@@ -30,6 +30,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 
@@ -66,4 +68,15 @@ public class Psd2QcStatementTest {
         RolesOfPsp deserialisedRolesOfPsp = deserialized.getRoles();
         assertThat(deserialisedRolesOfPsp, is(this.rolesOfPsp));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodingIsReusedUntilTheRolesChange() throws InvalidPsd2EidasCertificate {
+        ASN1Primitive first = qcStatement.toASN1Primitive();
+        assertThat(qcStatement.toASN1Primitive(), is(sameInstance(first)));
+
+        this.rolesOfPsp.addRole(Psd2Role.PSP_PI);
+        ASN1Primitive second = qcStatement.toASN1Primitive();
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(Psd2QcStatement.getInstance(second).getRoles().getRolesOfPsp().size(), is(2));
+    }
+}
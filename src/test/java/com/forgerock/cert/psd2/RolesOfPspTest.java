@@ -29,6 +29,8 @@ import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
 
@@ -64,4 +66,26 @@ public class RolesOfPspTest {
         RolesOfPsp rolesOfPsp = RolesOfPsp.getInstance(derSeq);
         assertThat(rolesOfPsp,  CoreMatchers.is(notNullValue()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void equalRoleSetsShareOneEncodingWhateverTheOrderAdded() {
+        RolesOfPsp first = new RolesOfPsp().addRole(Psd2Role.PSP_PI).addRole(Psd2Role.PSP_AS);
+        RolesOfPsp second = new RolesOfPsp().addRole(Psd2Role.PSP_AS).addRole(Psd2Role.PSP_PI);
+
+        ASN1Primitive encoded = first.toASN1Primitive();
+        assertThat(second.toASN1Primitive(), is(sameInstance(encoded)));
+        assertThat(((DERSequence) encoded).getObjectAt(0), is(sameInstance(
+                (Object) new RoleOfPsp(Psd2Role.PSP_AS).toASN1Primitive())));
+    }
+
+    @Test
+    public void addingARoleChangesTheEncoding() throws InvalidPsd2EidasCertificate {
+        RolesOfPsp roles = new RolesOfPsp().addRole(Psd2Role.PSP_AI);
+        ASN1Primitive before = roles.toASN1Primitive();
+        roles.addRole(Psd2Role.PSP_IC);
+        ASN1Primitive after = roles.toASN1Primitive();
+
+        assertThat(after, is(not(before)));
+        assertThat(RolesOfPsp.getInstance(after).getRolesOfPsp().size(), is(2));
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import com.forgerock.cert.Psd2CertInfo;
+import com.forgerock.test_helpers.MutableClock;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CrlIndexTest {
+
+    private static Issued root;
+    private static Issued issuer;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MutableClock clock = new MutableClock();
+    private CrlIndex index;
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        root = TestPki.root("CN=CRL Root CA, O=Example, C=GB");
+        issuer = TestPki.intermediate("CN=CRL Issuing CA, O=Example, C=GB", root, null);
+    }
+
+    @Before
+    public void openIndex() throws Exception {
+        index = new CrlIndex(folder.getRoot().toPath(), clock);
+    }
+
+    @Test
+    public void findsRevokedCertificates() throws Exception {
+        Issued revoked = TestPki.leaf("CN=revoked, O=Example TPP, C=GB", issuer, null);
+        Issued good = TestPki.leaf("CN=good, O=Example TPP, C=GB", issuer, null);
+        Map<BigInteger, Integer> entries = new LinkedHashMap<>();
+        entries.put(BigInteger.valueOf(17), CRLReason.superseded);
+        entries.put(revoked.cert.getSerialNumber(), CRLReason.keyCompromise);
+
+        assertThat(index.update(crl(issuer, 1, null, entries), issuer.cert), is(true));
+
+        assertThat(index.isRevoked(revoked.cert), is(true));
+        assertThat(index.isRevoked(good.cert), is(false));
+        RevocationResult result = index.check(revoked.cert);
+        assertThat(result.getStatus(), is(CertStatus.REVOKED));
+        assertThat(result.getRevocationReason(), is(Optional.of(CRLReason.keyCompromise)));
+        assertThat(index.check(Psd2CertInfo.lazy(new X509Certificate[]{good.cert})).getStatus(),
+                is(CertStatus.GOOD));
+    }
+
+    @Test
+    public void agreesWithJdkCrlForManySerials() throws Exception {
+        Random random = new Random(42);
+        Map<BigInteger, Integer> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 5000; ++i) {
+            entries.put(new BigInteger(1 + random.nextInt(159), random), null);
+        }
+        entries.put(BigInteger.ZERO, null);
+        entries.put(BigInteger.ONE.shiftLeft(159).subtract(BigInteger.ONE), null);
+        byte[] encoded = crlBytes(issuer, 1, null, entries);
+        X509CRL jdkCrl = (X509CRL) CertificateFactory.getInstance("X.509")
+                .generateCRL(new ByteArrayInputStream(encoded));
+
+        index.update(new ByteArrayInputStream(encoded), issuer.cert);
+
+        assertThat(index.getRevokedCount(issuer.cert.getSubjectX500Principal()), is(entries.size()));
+        for (BigInteger serial : entries.keySet()) {
+            assertThat(index.isRevoked(issuer.cert.getSubjectX500Principal(), serial), is(true));
+        }
+        for (int i = 0; i < 5000; ++i) {
+            BigInteger serial = new BigInteger(1 + random.nextInt(159), random);
+            assertThat(index.isRevoked(issuer.cert.getSubjectX500Principal(), serial),
+                    is(jdkCrl.getRevokedCertificate(serial) != null));
+        }
+    }
+
+    @Test
+    public void survivesRestart() throws Exception {
+        index.update(crl(issuer, 7, null, Collections.singletonMap(BigInteger.valueOf(1234), null)), issuer.cert);
+
+        CrlIndex reopened = new CrlIndex(folder.getRoot().toPath(), clock);
+
+        assertThat(reopened.isRevoked(issuer.cert.getSubjectX500Principal(), BigInteger.valueOf(1234)), is(true));
+        assertThat(reopened.getCrlNumber(issuer.cert.getSubjectX500Principal()),
+                is(Optional.of(BigInteger.valueOf(7))));
+    }
+
+    @Test
+    public void appliesDeltaCrl() throws Exception {
+        Map<BigInteger, Integer> base = new LinkedHashMap<>();
+        base.put(BigInteger.valueOf(10), CRLReason.keyCompromise);
+        base.put(BigInteger.valueOf(20), CRLReason.certificateHold);
+        base.put(BigInteger.valueOf(30), CRLReason.superseded);
+        index.update(crl(issuer, 5, null, base), issuer.cert);
+
+        Map<BigInteger, Integer> delta = new LinkedHashMap<>();
+        delta.put(BigInteger.valueOf(20), CRLReason.removeFromCRL);
+        delta.put(BigInteger.valueOf(25), CRLReason.cessationOfOperation);
+        delta.put(BigInteger.valueOf(40), CRLReason.affiliationChanged);
+        assertThat(index.update(crl(issuer, 6, 5, delta), issuer.cert), is(true));
+
+        assertThat(revokedSerials(10, 20, 25, 30, 40), is(Arrays.asList(true, false, true, true, true)));
+        assertThat(index.getRevokedCount(issuer.cert.getSubjectX500Principal()), is(4));
+        assertThat(index.getCrlNumber(issuer.cert.getSubjectX500Principal()),
+                is(Optional.of(BigInteger.valueOf(6))));
+
+        CrlIndex reopened = new CrlIndex(folder.getRoot().toPath(), clock);
+        assertThat(reopened.isRevoked(issuer.cert.getSubjectX500Principal(), BigInteger.valueOf(25)), is(true));
+    }
+
+    @Test
+    public void ignoresOlderCrls() throws Exception {
+        index.update(crl(issuer, 9, null, Collections.singletonMap(BigInteger.valueOf(1), null)), issuer.cert);
+
+        assertThat(index.update(crl(issuer, 8, null, Collections.singletonMap(BigInteger.valueOf(2), null)),
+                issuer.cert), is(false));
+        assertThat(index.update(crl(issuer, 9, 8, Collections.singletonMap(BigInteger.valueOf(3), null)),
+                issuer.cert), is(false));
+        assertThat(revokedSerials(1, 2, 3), is(Arrays.asList(true, false, false)));
+    }
+
+    @Test
+    public void rejectsDeltaWithoutBase() throws Exception {
+        try {
+            index.update(crl(issuer, 3, 2, Collections.singletonMap(BigInteger.valueOf(1), null)), issuer.cert);
+            fail("Expected the delta CRL to be rejected");
+        } catch (CRLException e) {
+            assertThat(index.getRevokedCount(issuer.cert.getSubjectX500Principal()), is(0));
+        }
+    }
+
+    @Test
+    public void rejectsCrlWithBadSignature() throws Exception {
+        Issued impostor = TestPki.root("CN=CRL Issuing CA, O=Example, C=GB");
+        try {
+            index.update(crl(impostor, 1, null, Collections.singletonMap(BigInteger.valueOf(1), null)), issuer.cert);
+            fail("Expected the CRL to be rejected");
+        } catch (CRLException e) {
+            assertThat(index.isRevoked(issuer.cert.getSubjectX500Principal(), BigInteger.ONE), is(false));
+        }
+    }
+
+    @Test
+    public void rejectsCrlFromAnotherIssuer() throws Exception {
+        try {
+            index.update(crl(root, 1, null, Collections.singletonMap(BigInteger.valueOf(1), null)), issuer.cert);
+            fail("Expected the CRL to be rejected");
+        } catch (CRLException e) {
+            assertThat(index.getRevokedCount(root.cert.getSubjectX500Principal()), is(0));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedCrl() throws Exception {
+        byte[] encoded = crlBytes(issuer, 1, null, Collections.singletonMap(BigInteger.valueOf(1), null));
+        try {
+            index.update(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 10)), issuer.cert);
+            fail("Expected the CRL to be rejected");
+        } catch (IOException | CRLException e) {
+            assertThat(index.getRevokedCount(issuer.cert.getSubjectX500Principal()), is(0));
+        }
+    }
+
+    @Test
+    public void staleCrlReportsUnknown() throws Exception {
+        Issued leaf = TestPki.leaf("CN=stale, O=Example TPP, C=GB", issuer, null);
+        index.update(crl(issuer, 1, null, Collections.emptyMap()), issuer.cert);
+        assertThat(index.check(leaf.cert).getStatus(), is(CertStatus.GOOD));
+
+        clock.advance(Duration.ofDays(2));
+
+        assertThat(index.check(leaf.cert).getStatus(), is(CertStatus.UNKNOWN));
+    }
+
+    @Test
+    public void crlWithoutNextUpdateExpiresAfterMaxAge() throws Exception {
+        index = new CrlIndex(folder.getRoot().toPath(), clock, Duration.ofHours(12));
+        Issued leaf = TestPki.leaf("CN=no next update, O=Example TPP, C=GB", issuer, null);
+        index.update(new ByteArrayInputStream(crlBytes(issuer, 1, null, Collections.emptyMap(), null,
+                builder -> { })), issuer.cert);
+
+        RevocationResult result = index.check(leaf.cert);
+        assertThat(result.getStatus(), is(CertStatus.GOOD));
+        assertThat(result.getNextUpdate(), is(Optional.empty()));
+
+        clock.advance(Duration.ofHours(12));
+
+        assertThat(index.check(leaf.cert).getStatus(), is(CertStatus.UNKNOWN));
+    }
+
+    @Test
+    public void rejectsPartitionedCrl() throws Exception {
+        IssuingDistributionPoint idp = new IssuingDistributionPoint(null, true, false);
+        assertRejected(crlBytes(issuer, 1, null, Collections.emptyMap(), Duration.ofDays(1),
+                builder -> builder.addExtension(Extension.issuingDistributionPoint, true, idp)));
+    }
+
+    @Test
+    public void rejectsUnknownCriticalCrlExtension() throws Exception {
+        assertRejected(crlBytes(issuer, 1, null, Collections.emptyMap(), Duration.ofDays(1),
+                builder -> builder.addExtension(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1"), true,
+                        DERNull.INSTANCE)));
+    }
+
+    @Test
+    public void rejectsIndirectCrlEntry() throws Exception {
+        GeneralNames certificateIssuer = new GeneralNames(new GeneralName(root.getName()));
+        assertRejected(crlBytes(issuer, 1, null, Collections.emptyMap(), Duration.ofDays(1),
+                builder -> builder.addCRLEntry(BigInteger.valueOf(5), Date.from(clock.instant()), new Extensions(
+                        new Extension(Extension.certificateIssuer, true, certificateIssuer.getEncoded())))));
+    }
+
+    @Test
+    public void rejectsUnknownCriticalEntryExtension() throws Exception {
+        assertRejected(crlBytes(issuer, 1, null, Collections.emptyMap(), Duration.ofDays(1),
+                builder -> builder.addCRLEntry(BigInteger.valueOf(5), Date.from(clock.instant()), new Extensions(
+                        new Extension(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.2"), true,
+                                DERNull.INSTANCE.getEncoded())))));
+    }
+
+    @Test
+    public void acceptsUnknownNonCriticalExtensions() throws Exception {
+        assertThat(index.update(new ByteArrayInputStream(crlBytes(issuer, 1, null, Collections.emptyMap(),
+                Duration.ofDays(1), builder -> {
+                    builder.addExtension(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1"), false, DERNull.INSTANCE);
+                    builder.addCRLEntry(BigInteger.valueOf(5), Date.from(clock.instant()), new Extensions(
+                            new Extension(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.2"), false,
+                                    DERNull.INSTANCE.getEncoded())));
+                })), issuer.cert), is(true));
+
+        assertThat(index.isRevoked(issuer.cert.getSubjectX500Principal(), BigInteger.valueOf(5)), is(true));
+    }
+
+    private void assertRejected(byte[] crl) throws Exception {
+        try {
+            index.update(new ByteArrayInputStream(crl), issuer.cert);
+            fail("Expected the CRL to be rejected");
+        } catch (CRLException e) {
+            assertThat(index.getRevokedCount(issuer.cert.getSubjectX500Principal()), is(0));
+            assertThat(index.getCrlNumber(issuer.cert.getSubjectX500Principal()), is(Optional.empty()));
+        }
+    }
+
+    @Test
+    public void unknownIssuerReportsUnknown() throws Exception {
+        Issued leaf = TestPki.leaf("CN=unindexed, O=Example TPP, C=GB", issuer, null);
+
+        assertThat(index.check(leaf.cert).getStatus(), is(CertStatus.UNKNOWN));
+        assertThat(index.isRevoked(leaf.cert), is(false));
+    }
+
+    @Test
+    public void parsesUtcAndGeneralizedTime() throws Exception {
+        long expected = Instant.parse("2049-12-31T23:59:59Z").toEpochMilli();
+        assertThat(CrlStreamParser.parseTime(0x17, "491231235959Z".getBytes("US-ASCII"), 0, 13), is(expected));
+        assertThat(CrlStreamParser.parseTime(0x18, "20491231235959Z".getBytes("US-ASCII"), 0, 15), is(expected));
+        assertThat(CrlStreamParser.parseTime(0x18, "20491231235959.25Z".getBytes("US-ASCII"), 0, 18),
+                is(expected + 250));
+        assertThat(CrlStreamParser.parseTime(0x17, "500101000000Z".getBytes("US-ASCII"), 0, 13),
+                is(Instant.parse("1950-01-01T00:00:00Z").toEpochMilli()));
+    }
+
+    private List<Boolean> revokedSerials(int... serials) {
+        List<Boolean> revoked = new ArrayList<>();
+        for (int serial : serials) {
+            revoked.add(index.isRevoked(issuer.cert.getSubjectX500Principal(), BigInteger.valueOf(serial)));
+        }
+        return revoked;
+    }
+
+    private ByteArrayInputStream crl(Issued signer, long number, Integer deltaBase, Map<BigInteger, Integer> entries)
+            throws Exception {
+        return new ByteArrayInputStream(crlBytes(signer, number, deltaBase, entries));
+    }
+
+    private byte[] crlBytes(Issued signer, long number, Integer deltaBase, Map<BigInteger, Integer> entries)
+            throws Exception {
+        return crlBytes(signer, number, deltaBase, entries, Duration.ofDays(1), builder -> { });
+    }
+
+    /**
+     * @param validity the time from thisUpdate to nextUpdate, or null for a CRL without a nextUpdate
+     * @param extra adds to the CRL before it is signed
+     */
+    private byte[] crlBytes(Issued signer, long number, Integer deltaBase, Map<BigInteger, Integer> entries,
+                            Duration validity, CrlCustomizer extra) throws Exception {
+        Instant now = clock.instant();
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(signer.getName(), Date.from(now));
+        if (validity != null) {
+            builder.setNextUpdate(Date.from(now.plus(validity)));
+        }
+        for (Map.Entry<BigInteger, Integer> entry : entries.entrySet()) {
+            if (entry.getValue() == null) {
+                builder.addCRLEntry(entry.getKey(), Date.from(now.minus(Duration.ofHours(1))), (Extensions) null);
+            } else {
+                builder.addCRLEntry(entry.getKey(), Date.from(now.minus(Duration.ofHours(1))), entry.getValue());
+            }
+        }
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(number)));
+        if (deltaBase != null) {
+            builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(deltaBase)));
+        }
+        extra.customize(builder);
+        return builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signer.keyPair.getPrivate()))
+                .getEncoded();
+    }
+
+    private interface CrlCustomizer {
+        void customize(X509v2CRLBuilder builder) throws Exception;
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.revocation;
+
+import com.forgerock.cert.exception.RevocationCheckException;
+import com.forgerock.test_helpers.MutableClock;
+import com.forgerock.test_helpers.TestOcspResponder;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class OcspClientTest {
+
+    private static Issued root;
+    private static Issued issuer;
+
+    private final MutableClock clock = new MutableClock();
+    private ExecutorService executor;
+    private TestOcspResponder responder;
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        root = TestPki.root("CN=OCSP Root CA, O=Example, C=GB");
+        issuer = TestPki.intermediate("CN=OCSP Issuing CA, O=Example, C=GB", root, null);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        responder = new TestOcspResponder(issuer);
+        responder.setClock(clock::instant);
+    }
+
+    @After
+    public void tearDown() {
+        responder.close();
+        executor.shutdownNow();
+    }
+
+    private Issued leaf(String cn) throws Exception {
+        return TestPki.leaf("CN=" + cn + ", O=Example TPP, C=GB", issuer, null, responder.getUrl());
+    }
+
+    private OcspClient.Builder client() {
+        return OcspClient.builder().executor(executor).clock(clock);
+    }
+
+    @Test
+    public void goodStatusIsCached() throws Exception {
+        Issued leaf = leaf("good");
+        OcspClient client = client().build();
+
+        RevocationResult first = client.check(leaf.cert, issuer.cert).join();
+        RevocationResult second = client.check(leaf.cert, issuer.cert).join();
+
+        assertThat(first.getStatus(), is(CertStatus.GOOD));
+        assertThat(first.getNextUpdate().isPresent(), is(true));
+        assertThat(second, is(first));
+        assertThat(responder.getRequestCount(), is(1));
+    }
+
+    @Test
+    public void reportsRevocation() throws Exception {
+        Issued leaf = leaf("revoked");
+        Instant revokedAt = clock.instant().minus(Duration.ofDays(1));
+        responder.revoke(leaf.cert.getSerialNumber(), revokedAt, CRLReason.keyCompromise);
+
+        RevocationResult result = client().build().check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.isRevoked(), is(true));
+        assertThat(result.getRevocationReason(), is(Optional.of(CRLReason.keyCompromise)));
+        assertThat(result.getRevocationTime().get().getEpochSecond(), is(revokedAt.getEpochSecond()));
+    }
+
+    @Test
+    public void reportsUnknownCertificate() throws Exception {
+        Issued leaf = leaf("unknown");
+        responder.markUnknown(leaf.cert.getSerialNumber());
+
+        RevocationResult result = client().build().check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.getStatus(), is(CertStatus.UNKNOWN));
+        assertThat(result.isSoftFailure(), is(false));
+    }
+
+    @Test
+    public void batchesCertIdsForTheSameResponder() throws Exception {
+        List<X509Certificate> certs = Arrays.asList(leaf("a").cert, leaf("b").cert, leaf("c").cert);
+        responder.revoke(certs.get(1).getSerialNumber(), clock.instant(), CRLReason.superseded);
+
+        List<RevocationResult> results = client().build().checkAll(certs, issuer.cert).join();
+
+        assertThat(results.get(0).getStatus(), is(CertStatus.GOOD));
+        assertThat(results.get(1).getStatus(), is(CertStatus.REVOKED));
+        assertThat(results.get(2).getStatus(), is(CertStatus.GOOD));
+        assertThat(responder.getCertIdsPerRequest(), is(Arrays.asList(3)));
+    }
+
+    @Test
+    public void splitsLargeBatches() throws Exception {
+        List<X509Certificate> certs = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            certs.add(leaf("batch" + i).cert);
+        }
+
+        client().maximumCertIdsPerRequest(2).build().checkAll(certs, issuer.cert).join();
+
+        assertThat(responder.getCertIdsPerRequest().stream().mapToInt(Integer::intValue).sum(), is(5));
+        assertThat(responder.getRequestCount(), is(3));
+    }
+
+    @Test
+    public void concurrentChecksShareOneRequest() throws Exception {
+        Issued leaf = leaf("concurrent");
+        OcspClient client = client().build();
+        responder.hold();
+
+        List<CompletableFuture<RevocationResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            futures.add(client.check(leaf.cert, issuer.cert));
+        }
+        responder.release();
+        for (CompletableFuture<RevocationResult> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS).isGood(), is(true));
+        }
+
+        assertThat(responder.getRequestCount(), is(1));
+        assertThat(client.getRequestCount(), is(1L));
+    }
+
+    @Test
+    public void expiredStatusIsFetchedAgain() throws Exception {
+        Issued leaf = leaf("expired");
+        OcspClient client = client().refreshAhead(Duration.ZERO).build();
+
+        client.check(leaf.cert, issuer.cert).join();
+        clock.advance(Duration.ofHours(1));
+        client.check(leaf.cert, issuer.cert).join();
+
+        assertThat(responder.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void refreshesInBackgroundBeforeExpiry() throws Exception {
+        Issued leaf = leaf("refresh");
+        OcspClient client = client().refreshAhead(Duration.ofMinutes(10)).build();
+        RevocationResult first = client.check(leaf.cert, issuer.cert).join();
+
+        clock.advance(Duration.ofMinutes(55));
+        responder.hold();
+        CompletableFuture<RevocationResult> during = client.check(leaf.cert, issuer.cert);
+
+        assertThat(during.isDone(), is(true));
+        assertThat(during.join(), is(first));
+        responder.release();
+        waitFor(() -> client.check(leaf.cert, issuer.cert).join() != first);
+        assertThat(responder.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void statusWithoutNextUpdateUsesDefaultValidity() throws Exception {
+        Issued leaf = leaf("no-next-update");
+        responder.setValidity(null);
+        OcspClient client = client().defaultValidity(Duration.ofMinutes(5)).refreshAhead(Duration.ZERO).build();
+
+        client.check(leaf.cert, issuer.cert).join();
+        clock.advance(Duration.ofMinutes(4));
+        client.check(leaf.cert, issuer.cert).join();
+        assertThat(responder.getRequestCount(), is(1));
+
+        clock.advance(Duration.ofMinutes(1));
+        client.check(leaf.cert, issuer.cert).join();
+        assertThat(responder.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void rejectsOldStatusWithoutNextUpdate() throws Exception {
+        Issued leaf = leaf("old-no-next-update");
+        responder.setValidity(null);
+        responder.setClock(() -> clock.instant().minus(Duration.ofHours(2)));
+        OcspClient client = client().maximumResponseAge(Duration.ofHours(1)).failurePolicy(FailurePolicy.SOFT_FAIL)
+                .failureTimeToLive(Duration.ZERO).build();
+
+        RevocationResult result = client.check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.getStatus(), is(CertStatus.UNKNOWN));
+        assertThat(result.isSoftFailure(), is(true));
+        assertThat(result.getFailure().get(), instanceOf(RevocationCheckException.class));
+    }
+
+    @Test
+    public void statusWithoutNextUpdateIsNotCachedPastMaximumAge() throws Exception {
+        Issued leaf = leaf("aging-no-next-update");
+        responder.setValidity(null);
+        responder.setClock(() -> clock.instant().minus(Duration.ofMinutes(58)));
+        OcspClient client = client().maximumResponseAge(Duration.ofHours(1)).defaultValidity(Duration.ofMinutes(5))
+                .refreshAhead(Duration.ZERO).build();
+
+        assertThat(client.check(leaf.cert, issuer.cert).join().isGood(), is(true));
+        clock.advance(Duration.ofMinutes(2));
+        responder.setClock(clock::instant);
+        assertThat(client.check(leaf.cert, issuer.cert).join().isGood(), is(true));
+
+        // The first status was 60 minutes old by the second check, so it was asked for again
+        assertThat(responder.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void softFailReportsUnknownAndBacksOff() throws Exception {
+        Issued leaf = leaf("soft-fail");
+        responder.setAvailable(false);
+        OcspClient client = client().failurePolicy(FailurePolicy.SOFT_FAIL)
+                .failureTimeToLive(Duration.ofSeconds(30)).build();
+
+        RevocationResult result = client.check(leaf.cert, issuer.cert).join();
+        client.check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.getStatus(), is(CertStatus.UNKNOWN));
+        assertThat(result.isSoftFailure(), is(true));
+        assertThat(responder.getRequestCount(), is(0));
+        assertThat(client.getRequestCount(), is(1L));
+
+        responder.setAvailable(true);
+        clock.advance(Duration.ofSeconds(30));
+        assertThat(client.check(leaf.cert, issuer.cert).join().isGood(), is(true));
+    }
+
+    @Test
+    public void hardFailCompletesExceptionally() throws Exception {
+        Issued leaf = leaf("hard-fail");
+        responder.setAvailable(false);
+
+        try {
+            client().failurePolicy(FailurePolicy.HARD_FAIL).build().check(leaf.cert, issuer.cert).join();
+            fail("Expected the check to fail");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(RevocationCheckException.class));
+        }
+    }
+
+    @Test
+    public void understandsSha256CertIds() throws Exception {
+        Issued good = leaf("sha256-good");
+        Issued revoked = leaf("sha256-revoked");
+        responder.revoke(revoked.cert.getSerialNumber(), clock.instant(), CRLReason.keyCompromise);
+        responder.answerWithSha256CertIds(issuer);
+
+        List<RevocationResult> results = client().build()
+                .checkAll(Arrays.asList(good.cert, revoked.cert), issuer.cert).join();
+
+        assertThat(results.get(0).isGood(), is(true));
+        assertThat(results.get(1).isRevoked(), is(true));
+    }
+
+    @Test
+    public void ignoresStatusForAnotherIssuer() throws Exception {
+        Issued leaf = leaf("other-issuer");
+        responder.answerWithSha256CertIds(root);
+
+        RevocationResult result = client().failurePolicy(FailurePolicy.SOFT_FAIL).build()
+                .check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.isSoftFailure(), is(true));
+    }
+
+    @Test
+    public void usesOwnPoolWhenNoExecutorIsGiven() throws Exception {
+        Issued leaf = leaf("default-executor");
+
+        assertThat(OcspClient.builder().clock(clock).build().check(leaf.cert, issuer.cert).join().isGood(), is(true));
+    }
+
+    @Test
+    public void acceptsDelegatedResponder() throws Exception {
+        Issued signer = TestPki.ocspSigner("CN=OCSP Signer, O=Example, C=GB", issuer);
+        try (TestOcspResponder delegated = new TestOcspResponder(signer, signer)) {
+            delegated.setClock(clock::instant);
+            Issued leaf = TestPki.leaf("CN=delegated, O=Example TPP, C=GB", issuer, null, delegated.getUrl());
+
+            RevocationResult result = client().build().check(leaf.cert, issuer.cert).join();
+
+            assertThat(result.isGood(), is(true));
+        }
+    }
+
+    @Test
+    public void rejectsResponseFromUnauthorisedSigner() throws Exception {
+        Issued other = TestPki.root("CN=Other Root CA, O=Example, C=GB");
+        Issued signer = TestPki.ocspSigner("CN=Rogue OCSP Signer, O=Example, C=GB", other);
+        try (TestOcspResponder rogue = new TestOcspResponder(signer, signer)) {
+            rogue.setClock(clock::instant);
+            Issued leaf = TestPki.leaf("CN=rogue, O=Example TPP, C=GB", issuer, null, rogue.getUrl());
+
+            RevocationResult result = client().failurePolicy(FailurePolicy.SOFT_FAIL).build()
+                    .check(leaf.cert, issuer.cert).join();
+
+            assertThat(result.isSoftFailure(), is(true));
+            assertThat(result.getFailure().get(), instanceOf(RevocationCheckException.class));
+        }
+    }
+
+    @Test
+    public void certificateWithoutResponderFails() throws Exception {
+        Issued leaf = TestPki.leaf("CN=no-ocsp, O=Example TPP, C=GB", issuer, null);
+
+        RevocationResult result = client().failurePolicy(FailurePolicy.SOFT_FAIL).build()
+                .check(leaf.cert, issuer.cert).join();
+
+        assertThat(result.isSoftFailure(), is(true));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for condition");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.tls;
+
+import com.forgerock.cert.Psd2CertSnapshot;
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.test_helpers.TestPki;
+import com.forgerock.test_helpers.TestPki.Issued;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class Psd2TrustManagerTest {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static Issued root;
+    private static Issued issuer;
+    private static Issued server;
+    private static KeyStore trustStore;
+
+    @BeforeClass
+    public static void issueCertificates() throws Exception {
+        root = TestPki.root("CN=TLS Root CA, O=Example, C=GB");
+        issuer = TestPki.intermediate("CN=TLS Issuing CA, O=Example, C=GB", root, null);
+        server = TestPki.leaf("CN=localhost, O=Example ASPSP, C=GB", issuer, null);
+        trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("root", root.cert);
+    }
+
+    private static Issued client(EidasCertType certType, String ncaId, Psd2Role... roles) throws Exception {
+        return TestPki.psd2Leaf("CN=tpp.example.com, 2.5.4.97=PSDGB-FCA-123456, O=Example TPP, C=GB", issuer,
+                certType, ncaId, roles);
+    }
+
+    private static Psd2TrustManager.Builder trustManager() throws Exception {
+        return Psd2TrustManager.builder().trustAnchors(trustStore);
+    }
+
+    private static SSLContext context(Issued identity, TrustManager trustManager) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("key", identity.keyPair.getPrivate(), PASSWORD,
+                new Certificate[]{identity.cert, issuer.cert});
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), new TrustManager[]{trustManager}, null);
+        return context;
+    }
+
+    private static SSLContext clientContext(Issued client) throws Exception {
+        return context(client, Psd2TrustManager.builder().trustAnchors(trustStore).build());
+    }
+
+    /**
+     * Handshake a client and server engine with each other in memory.
+     * @return the server engine
+     */
+    private static SSLEngine handshake(SSLContext clientContext, SSLContext serverContext) throws Exception {
+        SSLEngine client = clientContext.createSSLEngine("localhost", 443);
+        client.setUseClientMode(true);
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(true);
+
+        int packetSize = Math.max(client.getSession().getPacketBufferSize(),
+                server.getSession().getPacketBufferSize());
+        int applicationSize = Math.max(client.getSession().getApplicationBufferSize(),
+                server.getSession().getApplicationBufferSize());
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer clientApplication = ByteBuffer.allocate(applicationSize);
+        ByteBuffer serverApplication = ByteBuffer.allocate(applicationSize);
+
+        client.beginHandshake();
+        server.beginHandshake();
+        // Keep going a few rounds after both finish, so that the client receives any session tickets
+        int settled = 0;
+        for (int round = 0; round < 100 && settled < 4; ++round) {
+            client.wrap(empty, clientToServer);
+            server.wrap(empty, serverToClient);
+            ((Buffer) clientToServer).flip();
+            server.unwrap(clientToServer, serverApplication);
+            clientToServer.compact();
+            ((Buffer) serverToClient).flip();
+            client.unwrap(serverToClient, clientApplication);
+            serverToClient.compact();
+            runTasks(client);
+            runTasks(server);
+            if (isFinished(client) && isFinished(server)) {
+                ++settled;
+            }
+        }
+        if (!isFinished(client) || !isFinished(server)) {
+            throw new SSLException("Handshake did not complete");
+        }
+        return server;
+    }
+
+    private static boolean isFinished(SSLEngine engine) {
+        HandshakeStatus status = engine.getHandshakeStatus();
+        return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void acceptsQwacWithRequiredRoles() throws Exception {
+        Issued client = client(EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI, Psd2Role.PSP_PI);
+        Psd2TrustManager trustManager = trustManager()
+                .requiredRoles(Psd2Role.PSP_AI)
+                .allowedNcaIds(Collections.singleton("GB-FCA"))
+                .build();
+
+        SSLEngine engine = handshake(clientContext(client), context(server, trustManager));
+
+        Psd2CertSnapshot snapshot = trustManager.getClientSnapshot(engine.getSession()).get();
+        assertThat(snapshot.hasRole(Psd2Role.PSP_PI), is(true));
+        assertThat(snapshot.getOrganisationId().get(), is("PSDGB-FCA-123456"));
+    }
+
+    @Test
+    public void repeatClientsAreNotParsedAgain() throws Exception {
+        Issued client = client(EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI);
+        Psd2TrustManager trustManager = trustManager().build();
+        SSLContext serverContext = context(server, trustManager);
+
+        // Separate client contexts so that the second connection is a full handshake
+        handshake(clientContext(client), serverContext);
+        SSLEngine second = handshake(clientContext(client), serverContext);
+        trustManager.getClientSnapshot(second.getSession());
+
+        assertThat(trustManager.cacheStats().getMissCount(), is(1L));
+        assertThat(trustManager.cacheStats().getHitCount(), is(1L));
+    }
+
+    @Test
+    public void resumedSessionsKeepTheirSnapshot() throws Exception {
+        Issued client = client(EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI);
+        Psd2TrustManager trustManager = trustManager().build();
+        SSLContext serverContext = context(server, trustManager);
+        SSLContext clientContext = clientContext(client);
+
+        handshake(clientContext, serverContext);
+        SSLEngine resumed = handshake(clientContext, serverContext);
+
+        assertThat(trustManager.getClientSnapshot(resumed.getSession()).get().hasRole(Psd2Role.PSP_AI), is(true));
+        // Resumption skips the trust manager, and the snapshot is read from the session rather than the cache
+        assertThat(trustManager.cacheStats().getMissCount(), is(1L));
+        assertThat(trustManager.cacheStats().getHitCount(), is(0L));
+    }
+
+    @Test
+    public void rejectsMissingRole() throws Exception {
+        assertRejected(client(EidasCertType.WEB, "GB-FCA", Psd2Role.PSP_AI),
+                trustManager().requiredRoles(Psd2Role.PSP_PI).build(), "does not grant [PSP_PI]");
+    }
+
+    @Test
+    public void rejectsSealCertificates() throws Exception {
+        assertRejected(client(EidasCertType.ESEAL, "GB-FCA", Psd2Role.PSP_AI), trustManager().build(),
+                "type ESEAL");
+    }
+
+    @Test
+    public void rejectsOtherNcas() throws Exception {
+        assertRejected(client(EidasCertType.WEB, "FR-ACPR", Psd2Role.PSP_AI),
+                trustManager().allowedNcaIds(Collections.singleton("GB-FCA")).build(), "FR-ACPR");
+    }
+
+    @Test
+    public void rejectsNonPsd2Certificates() throws Exception {
+        Issued client = TestPki.leaf("CN=client, 2.5.4.97=PSDGB-FCA-123456, O=Example, C=GB", issuer, null);
+        assertRejected(client, trustManager().build(), "not a PSD2 certificate");
+    }
+
+    private void assertRejected(Issued client, Psd2TrustManager trustManager, String reason) throws Exception {
+        for (int attempt = 0; attempt < 2; ++attempt) {
+            try {
+                handshake(clientContext(client), context(server, trustManager));
+                fail("Expected the client to be rejected");
+            } catch (SSLException e) {
+                assertThat(rootMessage(e), containsString(reason));
+            }
+        }
+        // The second attempt was decided from the cache
+        assertThat(trustManager.cacheStats().getMissCount(), is(1L));
+        assertThat(trustManager.cacheStats().getHitCount(), is(1L));
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
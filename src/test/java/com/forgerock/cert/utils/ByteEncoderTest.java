@@ -0,0 +1,57 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ByteEncoderTest {
+
+    @Test
+    public void encodesHex() {
+        assertThat(ByteEncoder.toHex(new byte[] {0x00, 0x0f, (byte) 0xa5, (byte) 0xff}), is("000fa5ff"));
+        assertThat(ByteEncoder.toHex(new byte[] {0x01, 0x02, 0x03}, 1, 2), is("0203"));
+        assertThat(ByteEncoder.toHex(new byte[0]), is(""));
+    }
+
+    @Test
+    public void base64UrlMatchesTheJdkEncoder() {
+        Random random = new Random(42);
+        Base64.Encoder expected = Base64.getUrlEncoder().withoutPadding();
+        for (int length = 0; length < 70; ++length) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertThat(ByteEncoder.toBase64Url(bytes), is(expected.encodeToString(bytes)));
+        }
+    }
+
+    @Test
+    public void base64UrlHonoursTheRange() {
+        byte[] bytes = {(byte) 0xfb, (byte) 0xff, (byte) 0xbf, 0x10};
+        assertThat(ByteEncoder.toBase64Url(bytes, 0, 3), is("-_-_"));
+        assertThat(ByteEncoder.toBase64Url(bytes, 3, 1), is("EA"));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CertificateStreamDecoderTest {
+
+    private static final List<String> PEM_FILES = Arrays.asList(
+            "src/test/resources/dev-transport.pem",
+            "src/test/resources/ob-transport.pem",
+            "src/test/resources/fr-directory.pem",
+            "src/test/resources/multicert-psd2-eidas.cer");
+
+    private byte[] concatenatedPem() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String file : PEM_FILES) {
+            out.write(("subject=" + file + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(Files.readAllBytes(Paths.get(file)));
+        }
+        return out.toByteArray();
+    }
+
+    private List<X509Certificate> expected() throws Exception {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        List<X509Certificate> certs = new ArrayList<>();
+        for (String file : PEM_FILES) {
+            certs.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(
+                    Files.readAllBytes(Paths.get(file)))));
+        }
+        return certs;
+    }
+
+    @Test
+    public void readsConcatenatedPem() throws Exception {
+        CertificateStreamDecoder decoder = CertificateStreamDecoder.of(new ByteArrayInputStream(concatenatedPem()));
+        assertThat(Arrays.asList(decoder.readChain()), is(expected()));
+        assertThat(decoder.read(), is(nullValue()));
+    }
+
+    @Test
+    public void readsConcatenatedDerFromByteBuffer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (X509Certificate cert : expected()) {
+            out.write(cert.getEncoded());
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(out.size());
+        direct.put(out.toByteArray()).flip();
+        List<X509Certificate> decoded = CertificateStreamDecoder.of(direct).stream().collect(Collectors.toList());
+        assertThat(decoded, is(expected()));
+    }
+
+    @Test
+    public void readsPkcs7BundlesMixedWithPem() throws Exception {
+        List<X509Certificate> expected = expected();
+        byte[] pkcs7 = CertificateFactory.getInstance("X.509").generateCertPath(expected).getEncoded("PKCS7");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(pkcs7);
+        out.write(concatenatedPem());
+
+        X509Certificate[] chain = CertificateStreamDecoder.of(new ByteArrayInputStream(out.toByteArray())).readChain();
+        assertThat(chain.length, is(expected.size() * 2));
+        // The certificates in a PKCS#7 bundle are a DER SET, so are held in encoding order rather than input order
+        assertThat(new HashSet<>(Arrays.asList(chain).subList(0, expected.size())), is(new HashSet<>(expected)));
+        assertThat(Arrays.asList(chain).subList(expected.size(), chain.length), is(expected));
+    }
+
+    @Test
+    public void skipsTextLinesStartingWithZero() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("0\n"
+                + "0000: 30 82 05 c4 30 82 04 ac a0 03 02 01 02 02 04 59  0...0..........Y\n"
+                + "0\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(Files.readAllBytes(Paths.get(PEM_FILES.get(1))));
+
+        X509Certificate[] chain = CertificateStreamDecoder.of(new ByteArrayInputStream(out.toByteArray())).readChain();
+
+        assertThat(Arrays.asList(chain), is(expected().subList(1, 2)));
+    }
+
+    @Test
+    public void skipsImplausibleDerHeaders() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // A length of 2GB, then a length short enough for a certificate but with content that can't be one
+        out.write(new byte[]{0x30, (byte) 0x84, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x30, '\n'});
+        out.write(new byte[]{0x30, (byte) 0x82, 0x01, 0x00, 0x41, 0x42, '\n'});
+        out.write(expected().get(0).getEncoded());
+        out.write(Files.readAllBytes(Paths.get(PEM_FILES.get(1))));
+
+        X509Certificate[] chain = CertificateStreamDecoder.of(new ByteArrayInputStream(out.toByteArray())).readChain();
+
+        assertThat(Arrays.asList(chain), is(expected().subList(0, 2)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedDer() throws Exception {
+        byte[] der = expected().get(0).getEncoded();
+        CertificateStreamDecoder.of(new ByteArrayInputStream(Arrays.copyOf(der, der.length - 10))).read();
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import com.forgerock.cert.exception.InvalidPsd2EidasCertificate;
+import com.forgerock.cert.validation.ValidationError;
+import com.forgerock.cert.validation.ValidationResult;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CertificateUtilsTest {
+
+    @Test
+    public void findOrganisationIdentifier() {
+        X500Name subject = CertificateUtils.getX500Name(new CertificateConfiguration()
+                .setCn("tpp").setOi("PSDGB-FCA-123456"));
+        ValidationResult<String> result = CertificateUtils.findOrganisationIdentifier(subject);
+        assertThat(result.isValid(), is(true));
+        assertThat(result.getValue().get(), is("PSDGB-FCA-123456"));
+    }
+
+    @Test
+    public void findOrganisationIdentifierReportsMissingIdentifier() {
+        X500Name subject = CertificateUtils.getX500Name(new CertificateConfiguration().setCn("tpp"));
+        ValidationResult<String> result = CertificateUtils.findOrganisationIdentifier(subject);
+        assertThat(result.isValid(), is(false));
+        assertThat(result.getError(), is(ValidationError.NO_ORGANISATION_IDENTIFIER));
+        assertThat(result.getMessage(), startsWith("No Organization Identifier in certificate."));
+    }
+
+    @Test(expected = InvalidPsd2EidasCertificate.class)
+    public void getOrganisationIdentifierThrowsForMissingIdentifier() throws InvalidPsd2EidasCertificate {
+        CertificateUtils.getOrganisationIdentifier(CertificateUtils.getX500Name(new CertificateConfiguration()
+                .setCn("tpp")));
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.eidas.EidasInformation;
+import com.forgerock.cert.eidas.QCStatements;
+import com.forgerock.cert.psd2.Psd2QcStatement;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.psd2.RoleOfPsp;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.pkcs.Attribute;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CsrBatchGeneratorTest {
+
+    private EidasInformation eidasInfo;
+
+    @Before
+    public void setUp() {
+        eidasInfo = new EidasInformation();
+        eidasInfo.setCaIssuerCertURL("http://ca.example.com/issuer.crt");
+        eidasInfo.setOcspUri("http://ca.example.com/ocsp");
+        eidasInfo.setNcaName("Financial Conduct Authority");
+        eidasInfo.setNcaId("GB-FCA");
+        eidasInfo.addRole(Psd2Role.PSP_AI);
+        eidasInfo.addRole(Psd2Role.PSP_PI);
+    }
+
+    @Test
+    public void templateMatchesPerRequestExtensions() throws Exception {
+        KeyPair keyPair = ecKeyPairs().get();
+        PKCS10CertificationRequestBuilder builder = new JcaPKCS10CertificationRequestBuilder(
+                CertificateUtils.getX500Name(configuration(0)), keyPair.getPublic());
+        CertificateUtils.addEidasExtensionsToCSR(builder, EidasCertType.WEB, eidasInfo);
+        PKCS10CertificationRequest request = builder.build(
+                new JcaContentSignerBuilder("SHA256withECDSA")
+                        .build(keyPair.getPrivate()));
+
+        EidasExtensionsTemplate template = EidasExtensionsTemplate.compile(EidasCertType.WEB, eidasInfo);
+        assertThat(requestedExtensions(request).getEncoded(ASN1Encoding.DER), is(template.getEncoded()));
+    }
+
+    @Test
+    public void generatesSignedRequestsForEverySubjectInOrder() throws Exception {
+        EidasExtensionsTemplate template = EidasExtensionsTemplate.compile(EidasCertType.ESEAL, eidasInfo);
+        List<CertificateConfiguration> configurations = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            configurations.add(configuration(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CsrBatchGenerator generator = new CsrBatchGenerator(template, ecKeyPairs(), "SHA256withECDSA", executor);
+            List<GeneratedCsr> csrs = generator.generate(configurations);
+
+            assertThat(csrs.size(), is(configurations.size()));
+            for (int i = 0; i < csrs.size(); ++i) {
+                GeneratedCsr csr = csrs.get(i);
+                PKCS10CertificationRequest request = csr.getRequest();
+                assertThat(csr.getConfiguration(), is(configurations.get(i)));
+                assertThat(request.getSubject(), is(CertificateUtils.getX500Name(configurations.get(i))));
+                assertThat(request.isSignatureValid(new JcaContentVerifierProviderBuilder()
+                        .build(csr.getKeyPair().getPublic())), is(true));
+                assertThat(requestedExtensions(request).getEncoded(ASN1Encoding.DER), is(template.getEncoded()));
+            }
+
+            QCStatements qcStatements = QCStatements.fromExtensions(requestedExtensions(csrs.get(0).getRequest()))
+                    .get();
+            assertThat(qcStatements.getEidasCertificateType().get(), is(EidasCertType.ESEAL));
+            Psd2QcStatement psd2 = qcStatements.getPsd2QcStatement().get();
+            assertThat(psd2.getNcaId(), is("GB-FCA"));
+            List<Psd2Role> roles = new ArrayList<>();
+            for (RoleOfPsp role : psd2.getRoles().getRolesOfPsp()) {
+                roles.add(role.getRole());
+            }
+            assertThat(roles.containsAll(Arrays.asList(Psd2Role.PSP_AI, Psd2Role.PSP_PI)), is(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void onlySubmitsAWindowOfSubjectsAheadOfTheConsumer() throws Exception {
+        EidasExtensionsTemplate template = EidasExtensionsTemplate.compile(EidasCertType.WEB, eidasInfo);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            submitted.incrementAndGet();
+            task.run();
+        };
+
+        Iterator<GeneratedCsr> csrs = new CsrBatchGenerator(template, ecKeyPairs(), "SHA256withECDSA", executor, 2)
+                .generate(IntStream.range(0, 1000).mapToObj(CsrBatchGeneratorTest::configuration))
+                .iterator();
+
+        assertThat(csrs.next().getConfiguration().getCn(), is("tpp-0"));
+        assertThat(submitted.get(), is(2));
+        assertThat(csrs.next().getConfiguration().getCn(), is("tpp-1"));
+        assertThat(submitted.get(), is(3));
+    }
+
+    @Test
+    public void rejectedSubjectFailsWhenItIsReached() throws Exception {
+        EidasExtensionsTemplate template = EidasExtensionsTemplate.compile(EidasCertType.WEB, eidasInfo);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            if (submitted.getAndIncrement() == 1) {
+                throw new RejectedExecutionException("saturated");
+            }
+            task.run();
+        };
+
+        Iterator<GeneratedCsr> csrs = new CsrBatchGenerator(template, ecKeyPairs(), "SHA256withECDSA", executor)
+                .generate(IntStream.range(0, 3).mapToObj(CsrBatchGeneratorTest::configuration))
+                .iterator();
+
+        assertThat(csrs.next().getConfiguration().getCn(), is("tpp-0"));
+        try {
+            csrs.next();
+            fail("Expected the rejected subject to fail");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+
+    private static CertificateConfiguration configuration(int i) {
+        return new CertificateConfiguration()
+                .setCn("tpp-" + i)
+                .setO("Test TPP " + i + " Ltd")
+                .setC("GB")
+                .setOi("PSDGB-FCA-" + (100000 + i));
+    }
+
+    private static Extensions requestedExtensions(PKCS10CertificationRequest request) {
+        Attribute[] attributes = request.getAttributes(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest);
+        assertThat(attributes.length, is(1));
+        return Extensions.getInstance(attributes[0].getAttrValues().getObjectAt(0));
+    }
+
+    private static Supplier<KeyPair> ecKeyPairs() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        return generator::generateKeyPair;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.psd2.Psd2Role;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OidRegistryTest {
+
+    private final OidRegistry<Psd2Role> registry = new OidRegistry<>(Psd2Role.values(), Psd2Role::getAsn1Oid);
+
+    @Test
+    public void findsEveryRoleByOid() {
+        for (Psd2Role role : Psd2Role.values()) {
+            // A freshly decoded identifier is a different object to the one the registry holds
+            assertThat(registry.get(new ASN1ObjectIdentifier(role.getOid())), is(role));
+            assertThat(registry.get(role.getOid()), is(role));
+        }
+    }
+
+    @Test
+    public void unknownOidsAreNotFound() {
+        assertThat(registry.get(new ASN1ObjectIdentifier("0.4.0.19495.1.5")), is(nullValue()));
+        assertThat(registry.get("0.4.0.19495.1.5"), is(nullValue()));
+        // A prefix of a registered OID must not match it
+        assertThat(registry.get(new ASN1ObjectIdentifier("0.4.0.19495.1")), is(nullValue()));
+        assertThat(registry.get((ASN1ObjectIdentifier) null), is(nullValue()));
+    }
+
+    @Test
+    public void eidasCertTypesResolveByOid() {
+        for (EidasCertType type : EidasCertType.values()) {
+            assertThat(EidasCertType.fromOid(new ASN1ObjectIdentifier(type.getOid())).getValue().get(), is(type));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateOidsAreRejected() {
+        new OidRegistry<>(new Psd2Role[] {Psd2Role.PSP_AS, Psd2Role.PSP_AS}, Psd2Role::getAsn1Oid);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.cert.utils;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.FileInputStream;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(Parameterized.class)
+public class RawCertificateTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"src/test/resources/dev-transport.pem"},
+                {"src/test/resources/ob-transport.pem"},
+                {"src/test/resources/fr-directory.pem"},
+                {"src/test/resources/multicert-psd2-eidas.cer"},
+                {"src/test/resources/x509.pem"}
+        });
+    }
+
+    private final X509Certificate cert;
+    private final JcaX509CertificateHolder holder;
+
+    public RawCertificateTest(String path) throws Exception {
+        try (FileInputStream fis = new FileInputStream(path)) {
+            this.cert = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(fis);
+        }
+        this.holder = new JcaX509CertificateHolder(cert);
+    }
+
+    @Test
+    public void namesMatchCertificateHolder() throws Exception {
+        RawCertificate raw = RawCertificate.scan(cert);
+        assertThat(raw.getSubject(), is(holder.getSubject()));
+        assertThat(raw.getIssuer(), is(holder.getIssuer()));
+        assertThat(raw.getSubject().hashCode(), is(holder.getSubject().hashCode()));
+    }
+
+    @Test
+    public void extensionsMatchCertificateHolder() throws Exception {
+        RawCertificate raw = RawCertificate.scan(cert);
+        Extensions extensions = holder.getExtensions();
+        assertThat(raw.hasExtensions(), is(extensions != null));
+        if (extensions != null) {
+            for (ASN1ObjectIdentifier oid : extensions.getExtensionOIDs()) {
+                assertThat(raw.getExtensionValue(oid), is(extensions.getExtensionParsedValue(oid).toASN1Primitive()));
+            }
+            assertThat(raw.getExtensionValue(new ASN1ObjectIdentifier("1.2.3.4")), is(nullValue()));
+        } else {
+            assertThat(raw.getExtensionValue(Extension.qCStatements), is(nullValue()));
+        }
+    }
+
+    @Test(expected = CertificateEncodingException.class)
+    public void rejectsTruncatedEncoding() throws Exception {
+        byte[] encoded = cert.getEncoded();
+        RawCertificate.scan(Arrays.copyOf(encoded, encoded.length / 3));
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.test_helpers;
+
+import com.forgerock.test_helpers.TestPki.Issued;
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A BouncyCastle OCSP responder on a loopback HTTP server, for tests of revocation checking.
+ *
+ * Every certificate asked about is reported good unless it has been revoked or marked unknown.
+ */
+public final class TestOcspResponder implements Closeable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Issued signer;
+    private final X509CertificateHolder[] signerChain;
+    private final Map<BigInteger, CertificateStatus> statuses = new ConcurrentHashMap<>();
+    private final List<Integer> certIdsPerRequest = new CopyOnWriteArrayList<>();
+    private volatile Supplier<Instant> clock = Instant::now;
+    private volatile Duration validity = Duration.ofHours(1);
+    private volatile boolean available = true;
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile X509CertificateHolder sha256Issuer;
+
+    /**
+     * @param signer signs the responses, either the issuer itself or a delegated responder
+     * @param signerChain certificates to include in the responses
+     */
+    public TestOcspResponder(Issued signer, Issued... signerChain) throws Exception {
+        this.signer = signer;
+        this.signerChain = new X509CertificateHolder[signerChain.length];
+        for (int i = 0; i < signerChain.length; ++i) {
+            this.signerChain[i] = new JcaX509CertificateHolder(signerChain[i].cert);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ocsp", exchange -> {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+                if (!available) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                byte[] response = respond(readAll(exchange.getRequestBody()));
+                exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/ocsp";
+    }
+
+    public void revoke(BigInteger serial, Instant revocationTime, int reason) {
+        statuses.put(serial, new RevokedStatus(Date.from(revocationTime), reason));
+    }
+
+    public void markUnknown(BigInteger serial) {
+        statuses.put(serial, new UnknownStatus());
+    }
+
+    /**
+     * @param clock the time responses are produced at
+     */
+    public void setClock(Supplier<Instant> clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param validity the interval between thisUpdate and nextUpdate, or null to leave out nextUpdate
+     */
+    public void setValidity(Duration validity) {
+        this.validity = validity;
+    }
+
+    /**
+     * @param issuer answer with SHA-256 CertIDs computed from this issuer, rather than echoing the requested CertIDs
+     */
+    public void answerWithSha256CertIds(Issued issuer) throws Exception {
+        this.sha256Issuer = new JcaX509CertificateHolder(issuer.cert);
+    }
+
+    /**
+     * @param available false to answer every request with HTTP 503
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * Hold requests until {@link #release()} is called.
+     */
+    public void hold() {
+        gate = new CountDownLatch(1);
+    }
+
+    public void release() {
+        gate.countDown();
+    }
+
+    public int getRequestCount() {
+        return certIdsPerRequest.size();
+    }
+
+    /**
+     * @return the number of CertIDs in each request received, in order
+     */
+    public List<Integer> getCertIdsPerRequest() {
+        return certIdsPerRequest;
+    }
+
+    private byte[] respond(byte[] encodedRequest) throws Exception {
+        OCSPReq request = new OCSPReq(encodedRequest);
+        Req[] requests = request.getRequestList();
+        certIdsPerRequest.add(requests.length);
+        Instant now = clock.get();
+        Duration currentValidity = validity;
+        BasicOCSPRespBuilder builder = new JcaBasicOCSPRespBuilder(signer.keyPair.getPublic(),
+                new BcDigestCalculatorProvider().get(RespID.HASH_SHA1));
+        X509CertificateHolder responseIssuer = sha256Issuer;
+        for (Req req : requests) {
+            CertificateID id = req.getCertID();
+            CertificateStatus status = statuses.get(id.getSerialNumber());
+            if (responseIssuer != null) {
+                id = new CertificateID(new BcDigestCalculatorProvider().get(
+                        new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256)), responseIssuer,
+                        id.getSerialNumber());
+            }
+            builder.addResponse(id,
+                    status == null ? CertificateStatus.GOOD : status,
+                    Date.from(now),
+                    currentValidity == null ? null : Date.from(now.plus(currentValidity)));
+        }
+        BasicOCSPResp basic = builder.build(
+                new JcaContentSignerBuilder("SHA256withECDSA").build(signer.keyPair.getPrivate()),
+                signerChain, Date.from(now));
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basic).getEncoded();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        gate.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2019 ForgeRock AS.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.forgerock.test_helpers;
+
+import com.forgerock.cert.eidas.EidasCertType;
+import com.forgerock.cert.eidas.EidasInformation;
+import com.forgerock.cert.psd2.Psd2Role;
+import com.forgerock.cert.utils.EidasExtensionsTemplate;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues throw away EC certificates for tests that need a chain of their own.
+ */
+public final class TestPki {
+
+    private static final AtomicLong SERIALS = new AtomicLong(System.currentTimeMillis());
+
+    private TestPki() {
+    }
+
+    /**
+     * A certificate together with its key pair, so that it can issue further certificates.
+     */
+    public static final class Issued {
+        public final X509Certificate cert;
+        public final KeyPair keyPair;
+
+        Issued(X509Certificate cert, KeyPair keyPair) {
+            this.cert = cert;
+            this.keyPair = keyPair;
+        }
+
+        public X500Name getName() {
+            return X500Name.getInstance(cert.getSubjectX500Principal().getEncoded());
+        }
+    }
+
+    public static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    public static Issued root(String dn) throws Exception {
+        return issue(dn, null, true, null);
+    }
+
+    public static Issued intermediate(String dn, Issued issuer, String caIssuersUrl) throws Exception {
+        return issue(dn, issuer, true, caIssuersUrl);
+    }
+
+    public static Issued leaf(String dn, Issued issuer, String caIssuersUrl) throws Exception {
+        return issue(dn, issuer, false, caIssuersUrl);
+    }
+
+    public static Issued leaf(String dn, Issued issuer, String caIssuersUrl, String ocspUrl) throws Exception {
+        return issue(dn, issuer, false, caIssuersUrl, ocspUrl, null);
+    }
+
+    /**
+     * @return a PSD2 certificate of the given eIDAS type, with a QCStatement naming the NCA and granting the roles
+     */
+    public static Issued psd2Leaf(String dn, Issued issuer, EidasCertType certType, String ncaId, Psd2Role... roles)
+            throws Exception {
+        EidasInformation eidasInfo = new EidasInformation();
+        eidasInfo.setCaIssuerCertURL("http://ca.example.com/issuer.crt");
+        eidasInfo.setOcspUri("http://ca.example.com/ocsp");
+        eidasInfo.setNcaName("Test Competent Authority");
+        eidasInfo.setNcaId(ncaId);
+        for (Psd2Role role : roles) {
+            eidasInfo.addRole(role);
+        }
+        return issue(dn, issuer, false, null, null, null,
+                EidasExtensionsTemplate.compile(certType, eidasInfo).getExtensions());
+    }
+
+    /**
+     * @return a certificate the issuer has delegated to sign OCSP responses
+     */
+    public static Issued ocspSigner(String dn, Issued issuer) throws Exception {
+        return issue(dn, issuer, false, null, null, KeyPurposeId.id_kp_OCSPSigning);
+    }
+
+    /**
+     * @param issuer the issuer, or null for a self-signed certificate
+     * @param caIssuersUrl the URL to put in the authority information access extension, or null for none
+     */
+    public static Issued issue(String dn, Issued issuer, boolean ca, String caIssuersUrl) throws Exception {
+        return issue(dn, issuer, ca, caIssuersUrl, null, null);
+    }
+
+    /**
+     * @param ocspUrl the OCSP responder URL to put in the authority information access extension, or null for none
+     * @param keyPurpose the extended key usage of the certificate, or null for none
+     */
+    public static Issued issue(String dn, Issued issuer, boolean ca, String caIssuersUrl, String ocspUrl,
+                               KeyPurposeId keyPurpose) throws Exception {
+        return issue(dn, issuer, ca, caIssuersUrl, ocspUrl, keyPurpose, null);
+    }
+
+    /**
+     * @param extensions further extensions to add, or null for none
+     */
+    public static Issued issue(String dn, Issued issuer, boolean ca, String caIssuersUrl, String ocspUrl,
+                               KeyPurposeId keyPurpose, Extensions extensions) throws Exception {
+        KeyPair keyPair = newKeyPair();
+        X500Name subject = new X500Name(dn);
+        KeyPair signer = issuer == null ? keyPair : issuer.keyPair;
+        long now = System.currentTimeMillis();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                issuer == null ? subject : issuer.getName(),
+                BigInteger.valueOf(SERIALS.incrementAndGet()),
+                new Date(now - TimeUnit.HOURS.toMillis(1)),
+                new Date(now + TimeUnit.DAYS.toMillis(1)),
+                subject,
+                keyPair.getPublic());
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        builder.addExtension(Extension.subjectKeyIdentifier, false,
+                extensionUtils.createSubjectKeyIdentifier(keyPair.getPublic()));
+        builder.addExtension(Extension.authorityKeyIdentifier, false,
+                extensionUtils.createAuthorityKeyIdentifier(signer.getPublic()));
+        if (ca) {
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        }
+        List<AccessDescription> access = new ArrayList<>(2);
+        if (caIssuersUrl != null) {
+            access.add(new AccessDescription(AccessDescription.id_ad_caIssuers,
+                    new GeneralName(GeneralName.uniformResourceIdentifier, caIssuersUrl)));
+        }
+        if (ocspUrl != null) {
+            access.add(new AccessDescription(AccessDescription.id_ad_ocsp,
+                    new GeneralName(GeneralName.uniformResourceIdentifier, ocspUrl)));
+        }
+        if (!access.isEmpty()) {
+            builder.addExtension(Extension.authorityInfoAccess, false,
+                    new AuthorityInformationAccess(access.toArray(new AccessDescription[0])));
+        }
+        if (keyPurpose != null) {
+            builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(keyPurpose));
+        }
+        if (extensions != null) {
+            for (ASN1ObjectIdentifier oid : extensions.getExtensionOIDs()) {
+                builder.addExtension(extensions.getExtension(oid));
+            }
+        }
+        X509Certificate cert = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signer.getPrivate())));
+        return new Issued(cert, keyPair);
+    }
+}